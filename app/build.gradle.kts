@@ -28,10 +28,23 @@ android {
     compileOptions {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
+        // java.time on API 24 and 25, for LocalDays
+        isCoreLibraryDesugaringEnabled = true
     }
     buildFeatures {
         viewBinding = true
     }
+    testOptions {
+        // The data layer logs through android.util.Log; let local unit tests call it
+        unitTests.isReturnDefaultValues = true
+    }
+    sourceSets {
+        // Timing benchmarks only build and run when asked for:
+        // ./gradlew testDebugUnitTest -Pbenchmarks --tests '*Benchmark'
+        if (providers.gradleProperty("benchmarks").isPresent) {
+            getByName("test").java.srcDir("src/benchmark/java")
+        }
+    }
 }
 
 dependencies {
@@ -48,6 +61,7 @@ dependencies {
     implementation(libs.lifecycle.viewmodel.ktx)
     implementation(libs.navigation.fragment)
     implementation(libs.navigation.ui)
+    coreLibraryDesugaring(libs.desugar.jdk.libs)
     //noinspection UseTomlInstead
     implementation ("com.google.android.material:material:<latest_version>")
     testImplementation(libs.junit)
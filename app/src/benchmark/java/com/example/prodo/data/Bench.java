@@ -0,0 +1,73 @@
+package com.example.prodo.data;
+
+import java.util.Arrays;
+
+/**
+ * Timing helpers for the local JVM benchmarks in src/benchmark. These are only compiled into the
+ * unit tests with -Pbenchmarks (see app/build.gradle.kts), so a plain test run never pays for them:
+ *
+ *     ./gradlew testDebugUnitTest -Pbenchmarks --tests '*Benchmark'
+ *
+ * Each benchmark checks that the paths it compares give the same results, then prints timings;
+ * the timings are never asserted.
+ */
+final class Bench {
+    private Bench() {
+    }
+
+    /** Something to time. */
+    interface Work {
+        void run() throws Exception;
+    }
+
+    /** Nanoseconds one run of {@code work} takes, with nothing warmed up first. */
+    static long once(Work work) throws Exception {
+        long start = System.nanoTime();
+        work.run();
+        return System.nanoTime() - start;
+    }
+
+    /** Nanoseconds of the fastest of {@code runs} runs, after one untimed warm-up run. */
+    static long best(int runs, Work work) throws Exception {
+        work.run();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            best = Math.min(best, once(work));
+        }
+        return best;
+    }
+
+    /** Nanoseconds of the median of {@code runs} runs, after {@code warmups} untimed ones. */
+    static long median(int warmups, int runs, Work work) throws Exception {
+        for (int i = 0; i < warmups; i++) {
+            work.run();
+        }
+        long[] samples = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            samples[i] = once(work);
+        }
+        return median(samples);
+    }
+
+    static long median(long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    static long max(long[] samples) {
+        long max = 0;
+        for (long sample : samples) {
+            max = Math.max(max, sample);
+        }
+        return max;
+    }
+
+    static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    static double micros(long nanos) {
+        return nanos / 1e3;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.prodo.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static com.example.prodo.data.FocusRollupsTest.START;
+
+/**
+ * Local JVM benchmark: focus totals for a year view read from the rollups vs. summed from the
+ * session log, over two years of sessions. Also times a full rebuild, as TaskStore does at load.
+ * Correctness is in {@link FocusRollupsTest}.
+ */
+public class FocusRollupsBenchmark {
+    private static final int TASKS = 500;
+    private static final int SESSIONS = 20_000;
+    private static final int RUNS = 20;
+
+    @Test
+    public void yearView() throws Exception {
+        List<UUID> taskIds = new ArrayList<>();
+        for (int i = 0; i < TASKS; i++) {
+            taskIds.add(UUID.randomUUID());
+        }
+        Map<UUID, String> categories = new HashMap<>();
+        List<PomodoroSession> sessions = FocusRollupsTest.sampleSessions(SESSIONS, taskIds, categories, new Random(7));
+        LocalDays days = LocalDays.current();
+        FocusRollups rollups = new FocusRollups();
+        long rebuildNanos = Bench.best(4, () -> rollups.rebuild(sessions, categories::get, days));
+
+        // The second year, as the stats screen shows it: totals per day plus a per-task breakdown
+        long firstDay = days.epochDay(START) + 365;
+        long lastDay = firstDay + 364;
+        long rollupNanos = Bench.best(RUNS, () -> {
+            long millis = 0;
+            for (FocusTotals day : rollups.range(FocusTotals.Period.DAY, firstDay, lastDay)) {
+                millis += day.getFocusMillis();
+            }
+        });
+        long scanNanos = Bench.best(RUNS, () -> {
+            Map<Long, Map<UUID, long[]>> byDay = new HashMap<>();
+            for (PomodoroSession session : sessions) {
+                long day = days.epochDay(session.getEndMillis());
+                if (day >= firstDay && day <= lastDay) {
+                    long[] sum = byDay.computeIfAbsent(day, d -> new HashMap<>())
+                            .computeIfAbsent(session.getTaskId(), id -> new long[2]);
+                    sum[0]++;
+                    sum[1] += session.getDurationMillis();
+                }
+            }
+        });
+        // A year bar reads one bucket
+        long year = FocusRollups.key(FocusTotals.Period.YEAR, firstDay);
+        long yearNanos = Bench.best(RUNS, () -> rollups.get(FocusTotals.Period.YEAR, year).getSessions());
+
+        System.out.printf("rebuild from %d sessions: %.1f ms%n", SESSIONS, Bench.millis(rebuildNanos));
+        System.out.printf("a year of day totals with per-task breakdown: rollups %.2f ms, scanning sessions %.2f ms%n",
+                Bench.millis(rollupNanos), Bench.millis(scanNanos));
+        System.out.printf("one year bucket: %.3f ms (%d sessions)%n",
+                Bench.millis(yearNanos), rollups.get(FocusTotals.Period.YEAR, year).getSessions());
+    }
+}
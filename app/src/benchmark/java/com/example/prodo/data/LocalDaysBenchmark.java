@@ -0,0 +1,58 @@
+package com.example.prodo.data;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local JVM benchmark: bucketing timestamps by local day with LocalDays vs. the Calendar and
+ * formatted-key code it replaces. Correctness is in {@link LocalDaysTest}.
+ */
+public class LocalDaysBenchmark {
+    private static final int STAMPS = 1_000_000;
+    private static final int RUNS = 5;
+
+    @Test
+    public void dayBucketing() throws Exception {
+        TimeZone zone = TimeZone.getTimeZone("America/New_York");
+        LocalDays days = LocalDays.of(zone);
+        long[] stamps = LocalDaysTest.sampleStamps(STAMPS, new Random(7));
+
+        long[] daysSum = new long[1];
+        long daysNanos = Bench.best(RUNS, () -> {
+            daysSum[0] = 0;
+            for (long stamp : stamps) {
+                daysSum[0] += days.epochDay(stamp);
+            }
+        });
+        long[] calendarSum = new long[1];
+        long calendarNanos = Bench.best(RUNS, () -> {
+            calendarSum[0] = 0;
+            for (long stamp : stamps) {
+                calendarSum[0] += days.epochDay(LocalDaysTest.calendarMidnight(zone, stamp));
+            }
+        });
+        // Old: a formatted yyyy-MM-dd key per stamp; a tenth of the stamps, it is that slow
+        int[] formatKeys = new int[1];
+        long formatNanos = 10 * Bench.best(RUNS, () -> {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd", Locale.ROOT);
+            format.setTimeZone(zone);
+            Map<String, Integer> counts = new HashMap<>();
+            for (int i = 0; i < STAMPS; i += 10) {
+                counts.merge(format.format(stamps[i]), 1, Integer::sum);
+            }
+            formatKeys[0] = counts.size();
+        });
+        assertEquals(calendarSum[0], daysSum[0]);
+        assertEquals(2 * 365, formatKeys[0], 2);
+        System.out.printf("bucket %d stamps by day: LocalDays %.1f ms, Calendar %.1f ms, SimpleDateFormat keys ~%.1f ms%n",
+                STAMPS, Bench.millis(daysNanos), Bench.millis(calendarNanos), Bench.millis(formatNanos));
+    }
+}
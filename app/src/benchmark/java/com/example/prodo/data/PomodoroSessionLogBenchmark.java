@@ -0,0 +1,89 @@
+package com.example.prodo.data;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static com.example.prodo.data.PomodoroSessionLogTest.DAY;
+import static com.example.prodo.data.PomodoroSessionLogTest.START;
+import static com.example.prodo.data.PomodoroSessionLogTest.work;
+
+/**
+ * Local JVM benchmark: a year of stats from the Pomodoro session log vs. the SharedPreferences
+ * counters it replaces, which the stats screen probed one string-built key per day and task.
+ * Correctness is in {@link PomodoroSessionLogTest}.
+ */
+public class PomodoroSessionLogBenchmark {
+    private static final int TASKS = 500;
+    private static final int SESSIONS = 20_000;
+    private static final int RUNS = 20;
+
+    @Test
+    public void yearOfStats() throws Exception {
+        Random random = new Random(7);
+        List<UUID> taskIds = new ArrayList<>();
+        List<String> titleKeys = new ArrayList<>();
+        for (int i = 0; i < TASKS; i++) {
+            taskIds.add(UUID.randomUUID());
+            titleKeys.add(PomodoroSessionLog.legacyTaskKey("Task " + i));
+        }
+        SimpleDateFormat keyFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
+
+        // Two years of sessions, in the log and as the old counters
+        File file = File.createTempFile("sessions", ".dat");
+        file.delete();
+        PomodoroSessionLog log = new PomodoroSessionLog(file);
+        Map<String, Integer> prefs = new HashMap<>();
+        long end = START;
+        for (int i = 0; i < SESSIONS; i++) {
+            end += random.nextInt((int) (2 * 730 * DAY / SESSIONS));
+            int task = random.nextInt(TASKS);
+            log.add(work(taskIds.get(task), end));
+            String date = keyFormat.format(end);
+            prefs.merge("pomos_" + date, 1, Integer::sum);
+            prefs.merge("pomos_" + date + "_" + titleKeys.get(task), 1, Integer::sum);
+        }
+        long writeNanos = Bench.once(log::writePending);
+        System.out.printf("write %d sessions: %.1f ms, %d KB%n", SESSIONS, Bench.millis(writeNanos), file.length() / 1024);
+        file.delete();
+
+        long yearStart = START + 365 * DAY;
+        long yearEnd = yearStart + 365 * DAY;
+        int[] prefsPomos = new int[1];
+        int[] logPomos = new int[1];
+        // Old: a key per day for the chart, then a key per day and task for the breakdown
+        long prefsNanos = Bench.best(RUNS, () -> {
+            prefsPomos[0] = 0;
+            Calendar day = Calendar.getInstance();
+            day.setTimeInMillis(yearStart);
+            while (day.getTimeInMillis() < yearEnd) {
+                String date = keyFormat.format(day.getTime());
+                prefs.getOrDefault("pomos_" + date, 0);
+                for (String titleKey : titleKeys) {
+                    prefsPomos[0] += prefs.getOrDefault("pomos_" + date + "_" + titleKey, 0);
+                }
+                day.add(Calendar.DAY_OF_YEAR, 1);
+            }
+        });
+        // New: the year's sessions by binary search, bucketed by task in one pass
+        long logNanos = Bench.best(RUNS, () -> {
+            logPomos[0] = 0;
+            Map<UUID, long[]> perTask = new HashMap<>();
+            for (PomodoroSession session : log.between(yearStart, yearEnd)) {
+                perTask.computeIfAbsent(session.getTaskId(), id -> new long[2])[0]++;
+                logPomos[0]++;
+            }
+        });
+        System.out.printf("year of stats, %d tasks: prefs keys %.1f ms (%d pomos), session log %.2f ms (%d pomos)%n",
+                TASKS, Bench.millis(prefsNanos), prefsPomos[0], Bench.millis(logNanos), logPomos[0]);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.prodo.data;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local JVM benchmark: loading tasks.json (streaming JSON codec) vs. tasks.bin (BinaryTaskCodec)
+ * at 1k, 10k and 100k tasks. Prints file size and median load time. Correctness is in
+ * {@link SnapshotFormatTest}.
+ */
+public class SnapshotFormatBenchmark {
+    private static final int[] SIZES = {1_000, 10_000, 100_000};
+
+    @Test
+    public void loadTimeAndSize() throws Exception {
+        for (int size : SIZES) {
+            List<Task> tasks = SnapshotFormatTest.sampleTasks(size);
+            File json = File.createTempFile("tasks", ".json");
+            File bin = File.createTempFile("tasks", ".bin");
+            try {
+                try (FileOutputStream out = new FileOutputStream(json)) {
+                    TaskJsonCodec.write(out, ProdoGson.get(), tasks);
+                }
+                BinaryTaskCodec.write(bin, tasks);
+
+                long jsonNanos = Bench.median(1, 5, () -> {
+                    List<Task> loaded = new ArrayList<>(size);
+                    try (FileInputStream in = new FileInputStream(json)) {
+                        TaskJsonCodec.read(in, ProdoGson.get(), loaded::add);
+                    }
+                    assertEquals(size, loaded.size());
+                });
+                long binNanos = Bench.median(1, 5, () -> {
+                    List<Task> loaded = new ArrayList<>(size);
+                    BinaryTaskCodec.read(bin, loaded::add);
+                    assertEquals(size, loaded.size());
+                });
+
+                System.out.printf("%7d tasks  json %8d KB %8.1f ms   binary %8d KB %8.1f ms%n",
+                        size, json.length() / 1024, Bench.millis(jsonNanos), bin.length() / 1024, Bench.millis(binNanos));
+            } finally {
+                json.delete();
+                bin.delete();
+            }
+        }
+    }
+}
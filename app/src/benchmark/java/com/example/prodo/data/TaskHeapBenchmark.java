@@ -0,0 +1,81 @@
+package com.example.prodo.data;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local JVM benchmark: heap retained per decoded task at 10k and 100k tasks, before and after
+ * the compact Task layout (shared category Strings, subtask ids as two longs, one shared empty
+ * subtask list). "Before" decodes the same tasks.json into copies of the old classes with plain
+ * reflective Gson, which allocated exactly what the old Task did. Prints bytes per task.
+ * Correctness is in {@link TaskHeapTest}.
+ */
+public class TaskHeapBenchmark {
+    private static final int[] SIZES = {10_000, 100_000};
+
+    /** Task as it was: own category String, eagerly allocated subtask list. */
+    @SuppressWarnings("unused")
+    private static final class OldTask {
+        UUID mId;
+        long mDate;
+        String mTitle;
+        int pomodoroCount;
+        String mCategory;
+        String mNote;
+        boolean mIsDone;
+        boolean mIsFlagged;
+        List<OldSubtask> mSubtasks = new ArrayList<>();
+        long mTotalTimeSpentMillis;
+    }
+
+    /** Subtask as it was: id as a 36-character String. */
+    @SuppressWarnings("unused")
+    private static final class OldSubtask {
+        String id;
+        String title;
+        boolean isDone;
+    }
+
+    @Test
+    public void bytesPerTask() throws Exception {
+        Gson plainGson = new Gson(); // Reflective, as before the hand-written adapters
+        for (int size : SIZES) {
+            byte[] json = TaskHeapTest.sampleJson(size);
+
+            long baseline = usedHeap();
+            OldTask[] before = plainGson.fromJson(
+                    new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8), OldTask[].class);
+            long beforeBytes = usedHeap() - baseline;
+            assertEquals(size, before.length);
+            before = null;
+
+            baseline = usedHeap();
+            List<Task> after = new ArrayList<>(size);
+            TaskJsonCodec.read(new ByteArrayInputStream(json), ProdoGson.get(), after::add);
+            long afterBytes = usedHeap() - baseline;
+            assertEquals(size, after.size());
+
+            System.out.printf("%7d tasks  before %5d bytes/task   after %5d bytes/task%n",
+                    size, beforeBytes / size, afterBytes / size);
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
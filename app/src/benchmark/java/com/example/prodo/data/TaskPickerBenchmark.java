@@ -0,0 +1,63 @@
+package com.example.prodo.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local JVM benchmark: the Pomodoro task picker's fuzzy type-ahead over 100k tasks. Times building
+ * the picker and each keystroke of a few queries typed one character at a time, against the 16 ms
+ * frame budget. Correctness is in {@link TaskPickerTest}.
+ */
+public class TaskPickerBenchmark {
+    private static final int TASKS = 100_000;
+    private static final String[] WORDS = {
+            "report", "review", "groceries", "gym", "dentist", "invoice", "meeting", "plan", "budget",
+            "call", "email", "draft", "slides", "garden", "laundry", "taxes", "flight", "hotel",
+            "birthday", "present", "library", "book", "course", "homework", "car", "insurance",
+            "project", "deadline", "client", "design"};
+    private static final String[] TYPED = {"wkrp", "client design", "tx", "homework 12", "zzz"};
+
+    @Test
+    public void keystrokeLatency() throws Exception {
+        Random random = new Random(7);
+        List<Task> tasks = new ArrayList<>(TASKS);
+        for (int i = 0; i < TASKS; i++) {
+            String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            tasks.add(TaskPickerTest.task(title, i, i % 3 == 0));
+        }
+
+        TaskPicker[] picker = new TaskPicker[1];
+        long buildNanos = Bench.once(() -> picker[0] = new TaskPicker(tasks, Collections.emptyList()));
+        System.out.printf("build picker over %d tasks: %.0f ms%n", TASKS, Bench.millis(buildNanos));
+        assertEquals(TASKS, picker[0].size());
+
+        for (int round = 0; round < 5; round++) { // Warm up, then report the last round
+            for (String typed : TYPED) {
+                StringBuilder timings = new StringBuilder();
+                long worst = 0;
+                int[] results = new int[1];
+                for (int n = 0; n <= typed.length(); n++) {
+                    String prefix = typed.substring(0, n);
+                    long nanos = Bench.once(() -> {
+                        List<Task> matches = picker[0].match(prefix, 200);
+                        results[0] = matches.size();
+                    });
+                    worst = Math.max(worst, nanos);
+                    assertTrue(results[0] <= 200);
+                    timings.append(String.format(" %.2f", Bench.millis(nanos)));
+                }
+                if (round == 4) {
+                    System.out.printf("%-14s worst %6.2f ms, %3d shown; per keystroke ms:%s%n",
+                            "'" + typed + "'", Bench.millis(worst), results[0], timings);
+                }
+            }
+        }
+    }
+}
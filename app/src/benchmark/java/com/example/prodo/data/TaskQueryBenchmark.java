@@ -0,0 +1,35 @@
+package com.example.prodo.data;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local JVM benchmark: TaskQuery through the planner vs. a full scan of the same table, at 100k
+ * tasks. Prints the plan chosen and the best time per query each way. Correctness is in
+ * {@link TaskQueryTest}.
+ */
+public class TaskQueryBenchmark {
+    private static final int TASKS = 100_000;
+    private static final int RUNS = 20;
+
+    @Test
+    public void plannedVersusScan() throws Exception {
+        TaskTable table = TaskQueryTest.sampleTable(TASKS, new Random(7));
+        LocalDays days = LocalDays.current();
+        for (TaskQuery query : TaskQueryTest.sampleQueries()) {
+            TaskQueryPlanner.Plan plan = TaskQueryPlanner.plan(table, query);
+            TaskQueryPlanner.Plan scan = TaskQueryPlanner.scanPlan(table);
+            List<Task> planned = TaskQueryPlanner.run(table, query, plan, days);
+            assertEquals(TaskQueryPlanner.run(table, query, scan, days), planned);
+
+            long plannedNanos = Bench.best(RUNS, () -> TaskQueryPlanner.run(table, query, plan, days));
+            long scanNanos = Bench.best(RUNS, () -> TaskQueryPlanner.run(table, query, scan, days));
+            System.out.printf("%-40s %5d results  planned %8.3f ms  scan %8.3f ms%n",
+                    plan, planned.size(), Bench.millis(plannedNanos), Bench.millis(scanNanos));
+        }
+    }
+}
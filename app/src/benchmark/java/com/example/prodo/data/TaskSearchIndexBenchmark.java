@@ -0,0 +1,79 @@
+package com.example.prodo.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local JVM benchmark: search-as-you-type over 100k tasks with TaskSearchIndex, against the 16 ms
+ * frame budget. Times building the index, one-task updates and queries of one to three words (the
+ * last one a prefix). Correctness is in {@link TaskSearchIndexTest}.
+ */
+public class TaskSearchIndexBenchmark {
+    private static final int TASKS = 100_000;
+    private static final String[] WORDS = {
+            "report", "review", "groceries", "gym", "dentist", "invoice", "meeting", "plan", "budget",
+            "call", "email", "draft", "slides", "garden", "laundry", "taxes", "flight", "hotel",
+            "birthday", "present", "library", "book", "course", "homework", "car", "insurance",
+            "project", "deadline", "client", "design"};
+    private static final String[] QUERIES = {"re", "report", "gro", "budget pl", "client design dea", "tax"};
+
+    @Test
+    public void searchLatency() throws Exception {
+        Random random = new Random(42);
+        List<UUID> ids = new ArrayList<>(TASKS);
+        TaskSearchIndex index = new TaskSearchIndex();
+
+        long buildNanos = Bench.once(() -> {
+            for (int i = 0; i < TASKS; i++) {
+                UUID id = UUID.randomUUID();
+                ids.add(id);
+                index.setTitle(id, phrase(random, 3) + " " + i, i);
+                if (i % 3 == 0) {
+                    List<Subtask> subtasks = new ArrayList<>();
+                    for (int s = 0; s < i % 4; s++) {
+                        subtasks.add(new Subtask(phrase(random, 2)));
+                    }
+                    index.setBody(id, phrase(random, 12), subtasks);
+                }
+            }
+        });
+        System.out.printf("index %d tasks: %.0f ms, %d terms%n", TASKS, Bench.millis(buildNanos), index.termCount());
+
+        long[] updateNanos = new long[1_000];
+        for (int i = 0; i < updateNanos.length; i++) {
+            UUID id = ids.get(random.nextInt(TASKS));
+            String title = phrase(random, 3);
+            int order = i;
+            updateNanos[i] = Bench.once(() -> index.setTitle(id, title, order));
+        }
+        System.out.printf("update one title: median %.0f us%n", Bench.micros(Bench.median(updateNanos)));
+
+        for (String query : QUERIES) {
+            List<UUID> results = index.search(query, 50);
+            assertTrue(query, results.size() <= 50);
+            long[] nanos = new long[50];
+            for (int i = 0; i < nanos.length; i++) {
+                nanos[i] = Bench.once(() -> index.search(query, 50));
+            }
+            System.out.printf("%-20s median %6.2f ms  max %6.2f ms  %d results%n",
+                    "'" + query + "'", Bench.millis(Bench.median(nanos)), Bench.millis(Bench.max(nanos)), results.size());
+        }
+    }
+
+    private static String phrase(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+}
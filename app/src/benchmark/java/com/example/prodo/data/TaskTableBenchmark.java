@@ -0,0 +1,88 @@
+package com.example.prodo.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local JVM benchmark: TaskTable id lookups vs. the linear list scan TaskStore used before, at
+ * 100 to 100k tasks. Prints the cost per get / update / delete+add (each followed by a snapshot
+ * publish, as TaskStore does), and the per-call copy getTasks() used to make. Correctness is in
+ * {@link TaskTableTest}.
+ */
+public class TaskTableBenchmark {
+    private static final int[] SIZES = {100, 1_000, 10_000, 100_000};
+    private static final int OPS = 2_000;
+
+    @Test
+    public void lookupCostStaysFlat() throws Exception {
+        Random random = new Random(42);
+        for (int size : SIZES) {
+            List<Task> tasks = TaskTableTest.sampleTasks(size);
+            TaskTable table = new TaskTable();
+            for (Task task : tasks) {
+                table.put(task);
+            }
+            List<Task> list = new ArrayList<>(tasks);
+            UUID[] ids = new UUID[OPS];
+            for (int i = 0; i < OPS; i++) {
+                ids[i] = tasks.get(random.nextInt(size)).getId();
+            }
+
+            long tableNanos = Bench.best(1, () -> runTable(table, ids));
+            long listNanos = Bench.best(1, () -> runList(list, ids));
+            long copyNanos = Bench.once(() -> runCopy(list));
+
+            assertEquals(size, table.size());
+            assertEquals(size, list.size());
+            System.out.printf("%7d tasks  table %8.3f us/op   list scan %8.3f us/op   getTasks() copy %8.3f us%n",
+                    size, Bench.micros(tableNanos) / OPS, Bench.micros(listNanos) / OPS, Bench.micros(copyNanos) / OPS);
+        }
+    }
+
+    // Each op is a get, a replace and a remove + re-add, like getTask/updateTask/deleteTask+addTask.
+    private static void runTable(TaskTable table, UUID[] ids) {
+        for (UUID id : ids) {
+            Task task = table.get(id);
+            table.replace(task);
+            table.publish(0);
+            table.remove(id);
+            table.publish(0);
+            table.put(task);
+            table.publish(0);
+        }
+    }
+
+    // What every getTasks() call cost before snapshots: a full ArrayList copy.
+    private static void runCopy(List<Task> list) {
+        int total = 0;
+        for (int i = 0; i < OPS; i++) {
+            total += new ArrayList<>(list).size();
+        }
+        assertEquals((long) OPS * list.size(), total);
+    }
+
+    private static void runList(List<Task> list, UUID[] ids) {
+        for (UUID id : ids) {
+            int index = indexOf(list, id);
+            Task task = list.get(index);
+            list.set(indexOf(list, id), task);
+            list.remove(indexOf(list, id));
+            list.add(task);
+        }
+    }
+
+    private static int indexOf(List<Task> list, UUID id) {
+        for (int i = 0; i < list.size(); i++) {
+            if (id.equals(list.get(i).getId())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
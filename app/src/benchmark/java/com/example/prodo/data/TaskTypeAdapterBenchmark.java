@@ -0,0 +1,39 @@
+package com.example.prodo.data;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.junit.Test;
+
+import static com.example.prodo.data.TaskTypeAdapterTest.TASK_LIST_TYPE;
+import static com.example.prodo.data.TaskTypeAdapterTest.reflectiveGson;
+import static com.example.prodo.data.TaskTypeAdapterTest.sampleTasks;
+
+/**
+ * Local JVM benchmark: decoding 5,000 tasks with the hand-written Task/Subtask adapters vs. the
+ * reflective Gson binding TaskStore used before, cold (a Gson that has never seen Task) and in a
+ * steady state. Correctness is in {@link TaskTypeAdapterTest}.
+ */
+public class TaskTypeAdapterBenchmark {
+    private static final int TASK_COUNT = 5_000;
+
+    @Test
+    public void decode() throws Exception {
+        String json = reflectiveGson().toJson(sampleTasks(TASK_COUNT));
+
+        long reflectiveCold = Bench.once(() -> reflectiveGson().fromJson(json, TASK_LIST_TYPE));
+        long adapterCold = Bench.once(() -> new GsonBuilder()
+                .registerTypeAdapter(Task.class, new TaskTypeAdapter(new UuidTypeAdapter().nullSafe(), new SubtaskTypeAdapter()))
+                .create()
+                .fromJson(json, TASK_LIST_TYPE));
+
+        Gson reflective = reflectiveGson();
+        Gson shared = ProdoGson.get();
+        long reflectiveWarm = Bench.median(5, 15, () -> reflective.fromJson(json, TASK_LIST_TYPE));
+        long adapterWarm = Bench.median(5, 15, () -> shared.fromJson(json, TASK_LIST_TYPE));
+
+        System.out.println("Decode of " + TASK_COUNT + " tasks (" + json.length() / 1024 + " KB)");
+        System.out.printf("  cold   reflective %6.2f ms   adapters %6.2f ms%n", Bench.millis(reflectiveCold), Bench.millis(adapterCold));
+        System.out.printf("  steady reflective %6.2f ms   adapters %6.2f ms%n", Bench.millis(reflectiveWarm), Bench.millis(adapterWarm));
+    }
+}
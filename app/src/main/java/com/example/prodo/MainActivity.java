@@ -10,14 +10,13 @@ import com.example.prodo.data.Task;
 import com.example.prodo.data.TaskStore;
 import com.example.prodo.databinding.ActivityMainBinding;
 import com.example.prodo.ui.tasks.AddTaskBottomSheet;
-import com.example.prodo.ui.tasks.TasksFragment;
+import com.example.prodo.ui.tasks.ArchivedTasksDialogFragment;
+import com.example.prodo.ui.tasks.SearchTasksDialogFragment;
 import com.google.android.material.navigation.NavigationView;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.drawerlayout.widget.DrawerLayout;
-import androidx.fragment.app.Fragment;
-import androidx.fragment.app.FragmentManager;
 import androidx.navigation.NavController;
 import androidx.navigation.Navigation;
 import androidx.navigation.ui.AppBarConfiguration;
@@ -84,8 +83,7 @@ public class MainActivity extends AppCompatActivity {
                             ", Date (ms): " + newTask.getDate() +
                             ", Notes: " + newTask.getNote());
 
-                    TaskStore.get(getApplicationContext()).addTask(newTask);
-                    notifyTasksFragmentRefresh();
+                    TaskStore.get(getApplicationContext()).addTask(newTask); // TasksFragment picks it up from the change feed
                 }).show(getSupportFragmentManager(), AddTaskBottomSheet.TAG);
             });
         } else {
@@ -125,20 +123,11 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
-    private void notifyTasksFragmentRefresh() {
-        Fragment navHostFragment = getSupportFragmentManager().findFragmentById(R.id.nav_host_fragment_content_main);
-        if (navHostFragment != null) {
-            FragmentManager childFragmentManager = navHostFragment.getChildFragmentManager();
-            Fragment currentFragment = childFragmentManager.getPrimaryNavigationFragment();
-            if (currentFragment instanceof TasksFragment) {
-                Log.d(TAG, "Found TasksFragment, calling refreshTaskList().");
-                ((TasksFragment) currentFragment).refreshTaskList();
-            } else {
-                Log.w(TAG, "TasksFragment not currently primary navigation fragment.");
-            }
-        } else {
-            Log.e(TAG, "NavHostFragment not found. Cannot refresh TasksFragment.");
-        }
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Push any debounced task writes to disk now; the process may be killed while we're in the background.
+        TaskStore.get(getApplicationContext()).flush();
     }
 
     @Override
@@ -159,6 +148,16 @@ public class MainActivity extends AppCompatActivity {
             return true;
         }
 
+        if (item.getItemId() == R.id.action_search_tasks) {
+            SearchTasksDialogFragment.newInstance().show(getSupportFragmentManager(), SearchTasksDialogFragment.TAG);
+            return true;
+        }
+
+        if (item.getItemId() == R.id.action_archived_tasks) {
+            ArchivedTasksDialogFragment.newInstance().show(getSupportFragmentManager(), ArchivedTasksDialogFragment.TAG);
+            return true;
+        }
+
         return super.onOptionsItemSelected(item);
     }
 
@@ -2,15 +2,27 @@
 package com.example.prodo; // your app's package
 
 import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import com.example.prodo.data.LocalDays;
 import com.example.prodo.data.TaskStore;
 
 public class MyApplication extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
-        // Initialize TaskStore by calling get() with context.
-        // The instance will be created and tasks loaded if it's the first time.
+        // Start loading tasks as early as possible. get() returns right away; the file is read on
+        // TaskStore's background thread and screens catch up through its ready/change LiveData.
         TaskStore.get(getApplicationContext());
+        // LocalDays.current() caches the device's zone; drop it as soon as the zone changes.
+        registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                LocalDays.timeZoneChanged();
+            }
+        }, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
     }
 }
 
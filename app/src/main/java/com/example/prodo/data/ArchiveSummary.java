@@ -0,0 +1,58 @@
+package com.example.prodo.data;
+
+/**
+ * Totals of the archived tasks, stored next to the archive so all-time stats can include them
+ * without loading it. See {@link TaskStore#getArchiveSummary()}.
+ */
+public final class ArchiveSummary {
+    static final ArchiveSummary EMPTY = new ArchiveSummary(0, 0, 0, 0, 0);
+
+    public final int taskCount;
+    public final long totalPomodoros;
+    public final long totalTimeSpentMillis;
+    public final long oldestDate;   // earliest due date in the archive, 0 if empty
+    public final long newestDate;   // latest due date in the archive, 0 if empty
+
+    ArchiveSummary(int taskCount, long totalPomodoros, long totalTimeSpentMillis, long oldestDate, long newestDate) {
+        this.taskCount = taskCount;
+        this.totalPomodoros = totalPomodoros;
+        this.totalTimeSpentMillis = totalTimeSpentMillis;
+        this.oldestDate = oldestDate;
+        this.newestDate = newestDate;
+    }
+
+    static ArchiveSummary of(Iterable<Task> tasks) {
+        int count = 0;
+        long pomodoros = 0;
+        long millis = 0;
+        long oldest = Long.MAX_VALUE;
+        long newest = Long.MIN_VALUE;
+        for (Task task : tasks) {
+            count++;
+            pomodoros += task.getPomodoroCount();
+            millis += task.getTotalTimeSpentMillis();
+            oldest = Math.min(oldest, task.getDate());
+            newest = Math.max(newest, task.getDate());
+        }
+        return count == 0 ? EMPTY : new ArchiveSummary(count, pomodoros, millis, oldest, newest);
+    }
+
+    /** Totals of both; the dates span both. */
+    ArchiveSummary plus(ArchiveSummary other) {
+        if (other.taskCount == 0) {
+            return this;
+        }
+        if (taskCount == 0) {
+            return other;
+        }
+        return new ArchiveSummary(taskCount + other.taskCount, totalPomodoros + other.totalPomodoros,
+                totalTimeSpentMillis + other.totalTimeSpentMillis, Math.min(oldestDate, other.oldestDate),
+                Math.max(newestDate, other.newestDate));
+    }
+
+    @Override
+    public String toString() {
+        return "ArchiveSummary{tasks=" + taskCount + ", pomodoros=" + totalPomodoros +
+                ", timeSpentMs=" + totalTimeSpentMillis + ", dates=" + oldestDate + ".." + newestDate + "}";
+    }
+}
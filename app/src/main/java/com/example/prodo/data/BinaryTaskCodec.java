@@ -0,0 +1,301 @@
+package com.example.prodo.data;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Compact binary snapshot of the task list (tasks.bin).
+ *
+ * Layout, all numbers big-endian:
+ * <pre>
+ *   int    magic "PRDB"
+ *   int    format version
+ *   int    task count
+ *   varint string-table size, then that many strings   (category names, each stored once)
+ *   task count x [varint record length][record]
+ * </pre>
+ * A record holds the id as two longs, the booleans as bit flags and the category as an index into
+ * the string table. Because every record is length-prefixed, a reader skips fields appended by
+ * later versions. Strings are [varint byte length + 1][UTF-8 bytes], with 0 meaning null.
+ *
+ * Version 2 adds FLAG_BODY_STORED for hot records whose body is in the body store: the note field
+ * then holds the preview and there are no subtasks (see {@link Task#isBodyLoaded()}).
+ * Version 3 appends the task's modification count ({@link Task#getVersion()}) to each record.
+ * Version 4 appends the subtask count + 1 as a varint (0 = not counted), which hot records need as
+ * they carry no subtasks.
+ *
+ * Files above {@link #MMAP_THRESHOLD_BYTES} are memory-mapped through a FileChannel instead of
+ * being copied onto the Java heap.
+ */
+final class BinaryTaskCodec {
+    static final int MAGIC = 0x50524442; // "PRDB"
+    static final int VERSION = 4;
+    static final long MMAP_THRESHOLD_BYTES = 1024 * 1024;
+
+    private static final int FLAG_DONE = 1;
+    private static final int FLAG_FLAGGED = 1 << 1;
+    private static final int FLAG_HAS_ID = 1 << 2;
+    private static final int FLAG_BODY_STORED = 1 << 3;
+
+    private static final int SUBTASK_FLAG_DONE = 1;
+    private static final int SUBTASK_FLAG_UUID_ID = 1 << 1; // id stored as two longs
+    private static final int SUBTASK_FLAG_STRING_ID = 1 << 2; // id isn't a UUID, stored as a string
+
+    private BinaryTaskCodec() {
+    }
+
+    // ---- Writing ----
+
+    static void write(File file, Iterable<Task> tasks) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            write(fos, tasks);
+            fos.getFD().sync();
+        }
+    }
+
+    /** Writes the snapshot to {@code stream} and flushes it; the stream is left open. */
+    static void write(OutputStream stream, Iterable<Task> tasks) throws IOException {
+        // First pass: the category string table and the task count.
+        Map<String, Integer> categoryIndex = new HashMap<>();
+        List<String> categories = new ArrayList<>();
+        int count = 0;
+        for (Task task : tasks) {
+            if (task == null) {
+                continue;
+            }
+            count++;
+            String category = task.getCategory();
+            if (category != null && !categoryIndex.containsKey(category)) {
+                categoryIndex.put(category, categories.size());
+                categories.add(category);
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 16 * 1024));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(count);
+        writeVarInt(out, categories.size());
+        for (String category : categories) {
+            writeString(out, category);
+        }
+
+        // Second pass: one length-prefixed record per task, built in a reused buffer.
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(256);
+        DataOutputStream record = new DataOutputStream(recordBytes);
+        for (Task task : tasks) {
+            if (task == null) {
+                continue;
+            }
+            recordBytes.reset();
+            writeTask(record, task, categoryIndex);
+            record.flush();
+            writeVarInt(out, recordBytes.size());
+            recordBytes.writeTo(out);
+        }
+        out.flush();
+    }
+
+    private static void writeTask(DataOutputStream out, Task task, Map<String, Integer> categoryIndex) throws IOException {
+        UUID id = task.getId();
+        int flags = (task.isDone() ? FLAG_DONE : 0)
+                | (task.isFlagged() ? FLAG_FLAGGED : 0)
+                | (id != null ? FLAG_HAS_ID : 0)
+                | (task.isBodyLoaded() ? 0 : FLAG_BODY_STORED);
+        out.writeByte(flags);
+        out.writeLong(id != null ? id.getMostSignificantBits() : 0);
+        out.writeLong(id != null ? id.getLeastSignificantBits() : 0);
+        out.writeLong(task.getDate());
+        writeString(out, task.getTitle());
+        Integer category = task.getCategory() != null ? categoryIndex.get(task.getCategory()) : null;
+        writeVarInt(out, category != null ? category + 1 : 0); // 0 = no category
+        writeString(out, task.getNote());
+        writeVarInt(out, task.getPomodoroCount());
+        out.writeLong(task.getTotalTimeSpentMillis());
+
+        List<Subtask> subtasks = task.getSubtasks();
+        writeVarInt(out, subtasks.size());
+        for (Subtask subtask : subtasks) {
+            writeSubtask(out, subtask);
+        }
+        out.writeLong(task.getVersion());
+        writeVarInt(out, task.isSubtaskCountKnown() ? task.getSubtaskCount() + 1 : 0);
+    }
+
+    private static void writeSubtask(DataOutputStream out, Subtask subtask) throws IOException {
+        UUID uuid = subtask.getUuidId();
+        int flags = (subtask.isDone() ? SUBTASK_FLAG_DONE : 0);
+        if (uuid != null) {
+            flags |= SUBTASK_FLAG_UUID_ID;
+        } else if (subtask.getId() != null) {
+            flags |= SUBTASK_FLAG_STRING_ID;
+        }
+        out.writeByte(flags);
+        if (uuid != null) {
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else if (subtask.getId() != null) {
+            writeString(out, subtask.getId());
+        }
+        writeString(out, subtask.getTitle());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    // ---- Reading ----
+
+    /** @return the number of tasks passed to {@code sink}. */
+    static int read(File file, Consumer<Task> sink) throws IOException {
+        try (FileInputStream fis = new FileInputStream(file);
+             FileChannel channel = fis.getChannel()) {
+            long size = channel.size();
+            ByteBuffer buffer;
+            if (size >= MMAP_THRESHOLD_BYTES) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // keep reading until full
+                }
+                buffer.flip();
+            }
+            return read(buffer, sink);
+        }
+    }
+
+    static int read(ByteBuffer buffer, Consumer<Task> sink) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a task snapshot (bad magic)");
+            }
+            int version = buffer.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported task snapshot version " + version);
+            }
+            int count = buffer.getInt();
+            int stringCount = readVarInt(buffer);
+            String[] strings = new String[stringCount];
+            for (int i = 0; i < stringCount; i++) {
+                strings[i] = readString(buffer);
+            }
+
+            for (int i = 0; i < count; i++) {
+                int length = readVarInt(buffer);
+                int end = buffer.position() + length;
+                sink.accept(readTask(buffer, strings, version));
+                buffer.position(end); // Skips any fields a newer version appended
+            }
+            return count;
+        } catch (RuntimeException e) {
+            // BufferUnderflowException, IllegalArgumentException from position(), ...
+            throw new IOException("Corrupt task snapshot", e);
+        }
+    }
+
+    private static Task readTask(ByteBuffer in, String[] strings, int formatVersion) {
+        Task.Builder task = Task.Builder.blank();
+        int flags = in.get();
+        long msb = in.getLong();
+        long lsb = in.getLong();
+        if ((flags & FLAG_HAS_ID) != 0) {
+            task.setId(new UUID(msb, lsb));
+        }
+        task.setDone((flags & FLAG_DONE) != 0);
+        task.setFlagged((flags & FLAG_FLAGGED) != 0);
+        task.setDate(in.getLong());
+        task.setTitle(readString(in));
+        int category = readVarInt(in);
+        task.setCategory(category == 0 ? null : strings[category - 1]);
+        task.setNote(readString(in));
+        task.setPomodoroCount(readVarInt(in));
+        task.setTotalTimeSpentMillis(in.getLong());
+
+        int subtaskCount = readVarInt(in);
+        if (subtaskCount > 0) { // Otherwise the task keeps the shared empty list
+            List<Subtask> subtasks = new ArrayList<>(subtaskCount);
+            for (int i = 0; i < subtaskCount; i++) {
+                subtasks.add(readSubtask(in));
+            }
+            task.setSubtasks(subtasks);
+        }
+        if ((flags & FLAG_BODY_STORED) != 0) {
+            task.setBodyStored();
+        }
+        task.setVersion(formatVersion >= 3 ? in.getLong() : 0);
+        task.setSubtaskCount(formatVersion >= 4 ? readVarInt(in) - 1 : -1);
+        return task.build();
+    }
+
+    private static Subtask readSubtask(ByteBuffer in) {
+        int flags = in.get();
+        boolean done = (flags & SUBTASK_FLAG_DONE) != 0;
+        if ((flags & SUBTASK_FLAG_UUID_ID) != 0) {
+            long msb = in.getLong();
+            long lsb = in.getLong();
+            return Subtask.withUuidId(msb, lsb, readString(in), done); // No String id is ever built
+        }
+        String id = (flags & SUBTASK_FLAG_STRING_ID) != 0 ? readString(in) : null;
+        return new Subtask(id, readString(in), done);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int lengthPlusOne = readVarInt(in);
+        if (lengthPlusOne == 0) {
+            return null;
+        }
+        int length = lengthPlusOne - 1;
+        if (in.hasArray()) {
+            String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        while (shift < 35) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
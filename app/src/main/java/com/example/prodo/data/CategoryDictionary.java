@@ -0,0 +1,41 @@
+package com.example.prodo.data;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One shared String per category name. Every decoded task used to hold its own copy of a name
+ * that a handful of categories repeat across the whole list; {@link Task} now keeps the instance
+ * from here instead. The case-folded index keys are shared the same way.
+ *
+ * Never shrinks: a user has a few dozen category names at most, renamed ones included.
+ */
+final class CategoryDictionary {
+    private static final ConcurrentHashMap<String, String> sNames = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, String> sFoldedKeys = new ConcurrentHashMap<>();
+
+    private CategoryDictionary() {
+    }
+
+    /** The shared instance equal to {@code name}, or null. */
+    static String intern(String name) {
+        if (name == null) {
+            return null;
+        }
+        String shared = sNames.putIfAbsent(name, name);
+        return shared != null ? shared : name;
+    }
+
+    /** {@code name} case-folded for the category index, shared like {@link #intern}. */
+    static String foldedKey(String name) {
+        if (name == null) {
+            return null;
+        }
+        String key = sFoldedKeys.get(name);
+        if (key == null) {
+            key = intern(name.toLowerCase(Locale.ROOT));
+            sFoldedKeys.putIfAbsent(intern(name), key);
+        }
+        return key;
+    }
+}
@@ -27,7 +27,7 @@ public class CategoryManager {
             throw new IllegalArgumentException("Context cannot be null for CategoryManager");
         }
         sharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        gson = new Gson();
+        gson = ProdoGson.get();
     }
 
     /**
@@ -0,0 +1,227 @@
+package com.example.prodo.data;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Focus totals per day, ISO week, month and year, kept up to date one work session at a time so
+ * the stats screen reads a period's buckets instead of going over its sessions.
+ *
+ * Not stored: TaskStore rebuilds them from the session log when it loads, which is a single pass
+ * over the log. A session counts under its task's current category. TaskStore reports category
+ * changes, and tasks leaving or rejoining the task list, through {@link #setCategory}, which moves
+ * the task's totals in every bucket it has any in. {@link #check} compares the totals with a
+ * rebuild from the log.
+ *
+ * Buckets are in the time zone they were built in; TaskStore rebuilds them when it changes.
+ * Thread-safe.
+ */
+final class FocusRollups {
+    private static final class Bucket {
+        final long key;
+        int sessions;
+        long focusMillis;
+        final LinkedHashMap<UUID, long[]> byTask = new LinkedHashMap<>(); // {sessions, focusMillis}
+        final HashMap<String, long[]> byCategory = new HashMap<>();
+
+        Bucket(long key) {
+            this.key = key;
+        }
+    }
+
+    private final EnumMap<FocusTotals.Period, TreeMap<Long, Bucket>> mBuckets = new EnumMap<>(FocusTotals.Period.class);
+    // Guarded by this. Where each task has totals, so a category change touches only those buckets.
+    private final HashMap<UUID, List<Bucket>> mBucketsByTask = new HashMap<>();
+    private final HashMap<UUID, String> mCategoryByTask = new HashMap<>();
+    private LocalDays mDays = LocalDays.current();
+
+    FocusRollups() {
+        for (FocusTotals.Period period : FocusTotals.Period.values()) {
+            mBuckets.put(period, new TreeMap<>());
+        }
+    }
+
+    /** Replaces the totals with ones built from {@code sessions}, with days in {@code days}' zone. */
+    synchronized void rebuild(List<PomodoroSession> sessions, Function<UUID, String> categoryOf, LocalDays days) {
+        for (TreeMap<Long, Bucket> buckets : mBuckets.values()) {
+            buckets.clear();
+        }
+        mBucketsByTask.clear();
+        mCategoryByTask.clear();
+        mDays = days;
+        for (PomodoroSession session : sessions) {
+            UUID taskId = session.getTaskId();
+            add(session, taskId != null ? categoryOf.apply(taskId) : null);
+        }
+    }
+
+    synchronized LocalDays getDays() {
+        return mDays;
+    }
+
+    /** Counts a finished session; {@code category} is its task's current one. Breaks don't count. */
+    synchronized void add(PomodoroSession session, String category) {
+        if (session.getMode() != PomodoroSession.Mode.WORK) {
+            return;
+        }
+        UUID taskId = session.getTaskId();
+        if (taskId != null) {
+            String known = mCategoryByTask.get(taskId);
+            if (mCategoryByTask.containsKey(taskId) && !Objects.equals(known, category)) {
+                setCategory(taskId, category); // Went unreported; keep one category per task
+            }
+            mCategoryByTask.put(taskId, category);
+        }
+        long day = mDays.epochDay(session.getEndMillis());
+        long duration = session.getDurationMillis();
+        for (FocusTotals.Period period : FocusTotals.Period.values()) {
+            long key = key(period, day);
+            Bucket bucket = mBuckets.get(period).computeIfAbsent(key, Bucket::new);
+            bucket.sessions++;
+            bucket.focusMillis += duration;
+            addTo(bucket.byCategory, taskId != null ? category : null, 1, duration);
+            if (taskId != null) {
+                if (!bucket.byTask.containsKey(taskId)) {
+                    mBucketsByTask.computeIfAbsent(taskId, id -> new ArrayList<>()).add(bucket);
+                }
+                addTo(bucket.byTask, taskId, 1, duration);
+            }
+        }
+    }
+
+    /** True if {@code taskId} has any totals, so its category matters. */
+    synchronized boolean hasTask(UUID taskId) {
+        return mBucketsByTask.containsKey(taskId);
+    }
+
+    /** Moves {@code taskId}'s totals to {@code category} (null once it left the task list). */
+    synchronized void setCategory(UUID taskId, String category) {
+        List<Bucket> buckets = mBucketsByTask.get(taskId);
+        if (buckets == null || Objects.equals(mCategoryByTask.get(taskId), category)) {
+            return;
+        }
+        String previous = mCategoryByTask.put(taskId, category);
+        for (Bucket bucket : buckets) {
+            long[] task = bucket.byTask.get(taskId);
+            addTo(bucket.byCategory, previous, -task[0], -task[1]);
+            addTo(bucket.byCategory, category, task[0], task[1]);
+        }
+    }
+
+    // ---- Reads ----
+
+    /** The bucket for {@code key}, empty if nothing was logged in it. */
+    synchronized FocusTotals get(FocusTotals.Period period, long key) {
+        Bucket bucket = mBuckets.get(period).get(key);
+        return bucket != null ? totals(period, bucket) : new FocusTotals(period, key, 0, 0, new LinkedHashMap<>(), new HashMap<>());
+    }
+
+    /** The non-empty buckets with keys from {@code fromKey} to {@code toKey}, inclusive, in order. */
+    synchronized List<FocusTotals> range(FocusTotals.Period period, long fromKey, long toKey) {
+        List<FocusTotals> totals = new ArrayList<>();
+        if (fromKey > toKey) {
+            return totals;
+        }
+        for (Bucket bucket : mBuckets.get(period).subMap(fromKey, true, toKey, true).values()) {
+            totals.add(totals(period, bucket));
+        }
+        return totals;
+    }
+
+    private static FocusTotals totals(FocusTotals.Period period, Bucket bucket) {
+        Map<UUID, FocusTotals.Sum> byTask = new LinkedHashMap<>();
+        for (Map.Entry<UUID, long[]> entry : bucket.byTask.entrySet()) {
+            byTask.put(entry.getKey(), new FocusTotals.Sum((int) entry.getValue()[0], entry.getValue()[1]));
+        }
+        Map<String, FocusTotals.Sum> byCategory = new HashMap<>();
+        for (Map.Entry<String, long[]> entry : bucket.byCategory.entrySet()) {
+            byCategory.put(entry.getKey(), new FocusTotals.Sum((int) entry.getValue()[0], entry.getValue()[1]));
+        }
+        return new FocusTotals(period, bucket.key, bucket.sessions, bucket.focusMillis, byTask, byCategory);
+    }
+
+    // ---- Consistency ----
+
+    /**
+     * Differences between these totals and a rebuild from {@code sessions}, one line each; empty if
+     * they agree.
+     */
+    List<String> check(List<PomodoroSession> sessions, Function<UUID, String> categoryOf) {
+        FocusRollups fresh = new FocusRollups();
+        fresh.rebuild(sessions, categoryOf, getDays());
+        List<String> differences = new ArrayList<>();
+        synchronized (this) {
+            for (FocusTotals.Period period : FocusTotals.Period.values()) {
+                TreeMap<Long, Bucket> ours = mBuckets.get(period);
+                TreeMap<Long, Bucket> theirs = fresh.mBuckets.get(period);
+                Set<Long> keys = new HashSet<>(ours.keySet());
+                keys.addAll(theirs.keySet());
+                for (long key : keys) {
+                    compare(period + " " + key, ours.get(key), theirs.get(key), differences);
+                }
+            }
+        }
+        return differences;
+    }
+
+    private static void compare(String where, Bucket ours, Bucket theirs, List<String> differences) {
+        if (ours == null || theirs == null) {
+            differences.add(where + ": " + (ours == null ? "missing" : "not in the log"));
+            return;
+        }
+        if (ours.sessions != theirs.sessions || ours.focusMillis != theirs.focusMillis) {
+            differences.add(where + ": " + ours.sessions + " sessions, " + ours.focusMillis + " ms; log has "
+                    + theirs.sessions + " sessions, " + theirs.focusMillis + " ms");
+        }
+        compareSums(where + " task", ours.byTask, theirs.byTask, differences);
+        compareSums(where + " category", ours.byCategory, theirs.byCategory, differences);
+    }
+
+    private static <K> void compareSums(String where, Map<K, long[]> ours, Map<K, long[]> theirs, List<String> differences) {
+        Set<K> keys = new HashSet<>(ours.keySet());
+        keys.addAll(theirs.keySet());
+        for (K key : keys) {
+            long[] a = ours.getOrDefault(key, new long[2]);
+            long[] b = theirs.getOrDefault(key, new long[2]);
+            if (a[0] != b[0] || a[1] != b[1]) {
+                differences.add(where + " " + key + ": " + a[0] + " sessions, " + a[1] + " ms; log has "
+                        + b[0] + " sessions, " + b[1] + " ms");
+            }
+        }
+    }
+
+    // ---- Keys ----
+
+    static long key(FocusTotals.Period period, long epochDay) {
+        switch (period) {
+            case WEEK:
+                return LocalDays.weekKey(epochDay);
+            case MONTH:
+                return LocalDays.monthKey(epochDay);
+            case YEAR:
+                return LocalDays.year(epochDay);
+            default:
+                return epochDay;
+        }
+    }
+
+    // Adds to the sum under key, dropping it once it is back to nothing.
+    private static <K> void addTo(Map<K, long[]> sums, K key, long sessions, long millis) {
+        long[] sum = sums.computeIfAbsent(key, k -> new long[2]);
+        sum[0] += sessions;
+        sum[1] += millis;
+        if (sum[0] == 0 && sum[1] == 0) {
+            sums.remove(key);
+        }
+    }
+}
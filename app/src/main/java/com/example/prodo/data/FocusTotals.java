@@ -0,0 +1,81 @@
+package com.example.prodo.data;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Focus time in one day, ISO week, month or year: the work sessions that ended in it, the time the
+ * timer ran for them, and the same per task and per task category. Read from TaskStore, which
+ * keeps these totals up to date as sessions finish. Immutable.
+ */
+public final class FocusTotals {
+    public enum Period { DAY, WEEK, MONTH, YEAR }
+
+    /** Sessions and focus time for one task or category. */
+    public static final class Sum {
+        public final int sessions;
+        public final long focusMillis;
+
+        Sum(int sessions, long focusMillis) {
+            this.sessions = sessions;
+            this.focusMillis = focusMillis;
+        }
+    }
+
+    private final Period mPeriod;
+    private final long mKey;
+    private final int mSessions;
+    private final long mFocusMillis;
+    private final Map<UUID, Sum> mByTask;
+    private final Map<String, Sum> mByCategory;
+
+    FocusTotals(Period period, long key, int sessions, long focusMillis, Map<UUID, Sum> byTask, Map<String, Sum> byCategory) {
+        mPeriod = period;
+        mKey = key;
+        mSessions = sessions;
+        mFocusMillis = focusMillis;
+        mByTask = Collections.unmodifiableMap(byTask);
+        mByCategory = Collections.unmodifiableMap(byCategory);
+    }
+
+    /**
+     * The key of the {@code period} containing {@code millis} in the device's time zone: the epoch
+     * day, the number of Monday-started weeks since the epoch, year * 12 + month (0-11), or the year.
+     */
+    public static long keyOf(Period period, long millis) {
+        return FocusRollups.key(period, LocalDays.current().epochDay(millis));
+    }
+
+    public Period getPeriod() {
+        return mPeriod;
+    }
+
+    /** See {@link #keyOf}. */
+    public long getKey() {
+        return mKey;
+    }
+
+    /** Work sessions that ended in the period. */
+    public int getSessions() {
+        return mSessions;
+    }
+
+    /** Time the timer ran for those sessions, pauses left out. */
+    public long getFocusMillis() {
+        return mFocusMillis;
+    }
+
+    /** Per task, in the order they were first worked on in the period. Sessions without a task aren't included. */
+    public Map<UUID, Sum> getByTask() {
+        return mByTask;
+    }
+
+    /**
+     * Per category of the tasks worked on, under their current category. Tasks no longer in the
+     * task list (deleted or archived) and sessions without a task are under null.
+     */
+    public Map<String, Sum> getByCategory() {
+        return mByCategory;
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.prodo.data;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.time.temporal.WeekFields;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local calendar days in one time zone as epoch days (days since 1970-01-01), for bucketing and
+ * day ranges without a Calendar or a formatted date key per call.
+ *
+ * The zone's offset transitions from 1900 to 2100 are read once into arrays, so converting between
+ * millis and days is a binary search with no allocation; outside those years it asks the zone
+ * rules. Days start at their first instant: local midnight, or the end of a DST gap that skips it.
+ * Week, month and year keys and boundaries are plain arithmetic on epoch days. Immutable.
+ */
+public final class LocalDays {
+    public static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+    private static final long CACHED_FROM = -2208988800000L; // 1900-01-01T00:00Z
+    private static final long CACHED_TO = 4102444800000L; // 2100-01-01T00:00Z
+    private static final long RECHECK_NANOS = 1_000_000_000L; // How stale current() may be
+
+    private static final ConcurrentHashMap<String, LocalDays> sByZoneId = new ConcurrentHashMap<>();
+    private static volatile LocalDays sCurrent;
+    private static volatile long sCheckedAt; // System.nanoTime() when sCurrent was last checked
+
+    private final ZoneId mZone;
+    private final ZoneRules mRules;
+    // Offset i applies from mTransitions[i] (inclusive) to mTransitions[i + 1]; mTransitions[0] is
+    // CACHED_FROM. mLocalEnds[i] is the local time, in millis, at which offset i stops applying.
+    private final long[] mTransitions;
+    private final int[] mOffsets;
+    private final long[] mLocalEnds;
+
+    private LocalDays(ZoneId zone) {
+        mZone = zone;
+        mRules = zone.getRules();
+        long[] transitions = new long[16];
+        int[] offsets = new int[16];
+        int count = 0;
+        Instant at = Instant.ofEpochMilli(CACHED_FROM);
+        transitions[count] = CACHED_FROM;
+        offsets[count++] = mRules.getOffset(at).getTotalSeconds() * 1000;
+        ZoneOffsetTransition next;
+        while ((next = mRules.nextTransition(at)) != null && next.toEpochSecond() * 1000 < CACHED_TO) {
+            if (count == transitions.length) {
+                transitions = Arrays.copyOf(transitions, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            transitions[count] = next.toEpochSecond() * 1000;
+            offsets[count++] = next.getOffsetAfter().getTotalSeconds() * 1000;
+            at = next.getInstant();
+        }
+        mTransitions = Arrays.copyOf(transitions, count);
+        mOffsets = Arrays.copyOf(offsets, count);
+        mLocalEnds = new long[count];
+        for (int i = 0; i < count; i++) {
+            mLocalEnds[i] = (i + 1 < count ? mTransitions[i + 1] : CACHED_TO) + mOffsets[i];
+        }
+    }
+
+    /** Days in {@code zone}; built once per zone and shared. */
+    public static LocalDays of(ZoneId zone) {
+        LocalDays days = sByZoneId.get(zone.getId());
+        if (days == null) {
+            days = new LocalDays(zone);
+            LocalDays raced = sByZoneId.putIfAbsent(zone.getId(), days);
+            if (raced != null) {
+                days = raced;
+            }
+        }
+        return days;
+    }
+
+    public static LocalDays of(TimeZone zone) {
+        LocalDays current = sCurrent;
+        return current != null && current.mZone.getId().equals(zone.getID()) ? current : of(zone.toZoneId());
+    }
+
+    /**
+     * Days in the device's current time zone. Cached: the default zone is looked at again at most
+     * once a second, since TimeZone.getDefault() returns a fresh clone, and right away after
+     * {@link #timeZoneChanged}. Cheap enough to call per task.
+     */
+    public static LocalDays current() {
+        LocalDays current = sCurrent;
+        long now = System.nanoTime();
+        if (current != null && now - sCheckedAt < RECHECK_NANOS) {
+            return current;
+        }
+        TimeZone zone = TimeZone.getDefault();
+        if (current == null || !current.mZone.getId().equals(zone.getID())) {
+            current = of(zone.toZoneId());
+            sCurrent = current;
+        }
+        sCheckedAt = now;
+        return current;
+    }
+
+    /** The device's time zone changed; the next {@link #current} reads it again. */
+    public static void timeZoneChanged() {
+        sCurrent = null;
+    }
+
+    public ZoneId getZone() {
+        return mZone;
+    }
+
+    /** Offset from UTC at {@code millis}, in millis. */
+    public int offsetAt(long millis) {
+        if (millis < CACHED_FROM || millis >= CACHED_TO) {
+            return mRules.getOffset(Instant.ofEpochMilli(millis)).getTotalSeconds() * 1000;
+        }
+        int i = Arrays.binarySearch(mTransitions, millis);
+        return mOffsets[i >= 0 ? i : -i - 2];
+    }
+
+    /** The local day {@code millis} falls on. */
+    public long epochDay(long millis) {
+        return Math.floorDiv(millis + offsetAt(millis), MILLIS_PER_DAY);
+    }
+
+    /** The first instant of {@code epochDay}. */
+    public long startOfDay(long epochDay) {
+        long local = epochDay * MILLIS_PER_DAY;
+        if (local < CACHED_FROM + 2 * MILLIS_PER_DAY || local >= CACHED_TO - 2 * MILLIS_PER_DAY) {
+            return LocalDate.ofEpochDay(epochDay).atStartOfDay(mZone).toInstant().toEpochMilli();
+        }
+        // The first offset still in force at local midnight. Offsets are in instant order and local
+        // time only ever jumps by hours, so their local end times are in order too.
+        int i = Arrays.binarySearch(mLocalEnds, local);
+        i = i >= 0 ? i + 1 : -i - 1;
+        long start = local - mOffsets[i];
+        return Math.max(start, mTransitions[i]); // Midnight skipped by a gap: the day starts when it ends
+    }
+
+    /** The first instant of the day after {@code millis}'s, i.e. the end of its day (exclusive). */
+    public long endOfDay(long millis) {
+        return startOfDay(epochDay(millis) + 1);
+    }
+
+    // ---- Calendar arithmetic on epoch days; the same in every zone ----
+
+    /** ISO day of the week, 1 (Monday) to 7 (Sunday). Day 0 was a Thursday. */
+    public static int dayOfWeek(long epochDay) {
+        return Math.floorMod(epochDay + 3, 7) + 1;
+    }
+
+    /** The first day of the week containing {@code epochDay}, for weeks starting on {@code firstDayOfWeek}. */
+    public static long startOfWeek(long epochDay, DayOfWeek firstDayOfWeek) {
+        return epochDay - Math.floorMod(dayOfWeek(epochDay) - firstDayOfWeek.getValue(), 7);
+    }
+
+    /** The first day of the week in {@code locale}, e.g. Sunday in the US. */
+    public static DayOfWeek firstDayOfWeek(Locale locale) {
+        return WeekFields.of(locale).getFirstDayOfWeek();
+    }
+
+    /** Monday-started weeks since the epoch. */
+    public static long weekKey(long epochDay) {
+        return Math.floorDiv(epochDay + 3, 7);
+    }
+
+    /** year * 12 + month (0-11) in the proleptic Gregorian calendar. */
+    public static long monthKey(long epochDay) {
+        // Days-to-civil from Howard Hinnant's date algorithms
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153; // 0 = March
+        long month = shiftedMonth < 10 ? shiftedMonth + 2 : shiftedMonth - 10; // 0 = January
+        long year = yearOfEra + era * 400 + (month <= 1 ? 1 : 0);
+        return year * 12 + month;
+    }
+
+    public static long year(long epochDay) {
+        return Math.floorDiv(monthKey(epochDay), 12);
+    }
+
+    /** The first day of the month with key {@code monthKey}; see {@link #monthKey}. */
+    public static long firstDayOfMonth(long monthKey) {
+        // Days-from-civil, the inverse of monthKey
+        long year = Math.floorDiv(monthKey, 12);
+        long month = Math.floorMod(monthKey, 12); // 0 = January
+        year -= month <= 1 ? 1 : 0;
+        long era = Math.floorDiv(year, 400);
+        long yearOfEra = year - era * 400;
+        long shiftedMonth = month >= 2 ? month - 2 : month + 10; // 0 = March
+        long dayOfYear = (153 * shiftedMonth + 2) / 5;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    public static long firstDayOfYear(long year) {
+        return firstDayOfMonth(year * 12);
+    }
+
+    @Override
+    public String toString() {
+        return "LocalDays{" + mZone + ", " + mTransitions.length + " offsets cached}";
+    }
+}
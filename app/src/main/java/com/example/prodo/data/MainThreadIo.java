@@ -0,0 +1,34 @@
+package com.example.prodo.data;
+
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts file I/O that runs on the main thread, for {@link PersistenceStats#mainThreadIoCount}.
+ * Each file entry point of the data layer (journal, snapshots, shards, bodies, archive, session
+ * log) calls {@link #check} right before it touches the disk, so the count covers reads as well
+ * as writes, whichever thread they come from.
+ */
+final class MainThreadIo {
+    private static final String TAG = "MainThreadIo";
+
+    private static final AtomicLong sCount = new AtomicLong();
+
+    private MainThreadIo() {
+    }
+
+    /** Counts, and logs with a stack trace, a call on the main thread; {@code what} names the I/O. */
+    static void check(String what) {
+        Looper main = Looper.getMainLooper(); // Null in local unit tests
+        if (main != null && main.isCurrentThread()) {
+            sCount.incrementAndGet();
+            Log.w(TAG, what + " on the main thread", new Throwable());
+        }
+    }
+
+    static long count() {
+        return sCount.get();
+    }
+}
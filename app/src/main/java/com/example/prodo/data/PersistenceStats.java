@@ -0,0 +1,32 @@
+package com.example.prodo.data;
+
+/**
+ * Point-in-time view of the task writer's counters, see {@link TaskStore#getPersistenceStats()}.
+ */
+public final class PersistenceStats {
+    public final long mutations;          // mutations handed to the writer
+    public final long writes;             // journal writes actually performed
+    public final int pending;             // mutations waiting for the next write
+    public final long lastLatencyMillis;  // first pending mutation -> durable on disk
+    public final long maxLatencyMillis;
+    public final long totalIoMillis;      // time spent inside file I/O on the writer thread
+    public final long mainThreadIoCount;  // file reads and writes that ran on the main thread; expected to be 0
+
+    PersistenceStats(long mutations, long writes, int pending, long lastLatencyMillis,
+                     long maxLatencyMillis, long totalIoMillis, long mainThreadIoCount) {
+        this.mutations = mutations;
+        this.writes = writes;
+        this.pending = pending;
+        this.lastLatencyMillis = lastLatencyMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+        this.totalIoMillis = totalIoMillis;
+        this.mainThreadIoCount = mainThreadIoCount;
+    }
+
+    @Override
+    public String toString() {
+        return "PersistenceStats{mutations=" + mutations + ", writes=" + writes + ", pending=" + pending +
+                ", lastLatencyMs=" + lastLatencyMillis + ", maxLatencyMs=" + maxLatencyMillis +
+                ", totalIoMs=" + totalIoMillis + ", mainThreadIo=" + mainThreadIoCount + "}";
+    }
+}
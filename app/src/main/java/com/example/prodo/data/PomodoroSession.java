@@ -0,0 +1,71 @@
+package com.example.prodo.data;
+
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * One finished Pomodoro timer run, as kept in the session log: which task it was for, when it
+ * started and ended, the timer mode, and how long the timer actually ran (the end minus the start,
+ * less any time spent paused). Immutable.
+ */
+public final class PomodoroSession {
+    public enum Mode { WORK, SHORT_BREAK, LONG_BREAK }
+
+    private final UUID mTaskId; // null if no task was selected
+    private final long mStartMillis;
+    private final long mEndMillis;
+    private final Mode mMode;
+    private final long mDurationMillis;
+
+    public PomodoroSession(UUID taskId, long startMillis, long endMillis, Mode mode, long durationMillis) {
+        mTaskId = taskId;
+        mStartMillis = startMillis;
+        mEndMillis = endMillis;
+        mMode = mode;
+        mDurationMillis = durationMillis;
+    }
+
+    public UUID getTaskId() {
+        return mTaskId;
+    }
+
+    public long getStartMillis() {
+        return mStartMillis;
+    }
+
+    public long getEndMillis() {
+        return mEndMillis;
+    }
+
+    public Mode getMode() {
+        return mMode;
+    }
+
+    /** Time the timer ran, without pauses. */
+    public long getDurationMillis() {
+        return mDurationMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PomodoroSession session = (PomodoroSession) o;
+        return mStartMillis == session.mStartMillis &&
+                mEndMillis == session.mEndMillis &&
+                mDurationMillis == session.mDurationMillis &&
+                mMode == session.mMode &&
+                Objects.equals(mTaskId, session.mTaskId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mTaskId, mStartMillis, mEndMillis, mMode, mDurationMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "PomodoroSession{" + mMode + ", task=" + mTaskId + ", " + mStartMillis + ".." + mEndMillis +
+                ", ran " + mDurationMillis + " ms}";
+    }
+}
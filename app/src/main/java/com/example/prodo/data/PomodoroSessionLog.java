@@ -0,0 +1,332 @@
+package com.example.prodo.data;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Every finished Pomodoro session, in pomodoro_sessions.dat.
+ *
+ * The file is an 8-byte header (magic, format version) followed by fixed-width 40-byte records,
+ * appended as sessions finish: task id as two longs (both 0 for no task), start and end epoch
+ * millis, the time the timer actually ran as an int of millis, the mode's ordinal, and three
+ * reserved bytes. A torn last record (app killed mid-append) is cut off when the file is opened.
+ *
+ * The whole log is kept in memory sorted by end time, which is also the order sessions are
+ * appended in unless the clock was set back. A period's sessions are found by binary search on the
+ * end times, so stats cost time in proportion to the sessions in the period, not to its days times
+ * the tasks. A session counts for the day it ended, as the old per-day counters did.
+ *
+ * Disk I/O happens on TaskStore's writer thread only; {@link #add} and the queries may be called
+ * from any thread.
+ */
+class PomodoroSessionLog {
+    private static final String TAG = "PomodoroSessionLog";
+    static final String FILENAME = "pomodoro_sessions.dat";
+
+    private static final int MAGIC = 0x50534c47; // "PSLG"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    static final int RECORD_BYTES = 40;
+
+    // Before the log, the Pomodoro screen counted finished work sessions in SharedPreferences:
+    // pomos_<yyyy-MM-dd> per day and pomos_<yyyy-MM-dd>_<legacyTaskKey(title)> per task and day.
+    static final String LEGACY_KEY_PREFIX = "pomos_";
+    private static final String LEGACY_DATE_PATTERN = "yyyy-MM-dd";
+    private static final long LEGACY_SESSION_MILLIS = 25L * 60 * 1000;
+
+    private final File mFile;
+
+    // Guarded by this. Sorted by end time; equal end times keep the order they were added in.
+    private PomodoroSession[] mSessions = new PomodoroSession[64];
+    private long[] mEnds = new long[64];
+    private int mSize;
+    private final List<PomodoroSession> mPending = new ArrayList<>(); // Added but not on disk yet
+    private long mLength; // Of the intact part of the file
+
+    PomodoroSessionLog(File file) {
+        mFile = file;
+    }
+
+    /** False until the first session has been written, so also if migrating the old counters failed. */
+    boolean exists() {
+        return mFile.length() >= HEADER_BYTES;
+    }
+
+    /** Reads the log into memory, keeping sessions added before it was opened. Writer thread only. */
+    synchronized void open() {
+        MainThreadIo.check("Session log open");
+        List<PomodoroSession> pending = new ArrayList<>(mPending);
+        mSize = 0;
+        long fileLength = mFile.length();
+        long offset = 0;
+        boolean torn = false;
+        if (fileLength > 0) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile), 64 * 1024))) {
+                if (fileLength < HEADER_BYTES || in.readInt() != MAGIC || in.readInt() > VERSION) {
+                    throw new IOException("Not a session log, or from a newer version");
+                }
+                offset = HEADER_BYTES;
+                byte[] record = new byte[RECORD_BYTES];
+                while (offset + RECORD_BYTES <= fileLength) {
+                    in.readFully(record);
+                    PomodoroSession session = decode(ByteBuffer.wrap(record));
+                    if (session != null) {
+                        insert(session);
+                    }
+                    offset += RECORD_BYTES;
+                }
+                torn = offset < fileLength;
+            } catch (EOFException e) {
+                torn = true;
+            } catch (IOException e) {
+                Log.e(TAG, "open: Could not read " + mFile.getName() + ". Keeping the " + mSize + " sessions read so far.", e);
+                if (offset == 0) {
+                    moveAside(); // Not a log we can append to; start a new one
+                } else {
+                    offset = fileLength; // Leave the rest on disk for the next start
+                }
+            }
+        }
+        mLength = offset;
+        if (torn) {
+            Log.w(TAG, "open: Torn record after offset " + offset + ". Truncating " + mFile.getName() + ".");
+            truncate(offset);
+        }
+        for (PomodoroSession session : pending) {
+            insert(session);
+        }
+        Log.d(TAG, "open: Read " + (mSize - pending.size()) + " Pomodoro sessions (" + mLength + " bytes).");
+    }
+
+    /** Logs {@code session}. It is counted right away and written by the next {@link #writePending}. */
+    synchronized void add(PomodoroSession session) {
+        insert(session);
+        mPending.add(session);
+    }
+
+    /**
+     * Appends every pending session with a single write() and fsync. Writer thread only. On
+     * failure the sessions stay pending (and counted) for the next call.
+     */
+    void writePending() throws IOException {
+        List<PomodoroSession> batch;
+        synchronized (this) {
+            if (mPending.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(mPending);
+        }
+        MainThreadIo.check("Session log write");
+        boolean newFile = mLength == 0;
+        ByteBuffer buffer = ByteBuffer.allocate((newFile ? HEADER_BYTES : 0) + batch.size() * RECORD_BYTES);
+        if (newFile) {
+            buffer.putInt(MAGIC).putInt(VERSION);
+        }
+        for (PomodoroSession session : batch) {
+            encode(session, buffer);
+        }
+        try (FileOutputStream fos = new FileOutputStream(mFile, !newFile)) {
+            fos.write(buffer.array());
+            fos.getFD().sync();
+        } catch (IOException e) {
+            truncate(mLength); // Later appends must not land after a partial record
+            throw e;
+        }
+        synchronized (this) {
+            mLength += buffer.capacity();
+            mPending.subList(0, batch.size()).clear(); // Sessions are only ever added at the end
+        }
+    }
+
+    /** Sessions that ended at or after {@code fromMillis} and before {@code toMillis}, oldest first. */
+    synchronized List<PomodoroSession> between(long fromMillis, long toMillis) {
+        int from = firstEndingAtOrAfter(fromMillis);
+        int to = firstEndingAtOrAfter(toMillis);
+        List<PomodoroSession> sessions = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            sessions.add(mSessions[i]);
+        }
+        return sessions;
+    }
+
+    synchronized int size() {
+        return mSize;
+    }
+
+    // ---- Sorted index ----
+
+    private int firstEndingAtOrAfter(long millis) {
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mEnds[mid] < millis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // After any session ending at the same time, so sessions with equal end times keep their order.
+    private void insert(PomodoroSession session) {
+        if (mSize == mSessions.length) {
+            mSessions = Arrays.copyOf(mSessions, mSize * 2);
+            mEnds = Arrays.copyOf(mEnds, mSize * 2);
+        }
+        long end = session.getEndMillis();
+        int index = mSize;
+        if (index > 0 && mEnds[index - 1] > end) { // Clock set back; rare
+            index = firstEndingAtOrAfter(end + 1);
+            System.arraycopy(mSessions, index, mSessions, index + 1, mSize - index);
+            System.arraycopy(mEnds, index, mEnds, index + 1, mSize - index);
+        }
+        mSessions[index] = session;
+        mEnds[index] = end;
+        mSize++;
+    }
+
+    // ---- Records ----
+
+    private static void encode(PomodoroSession session, ByteBuffer out) {
+        UUID taskId = session.getTaskId();
+        out.putLong(taskId != null ? taskId.getMostSignificantBits() : 0);
+        out.putLong(taskId != null ? taskId.getLeastSignificantBits() : 0);
+        out.putLong(session.getStartMillis());
+        out.putLong(session.getEndMillis());
+        out.putInt((int) Math.min(Integer.MAX_VALUE, Math.max(0, session.getDurationMillis())));
+        out.put((byte) session.getMode().ordinal());
+        out.put((byte) 0).put((byte) 0).put((byte) 0);
+    }
+
+    // Null for a record of a mode this version doesn't know.
+    private static PomodoroSession decode(ByteBuffer in) {
+        long most = in.getLong();
+        long least = in.getLong();
+        long start = in.getLong();
+        long end = in.getLong();
+        int duration = in.getInt();
+        int mode = in.get();
+        PomodoroSession.Mode[] modes = PomodoroSession.Mode.values();
+        if (mode < 0 || mode >= modes.length) {
+            return null;
+        }
+        UUID taskId = most == 0 && least == 0 ? null : new UUID(most, least);
+        return new PomodoroSession(taskId, start, end, modes[mode], duration);
+    }
+
+    private void truncate(long length) {
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            raf.setLength(length);
+        } catch (IOException e) {
+            Log.e(TAG, "truncate: Could not truncate " + mFile.getName() + " to " + length + " bytes.", e);
+        }
+    }
+
+    // An unreadable log is kept for inspection rather than overwritten.
+    private void moveAside() {
+        File aside = new File(mFile.getPath() + ".corrupt");
+        if (!mFile.renameTo(aside)) {
+            Log.e(TAG, "moveAside: Could not move " + mFile.getName() + " aside.");
+        }
+    }
+
+    // ---- Migration from the old SharedPreferences counters ----
+
+    /** How the Pomodoro screen turned a task title into the last part of a per-task key. */
+    static String legacyTaskKey(String title) {
+        if (title == null || title.trim().isEmpty()) {
+            return "untitled";
+        }
+        return title.trim().toLowerCase(Locale.getDefault()).replaceAll("[^a-z0-9_.-]+", "_");
+    }
+
+    /**
+     * Work sessions standing in for the counts under the old pomos_ keys in {@code entries}. The
+     * counters kept only the day, so each session is placed at 12:00 that day and ran 25 minutes.
+     * Counts under a per-task key go to the task {@code taskForKey} finds for it; the rest of
+     * a day's total gets sessions with no task.
+     */
+    static List<PomodoroSession> legacySessions(Map<String, ?> entries, Function<String, UUID> taskForKey) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(LEGACY_DATE_PATTERN, Locale.getDefault());
+        dateFormat.setLenient(false);
+        int dateEnd = LEGACY_KEY_PREFIX.length() + LEGACY_DATE_PATTERN.length();
+        Map<String, Integer> totals = new HashMap<>();
+        Map<String, Map<UUID, Integer>> perTask = new HashMap<>();
+        for (Map.Entry<String, ?> entry : entries.entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(LEGACY_KEY_PREFIX) || key.length() < dateEnd || !(entry.getValue() instanceof Integer)) {
+                continue;
+            }
+            String date = key.substring(LEGACY_KEY_PREFIX.length(), dateEnd);
+            int count = (Integer) entry.getValue();
+            if (key.length() == dateEnd) {
+                totals.merge(date, count, Integer::sum);
+            } else if (key.charAt(dateEnd) == '_') {
+                UUID taskId = taskForKey.apply(key.substring(dateEnd + 1));
+                if (taskId != null) {
+                    perTask.computeIfAbsent(date, d -> new HashMap<>()).merge(taskId, count, Integer::sum);
+                }
+            }
+        }
+
+        List<PomodoroSession> sessions = new ArrayList<>();
+        Calendar day = Calendar.getInstance();
+        Set<String> dates = new TreeSet<>(totals.keySet());
+        dates.addAll(perTask.keySet());
+        for (String date : dates) {
+            Date parsed;
+            try {
+                parsed = dateFormat.parse(date);
+            } catch (ParseException e) {
+                Log.w(TAG, "legacySessions: Skipping counts for unreadable day '" + date + "'.");
+                continue;
+            }
+            day.setTime(parsed);
+            day.set(Calendar.HOUR_OF_DAY, 12);
+            long end = day.getTimeInMillis();
+            int withTask = 0;
+            Map<UUID, Integer> tasks = perTask.get(date);
+            if (tasks != null) {
+                for (Map.Entry<UUID, Integer> entry : tasks.entrySet()) {
+                    addLegacySessions(sessions, entry.getKey(), end, entry.getValue());
+                    withTask += Math.max(0, entry.getValue());
+                }
+            }
+            Integer total = totals.get(date);
+            addLegacySessions(sessions, null, end, total != null ? total - withTask : 0);
+        }
+        return sessions;
+    }
+
+    private static void addLegacySessions(List<PomodoroSession> sessions, UUID taskId, long end, int count) {
+        for (int i = 0; i < count; i++) {
+            sessions.add(new PomodoroSession(taskId, end - LEGACY_SESSION_MILLIS, end,
+                    PomodoroSession.Mode.WORK, LEGACY_SESSION_MILLIS));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.prodo.data;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+
+import java.util.UUID;
+
+/**
+ * The one Gson instance for the whole process.
+ *
+ * Gson caches its adapters per instance, so creating a new Gson per call site paid the adapter
+ * lookup and reflection cost over and over. Task, Subtask and UUID are bound by hand-written
+ * adapters here; anything else (e.g. the category list) still goes through Gson's defaults.
+ */
+public final class ProdoGson {
+    private static final Gson INSTANCE = create();
+
+    private ProdoGson() {
+    }
+
+    public static Gson get() {
+        return INSTANCE;
+    }
+
+    private static Gson create() {
+        TypeAdapter<UUID> uuidAdapter = new UuidTypeAdapter().nullSafe();
+        TypeAdapter<Subtask> subtaskAdapter = new SubtaskTypeAdapter();
+        return new GsonBuilder()
+                .registerTypeAdapter(UUID.class, uuidAdapter)
+                .registerTypeAdapter(Subtask.class, subtaskAdapter)
+                .registerTypeAdapter(Task.class, new TaskTypeAdapter(uuidAdapter, subtaskAdapter))
+                .create();
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.prodo.data;
+
+/** On-disk format of the full task snapshot. The journal is the same in all of them. */
+public enum SnapshotFormat {
+    /** tasks.json, the original format. Human-readable and the default. */
+    JSON("tasks.json"),
+    /** tasks.bin, see {@link BinaryTaskCodec}. Smaller and faster to load for large histories. */
+    BINARY("tasks.bin"),
+    /**
+     * tasks_shards/, one binary file per month of due date, see {@link TaskShards}. A snapshot only
+     * rewrites the months that changed, and the newest months load first.
+     */
+    SHARDED("tasks_shards");
+
+    final String fileName; // A directory for SHARDED
+
+    SnapshotFormat(String fileName) {
+        this.fileName = fileName;
+    }
+}
@@ -1,35 +1,80 @@
 package com.example.prodo.data;
 
+import java.util.Objects;
 import java.util.UUID;
 
-public class Subtask {
-    private String id;
-    private String title;
-    private boolean isDone;
+/**
+ * A checklist item of a {@link Task}. Immutable: {@link #withTitle} and {@link #withDone} return
+ * a changed copy with the same id, which {@link Task.Builder#setSubtask} puts in place of this one.
+ */
+public final class Subtask {
+    // The id is normally a UUID, kept as two longs rather than a 36-character String. An id that
+    // isn't a lowercase canonical UUID (older data) is kept as given in otherId.
+    private final long idMostSigBits;
+    private final long idLeastSigBits;
+    private final boolean hasUuidId;
+    private final String otherId;
+    private final String title;
+    private final boolean isDone;
     // Optional: Add parentTaskId if needed for denormalized data, but often not necessary
     // if subtasks are always nested within a Task object.
 
     // Default constructor for Gson
     public Subtask() {
-        this.id = UUID.randomUUID().toString();
-        this.isDone = false;
+        this(UUID.randomUUID(), null, false);
     }
 
     public Subtask(String title) {
-        this.id = UUID.randomUUID().toString();
-        this.title = title;
-        this.isDone = false;
+        this(UUID.randomUUID(), title, false);
     }
 
     public Subtask(String id, String title, boolean isDone) {
-        this.id = id;
+        UUID uuid = parseCanonicalUuid(id);
+        this.idMostSigBits = uuid != null ? uuid.getMostSignificantBits() : 0;
+        this.idLeastSigBits = uuid != null ? uuid.getLeastSignificantBits() : 0;
+        this.hasUuidId = uuid != null;
+        this.otherId = uuid != null ? null : id;
+        this.title = title;
+        this.isDone = isDone;
+    }
+
+    private Subtask(UUID id, String title, boolean isDone) {
+        this(id.getMostSignificantBits(), id.getLeastSignificantBits(), title, isDone);
+    }
+
+    private Subtask(long mostSigBits, long leastSigBits, String title, boolean isDone) {
+        this.idMostSigBits = mostSigBits;
+        this.idLeastSigBits = leastSigBits;
+        this.hasUuidId = true;
+        this.otherId = null;
+        this.title = title;
+        this.isDone = isDone;
+    }
+
+    // Copy with the same id.
+    private Subtask(Subtask source, String title, boolean isDone) {
+        this.idMostSigBits = source.idMostSigBits;
+        this.idLeastSigBits = source.idLeastSigBits;
+        this.hasUuidId = source.hasUuidId;
+        this.otherId = source.otherId;
         this.title = title;
         this.isDone = isDone;
     }
 
+    // Used by BinaryTaskCodec, which stores UUID ids as two longs too.
+    static Subtask withUuidId(long mostSigBits, long leastSigBits, String title, boolean isDone) {
+        return new Subtask(mostSigBits, leastSigBits, title, isDone); // No String id is ever built
+    }
+
     // Getters
+    /** The id as a String, built on each call when it is a UUID. Compare subtasks with equals(). */
     public String getId() {
-        return id;
+        return hasUuidId ? new UUID(idMostSigBits, idLeastSigBits).toString() : otherId;
+    }
+
+    /** The id if it is a UUID, otherwise null. */
+    UUID getUuidId() {
+        return hasUuidId ? new UUID(idMostSigBits, idLeastSigBits) : null;
     }
 
     public String getTitle() {
@@ -40,29 +85,50 @@ public class Subtask {
         return isDone;
     }
 
-    // Setters
-    public void setId(String id) { // Typically ID is set once, but setter can be useful
-        this.id = id;
+    // Copies; this subtask itself if nothing changes.
+    public Subtask withTitle(String title) {
+        return Objects.equals(this.title, title) ? this : new Subtask(this, title, isDone);
     }
 
-    public void setTitle(String title) {
-        this.title = title;
+    public Subtask withDone(boolean done) {
+        return isDone == done ? this : new Subtask(this, title, done);
     }
 
-    public void setDone(boolean done) {
-        isDone = done;
+    // Only ids that UUID.toString() gives back unchanged, so getId() returns exactly what was set.
+    static UUID parseCanonicalUuid(String value) {
+        if (value == null || value.length() != 36) {
+            return null;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = value.charAt(i);
+            boolean ok = (i == 8 || i == 13 || i == 18 || i == 23)
+                    ? c == '-'
+                    : (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f');
+            if (!ok) {
+                return null;
+            }
+        }
+        return UUID.fromString(value);
     }
 
+    // Equal by id: a renamed or ticked-off subtask is still the same subtask.
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Subtask subtask = (Subtask) o;
-        return id.equals(subtask.id);
+        if (hasUuidId != subtask.hasUuidId) return false;
+        if (hasUuidId) {
+            return idMostSigBits == subtask.idMostSigBits && idLeastSigBits == subtask.idLeastSigBits;
+        }
+        return otherId != null ? otherId.equals(subtask.otherId) : subtask.otherId == null;
     }
 
     @Override
     public int hashCode() {
-        return id.hashCode();
+        if (hasUuidId) {
+            return Long.hashCode(idMostSigBits ^ idLeastSigBits);
+        }
+        return otherId != null ? otherId.hashCode() : 0;
     }
 }
@@ -0,0 +1,70 @@
+package com.example.prodo.data;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Reflection-free binding for {@link Subtask}. The JSON names are the original field names
+ * ("id", "title", "isDone") so files written by the reflective Gson path still load.
+ */
+final class SubtaskTypeAdapter extends TypeAdapter<Subtask> {
+    static final String FIELD_ID = "id";
+    static final String FIELD_TITLE = "title";
+    static final String FIELD_IS_DONE = "isDone";
+
+    @Override
+    public void write(JsonWriter out, Subtask subtask) throws IOException {
+        if (subtask == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name(FIELD_ID).value(subtask.getId());
+        out.name(FIELD_TITLE).value(subtask.getTitle());
+        out.name(FIELD_IS_DONE).value(subtask.isDone());
+        out.endObject();
+    }
+
+    @Override
+    public Subtask read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String id = null;
+        String title = null;
+        boolean isDone = false;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case FIELD_ID:
+                    id = in.nextString();
+                    break;
+                case FIELD_TITLE:
+                    title = in.nextString();
+                    break;
+                case FIELD_IS_DONE:
+                    isDone = in.nextBoolean();
+                    break;
+                default:
+                    in.skipValue(); // Unknown field from a newer version; ignore it
+            }
+        }
+        in.endObject();
+        if (id == null) {
+            return new Subtask(UUID.randomUUID().toString(), title, isDone); // Same as the old no-arg constructor
+        }
+        return new Subtask(id, title, isDone);
+    }
+}
@@ -3,56 +3,146 @@ package com.example.prodo.data;
 import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
 
-public class Task {
-    private UUID mId;
-    private long mDate;
-    private String mTitle;
-    private int pomodoroCount; // Field for pomodoro count
-    private String mCategory;
-    private String mNote;
-    private boolean mIsDone;
-    private boolean mIsFlagged;
-
-    private List<Subtask> mSubtasks;
-
-    private long mTotalTimeSpentMillis; // Field for total time spent
+/**
+ * A task. Immutable: {@link #toBuilder()} and the {@code with*} methods return a changed copy that
+ * shares every unchanged field, the subtask list included, and have a version one higher. They
+ * return this same instance when nothing changes, so a different reference in a task list means a
+ * real change and the same reference means the row can be skipped.
+ */
+public final class Task {
+    // Longest note kept in a hot record; enough for the one-line subtitle in the task list.
+    static final int NOTE_PREVIEW_LENGTH = 120;
+    // Shared by every task without subtasks, which is most of them.
+    private static final List<Subtask> NO_SUBTASKS = Collections.emptyList();
+
+    private final UUID mId;
+    private final long mDate;
+    private final String mTitle;
+    private final int pomodoroCount; // Field for pomodoro count
+    private final String mCategory;
+    private final String mNote;
+    private final boolean mIsDone;
+    private final boolean mIsFlagged;
+
+    // Unmodifiable, and shared between copies until one of them changes its subtasks.
+    private final List<Subtask> mSubtasks;
+    // mSubtasks.size(), kept in hot records too so queries can tell which tasks have subtasks.
+    // -1 in a hot record read from a file written before it was stored, until TaskStore counts them.
+    private final int mSubtaskCount;
+
+    private final long mTotalTimeSpentMillis; // Field for total time spent
+
+    // False for the hot records TaskStore keeps in its task list: mNote then holds only a preview
+    // and mSubtasks is empty. The full note and subtasks live in the body store (TaskBodyStore).
+    private final boolean mBodyLoaded;
+
+    // One more with every changed copy, persisted with the task. Two copies edited from the same
+    // task get the same number; TaskStore moves a write past the stored version when it applies
+    // it, so within the store's task list the same id and version mean the same content.
+    private final long mVersion;
 
     // Constructor with all main fields
     public Task(String title, String category, long date, String note) {
-        this.mId = UUID.randomUUID();
-        this.mTitle = title;
-        this.mCategory = category;
-        this.mDate = date; // Expects 'date' as long (milliseconds)
-        this.mNote = note;
-        this.mIsDone = false;
-        this.mIsFlagged = false;
-        this.pomodoroCount = 0;          // Initialize to 0
-        this.mTotalTimeSpentMillis = 0;  // Initialize here
-        this.mSubtasks = new ArrayList<>();
+        this(new Builder()
+                .setTitle(title)
+                .setCategory(category)
+                .setDate(date) // Expects 'date' as long (milliseconds)
+                .setNote(note), 0);
     }
 
     // Optional constructor (e.g., for Firebase, deserialization)
     public Task(String title, String notes, boolean b, String date, String category) {
-        this.mId = UUID.randomUUID();
-        this.mTitle = title;
-        this.mNote = notes; // Assuming 'notes' maps to mNote
-        this.mIsDone = b;
-        // this.mDate = ? // Consider parsing 'date' (String) to long for mDate if this constructor is used
-        this.mCategory = category;
-        this.pomodoroCount = 0;          // Initialize to 0
-        this.mTotalTimeSpentMillis = 0;  // Initialize here
-        this.mSubtasks = new ArrayList<>();
+        // mDate stays 0 // Consider parsing 'date' (String) to long for mDate if this constructor is used
+        this(new Builder()
+                .setTitle(title)
+                .setNote(notes) // Assuming 'notes' maps to mNote
+                .setDone(b)
+                .setCategory(category), 0);
+    }
+
+    private Task(Builder builder, long version) {
+        this.mId = builder.mId;
+        this.mDate = builder.mDate;
+        this.mTitle = builder.mTitle;
+        this.pomodoroCount = builder.mPomodoroCount;
+        this.mCategory = builder.mCategory;
+        this.mNote = builder.mNote;
+        this.mIsDone = builder.mIsDone;
+        this.mIsFlagged = builder.mIsFlagged;
+        this.mSubtasks = builder.mSubtasks;
+        this.mSubtaskCount = builder.mBodyLoaded ? builder.mSubtasks.size() : builder.mSubtaskCount;
+        this.mTotalTimeSpentMillis = builder.mTotalTimeSpentMillis;
+        this.mBodyLoaded = builder.mBodyLoaded;
+        this.mVersion = version;
+    }
+
+    /** A builder holding this task's values; {@link Builder#build()} gives the edited copy. */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    // ---- Hot record / body split, used by TaskStore. Not edits, so the version stays. ----
+
+    /** Copy with the note cut to a preview and no subtasks, as kept in the task list. */
+    Task withoutBody() {
+        Builder hot = new Builder(this);
+        hot.mNote = notePreview(mNote);
+        hot.mSubtasks = NO_SUBTASKS;
+        hot.mBodyLoaded = false;
+        return new Task(hot, mVersion);
+    }
+
+    /** Copy with the given full note and subtasks; {@code subtasks} must not change afterwards. */
+    Task withBody(String note, List<Subtask> subtasks) {
+        Builder full = new Builder(this);
+        full.mNote = note;
+        full.mSubtasks = subtasks.isEmpty() ? NO_SUBTASKS : subtasks;
+        full.mBodyLoaded = true;
+        return new Task(full, mVersion);
+    }
+
+    /** Hot record copy with the subtask count filled in; for records read without one. */
+    Task withSubtaskCount(int count) {
+        Builder hot = new Builder(this);
+        hot.mSubtaskCount = count;
+        return new Task(hot, mVersion);
+    }
+
+    /** Same content under another version; TaskStore uses it to keep versions of one id increasing. */
+    Task withVersion(long version) {
+        return version == mVersion ? this : new Task(new Builder(this), version);
     }
 
-    public void assignNewId() {
-        if (this.mId == null) { // Only assign if it's actually null
-            this.mId = UUID.randomUUID();
-            Log.i("Task", "Assigned new UUID to task titled: " + (this.mTitle != null ? this.mTitle : "N/A"));
+    /** False for a hot record read from an older file, until TaskStore has counted its subtasks. */
+    boolean isSubtaskCountKnown() {
+        return mSubtaskCount >= 0;
+    }
+
+    static String notePreview(String note) {
+        if (note == null || note.length() <= NOTE_PREVIEW_LENGTH) {
+            return note;
+        }
+        int end = NOTE_PREVIEW_LENGTH;
+        if (Character.isHighSurrogate(note.charAt(end - 1))) {
+            end--; // Don't split a surrogate pair
         }
+        return note.substring(0, end) + "\u2026";
+    }
+
+    /** This task, or a copy with a new random id if it has none. */
+    public Task withAssignedId() {
+        if (mId != null) {
+            return this;
+        }
+        Builder builder = new Builder(this);
+        builder.mId = UUID.randomUUID();
+        Log.i("Task", "Assigned new UUID to task titled: " + (this.mTitle != null ? this.mTitle : "N/A"));
+        return new Task(builder, mVersion);
     }
 
     // --- GETTERS ---
@@ -72,10 +162,32 @@ public class Task {
         return mDate;
     }
 
+    /** The note, or only its first {@link #NOTE_PREVIEW_LENGTH} characters if the body isn't loaded. */
     public String getNote() {
         return mNote;
     }
 
+    /** At most {@link #NOTE_PREVIEW_LENGTH} characters of the note, for list rows. */
+    public String getNotePreview() {
+        return mBodyLoaded ? notePreview(mNote) : mNote;
+    }
+
+    /**
+     * False for tasks from TaskStore's task list, which carry a note preview and no subtasks.
+     * {@link TaskStore#getTaskWithBody} returns the task with both, ready to edit.
+     */
+    public boolean isBodyLoaded() {
+        return mBodyLoaded;
+    }
+
+    /**
+     * Number of edits this task has been through; persisted with it for sync and conflict checks.
+     * Two tasks from {@link TaskStore} with the same id and version have the same content.
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
     public boolean isDone() {
         return mIsDone;
     }
@@ -84,13 +196,16 @@ public class Task {
         return mIsFlagged;
     }
 
+    /** The subtasks, unmodifiable; empty if the body isn't loaded. */
     public List<Subtask> getSubtasks() {
-        if (mSubtasks == null) {
-            mSubtasks = new ArrayList<>();
-        }
         return mSubtasks;
     }
 
+    /** Number of subtasks. Unlike {@link #getSubtasks()}, also known when the body isn't loaded. */
+    public int getSubtaskCount() {
+        return mBodyLoaded ? mSubtasks.size() : Math.max(mSubtaskCount, 0);
+    }
+
     // Getter for pomodoroCount (Correctly named for StatsViewModel)
     public int getPomodoroCount() {
         return pomodoroCount;
@@ -101,67 +216,279 @@ public class Task {
         return mTotalTimeSpentMillis;
     }
 
-    // --- SETTERS ---
-    public void setTitle(String title) {
-        mTitle = title;
+    // --- COPIES WITH ONE CHANGE (this task itself if the value is the same) ---
+    public Task withTitle(String title) {
+        return toBuilder().setTitle(title).build();
     }
 
-    public void setCategory(String category) {
-        mCategory = category;
+    public Task withCategory(String category) {
+        return toBuilder().setCategory(category).build();
     }
 
-    public void setDate(long date) {
-        this.mDate = date;
+    public Task withDate(long date) {
+        return toBuilder().setDate(date).build();
     }
 
-    public void setNote(String note) {
-        mNote = note;
+    public Task withNote(String note) {
+        return toBuilder().setNote(note).build();
     }
 
-    public void setDone(boolean done) {
-        mIsDone = done;
+    public Task withDone(boolean done) {
+        return toBuilder().setDone(done).build();
     }
 
-    public void setFlagged(boolean flagged) {
-        mIsFlagged = flagged;
+    public Task withFlagged(boolean flagged) {
+        return toBuilder().setFlagged(flagged).build();
     }
 
-    public void setPomodoroCount(int pomodoroCount) {
-        this.pomodoroCount = pomodoroCount;
+    public Task withSubtasks(List<Subtask> subtasks) {
+        return toBuilder().setSubtasks(subtasks).build();
     }
 
-    public void setSubtasks(List<Subtask> subtasks) {
-        mSubtasks = subtasks;
+    /** Copy with {@code subtask} in place of the subtask with the same id. */
+    public Task withSubtask(Subtask subtask) {
+        return toBuilder().setSubtask(subtask).build();
     }
 
-    public void setTotalTimeSpentMillis(long totalTimeSpentMillis) {
-        this.mTotalTimeSpentMillis = totalTimeSpentMillis;
+    public Task withPomodoroCompleted(long sessionDurationMillis) {
+        return toBuilder()
+                .setPomodoroCount(pomodoroCount + 1)
+                .setTotalTimeSpentMillis(mTotalTimeSpentMillis + sessionDurationMillis)
+                .build();
     }
 
-    // --- BEHAVIORAL METHODS ---
-    public void incrementPomodoroCount() {
-        this.pomodoroCount++;
-    }
+    /**
+     * Builds a {@link Task}. {@code new Builder()} starts a new task with a random id;
+     * {@link Task#toBuilder()} starts from an existing one.
+     */
+    public static final class Builder {
+        private final Task mBase; // Set by toBuilder(); build() returns it if nothing changed
+
+        private UUID mId;
+        private long mDate;
+        private String mTitle;
+        private int mPomodoroCount;
+        private String mCategory;
+        private String mNote;
+        private boolean mIsDone;
+        private boolean mIsFlagged;
+        private List<Subtask> mSubtasks = NO_SUBTASKS;
+        private boolean mSubtasksOwned; // mSubtasks is this builder's own ArrayList, not yet handed out
+        private int mSubtaskCount = -1; // Only used for hot records
+        private long mTotalTimeSpentMillis;
+        private boolean mBodyLoaded = true;
+        private long mVersion;
+
+        public Builder() {
+            this((Task) null);
+            mId = UUID.randomUUID();
+        }
 
-    public void addDurationToTimeSpent(long durationMillis) {
-        this.mTotalTimeSpentMillis += durationMillis;
-    }
+        private Builder(Task base) {
+            mBase = base;
+            if (base != null) {
+                mId = base.mId;
+                mDate = base.mDate;
+                mTitle = base.mTitle;
+                mPomodoroCount = base.pomodoroCount;
+                mCategory = base.mCategory;
+                mNote = base.mNote;
+                mIsDone = base.mIsDone;
+                mIsFlagged = base.mIsFlagged;
+                mSubtasks = base.mSubtasks;
+                mSubtaskCount = base.mSubtaskCount;
+                mTotalTimeSpentMillis = base.mTotalTimeSpentMillis;
+                mBodyLoaded = base.mBodyLoaded;
+                mVersion = base.mVersion;
+            }
+        }
 
-    public void recordPomodoroCompleted(long sessionDurationMillis) {
-        incrementPomodoroCount();
-        addDurationToTimeSpent(sessionDurationMillis);
+        // No id yet; for the decoders, which set every field themselves. Skips the random UUID generation.
+        static Builder blank() {
+            return new Builder((Task) null);
+        }
+
+        Builder setId(UUID id) {
+            mId = id;
+            return this;
+        }
+
+        // The persisted version; only for the decoders.
+        Builder setVersion(long version) {
+            mVersion = version;
+            return this;
+        }
+
+        // The stored subtask count of a hot record; only for the decoders.
+        Builder setSubtaskCount(int count) {
+            mSubtaskCount = count;
+            return this;
+        }
+
+        /** Marks a decoded hot record: the note read is only a preview, and there are no subtasks. */
+        Builder setBodyStored() {
+            mSubtasks = NO_SUBTASKS;
+            mSubtasksOwned = false;
+            mBodyLoaded = false;
+            return this;
+        }
+
+        public Builder setTitle(String title) {
+            mTitle = title;
+            return this;
+        }
+
+        public Builder setCategory(String category) {
+            mCategory = CategoryDictionary.intern(category);
+            return this;
+        }
+
+        public Builder setDate(long date) {
+            mDate = date;
+            return this;
+        }
+
+        public Builder setNote(String note) {
+            checkBodyLoaded();
+            mNote = note;
+            return this;
+        }
+
+        public Builder setDone(boolean done) {
+            mIsDone = done;
+            return this;
+        }
+
+        public Builder setFlagged(boolean flagged) {
+            mIsFlagged = flagged;
+            return this;
+        }
+
+        public Builder setPomodoroCount(int pomodoroCount) {
+            mPomodoroCount = pomodoroCount;
+            return this;
+        }
+
+        public Builder setTotalTimeSpentMillis(long totalTimeSpentMillis) {
+            mTotalTimeSpentMillis = totalTimeSpentMillis;
+            return this;
+        }
+
+        /** Replaces the subtasks with a copy of {@code subtasks}; null means none. */
+        public Builder setSubtasks(List<Subtask> subtasks) {
+            checkBodyLoaded();
+            if (subtasks == null || subtasks.isEmpty()) {
+                mSubtasks = NO_SUBTASKS;
+                mSubtasksOwned = false;
+            } else {
+                mSubtasks = new ArrayList<>(subtasks);
+                mSubtasksOwned = true;
+            }
+            return this;
+        }
+
+        public Builder addSubtask(Subtask subtask) {
+            editableSubtasks().add(subtask);
+            return this;
+        }
+
+        /** Puts {@code subtask} in place of the subtask with the same id, if there is one. */
+        public Builder setSubtask(Subtask subtask) {
+            int index = mSubtasks.indexOf(subtask); // Subtasks are equal by id
+            if (index >= 0 && mSubtasks.get(index) != subtask) {
+                editableSubtasks().set(index, subtask);
+            }
+            return this;
+        }
+
+        /** Removes the subtask with the same id as {@code subtask}, if there is one. */
+        public Builder removeSubtask(Subtask subtask) {
+            if (mSubtasks.contains(subtask)) {
+                editableSubtasks().remove(subtask);
+            }
+            return this;
+        }
+
+        // Copy on first write, so an unchanged list stays shared with the base task.
+        private List<Subtask> editableSubtasks() {
+            checkBodyLoaded();
+            if (!mSubtasksOwned) {
+                mSubtasks = new ArrayList<>(mSubtasks);
+                mSubtasksOwned = true;
+            }
+            return mSubtasks;
+        }
+
+        // Saving a preview as the note, or an empty list as the subtasks, would lose the real ones.
+        private void checkBodyLoaded() {
+            if (!mBodyLoaded) {
+                throw new IllegalStateException("Task body not loaded; use TaskStore.getTaskWithBody() to edit notes or subtasks");
+            }
+        }
+
+        /**
+         * The task. From {@link Task#toBuilder()}: the original instance if no value changed,
+         * otherwise a copy with the next version.
+         */
+        public Task build() {
+            if (mSubtasksOwned) {
+                mSubtasks = mSubtasks.isEmpty() ? NO_SUBTASKS : Collections.unmodifiableList(mSubtasks);
+                mSubtasksOwned = false; // Handed out; a later edit copies again
+            }
+            if (mBase == null) {
+                return new Task(this, mVersion);
+            }
+            if (sameValuesAs(mBase)) {
+                return mBase;
+            }
+            return new Task(this, mBase.mVersion + 1);
+        }
+
+        private boolean sameValuesAs(Task task) {
+            return mDate == task.mDate &&
+                    mPomodoroCount == task.pomodoroCount &&
+                    mIsDone == task.mIsDone &&
+                    mIsFlagged == task.mIsFlagged &&
+                    mTotalTimeSpentMillis == task.mTotalTimeSpentMillis &&
+                    Objects.equals(mId, task.mId) &&
+                    Objects.equals(mTitle, task.mTitle) &&
+                    Objects.equals(mCategory, task.mCategory) &&
+                    Objects.equals(mNote, task.mNote) &&
+                    sameSubtasks(mSubtasks, task.mSubtasks);
+        }
+
+        // Element by element, by reference: Subtask.equals only compares ids.
+        private static boolean sameSubtasks(List<Subtask> a, List<Subtask> b) {
+            if (a == b) {
+                return true;
+            }
+            if (a.size() != b.size()) {
+                return false;
+            }
+            for (int i = 0; i < a.size(); i++) {
+                if (a.get(i) != b.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 
     // --- equals() and hashCode() ---
+    // Full field comparison; a different version rejects without walking the subtasks. To check
+    // whether a list row changed, compare references, or getId() and getVersion().
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Task task = (Task) o;
-        return mDate == task.mDate &&
+        return mVersion == task.mVersion &&
+                mDate == task.mDate &&
                 pomodoroCount == task.pomodoroCount &&
                 mIsDone == task.mIsDone &&
                 mIsFlagged == task.mIsFlagged &&
+                mBodyLoaded == task.mBodyLoaded &&
+                (mBodyLoaded || mSubtaskCount == task.mSubtaskCount) && // Else mSubtasks decides
                 mTotalTimeSpentMillis == task.mTotalTimeSpentMillis &&
                 Objects.equals(mId, task.mId) &&
                 Objects.equals(mTitle, task.mTitle) &&
@@ -172,6 +499,6 @@ public class Task {
 
     @Override
     public int hashCode() {
-        return Objects.hash(mId, mDate, mTitle, pomodoroCount, mCategory, mNote, mIsDone, mIsFlagged, mSubtasks, mTotalTimeSpentMillis);
+        return Objects.hash(mId, mVersion); // Equal tasks share both; O(1) unlike hashing the subtasks
     }
 }
@@ -0,0 +1,528 @@
+package com.example.prodo.data;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cold storage for old completed tasks.
+ *
+ * The tasks live in gzipped {@link BinaryTaskCodec} segments, tasks_archive_<n>.bin.gz, one per
+ * archiving pass. A pass writes only its own segment, so archiving never reads or rewrites what is
+ * already archived, and nothing archived stays in memory: the tasks are read when someone asks
+ * for them and dropped again. Taking tasks out rewrites just the segments that hold them, and
+ * once there are more than {@link #MAX_SEGMENTS} the two smallest neighbours are merged.
+ *
+ * Next to them, tasks_archive.json lists the segments with an {@link ArchiveSummary} each, so
+ * all-time stats and date lookups can use the archive without opening it, plus the ids the user
+ * restored, which the archiving pass leaves alone while they stay done. Segment files are never
+ * changed in place: a change writes new ones, then the json that lists them, then deletes the
+ * ones it replaced. Files the json doesn't list are left over from a change that was cut short
+ * and are deleted on the next start.
+ *
+ * Moving tasks in or out of the archive takes two writes, so for a while a task can be in both
+ * the archive and the task list. The json also lists the archived tasks that may be in the task
+ * list too, with their segment and what each adds to the summary, and {@link #getSummaryExcluding}
+ * takes out those that really are. The list is written before a move starts and trimmed after it
+ * is saved, so a crash anywhere in between never counts a task twice.
+ *
+ * Only used from TaskStore's writer thread, except {@link #getSummary()} and
+ * {@link #getSummaryExcluding}.
+ */
+class TaskArchive {
+    private static final String TAG = "TaskArchive";
+    static final String SEGMENT_PREFIX = "tasks_archive_";
+    static final String SEGMENT_SUFFIX = ".bin.gz";
+    static final String SUMMARY_FILENAME = "tasks_archive.json";
+    static final int MAX_SEGMENTS = 8;
+
+    /** tasks_archive.json */
+    private static final class Meta {
+        List<Segment> segments = new ArrayList<>();
+        int nextSegment;
+        List<String> restoredIds = new ArrayList<>();
+        List<Shared> shared = new ArrayList<>();
+    }
+
+    /** One segment file and the totals of the tasks in it. */
+    private static final class Segment {
+        int number;
+        ArchiveSummary summary;
+
+        static Segment of(int number, ArchiveSummary summary) {
+            Segment segment = new Segment();
+            segment.number = number;
+            segment.summary = summary;
+            return segment;
+        }
+    }
+
+    /** An archived task that may also be in the task list: its segment, and what it adds to the summary. */
+    private static final class Shared {
+        String id;
+        int segment;
+        int pomodoros;
+        long timeSpentMillis;
+
+        static Shared of(Task task, int segment) {
+            Shared shared = new Shared();
+            shared.id = task.getId().toString();
+            shared.segment = segment;
+            shared.pomodoros = task.getPomodoroCount();
+            shared.timeSpentMillis = task.getTotalTimeSpentMillis();
+            return shared;
+        }
+
+        Shared in(int segment) {
+            Shared moved = new Shared();
+            moved.id = id;
+            moved.segment = segment;
+            moved.pomodoros = pomodoros;
+            moved.timeSpentMillis = timeSpentMillis;
+            return moved;
+        }
+    }
+
+    /**
+     * A change to the segments, built up in memory and new segment files, then made current by
+     * {@link #commit}. Until then the json and the segments it lists are untouched.
+     */
+    private final class Change {
+        final List<Segment> segments = new ArrayList<>(mSegments);
+        final List<Segment> replaced = new ArrayList<>();
+        final Map<UUID, Shared> shared = new HashMap<>(mShared);
+        int nextSegment = mNextSegment;
+
+        /** Writes {@code tasks}, which are in the task list, as a new last segment. */
+        void add(List<Task> tasks) throws IOException {
+            Segment segment = writeSegment(tasks);
+            segments.add(segment);
+            for (Task task : tasks) {
+                shared.put(task.getId(), Shared.of(task, segment.number));
+            }
+        }
+
+        /**
+         * Rewrites the segments holding any of {@code ids} without them. Where a task is comes
+         * from its shared entry; if one has none, every segment is checked.
+         */
+        void remove(Set<UUID> ids) throws IOException {
+            Set<Integer> holding = new HashSet<>();
+            boolean unknown = false;
+            for (UUID id : ids) {
+                Shared entry = shared.get(id);
+                if (entry != null) {
+                    holding.add(entry.segment);
+                } else {
+                    unknown = true;
+                }
+            }
+            for (int i = 0; i < segments.size(); i++) {
+                Segment segment = segments.get(i);
+                if (!unknown && !holding.contains(segment.number)) {
+                    continue;
+                }
+                List<Task> tasks = readSegment(segment.number);
+                List<Task> kept = new ArrayList<>(tasks.size());
+                for (Task task : tasks) {
+                    if (!ids.contains(task.getId())) {
+                        kept.add(task);
+                    }
+                }
+                if (kept.size() == tasks.size()) {
+                    continue;
+                }
+                replaced.add(segment);
+                if (kept.isEmpty()) {
+                    segments.remove(i--);
+                } else {
+                    Segment rewritten = writeSegment(kept);
+                    segments.set(i, rewritten);
+                    moveShared(kept, rewritten.number);
+                }
+            }
+            shared.keySet().removeAll(ids);
+        }
+
+        /** Merges the two neighbouring segments with the fewest tasks until at most MAX_SEGMENTS are left. */
+        void mergeSmallSegments() throws IOException {
+            while (segments.size() > MAX_SEGMENTS) {
+                int smallest = 0;
+                for (int i = 1; i + 1 < segments.size(); i++) {
+                    if (pairSize(i) < pairSize(smallest)) {
+                        smallest = i;
+                    }
+                }
+                Segment first = segments.get(smallest);
+                Segment second = segments.get(smallest + 1);
+                List<Task> tasks = readSegment(first.number);
+                tasks.addAll(readSegment(second.number));
+                Segment merged = writeSegment(tasks);
+                segments.set(smallest, merged);
+                segments.remove(smallest + 1);
+                replaced.add(first);
+                replaced.add(second);
+                moveShared(tasks, merged.number);
+            }
+        }
+
+        private int pairSize(int i) {
+            return segments.get(i).summary.taskCount + segments.get(i + 1).summary.taskCount;
+        }
+
+        private void moveShared(List<Task> tasks, int segment) {
+            for (Task task : tasks) {
+                Shared entry = shared.get(task.getId());
+                if (entry != null) {
+                    shared.put(task.getId(), entry.in(segment));
+                }
+            }
+        }
+
+        private Segment writeSegment(List<Task> tasks) throws IOException {
+            int number = nextSegment++;
+            File file = segmentFile(number);
+            File temp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream fos = new FileOutputStream(temp)) {
+                GZIPOutputStream gzip = new GZIPOutputStream(fos, 16 * 1024);
+                BinaryTaskCodec.write(gzip, tasks);
+                gzip.finish();
+                fos.getFD().sync();
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not move archive segment " + number + " into place");
+            }
+            return Segment.of(number, ArchiveSummary.of(tasks));
+        }
+    }
+
+    private final File mDir;
+    private final File mSummaryFile;
+    private final Gson mGson;
+
+    private volatile ArchiveSummary mSummary = ArchiveSummary.EMPTY; // Of all segments together
+    private volatile Map<UUID, Shared> mShared = Collections.emptyMap(); // Replaced, never changed
+    private List<Segment> mSegments = Collections.emptyList(); // Replaced, never changed
+    private int mNextSegment;
+    private final Set<UUID> mRestoredIds = new HashSet<>();
+
+    TaskArchive(File dir, Gson gson) {
+        mDir = dir;
+        mSummaryFile = new File(dir, SUMMARY_FILENAME);
+        mGson = gson;
+    }
+
+    /** Reads the json only; the segments stay on disk. Cheap enough for startup. */
+    void readSummary() {
+        MainThreadIo.check("Archive summary read");
+        try (Reader reader = new InputStreamReader(new FileInputStream(mSummaryFile), StandardCharsets.UTF_8)) {
+            Meta meta = mGson.fromJson(reader, Meta.class);
+            if (meta == null) {
+                throw new JsonParseException("Empty");
+            }
+            install(meta);
+        } catch (FileNotFoundException e) {
+            // Nothing archived yet, or only a first segment whose json was never written
+        } catch (IOException | JsonParseException | IllegalArgumentException e) {
+            Log.e(TAG, "readSummary: Could not read " + mSummaryFile.getName() + ". Rebuilding it from the segments.", e);
+            rebuild();
+            return;
+        }
+        deleteUnlistedSegments();
+    }
+
+    private void install(Meta meta) {
+        List<Segment> segments = meta.segments != null ? meta.segments : new ArrayList<>();
+        ArchiveSummary summary = ArchiveSummary.EMPTY;
+        for (Segment segment : segments) {
+            if (segment.summary == null) {
+                throw new JsonParseException("Segment " + segment.number + " has no summary");
+            }
+            summary = summary.plus(segment.summary);
+        }
+        Map<UUID, Shared> shared = new HashMap<>();
+        if (meta.shared != null) {
+            for (Shared task : meta.shared) {
+                shared.put(UUID.fromString(task.id), task);
+            }
+        }
+        Set<UUID> restored = new HashSet<>();
+        if (meta.restoredIds != null) {
+            for (String id : meta.restoredIds) {
+                restored.add(UUID.fromString(id));
+            }
+        }
+        mSegments = segments;
+        mNextSegment = meta.nextSegment;
+        mSummary = summary;
+        mShared = shared;
+        mRestoredIds.clear();
+        mRestoredIds.addAll(restored);
+    }
+
+    // The json is lost. Every segment file there is gets read, and their tasks written into one
+    // new segment; which of them are in the task list is lost too, so all are listed as maybe.
+    private void rebuild() {
+        TreeMap<Integer, File> files = segmentFiles();
+        LinkedHashMap<UUID, Task> tasks = new LinkedHashMap<>();
+        Change change = new Change();
+        try {
+            for (Map.Entry<Integer, File> file : files.entrySet()) {
+                for (Task task : readSegment(file.getKey())) {
+                    tasks.put(task.getId(), task); // A later segment's copy wins
+                }
+                change.replaced.add(Segment.of(file.getKey(), ArchiveSummary.EMPTY));
+            }
+            change.nextSegment = files.isEmpty() ? 0 : files.lastKey() + 1;
+            if (!tasks.isEmpty()) {
+                change.add(new ArrayList<>(tasks.values()));
+            }
+            commit(change);
+            Log.i(TAG, "rebuild: Rebuilt the archive summary from " + tasks.size() + " tasks. " + mSummary);
+        } catch (IOException e) {
+            Log.e(TAG, "rebuild: Could not read the archive either.", e);
+        }
+    }
+
+    /** Totals of every archived task, including any that are also in the task list. */
+    ArchiveSummary getSummary() {
+        return mSummary;
+    }
+
+    /**
+     * Totals of the archived tasks for which {@code inTaskList} is false, so that adding them to
+     * the task list's totals counts every task once. The dates are those of the whole archive.
+     */
+    ArchiveSummary getSummaryExcluding(Predicate<UUID> inTaskList) {
+        ArchiveSummary summary = mSummary;
+        int count = 0;
+        long pomodoros = 0;
+        long millis = 0;
+        for (Map.Entry<UUID, Shared> entry : mShared.entrySet()) {
+            if (inTaskList.test(entry.getKey())) {
+                count++;
+                pomodoros += entry.getValue().pomodoros;
+                millis += entry.getValue().timeSpentMillis;
+            }
+        }
+        if (count == 0) {
+            return summary;
+        }
+        return new ArchiveSummary(summary.taskCount - count, summary.totalPomodoros - pomodoros,
+                summary.totalTimeSpentMillis - millis, summary.oldestDate, summary.newestDate);
+    }
+
+    boolean isRestored(UUID id) {
+        return mRestoredIds.contains(id);
+    }
+
+    /** Forgets restored ids for which {@code stillExempt} is false (deleted or no longer done). */
+    void pruneRestored(Predicate<UUID> stillExempt) {
+        mRestoredIds.removeIf(id -> !stillExempt.test(id));
+    }
+
+    /** Every archived task, read from disk now and not kept. */
+    List<Task> load() throws IOException {
+        return load(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * The archived tasks of the segments with due dates from {@code fromDate} to {@code toDate};
+     * the other segments aren't read. Some of the tasks may be due outside that range.
+     */
+    List<Task> load(long fromDate, long toDate) throws IOException {
+        MainThreadIo.check("Archive read");
+        List<Task> tasks = new ArrayList<>();
+        for (Segment segment : mSegments) {
+            if (segment.summary.newestDate >= fromDate && segment.summary.oldestDate <= toDate) {
+                tasks.addAll(readSegment(segment.number));
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * Archives {@code tasks}, which are still in the task list, as a new segment; nothing archived
+     * before is read or rewritten. They are listed as maybe in the task list until
+     * {@link #writeSummary} finds them gone from it. A task still listed from a pass that was cut
+     * short is first taken out of its older segment, so it is never archived twice.
+     */
+    void append(List<Task> tasks) throws IOException {
+        MainThreadIo.check("Archive write");
+        Change change = new Change();
+        Set<UUID> again = new HashSet<>();
+        for (Task task : tasks) {
+            if (mShared.containsKey(task.getId())) {
+                again.add(task.getId());
+            }
+        }
+        if (!again.isEmpty()) {
+            change.remove(again);
+        }
+        change.add(tasks);
+        change.mergeSmallSegments();
+        commit(change);
+        Log.d(TAG, "append: Archived " + tasks.size() + " tasks in " + mSegments.size() + " segments. " + mSummary);
+    }
+
+    /**
+     * Reads the archived tasks with {@code ids} and, before they are added to the task list,
+     * lists them as maybe in it and as restored.
+     */
+    List<Task> prepareRestore(Set<UUID> ids) throws IOException {
+        MainThreadIo.check("Archive read");
+        Change change = new Change();
+        List<Task> found = new ArrayList<>();
+        for (Segment segment : mSegments) {
+            for (Task task : readSegment(segment.number)) {
+                if (ids.contains(task.getId())) {
+                    found.add(task);
+                    change.shared.put(task.getId(), Shared.of(task, segment.number));
+                }
+            }
+            if (found.size() == ids.size()) {
+                break;
+            }
+        }
+        mRestoredIds.addAll(ids);
+        commit(change);
+        return found;
+    }
+
+    /** Takes {@code ids} out of the archive, once they are saved in the task list. */
+    void remove(Collection<UUID> ids) throws IOException {
+        MainThreadIo.check("Archive write");
+        Change change = new Change();
+        change.remove(new HashSet<>(ids));
+        commit(change);
+    }
+
+    /**
+     * Rewrites the json, keeping only the archived tasks for which {@code inTaskList} is true
+     * listed as possibly in the task list. Doesn't read the segments.
+     */
+    void writeSummary(Predicate<UUID> inTaskList) throws IOException {
+        MainThreadIo.check("Archive summary write");
+        Change change = new Change();
+        change.shared.keySet().removeIf(id -> !inTaskList.test(id));
+        commit(change);
+    }
+
+    // Writes the json describing change, makes it current, then deletes the segments it replaced.
+    private void commit(Change change) throws IOException {
+        Meta meta = new Meta();
+        meta.segments = change.segments;
+        meta.nextSegment = change.nextSegment;
+        for (UUID id : mRestoredIds) {
+            meta.restoredIds.add(id.toString());
+        }
+        meta.shared.addAll(change.shared.values());
+        File summaryTemp = new File(mSummaryFile.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(summaryTemp);
+             Writer writer = new OutputStreamWriter(fos, StandardCharsets.UTF_8)) {
+            mGson.toJson(meta, writer);
+            writer.flush();
+            fos.getFD().sync();
+        }
+        if (!summaryTemp.renameTo(mSummaryFile)) {
+            throw new IOException("Could not move archive summary into place");
+        }
+
+        ArchiveSummary summary = ArchiveSummary.EMPTY;
+        for (Segment segment : change.segments) {
+            summary = summary.plus(segment.summary);
+        }
+        mSegments = Collections.unmodifiableList(change.segments);
+        mNextSegment = change.nextSegment;
+        mShared = change.shared;
+        mSummary = summary;
+        for (Segment segment : change.replaced) {
+            File file = segmentFile(segment.number);
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, "commit: Could not delete " + file.getName() + ". Deleting it on the next start.");
+            }
+        }
+    }
+
+    private List<Task> readSegment(int number) throws IOException {
+        File file = segmentFile(number);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE, file.length() * 4));
+        try (InputStream in = new GZIPInputStream(new FileInputStream(file), 16 * 1024)) {
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+        }
+        List<Task> tasks = new ArrayList<>();
+        BinaryTaskCodec.read(ByteBuffer.wrap(bytes.toByteArray()), tasks::add);
+        return tasks;
+    }
+
+    private File segmentFile(int number) {
+        return new File(mDir, SEGMENT_PREFIX + number + SEGMENT_SUFFIX);
+    }
+
+    // Segment files on disk by number, listed in the json or not.
+    private TreeMap<Integer, File> segmentFiles() {
+        TreeMap<Integer, File> files = new TreeMap<>();
+        File[] all = mDir.listFiles();
+        if (all == null) {
+            return files;
+        }
+        for (File file : all) {
+            String name = file.getName();
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    files.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        return files;
+    }
+
+    // Leftovers of a change that was cut short: new segments it never listed, or old ones it
+    // replaced but didn't get to delete.
+    private void deleteUnlistedSegments() {
+        Set<Integer> listed = new HashSet<>();
+        for (Segment segment : mSegments) {
+            listed.add(segment.number);
+        }
+        for (Map.Entry<Integer, File> file : segmentFiles().entrySet()) {
+            if (!listed.contains(file.getKey()) && !file.getValue().delete()) {
+                Log.w(TAG, "deleteUnlistedSegments: Could not delete " + file.getValue().getName());
+            }
+        }
+    }
+}
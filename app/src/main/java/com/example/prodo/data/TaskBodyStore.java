@@ -0,0 +1,438 @@
+package com.example.prodo.data;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Task notes and subtask lists, kept out of the hot records in the task list (task_bodies.dat).
+ *
+ * Append-only file of frames [int payloadLength][int crc32(payload)][payload], where the payload is
+ * the task id as two longs followed by the body as UTF-8 JSON ({"mNote": ..., "mSubtasks": [...]},
+ * the names tasks.json uses). The last frame for an id wins; a frame with no JSON deletes the body.
+ * At startup only the frame headers are read, to find each id's latest frame. Bodies are read when
+ * a task is opened, behind a small LRU cache, or all in one pass for the search index. Once
+ * superseded frames outweigh the live ones the file is rewritten with the live frames only.
+ *
+ * Disk I/O happens on TaskStore's writer thread only; {@link #put} and {@link #getCached} may be
+ * called from any thread.
+ */
+class TaskBodyStore {
+    private static final String TAG = "TaskBodyStore";
+    static final String FILENAME = "task_bodies.dat";
+
+    private static final int CACHE_SIZE = 32; // Recently opened or edited bodies
+    private static final int ID_BYTES = 16;
+    private static final long COMPACT_MIN_BYTES = 64 * 1024;
+    private static final String FIELD_NOTE = TaskTypeAdapter.FIELD_NOTE;
+    private static final String FIELD_SUBTASKS = TaskTypeAdapter.FIELD_SUBTASKS;
+
+    /** A task's full note and subtasks. Never modified; tasks built with {@link Task#withBody} share the list. */
+    static final class Body {
+        static final Body EMPTY = new Body(null, Collections.emptyList());
+
+        final String note;
+        final List<Subtask> subtasks;
+
+        private Body(String note, List<Subtask> subtasks) {
+            this.note = note;
+            this.subtasks = subtasks;
+        }
+
+        static Body of(Task task) {
+            return new Body(task.getNote(), task.getSubtasks()); // Already unmodifiable
+        }
+
+        boolean isEmpty() {
+            return (note == null || note.isEmpty()) && subtasks.isEmpty();
+        }
+    }
+
+    private static final class Location {
+        final long offset; // Of the frame
+        final int length; // Of the payload
+
+        Location(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final File mFile;
+    private final TypeAdapter<Subtask> mSubtaskAdapter;
+
+    // Guarded by this.
+    private final HashMap<UUID, Location> mIndex = new HashMap<>();
+    private final LinkedHashMap<UUID, Body> mPending = new LinkedHashMap<>(); // Put but not on disk yet
+    private final LinkedHashMap<UUID, Body> mCache = new LinkedHashMap<UUID, Body>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Body> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private long mLength; // Of the intact part of the file
+    private long mLiveBytes; // Frames in mIndex
+
+    TaskBodyStore(File file, Gson gson) {
+        mFile = file;
+        mSubtaskAdapter = gson.getAdapter(Subtask.class);
+    }
+
+    /**
+     * Reads the frame headers to index the latest frame per id, skipping the bodies. A torn tail
+     * (app killed mid-append) is cut off.
+     */
+    synchronized void open() {
+        MainThreadIo.check("Body store open");
+        mIndex.clear();
+        mLiveBytes = 0;
+        long offset = 0;
+        long fileLength = mFile.length();
+        boolean torn = false;
+        if (fileLength > 0) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile), 64 * 1024))) {
+                while (offset < fileLength) {
+                    int length = in.readInt();
+                    in.readInt(); // crc, checked when the body is read
+                    if (length < ID_BYTES || length > TaskJournal.MAX_RECORD_BYTES || offset + 8 + length > fileLength) {
+                        torn = true;
+                        break;
+                    }
+                    UUID id = new UUID(in.readLong(), in.readLong());
+                    skipFully(in, length - ID_BYTES);
+                    setLocation(id, length == ID_BYTES ? null : new Location(offset, length));
+                    offset += 8 + length;
+                }
+            } catch (EOFException e) {
+                torn = true;
+            } catch (IOException e) {
+                Log.e(TAG, "open: Error reading " + mFile.getName() + ". Using the " + mIndex.size() + " bodies indexed so far.", e);
+                torn = true;
+            }
+        }
+        mLength = offset;
+        if (torn) {
+            Log.w(TAG, "open: Torn frame after offset " + offset + ". Truncating " + mFile.getName() + ".");
+            truncate(offset);
+        }
+        Log.d(TAG, "open: Indexed " + mIndex.size() + " task bodies (" + mLength + " bytes).");
+    }
+
+    /** Stores {@code body} for {@code id}. It is readable right away and written by the next {@link #writePending}. */
+    synchronized void put(UUID id, Body body) {
+        mPending.put(id, body);
+        mCache.put(id, body);
+    }
+
+    /** The body if it is in memory, otherwise null: call {@link #read} on the writer thread. */
+    synchronized Body getCached(UUID id) {
+        Body body = mPending.get(id);
+        return body != null ? body : mCache.get(id);
+    }
+
+    /** The body for {@code id}, {@link Body#EMPTY} if it has none. Writer thread only. */
+    Body read(UUID id) throws IOException {
+        Location location;
+        synchronized (this) {
+            Body cached = getCached(id);
+            if (cached != null) {
+                return cached;
+            }
+            location = mIndex.get(id);
+        }
+        if (location == null) {
+            return Body.EMPTY;
+        }
+        Body body;
+        MainThreadIo.check("Body read");
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "r")) {
+            body = readFrame(raf, id, location);
+        }
+        synchronized (this) {
+            if (mIndex.get(id) == location) { // Not replaced while we were reading
+                mCache.put(id, body);
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Passes the body of each of {@code ids} to {@code sink}, reading the file once in offset order.
+     * Bypasses the cache, so a bulk read doesn't evict recently opened bodies. Writer thread only.
+     */
+    void readEach(List<UUID> ids, BiConsumer<UUID, Body> sink) throws IOException {
+        MainThreadIo.check("Body read");
+        Map<UUID, Body> inMemory = new LinkedHashMap<>();
+        List<UUID> onDisk = new ArrayList<>(ids.size());
+        Map<UUID, Location> locations = new HashMap<>();
+        synchronized (this) {
+            for (UUID id : ids) {
+                Body cached = getCached(id);
+                Location location = mIndex.get(id);
+                if (cached != null || location == null) {
+                    inMemory.put(id, cached != null ? cached : Body.EMPTY);
+                } else {
+                    onDisk.add(id);
+                    locations.put(id, location);
+                }
+            }
+        }
+        inMemory.forEach(sink);
+        onDisk.sort((a, b) -> Long.compare(locations.get(a).offset, locations.get(b).offset));
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "r")) {
+            for (UUID id : onDisk) {
+                sink.accept(id, readFrame(raf, id, locations.get(id)));
+            }
+        }
+    }
+
+    private Body readFrame(RandomAccessFile raf, UUID id, Location location) throws IOException {
+        byte[] payload = new byte[location.length];
+        raf.seek(location.offset + 4);
+        int storedCrc = raf.readInt();
+        raf.readFully(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer header = ByteBuffer.wrap(payload, 0, ID_BYTES);
+        if ((int) crc.getValue() != storedCrc || !id.equals(new UUID(header.getLong(), header.getLong()))) {
+            throw new IOException("Corrupt body frame for " + id + " at offset " + location.offset);
+        }
+        return decode(new String(payload, ID_BYTES, payload.length - ID_BYTES, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Appends every pending body with a single write() and fsync. Writer thread only. On failure
+     * the bodies stay pending (and readable) for the next call.
+     */
+    void writePending() throws IOException {
+        Map<UUID, Body> batch;
+        synchronized (this) {
+            if (mPending.isEmpty()) {
+                return;
+            }
+            batch = new LinkedHashMap<>(mPending);
+        }
+        MainThreadIo.check("Body write");
+
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(frames);
+        Map<UUID, Location> written = new LinkedHashMap<>();
+        CRC32 crc = new CRC32();
+        long offset = mLength;
+        for (Map.Entry<UUID, Body> entry : batch.entrySet()) {
+            UUID id = entry.getKey();
+            Body body = entry.getValue();
+            boolean indexed;
+            synchronized (this) {
+                indexed = mIndex.containsKey(id);
+            }
+            if (body.isEmpty() && !indexed) {
+                continue; // Nothing to store and nothing to delete
+            }
+            byte[] payload = encode(id, body);
+            crc.reset();
+            crc.update(payload, 0, payload.length);
+            out.writeInt(payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+            written.put(id, body.isEmpty() ? null : new Location(offset, payload.length));
+            offset += 8 + payload.length;
+        }
+        out.flush();
+
+        if (frames.size() > 0) {
+            try (FileOutputStream fos = new FileOutputStream(mFile, true)) {
+                fos.write(frames.toByteArray());
+                fos.getFD().sync();
+            } catch (IOException e) {
+                truncate(mLength); // Later appends must not land after a partial frame
+                throw e;
+            }
+        }
+        synchronized (this) {
+            for (Map.Entry<UUID, Location> entry : written.entrySet()) {
+                setLocation(entry.getKey(), entry.getValue());
+            }
+            mLength = offset;
+            for (Map.Entry<UUID, Body> entry : batch.entrySet()) {
+                mPending.remove(entry.getKey(), entry.getValue()); // Unless put again meanwhile
+            }
+        }
+    }
+
+    /** True once superseded frames take up more room than the live ones. */
+    synchronized boolean needsCompaction() {
+        return mLength > COMPACT_MIN_BYTES && mLength - mLiveBytes > mLiveBytes;
+    }
+
+    /**
+     * Rewrites the file with the latest frame of each id in {@code liveIds}, dropping superseded
+     * frames and bodies of tasks that no longer exist. Writer thread only.
+     */
+    void compact(Set<UUID> liveIds) throws IOException {
+        MainThreadIo.check("Body store compaction");
+        Map<UUID, Location> keep = new LinkedHashMap<>();
+        synchronized (this) {
+            for (Map.Entry<UUID, Location> entry : mIndex.entrySet()) {
+                if (liveIds.contains(entry.getKey())) {
+                    keep.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        File temp = new File(mFile.getPath() + ".tmp");
+        Map<UUID, Location> moved = new HashMap<>();
+        long offset = 0;
+        try (RandomAccessFile in = new RandomAccessFile(mFile, "r");
+             FileOutputStream fos = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024))) {
+            byte[] frame = new byte[0];
+            for (Map.Entry<UUID, Location> entry : keep.entrySet()) {
+                Location location = entry.getValue();
+                int frameLength = 8 + location.length;
+                if (frame.length < frameLength) {
+                    frame = new byte[frameLength];
+                }
+                in.seek(location.offset);
+                in.readFully(frame, 0, frameLength);
+                out.write(frame, 0, frameLength);
+                moved.put(entry.getKey(), new Location(offset, location.length));
+                offset += frameLength;
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (!temp.renameTo(mFile)) {
+            throw new IOException("Could not move compacted " + mFile.getName() + " into place");
+        }
+        long before;
+        synchronized (this) {
+            before = mLength;
+            mIndex.clear();
+            mIndex.putAll(moved);
+            mLiveBytes = offset;
+            mLength = offset;
+        }
+        Log.d(TAG, "compact: " + before + " -> " + offset + " bytes, " + moved.size() + " bodies.");
+    }
+
+    // Caller holds the lock. A null location means the id has no body any more.
+    private void setLocation(UUID id, Location location) {
+        Location previous = location != null ? mIndex.put(id, location) : mIndex.remove(id);
+        if (previous != null) {
+            mLiveBytes -= 8 + previous.length;
+        }
+        if (location != null) {
+            mLiveBytes += 8 + location.length;
+        }
+    }
+
+    private byte[] encode(UUID id, Body body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+        if (!body.isEmpty()) {
+            OutputStreamWriter writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            JsonWriter json = new JsonWriter(writer);
+            json.beginObject();
+            json.name(FIELD_NOTE).value(body.note);
+            json.name(FIELD_SUBTASKS);
+            json.beginArray();
+            for (Subtask subtask : body.subtasks) {
+                mSubtaskAdapter.write(json, subtask);
+            }
+            json.endArray();
+            json.endObject();
+            json.flush();
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private Body decode(String text) throws IOException {
+        if (text.isEmpty()) {
+            return Body.EMPTY;
+        }
+        String note = null;
+        List<Subtask> subtasks = new ArrayList<>();
+        try (JsonReader in = new JsonReader(new StringReader(text))) {
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                } else if (FIELD_NOTE.equals(name)) {
+                    note = in.nextString();
+                } else if (FIELD_SUBTASKS.equals(name)) {
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        Subtask subtask = mSubtaskAdapter.read(in);
+                        if (subtask != null) {
+                            subtasks.add(subtask);
+                        }
+                    }
+                    in.endArray();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+        } catch (IllegalStateException e) {
+            throw new IOException("Malformed task body", e);
+        }
+        return new Body(note, Collections.unmodifiableList(subtasks));
+    }
+
+    private static void skipFully(DataInputStream in, int count) throws IOException {
+        while (count > 0) {
+            int skipped = in.skipBytes(count);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            count -= skipped;
+        }
+    }
+
+    private boolean truncate(long length) {
+        if (!mFile.exists()) {
+            return true;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            raf.setLength(length);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "truncate: Could not truncate " + mFile.getName() + " to " + length, e);
+            return false;
+        }
+    }
+}
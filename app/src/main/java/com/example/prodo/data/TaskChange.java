@@ -0,0 +1,73 @@
+package com.example.prodo.data;
+
+import java.util.UUID;
+
+/**
+ * One entry of TaskStore's change feed: a task that was added, updated or removed, with the
+ * sequence number of the published version it first appears in.
+ *
+ * {@code before} is the task as it was in the previous version (null for ADDED) and {@code after}
+ * the task in this version (null for REMOVED). Tasks are immutable, so before and after of an
+ * UPDATED change are different instances holding the old and the new values.
+ */
+public final class TaskChange {
+    public enum Type { ADDED, UPDATED, REMOVED }
+
+    private final long mSequence;
+    private final Type mType;
+    private final UUID mId;
+    private final Task mBefore;
+    private final Task mAfter;
+
+    TaskChange(long sequence, Type type, UUID id, Task before, Task after) {
+        mSequence = sequence;
+        mType = type;
+        mId = id;
+        mBefore = before;
+        mAfter = after;
+    }
+
+    public long getSequence() {
+        return mSequence;
+    }
+
+    public Type getType() {
+        return mType;
+    }
+
+    public UUID getId() {
+        return mId;
+    }
+
+    public Task getBefore() {
+        return mBefore;
+    }
+
+    public Task getAfter() {
+        return mAfter;
+    }
+
+    /**
+     * Folds {@code next} (a later change to the same task in the same batch) into this one, so a
+     * batch reports at most one change per task. Returns null if the two cancel out, e.g. a task
+     * added and removed again before anyone could see it.
+     */
+    TaskChange coalesce(TaskChange next) {
+        Task before = mBefore;
+        Task after = next.mAfter;
+        if (before == null && after == null) {
+            return null;
+        }
+        Type type = before == null ? Type.ADDED : after == null ? Type.REMOVED : Type.UPDATED;
+        return new TaskChange(next.mSequence, type, mId, before, after);
+    }
+
+    TaskChange withSequence(long sequence) {
+        return new TaskChange(sequence, mType, mId, mBefore, mAfter);
+    }
+
+    @Override
+    public String toString() {
+        return "TaskChange{" + mSequence + " " + mType + " " + mId + "}";
+    }
+}
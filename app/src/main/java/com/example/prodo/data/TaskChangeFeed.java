@@ -0,0 +1,78 @@
+package com.example.prodo.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Ordered log of the most recent {@link #CAPACITY} task changes.
+ *
+ * TaskStore records each mutation as it happens and commits them when it publishes a snapshot.
+ * Changes to the same task between two commits are coalesced into one, and committed changes get
+ * consecutive sequence numbers. A consumer remembers the last sequence it applied and asks for
+ * everything after it; if it fell so far behind that those changes were overwritten it gets null
+ * and rebuilds from a snapshot instead.
+ */
+final class TaskChangeFeed {
+    static final int CAPACITY = 1024;
+
+    private final TaskChange[] mRing = new TaskChange[CAPACITY];
+    private long mSequence; // sequence of the newest committed change; 0 before the first
+    // Recorded but not yet committed, one entry per task in first-touched order. Writer lock only.
+    private final LinkedHashMap<UUID, TaskChange> mPending = new LinkedHashMap<>();
+
+    /** Records a change for the next commit. Called under the TaskStore lock. */
+    void record(TaskChange.Type type, UUID id, Task before, Task after) {
+        TaskChange change = new TaskChange(0, type, id, before, after);
+        TaskChange earlier = mPending.get(id);
+        if (earlier == null) {
+            mPending.put(id, change);
+            return;
+        }
+        TaskChange merged = earlier.coalesce(change);
+        if (merged == null) {
+            mPending.remove(id);
+        } else {
+            mPending.put(id, merged);
+        }
+    }
+
+    /** Discards uncommitted changes, e.g. when a batch is rolled back. */
+    void discardPending() {
+        mPending.clear();
+    }
+
+    /** Numbers and appends everything recorded since the last commit. Returns the newest sequence. */
+    synchronized long commit() {
+        for (TaskChange change : mPending.values()) {
+            mSequence++;
+            mRing[(int) (mSequence % CAPACITY)] = change.withSequence(mSequence);
+        }
+        mPending.clear();
+        return mSequence;
+    }
+
+    synchronized long getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * Every committed change with a sequence greater than {@code sequence}, oldest first; empty if
+     * there are none. Null if some of them are no longer retained.
+     */
+    synchronized List<TaskChange> since(long sequence) {
+        if (sequence >= mSequence) {
+            return Collections.emptyList();
+        }
+        if (sequence < 0 || mSequence - sequence > CAPACITY) {
+            return null;
+        }
+        List<TaskChange> changes = new ArrayList<>((int) (mSequence - sequence));
+        for (long s = sequence + 1; s <= mSequence; s++) {
+            changes.add(mRing[(int) (s % CAPACITY)]);
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.prodo.data;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Secondary indexes over the tasks in a {@link TaskTable}: case-folded category, local due day,
+ * done and flagged, plus running pomodoro / time totals.
+ *
+ * Category, done and flagged are sets of table slots, so their tasks are read back in table order
+ * straight from the slots, one word of bits per 64 slots, with no id lookups. The table reports
+ * every slot change, including the moves of a compaction. Due days are sparse, so they map to ids.
+ *
+ * Tasks are immutable, so the task a slot held before a change still has the values it was
+ * indexed under; the table passes it in to take those entries out.
+ *
+ * Not thread-safe; TaskStore serialises access.
+ */
+final class TaskIndexes {
+
+    private static final long NO_DAY = Long.MIN_VALUE;
+    private static final BitSet EMPTY = new BitSet();
+
+    private final HashMap<String, BitSet> mSlotsByCategory = new HashMap<>();
+    private final TreeMap<Long, Set<UUID>> mIdsByDay = new TreeMap<>(); // sorted for range queries
+    private final BitSet mDoneSlots = new BitSet();
+    private final BitSet mFlaggedSlots = new BitSet();
+    private int mDoneCount;
+    private int mFlaggedCount;
+    private long mTotalPomodoros;
+    private long mTotalTimeSpentMillis;
+    private LocalDays mDays = LocalDays.current(); // zone the day index was built in
+
+    static String categoryKey(String category) {
+        return CategoryDictionary.foldedKey(category); // One shared key String per category
+    }
+
+    long epochDay(long millis) {
+        return mDays.epochDay(millis);
+    }
+
+    /** Indexes {@code task}, which the table keeps at {@code slot}. */
+    void add(Task task, int slot) {
+        String category = categoryKey(task.getCategory());
+        if (category != null) {
+            mSlotsByCategory.computeIfAbsent(category, k -> new BitSet()).set(slot);
+        }
+        long day = dayOf(task);
+        if (day != NO_DAY) {
+            mIdsByDay.computeIfAbsent(day, k -> new HashSet<>()).add(task.getId());
+        }
+        if (task.isDone()) {
+            mDoneSlots.set(slot);
+            mDoneCount++;
+        }
+        if (task.isFlagged()) {
+            mFlaggedSlots.set(slot);
+            mFlaggedCount++;
+        }
+        mTotalPomodoros += task.getPomodoroCount();
+        mTotalTimeSpentMillis += task.getTotalTimeSpentMillis();
+    }
+
+    /** Takes out {@code task}, which the table kept at {@code slot}. */
+    void remove(Task task, int slot) {
+        String category = categoryKey(task.getCategory());
+        if (category != null) {
+            BitSet slots = mSlotsByCategory.get(category);
+            slots.clear(slot);
+            if (slots.isEmpty()) {
+                mSlotsByCategory.remove(category);
+            }
+        }
+        long day = dayOf(task);
+        if (day != NO_DAY) {
+            removeFrom(mIdsByDay, day, task.getId());
+        }
+        if (task.isDone()) {
+            mDoneSlots.clear(slot);
+            mDoneCount--;
+        }
+        if (task.isFlagged()) {
+            mFlaggedSlots.clear(slot);
+            mFlaggedCount--;
+        }
+        mTotalPomodoros -= task.getPomodoroCount();
+        mTotalTimeSpentMillis -= task.getTotalTimeSpentMillis();
+    }
+
+    /** The table replaced {@code before} with {@code after} at {@code slot}. */
+    void update(Task before, Task after, int slot) {
+        remove(before, slot);
+        add(after, slot);
+    }
+
+    /** The table moved {@code task} from slot {@code from} to {@code to}, which was empty. */
+    void move(Task task, int from, int to) {
+        String category = categoryKey(task.getCategory());
+        if (category != null) {
+            moveBit(mSlotsByCategory.get(category), from, to);
+        }
+        if (task.isDone()) {
+            moveBit(mDoneSlots, from, to);
+        }
+        if (task.isFlagged()) {
+            moveBit(mFlaggedSlots, from, to);
+        }
+    }
+
+    void clear() {
+        mSlotsByCategory.clear();
+        mIdsByDay.clear();
+        mDoneSlots.clear();
+        mFlaggedSlots.clear();
+        mDoneCount = 0;
+        mFlaggedCount = 0;
+        mTotalPomodoros = 0;
+        mTotalTimeSpentMillis = 0;
+    }
+
+    /**
+     * Rebuilds the day index if the device time zone changed since it was built, since a task's
+     * local day depends on the zone. Everything else is zone-independent.
+     */
+    boolean checkZone(LocalDays days, TaskTable table) {
+        if (days.getZone().equals(mDays.getZone())) {
+            return false;
+        }
+        mDays = days;
+        clear();
+        for (int slot = 0, end = table.slotCount(); slot < end; slot++) {
+            Task task = table.taskAtSlot(slot);
+            if (task != null) {
+                add(task, slot);
+            }
+        }
+        return true;
+    }
+
+    /** The slots of the tasks in {@code category}; a view, not to be changed. */
+    BitSet slotsInCategory(String category) {
+        BitSet slots = mSlotsByCategory.get(categoryKey(category));
+        return slots != null ? slots : EMPTY;
+    }
+
+    int categoryCount(String category) {
+        return slotsInCategory(category).cardinality();
+    }
+
+    /** The ids due on each local day in [firstDay, lastDay], day by day; a view, nothing is copied. */
+    Collection<Set<UUID>> idsByDay(long firstDay, long lastDay) {
+        if (firstDay > lastDay) {
+            return Collections.emptySet();
+        }
+        return mIdsByDay.subMap(firstDay, true, lastDay, true).values();
+    }
+
+    /** The slots of the done tasks; a view, not to be changed. */
+    BitSet doneSlots() {
+        return mDoneSlots;
+    }
+
+    /** The slots of the flagged tasks; a view, not to be changed. */
+    BitSet flaggedSlots() {
+        return mFlaggedSlots;
+    }
+
+    int doneCount() {
+        return mDoneCount;
+    }
+
+    int flaggedCount() {
+        return mFlaggedCount;
+    }
+
+    long totalPomodoros() {
+        return mTotalPomodoros;
+    }
+
+    long totalTimeSpentMillis() {
+        return mTotalTimeSpentMillis;
+    }
+
+    // The zone only changes in checkZone, which rebuilds everything, so a task's day is the same
+    // when it is taken out as when it was added.
+    private long dayOf(Task task) {
+        long date = task.getDate();
+        // A date of 0 means "no date"; CalendarFragment never matched those either.
+        return date != 0 ? mDays.epochDay(date) : NO_DAY;
+    }
+
+    private static void moveBit(BitSet bits, int from, int to) {
+        bits.clear(from);
+        bits.set(to);
+    }
+
+    private static <K> void removeFrom(Map<K, Set<UUID>> index, K key, UUID id) {
+        Set<UUID> ids = index.get(key);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            index.remove(key);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.example.prodo.data;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of task mutations that sits next to the tasks.json snapshot.
+ *
+ * Every record is framed as [int payloadLength][int crc32(payload)][payload] where the payload
+ * is one op byte followed by a UTF-8 body (the task JSON for a put, the id string for a remove).
+ * Replaying the snapshot plus this journal gives the current task list. A record that was only
+ * partly written (app killed mid-append) fails the length or checksum test; with nothing intact
+ * after it, it is a torn tail and is cut off. A damaged record with intact ones after it is
+ * skipped and logged, and replay picks up again at the next frame that checks out.
+ *
+ * A batch record (one TaskStore transaction) wraps several puts/removes as [op][int length][body]
+ * entries. It is a single frame, so replay applies all of them or, if it was torn, none.
+ */
+class TaskJournal {
+    private static final String TAG = "TaskJournal";
+
+    static final byte OP_PUT = 1;
+    static final byte OP_REMOVE = 2;
+    static final byte OP_BATCH = 3;
+
+    // Anything bigger than this cannot be a real record, so the length prefix itself is torn.
+    static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    /** One encoded mutation, ready to be framed. Built on the mutating thread, written on the writer thread. */
+    static final class Record {
+        final byte op;
+        final byte[] payload;
+
+        private Record(byte op, String body) {
+            this(op, body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private Record(byte op, byte[] body) {
+            this.op = op;
+            payload = new byte[body.length + 1];
+            payload[0] = op;
+            System.arraycopy(body, 0, payload, 1, body.length);
+        }
+    }
+
+    /** Receives replayed records in the order they were appended. */
+    interface Replayer {
+        void put(Task task);
+        void remove(UUID id);
+    }
+
+    private final File mFile;
+    private final Gson mGson;
+
+    TaskJournal(File file, Gson gson) {
+        mFile = file;
+        mGson = gson;
+    }
+
+    long size() {
+        return mFile.length();
+    }
+
+    Record putRecord(Task task) {
+        return new Record(OP_PUT, mGson.toJson(task));
+    }
+
+    Record removeRecord(UUID id) {
+        return new Record(OP_REMOVE, id.toString());
+    }
+
+    /** Wraps put/remove records into one record that replays atomically. */
+    Record batchRecord(Collection<Record> records) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            for (Record record : records) {
+                out.writeByte(record.op);
+                out.writeInt(record.payload.length - 1);
+                out.write(record.payload, 1, record.payload.length - 1);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Can't happen for an in-memory stream
+        }
+        return new Record(OP_BATCH, bytes.toByteArray());
+    }
+
+    /** Appends all records with a single write() and a single fsync. */
+    void append(Collection<Record> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        MainThreadIo.check("Journal append");
+        int total = 0;
+        for (Record record : records) {
+            total += record.payload.length + 8;
+        }
+
+        // Build every frame first so they reach the file in a single write() call.
+        ByteArrayOutputStream frames = new ByteArrayOutputStream(total);
+        DataOutputStream out = new DataOutputStream(frames);
+        CRC32 crc = new CRC32();
+        for (Record record : records) {
+            crc.reset();
+            crc.update(record.payload, 0, record.payload.length);
+            out.writeInt(record.payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(record.payload);
+        }
+        out.flush();
+
+        long startLength = mFile.length();
+        try (FileOutputStream fos = new FileOutputStream(mFile, true)) {
+            fos.write(frames.toByteArray());
+            fos.getFD().sync();
+        } catch (IOException e) {
+            // Don't leave a partial frame behind, later appends would land after it and be lost on replay.
+            truncate(startLength);
+            throw e;
+        }
+    }
+
+    /**
+     * Replays every intact record into {@code replayer}. A torn tail is truncated so later appends
+     * start from a clean end; damage in the middle of the file is skipped over, not truncated, so
+     * the committed records after it still replay.
+     *
+     * @return the number of records replayed.
+     */
+    int replay(Replayer replayer) {
+        if (!mFile.exists() || mFile.length() == 0) {
+            return 0;
+        }
+        byte[] data;
+        MainThreadIo.check("Journal replay");
+        try {
+            data = readAll(); // Compacted at TaskWriter.JOURNAL_COMPACT_THRESHOLD_BYTES, so small
+        } catch (IOException e) {
+            Log.e(TAG, "replay: Error reading " + mFile.getName() + ". Leaving it as it is.", e);
+            return 0;
+        }
+
+        int applied = 0;
+        int offset = 0;
+        CRC32 crc = new CRC32();
+        while (offset < data.length) {
+            int length = frameLength(data, offset, crc);
+            if (length < 0) {
+                int next = nextFrame(data, offset + 1, crc);
+                if (next < 0) {
+                    Log.w(TAG, "replay: Torn record at offset " + offset + ". Truncating journal.");
+                    truncate(offset);
+                    break;
+                }
+                Log.e(TAG, "replay: Skipping corrupt bytes " + offset + " to " + next + " of " + mFile.getName()
+                        + "; the records after them still apply.");
+                offset = next;
+                continue;
+            }
+
+            byte[] payload = Arrays.copyOfRange(data, offset + 8, offset + 8 + length);
+            try {
+                if (payload[0] == OP_BATCH) {
+                    applyBatch(payload, replayer);
+                } else {
+                    applyRecord(payload[0], new String(payload, 1, payload.length - 1, StandardCharsets.UTF_8), replayer);
+                }
+            } catch (RuntimeException e) {
+                // Checksum was fine, so the record is complete; just skip what we can't decode.
+                Log.e(TAG, "replay: Skipping undecodable record at offset " + offset, e);
+            }
+            applied++;
+            offset += 8 + length;
+        }
+        Log.d(TAG, "replay: Applied " + applied + " journal records from " + mFile.getName());
+        return applied;
+    }
+
+    private byte[] readAll() throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(mFile))) {
+            byte[] data = new byte[(int) mFile.length()];
+            in.readFully(data);
+            return data;
+        }
+    }
+
+    // The payload length of the frame at offset, or -1 if there is no intact frame there.
+    private static int frameLength(byte[] data, int offset, CRC32 crc) {
+        if (data.length - offset < 9) {
+            return -1;
+        }
+        ByteBuffer header = ByteBuffer.wrap(data, offset, 8);
+        int length = header.getInt();
+        int storedCrc = header.getInt();
+        if (length < 1 || length > MAX_RECORD_BYTES || length > data.length - offset - 8) {
+            return -1;
+        }
+        byte op = data[offset + 8];
+        if (op != OP_PUT && op != OP_REMOVE && op != OP_BATCH) {
+            return -1; // Cheap check before the checksum
+        }
+        crc.reset();
+        crc.update(data, offset + 8, length);
+        return (int) crc.getValue() == storedCrc ? length : -1;
+    }
+
+    // The offset of the first intact frame at or after from, or -1 if there is none.
+    private static int nextFrame(byte[] data, int from, CRC32 crc) {
+        for (int offset = from; offset < data.length; offset++) {
+            if (frameLength(data, offset, crc) >= 0) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    // Decodes every entry before applying any, so a bad entry skips the whole batch.
+    private void applyBatch(byte[] payload, Replayer replayer) {
+        List<Runnable> entries = new ArrayList<>();
+        ByteBuffer in = ByteBuffer.wrap(payload, 1, payload.length - 1);
+        while (in.hasRemaining()) {
+            byte op = in.get();
+            int length = in.getInt();
+            String body = new String(payload, in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            if (op == OP_PUT) {
+                Task task = mGson.fromJson(body, Task.class);
+                if (task != null) {
+                    entries.add(() -> replayer.put(task));
+                }
+            } else if (op == OP_REMOVE) {
+                UUID id = UUID.fromString(body);
+                entries.add(() -> replayer.remove(id));
+            } else {
+                throw new IllegalArgumentException("Unknown op " + op + " in batch");
+            }
+        }
+        for (Runnable entry : entries) {
+            entry.run();
+        }
+    }
+
+    private void applyRecord(byte op, String body, Replayer replayer) {
+        switch (op) {
+            case OP_PUT:
+                Task task = mGson.fromJson(body, Task.class);
+                if (task != null) {
+                    replayer.put(task);
+                }
+                break;
+            case OP_REMOVE:
+                replayer.remove(UUID.fromString(body));
+                break;
+            default:
+                Log.w(TAG, "applyRecord: Unknown op " + op + ". Skipping.");
+        }
+    }
+
+    /** Drops every record, called once the records have been folded into a new snapshot. */
+    void reset() throws IOException {
+        if (!truncate(0)) {
+            throw new IOException("Could not reset " + mFile.getName());
+        }
+    }
+
+    private boolean truncate(long length) {
+        if (!mFile.exists()) {
+            return true;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            raf.setLength(length);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "truncate: Could not truncate " + mFile.getName() + " to " + length, e);
+            return false;
+        }
+    }
+}
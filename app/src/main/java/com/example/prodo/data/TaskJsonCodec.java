@@ -0,0 +1,88 @@
+package com.example.prodo.data;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Streams the tasks.json array one task at a time.
+ *
+ * The file is never held as a String: reading pulls one Task off a JsonReader and hands it to the
+ * caller, writing pushes one Task at a time into a buffered JsonWriter. Peak extra heap is one
+ * task plus the stream buffers, no matter how long the file is.
+ */
+final class TaskJsonCodec {
+    private static final String TAG = "TaskJsonCodec";
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private TaskJsonCodec() {
+    }
+
+    /**
+     * Decodes a JSON array of tasks from {@code in}, calling {@code sink} for every non-null task.
+     * An empty stream counts as an empty array. The stream is not closed.
+     *
+     * @return the number of tasks passed to {@code sink}.
+     */
+    static int read(InputStream in, Gson gson, Consumer<Task> sink) throws IOException {
+        TypeAdapter<Task> adapter = gson.getAdapter(Task.class);
+        JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE));
+
+        try {
+            if (reader.peek() == JsonToken.END_DOCUMENT) {
+                return 0;
+            }
+        } catch (EOFException e) {
+            return 0; // Zero-length file
+        }
+
+        int count = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                Log.w(TAG, "read: Found a null task entry. Skipping.");
+                continue;
+            }
+            Task task = adapter.read(reader);
+            if (task != null) {
+                sink.accept(task);
+                count++;
+            }
+        }
+        reader.endArray();
+        return count;
+    }
+
+    /** Encodes {@code tasks} as a JSON array into {@code out}. Flushes but does not close the stream. */
+    static void write(OutputStream out, Gson gson, Iterable<Task> tasks) throws IOException {
+        TypeAdapter<Task> adapter = gson.getAdapter(Task.class);
+        JsonWriter writer = new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE));
+        writer.setSerializeNulls(false); // Same output as gson.toJson(), which drops null fields
+        writer.beginArray();
+        for (Task task : tasks) {
+            if (task != null) {
+                adapter.write(writer, task);
+            }
+        }
+        writer.endArray();
+        writer.flush();
+    }
+}
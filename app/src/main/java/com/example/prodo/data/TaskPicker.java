@@ -0,0 +1,330 @@
+package com.example.prodo.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Fuzzy type-ahead over task titles, for picking a task. A title matches when the typed characters
+ * appear in it in order (spaces in the query are ignored): "wkrp" finds "Weekly report". Matches
+ * score higher for characters at the start of words, in a row, and without gaps; ties go to undone
+ * tasks, then recently used ones, then the most recent date. With nothing typed it offers the
+ * recently used tasks and then the undone ones.
+ *
+ * Built once from a snapshot, off the main thread ({@link TaskStore#newTaskPicker}); after that each
+ * keystroke only looks at likely candidates. Every title has a mask of the characters it contains,
+ * and a posting list per character lists the titles containing it, so a new query starts from the
+ * list of its rarest character. A query that extends the previous one starts from the previous
+ * matches instead, as nothing else can match.
+ *
+ * Not thread-safe: made for the UI thread of one picker.
+ */
+public final class TaskPicker {
+    private static final int BUCKETS = 64; // Bits in a character mask
+    private static final int SCORE_MATCH = 16;
+    private static final int BONUS_FIRST_CHAR = 8;
+    private static final int BONUS_WORD_START = 8;
+    private static final int BONUS_CONSECUTIVE = 6;
+    private static final int PENALTY_GAP_START = 3;
+    private static final int PENALTY_GAP_EXTENSION = 1;
+    private static final int MAX_GAP_PENALTY = 8;
+
+    private final Task[] mTasks;
+    private final char[][] mTitles; // Lower-cased
+    private final long[] mMasks;
+    private final int[] mRecentRanks; // Higher is more recently used, 0 if not recent
+    private final int[][] mPostings = new int[BUCKETS][];
+    private final List<Task> mDefaults;
+
+    // The previous query and everything it matched, to narrow from while the user keeps typing.
+    private String mLastQuery = "";
+    private int[] mLastMatches = new int[0];
+    private int mLastMatchCount;
+    private int[] mScores;
+
+    /**
+     * @param tasks       the tasks to pick from
+     * @param recentIds   recently used tasks, most recent first; ids no longer in {@code tasks} are skipped
+     */
+    public TaskPicker(Iterable<Task> tasks, List<UUID> recentIds) {
+        List<Task> list = new ArrayList<>();
+        for (Task task : tasks) {
+            list.add(task);
+        }
+        int count = list.size();
+        mTasks = list.toArray(new Task[0]);
+        mTitles = new char[count][];
+        mMasks = new long[count];
+        mRecentRanks = new int[count];
+        mScores = new int[count];
+
+        Map<UUID, Integer> indexById = new HashMap<>(count * 2);
+        int[] bucketSizes = new int[BUCKETS];
+        for (int i = 0; i < count; i++) {
+            String title = mTasks[i].getTitle();
+            mTitles[i] = title != null ? title.toLowerCase(Locale.ROOT).toCharArray() : new char[0];
+            long mask = 0;
+            for (char c : mTitles[i]) {
+                mask |= 1L << bucket(c);
+            }
+            mMasks[i] = mask;
+            for (int b = 0; b < BUCKETS; b++) {
+                if ((mask & 1L << b) != 0) {
+                    bucketSizes[b]++;
+                }
+            }
+            indexById.put(mTasks[i].getId(), i);
+        }
+        for (int b = 0; b < BUCKETS; b++) {
+            mPostings[b] = new int[bucketSizes[b]];
+            bucketSizes[b] = 0;
+        }
+        for (int i = 0; i < count; i++) {
+            long mask = mMasks[i];
+            while (mask != 0) {
+                int b = Long.numberOfTrailingZeros(mask);
+                mPostings[b][bucketSizes[b]++] = i;
+                mask &= mask - 1;
+            }
+        }
+
+        List<Task> defaults = new ArrayList<>();
+        for (int r = 0; r < recentIds.size(); r++) {
+            Integer index = indexById.get(recentIds.get(r));
+            if (index != null && mRecentRanks[index] == 0) {
+                mRecentRanks[index] = recentIds.size() - r;
+                defaults.add(mTasks[index]);
+            }
+        }
+        List<Task> undone = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (!mTasks[i].isDone() && mRecentRanks[i] == 0) {
+                undone.add(mTasks[i]);
+            }
+        }
+        Collections.sort(undone, (a, b) -> Long.compare(b.getDate(), a.getDate()));
+        defaults.addAll(undone);
+        mDefaults = Collections.unmodifiableList(defaults);
+    }
+
+    public int size() {
+        return mTasks.length;
+    }
+
+    /** The best matches for {@code query}, at most {@code limit}; the default list if it's blank. */
+    public List<Task> match(String query, int limit) {
+        String folded = fold(query);
+        if (folded.isEmpty()) {
+            mLastQuery = "";
+            mLastMatchCount = 0;
+            return mDefaults.size() <= limit ? mDefaults : mDefaults.subList(0, limit);
+        }
+        char[] chars = folded.toCharArray();
+        long queryMask = 0;
+        for (char c : chars) {
+            queryMask |= 1L << bucket(c);
+        }
+
+        int[] candidates;
+        int candidateCount;
+        if (!mLastQuery.isEmpty() && folded.startsWith(mLastQuery)) {
+            candidates = mLastMatches;
+            candidateCount = mLastMatchCount;
+        } else {
+            candidates = mPostings[bucket(chars[0])];
+            for (char c : chars) {
+                int[] postings = mPostings[bucket(c)];
+                if (postings.length < candidates.length) {
+                    candidates = postings;
+                }
+            }
+            candidateCount = candidates.length;
+        }
+
+        int[] matches = candidates == mLastMatches ? candidates : new int[candidateCount];
+        int matchCount = 0;
+        for (int c = 0; c < candidateCount; c++) {
+            int index = candidates[c];
+            if ((mMasks[index] & queryMask) != queryMask) {
+                continue;
+            }
+            int score = score(mTitles[index], chars);
+            if (score != Integer.MIN_VALUE) {
+                mScores[index] = score;
+                matches[matchCount++] = index; // In place when narrowing: never ahead of c
+            }
+        }
+        mLastQuery = folded;
+        mLastMatches = matches;
+        mLastMatchCount = matchCount;
+        return best(matches, matchCount, limit);
+    }
+
+    // ---- Scoring ----
+
+    /**
+     * The score of the best-looking match of {@code query} in {@code title}, or Integer.MIN_VALUE if
+     * the query isn't a subsequence of it. Finds the first window containing the match, shrinks it
+     * from the end so it is as short as possible, then scores the characters matched in it.
+     */
+    static int score(char[] title, char[] query) {
+        int q = 0;
+        int end = -1;
+        for (int i = 0; i < title.length; i++) {
+            if (title[i] == query[q] && ++q == query.length) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            return Integer.MIN_VALUE;
+        }
+        int start = end;
+        q = query.length - 1;
+        for (int i = end; i >= 0; i--) {
+            if (title[i] == query[q]) {
+                start = i;
+                if (--q < 0) {
+                    break;
+                }
+            }
+        }
+
+        int score = 0;
+        int previous = -1;
+        q = 0;
+        for (int i = start; i <= end && q < query.length; i++) {
+            if (title[i] != query[q]) {
+                continue;
+            }
+            score += SCORE_MATCH;
+            if (i == 0) {
+                score += BONUS_FIRST_CHAR;
+            }
+            if (i == 0 || !Character.isLetterOrDigit(title[i - 1])) {
+                score += BONUS_WORD_START;
+            }
+            if (previous >= 0) {
+                int gap = i - previous - 1;
+                if (gap == 0) {
+                    score += BONUS_CONSECUTIVE;
+                } else {
+                    score -= Math.min(MAX_GAP_PENALTY, PENALTY_GAP_START + (gap - 1) * PENALTY_GAP_EXTENSION);
+                }
+            }
+            previous = i;
+            q++;
+        }
+        return score;
+    }
+
+    // ---- Internals ----
+
+    private static String fold(String query) {
+        if (query == null) {
+            return "";
+        }
+        StringBuilder folded = new StringBuilder(query.length());
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                folded.append(c);
+            }
+        }
+        return folded.toString().toLowerCase(Locale.ROOT);
+    }
+
+    // Letters and digits get a bit each; anything else shares the rest.
+    private static int bucket(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a';
+        }
+        if (c >= '0' && c <= '9') {
+            return 26 + (c - '0');
+        }
+        return 36 + c % (BUCKETS - 36);
+    }
+
+    // Best `limit` of the matches, via a heap with the worst of them at the root.
+    private List<Task> best(int[] matches, int matchCount, int limit) {
+        int[] heap = new int[Math.max(0, Math.min(limit, matchCount))];
+        int heapSize = 0;
+        for (int m = 0; m < matchCount; m++) {
+            int index = matches[m];
+            if (heapSize < heap.length) {
+                heap[heapSize] = index;
+                siftUp(heap, heapSize++);
+            } else if (heapSize > 0 && ranksBefore(index, heap[0])) {
+                heap[0] = index;
+                siftDown(heap, heapSize);
+            }
+        }
+        Task[] result = new Task[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            result[i] = mTasks[heap[0]]; // Worst first, so fill from the back
+            heap[0] = heap[i];
+            siftDown(heap, i);
+        }
+        return Arrays.asList(result);
+    }
+
+    // Higher score first, then undone, recently used, the later date, and the lower index.
+    private boolean ranksBefore(int a, int b) {
+        if (mScores[a] != mScores[b]) {
+            return mScores[a] > mScores[b];
+        }
+        boolean aDone = mTasks[a].isDone();
+        if (aDone != mTasks[b].isDone()) {
+            return !aDone;
+        }
+        if (mRecentRanks[a] != mRecentRanks[b]) {
+            return mRecentRanks[a] > mRecentRanks[b];
+        }
+        if (mTasks[a].getDate() != mTasks[b].getDate()) {
+            return mTasks[a].getDate() > mTasks[b].getDate();
+        }
+        return a < b;
+    }
+
+    private void siftUp(int[] heap, int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!ranksBefore(heap[parent], heap[index])) {
+                return;
+            }
+            swap(heap, parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int size) {
+        int index = 0;
+        while (true) {
+            int worst = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && ranksBefore(heap[worst], heap[left])) {
+                worst = left;
+            }
+            if (right < size && ranksBefore(heap[worst], heap[right])) {
+                worst = right;
+            }
+            if (worst == index) {
+                return;
+            }
+            swap(heap, index, worst);
+            index = worst;
+        }
+    }
+
+    private static void swap(int[] heap, int a, int b) {
+        int tmp = heap[a];
+        heap[a] = heap[b];
+        heap[b] = tmp;
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.prodo.data;
+
+import java.util.Locale;
+
+/**
+ * A query over the task list, run with {@link TaskStore#query} or {@link TaskStore#count}:
+ * predicates that must all hold, an order, and an offset and limit into the ordered matches.
+ * Immutable; build one with {@link Builder}.
+ *
+ * <pre>
+ *   TaskQuery query = new TaskQuery.Builder()
+ *           .setCategory("Work")
+ *           .setDone(false)
+ *           .setOrder(TaskQuery.Order.DATE)
+ *           .setLimit(20)
+ *           .build();
+ * </pre>
+ *
+ * The store answers from whichever of its indexes (category, due day, done, flagged) narrows the
+ * tasks down most, so a query costs time in proportion to what that index returns rather than to
+ * the size of the task list (plus one bit per task to skip over for category, done and flagged);
+ * a query no index helps with scans the list. See {@link TaskQueryPlanner}.
+ */
+public final class TaskQuery {
+    /** Order of the results. Ties keep the task list's order, which is the order tasks were added. */
+    public enum Order {
+        /** The task list's order. */
+        STORE,
+        /** Undone tasks first, each group in the task list's order; how the task list shows them. */
+        UNDONE_FIRST,
+        /** Earliest due date first. */
+        DATE,
+        /** Latest due date first. */
+        DATE_DESCENDING,
+        /** By title, ignoring case; untitled tasks last. */
+        TITLE
+    }
+
+    /** Every task, in the task list's order. */
+    public static final TaskQuery ALL = new Builder().build();
+
+    final String category;   // Matched ignoring case; null for any
+    final Boolean done;      // null for either
+    final Boolean flagged;   // null for either
+    final boolean hasDays;   // Due on a local day from the day of fromMillis to that of toMillis
+    final long fromMillis;
+    final long toMillis;
+    final String titleText;  // Lower-cased; null for any
+    final Boolean hasSubtasks; // null for either
+    final Order order;
+    final int offset;
+    final int limit;
+
+    private TaskQuery(Builder builder) {
+        category = builder.mCategory;
+        done = builder.mDone;
+        flagged = builder.mFlagged;
+        hasDays = builder.mHasDays;
+        fromMillis = builder.mFromMillis;
+        toMillis = builder.mToMillis;
+        titleText = builder.mTitleText;
+        hasSubtasks = builder.mHasSubtasks;
+        order = builder.mOrder;
+        offset = builder.mOffset;
+        limit = builder.mLimit;
+    }
+
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * True if {@code task} satisfies every predicate; order, offset and limit don't apply. Due days
+     * are taken in the device's current time zone. For keeping a list from {@link TaskStore#query}
+     * up to date from the change feed.
+     */
+    public boolean matches(Task task) {
+        LocalDays days = LocalDays.current();
+        return matches(task, TaskIndexes.categoryKey(category), days.epochDay(fromMillis), days.epochDay(toMillis), days);
+    }
+
+    // With the category key and the first and last day worked out once per query.
+    boolean matches(Task task, String categoryKey, long firstDay, long lastDay, LocalDays days) {
+        if (category != null && !categoryKey.equals(TaskIndexes.categoryKey(task.getCategory()))) {
+            return false;
+        }
+        if (done != null && task.isDone() != done) {
+            return false;
+        }
+        if (flagged != null && task.isFlagged() != flagged) {
+            return false;
+        }
+        if (hasDays) {
+            // A date of 0 means "no date", which no day range matches.
+            if (task.getDate() == 0) {
+                return false;
+            }
+            long day = days.epochDay(task.getDate());
+            if (day < firstDay || day > lastDay) {
+                return false;
+            }
+        }
+        if (hasSubtasks != null && (task.getSubtaskCount() > 0) != hasSubtasks) {
+            return false;
+        }
+        return titleText == null
+                || (task.getTitle() != null && task.getTitle().toLowerCase(Locale.ROOT).contains(titleText));
+    }
+
+    public static final class Builder {
+        private String mCategory;
+        private Boolean mDone;
+        private Boolean mFlagged;
+        private boolean mHasDays;
+        private long mFromMillis;
+        private long mToMillis;
+        private String mTitleText;
+        private Boolean mHasSubtasks;
+        private Order mOrder = Order.STORE;
+        private int mOffset;
+        private int mLimit = Integer.MAX_VALUE;
+
+        public Builder() {
+        }
+
+        private Builder(TaskQuery query) {
+            mCategory = query.category;
+            mDone = query.done;
+            mFlagged = query.flagged;
+            mHasDays = query.hasDays;
+            mFromMillis = query.fromMillis;
+            mToMillis = query.toMillis;
+            mTitleText = query.titleText;
+            mHasSubtasks = query.hasSubtasks;
+            mOrder = query.order;
+            mOffset = query.offset;
+            mLimit = query.limit;
+        }
+
+        /** Tasks in {@code category}, ignoring case; null for any category. */
+        public Builder setCategory(String category) {
+            mCategory = category;
+            return this;
+        }
+
+        /** Only done, or only undone, tasks; null for either. */
+        public Builder setDone(Boolean done) {
+            mDone = done;
+            return this;
+        }
+
+        public Builder setFlagged(Boolean flagged) {
+            mFlagged = flagged;
+            return this;
+        }
+
+        /** Tasks due on a local calendar day from the day of {@code fromMillis} to that of {@code toMillis}, inclusive. */
+        public Builder setDueOnDays(long fromMillis, long toMillis) {
+            mHasDays = true;
+            mFromMillis = fromMillis;
+            mToMillis = toMillis;
+            return this;
+        }
+
+        /** Tasks due on the local calendar day containing {@code millisInDay}. */
+        public Builder setDueOnDay(long millisInDay) {
+            return setDueOnDays(millisInDay, millisInDay);
+        }
+
+        /** Tasks whose title contains {@code text}, ignoring case; null or empty for any. */
+        public Builder setTitleContains(String text) {
+            mTitleText = text == null || text.isEmpty() ? null : text.toLowerCase(Locale.ROOT);
+            return this;
+        }
+
+        public Builder setHasSubtasks(Boolean hasSubtasks) {
+            mHasSubtasks = hasSubtasks;
+            return this;
+        }
+
+        public Builder setOrder(Order order) {
+            mOrder = order != null ? order : Order.STORE;
+            return this;
+        }
+
+        /** Skips the first {@code offset} matches in order. */
+        public Builder setOffset(int offset) {
+            mOffset = Math.max(0, offset);
+            return this;
+        }
+
+        /** At most {@code limit} results. */
+        public Builder setLimit(int limit) {
+            mLimit = Math.max(0, limit);
+            return this;
+        }
+
+        public TaskQuery build() {
+            return new TaskQuery(this);
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package com.example.prodo.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Runs a {@link TaskQuery} against a {@link TaskTable}.
+ *
+ * The plan picks where candidates come from: the cheapest of the indexes that apply to the query
+ * (category, due days, done, flagged), or a scan of the whole table. The category, done and
+ * flagged indexes are sets of slots, read in table order, so one of their candidates costs about
+ * what a scanned slot does and the smaller source wins. The due-day index holds ids, and each of
+ * its candidates costs an id lookup and a jump to wherever its slot is, so it is used only when it
+ * returns under a tenth or so of the table (see DAY_CANDIDATE_COST).
+ * Candidates are then streamed through the query's predicates one at a time; nothing
+ * in between is collected into a list. Matches go straight into the result when the order is the
+ * table's own and the candidates come in that order (every source but due days; the stream stops
+ * as soon as the page is full), into a bounded heap for a page in another order, and are only
+ * sorted in full when every match is asked for.
+ *
+ * Counting a query that a single index answers exactly (only a category, say, or only "not done")
+ * doesn't look at any task.
+ *
+ * Not thread-safe; TaskStore holds its lock while it runs, as for the other index queries.
+ */
+final class TaskQueryPlanner {
+    // Cost of one due-day candidate, in scanned slots; measured on TaskQueryBenchmark. Candidates
+    // from the slot indexes cost one.
+    private static final int DAY_CANDIDATE_COST = 10;
+
+    enum Source { SCAN, CATEGORY, DAYS, DONE, FLAGGED }
+
+    /** Where a query's candidates come from, and how many there are. */
+    static final class Plan {
+        final Source source;
+        final int candidates;
+        final long cost; // In scanned slots
+        // Every candidate matches: the query has no predicate besides the one the source answers.
+        final boolean exact;
+
+        Plan(Source source, int candidates, boolean exact) {
+            this.source = source;
+            this.candidates = candidates;
+            this.cost = (long) candidates * (source == Source.DAYS ? DAY_CANDIDATE_COST : 1);
+            this.exact = exact;
+        }
+
+        // Candidates come in table order.
+        boolean inTableOrder() {
+            return source != Source.DAYS;
+        }
+
+        @Override
+        public String toString() {
+            return source + " (" + candidates + " candidates" + (exact ? ", exact" : "") + ")";
+        }
+    }
+
+    private final TaskTable mTable;
+    private final TaskIndexes mIndexes;
+    private final TaskQuery mQuery;
+    private final String mCategoryKey;
+    private final long mFirstDay;
+    private final long mLastDay;
+    private final LocalDays mDays;
+
+    // Matches, as table slots: the result in table order, or a heap with the worst match at the root.
+    private int[] mSlots = new int[16];
+    private int mSlotCount;
+    private int mSkipped; // Matches dropped for the offset while streaming in table order
+
+    private TaskQueryPlanner(TaskTable table, TaskQuery query, LocalDays days) {
+        mTable = table;
+        mIndexes = table.indexes();
+        mQuery = query;
+        mCategoryKey = TaskIndexes.categoryKey(query.category);
+        mDays = days;
+        mFirstDay = mIndexes.epochDay(query.fromMillis);
+        mLastDay = mIndexes.epochDay(query.toMillis);
+    }
+
+    /**
+     * The plan for {@code query}: the cheapest index, if that beats a scan. The
+     * day index must be current for the device's time zone; TaskStore checks that before querying.
+     */
+    static Plan plan(TaskTable table, TaskQuery query) {
+        Plan scan = new Plan(Source.SCAN, table.size(), predicateCount(query) == 0);
+        Plan index = indexPlan(table, query);
+        return index != null && index.cost < scan.cost ? index : scan;
+    }
+
+    // The cheapest index for query, or null if none applies.
+    private static Plan indexPlan(TaskTable table, TaskQuery query) {
+        TaskIndexes indexes = table.indexes();
+        boolean exact = predicateCount(query) == 1;
+        Plan best = null;
+        if (query.category != null) {
+            best = cheaper(best, new Plan(Source.CATEGORY, indexes.categoryCount(query.category), exact));
+        }
+        if (query.hasDays) {
+            int count = 0;
+            for (Set<UUID> day : indexes.idsByDay(indexes.epochDay(query.fromMillis), indexes.epochDay(query.toMillis))) {
+                count += day.size();
+            }
+            best = cheaper(best, new Plan(Source.DAYS, count, exact));
+        }
+        if (Boolean.TRUE.equals(query.done)) {
+            best = cheaper(best, new Plan(Source.DONE, indexes.doneCount(), exact));
+        }
+        if (Boolean.TRUE.equals(query.flagged)) {
+            best = cheaper(best, new Plan(Source.FLAGGED, indexes.flaggedCount(), exact));
+        }
+        return best;
+    }
+
+    /** The tasks matching {@code query}, in its order, after its offset and up to its limit. */
+    static List<Task> run(TaskTable table, TaskQuery query, LocalDays days) {
+        return run(table, query, plan(table, query), days);
+    }
+
+    // With a given plan; the benchmark passes a scan to compare against.
+    static List<Task> run(TaskTable table, TaskQuery query, Plan plan, LocalDays days) {
+        if (query.limit == 0) {
+            return new ArrayList<>();
+        }
+        return new TaskQueryPlanner(table, query, days).collect(plan);
+    }
+
+    /** Number of tasks matching {@code query}'s predicates; its order, offset and limit don't apply. */
+    static int count(TaskTable table, TaskQuery query, LocalDays days) {
+        Plan index = indexPlan(table, query);
+        if (predicateCount(query) == 0 || (index != null && index.exact)) {
+            return index != null ? index.candidates : table.size();
+        }
+        if (predicateCount(query) == 1 && query.done != null) {
+            return table.size() - table.indexes().doneCount(); // Only "not done"
+        }
+        if (predicateCount(query) == 1 && query.flagged != null) {
+            return table.size() - table.indexes().flaggedCount(); // Only "not flagged"
+        }
+        int[] count = {0};
+        new TaskQueryPlanner(table, query, days).stream(plan(table, query), slot -> {
+            count[0]++;
+            return true;
+        });
+        return count[0];
+    }
+
+    static Plan scanPlan(TaskTable table) {
+        return new Plan(Source.SCAN, table.size(), false);
+    }
+
+    // ---- Streaming ----
+
+    private interface SlotSink {
+        /** Takes one matching task's slot; false to stop the stream. */
+        boolean accept(int slot);
+    }
+
+    // Feeds the slot of every match to the sink, candidates from the planned source.
+    private void stream(Plan plan, SlotSink sink) {
+        switch (plan.source) {
+            case SCAN:
+                for (int slot = 0, end = mTable.slotCount(); slot < end; slot++) {
+                    Task task = mTable.taskAtSlot(slot);
+                    if (task != null && matches(task) && !sink.accept(slot)) {
+                        return;
+                    }
+                }
+                return;
+            case CATEGORY:
+                streamSlots(mIndexes.slotsInCategory(mQuery.category), sink);
+                return;
+            case DAYS:
+                for (Set<UUID> day : mIndexes.idsByDay(mFirstDay, mLastDay)) {
+                    if (!streamIds(day, sink)) {
+                        return;
+                    }
+                }
+                return;
+            case DONE:
+                streamSlots(mIndexes.doneSlots(), sink);
+                return;
+            case FLAGGED:
+                streamSlots(mIndexes.flaggedSlots(), sink);
+        }
+    }
+
+    private void streamSlots(BitSet slots, SlotSink sink) {
+        for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+            if (matches(mTable.taskAtSlot(slot)) && !sink.accept(slot)) {
+                return;
+            }
+        }
+    }
+
+    private boolean streamIds(Collection<UUID> ids, SlotSink sink) {
+        for (UUID id : ids) {
+            Integer slot = mTable.slotOf(id);
+            if (slot != null && matches(mTable.taskAtSlot(slot)) && !sink.accept(slot)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(Task task) {
+        return mQuery.matches(task, mCategoryKey, mFirstDay, mLastDay, mDays);
+    }
+
+    // ---- Collecting ----
+
+    private List<Task> collect(Plan plan) {
+        long window = (long) mQuery.offset + mQuery.limit; // Matches that can end up in the page
+        if (mQuery.order == TaskQuery.Order.STORE && plan.inTableOrder()) {
+            // Already in order: skip the offset, stop once the page is full.
+            stream(plan, slot -> {
+                if (mSkipped < mQuery.offset) {
+                    mSkipped++;
+                    return true;
+                }
+                add(slot);
+                return mSlotCount < mQuery.limit;
+            });
+            return tasksFor(0, mSlotCount);
+        }
+        if (window < Integer.MAX_VALUE) {
+            int heapSize = (int) window;
+            stream(plan, slot -> {
+                if (mSlotCount < heapSize) {
+                    add(slot);
+                    siftUp(mSlotCount - 1);
+                } else if (ranksBefore(slot, mSlots[0])) {
+                    mSlots[0] = slot;
+                    siftDown(mSlotCount);
+                }
+                return true;
+            });
+            // Take the worst off the root until the heap holds the page, sorted from the back.
+            for (int i = mSlotCount - 1; i > 0; i--) {
+                int worst = mSlots[0];
+                mSlots[0] = mSlots[i];
+                mSlots[i] = worst;
+                siftDown(i);
+            }
+            return tasksFor(mQuery.offset, mSlotCount);
+        }
+        stream(plan, slot -> {
+            add(slot);
+            return true;
+        });
+        sort();
+        return tasksFor(mQuery.offset, mSlotCount);
+    }
+
+    private void add(int slot) {
+        if (mSlotCount == mSlots.length) {
+            mSlots = Arrays.copyOf(mSlots, mSlotCount * 2);
+        }
+        mSlots[mSlotCount++] = slot;
+    }
+
+    private void sort() {
+        if (mQuery.order == TaskQuery.Order.STORE) {
+            Arrays.sort(mSlots, 0, mSlotCount); // Slots are the table order
+            return;
+        }
+        Integer[] boxed = new Integer[mSlotCount];
+        for (int i = 0; i < mSlotCount; i++) {
+            boxed[i] = mSlots[i];
+        }
+        Arrays.sort(boxed, this::compare);
+        for (int i = 0; i < mSlotCount; i++) {
+            mSlots[i] = boxed[i];
+        }
+    }
+
+    private List<Task> tasksFor(int from, int to) {
+        if (from >= to) {
+            return new ArrayList<>();
+        }
+        List<Task> tasks = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            tasks.add(mTable.taskAtSlot(mSlots[i]));
+        }
+        return tasks;
+    }
+
+    // ---- Ordering ----
+
+    // The query's order, then table order, so results are stable.
+    private int compare(int slotA, int slotB) {
+        Task a = mTable.taskAtSlot(slotA);
+        Task b = mTable.taskAtSlot(slotB);
+        int result = 0;
+        switch (mQuery.order) {
+            case UNDONE_FIRST:
+                result = Boolean.compare(a.isDone(), b.isDone());
+                break;
+            case DATE:
+                result = Long.compare(a.getDate(), b.getDate());
+                break;
+            case DATE_DESCENDING:
+                result = Long.compare(b.getDate(), a.getDate());
+                break;
+            case TITLE:
+                result = compareTitles(a.getTitle(), b.getTitle());
+                break;
+            case STORE:
+                break;
+        }
+        return result != 0 ? result : Integer.compare(slotA, slotB);
+    }
+
+    private static int compareTitles(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : 1) : -1; // Untitled last
+        }
+        return String.CASE_INSENSITIVE_ORDER.compare(a, b);
+    }
+
+    private boolean ranksBefore(int slotA, int slotB) {
+        return compare(slotA, slotB) < 0;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!ranksBefore(mSlots[parent], mSlots[index])) {
+                return;
+            }
+            swap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int size) {
+        int index = 0;
+        while (true) {
+            int worst = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && ranksBefore(mSlots[worst], mSlots[left])) {
+                worst = left;
+            }
+            if (right < size && ranksBefore(mSlots[worst], mSlots[right])) {
+                worst = right;
+            }
+            if (worst == index) {
+                return;
+            }
+            swap(index, worst);
+            index = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int tmp = mSlots[a];
+        mSlots[a] = mSlots[b];
+        mSlots[b] = tmp;
+    }
+
+    private static Plan cheaper(Plan a, Plan b) {
+        return a == null || b.cost < a.cost ? b : a;
+    }
+
+    private static int predicateCount(TaskQuery query) {
+        int count = 0;
+        if (query.category != null) count++;
+        if (query.done != null) count++;
+        if (query.flagged != null) count++;
+        if (query.hasDays) count++;
+        if (query.titleText != null) count++;
+        if (query.hasSubtasks != null) count++;
+        return count;
+    }
+}
@@ -0,0 +1,497 @@
+package com.example.prodo.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * In-memory inverted index over task titles, notes and subtask titles, behind {@link TaskStore#search}.
+ *
+ * Text is split into runs of letters and digits and case-folded. Each term maps to a postings list
+ * with one entry per task containing it, recording which fields it appears in. The term dictionary
+ * is sorted, so the last word of a query also matches as a prefix while it is still being typed.
+ * Every word of the query must match; results are ranked by the best field each word matched in
+ * (title, then subtask, then note) and then by task date, most recent first.
+ *
+ * Titles and bodies are set separately: TaskStore passes the title on every change of a task, the
+ * note and subtasks only when the body changed. Updates touch only the postings of the terms that
+ * were added or dropped. Removed tasks are only marked dead and skipped by queries; their postings
+ * are swept out in one pass once dead tasks make up a quarter of the index.
+ *
+ * Not thread-safe: TaskStore uses it from its search thread only.
+ */
+final class TaskSearchIndex {
+    static final int FIELD_NOTE = 1;
+    static final int FIELD_SUBTASK = 1 << 1;
+    static final int FIELD_TITLE = 1 << 2;
+    private static final int FIELD_BITS = 3;
+    private static final int MAX_QUERY_WORDS = 16;
+    private static final int MIN_DEAD_TO_PURGE = 1024;
+
+    private static final String[] NO_TERMS = {};
+
+    /** One term's postings: (slot << FIELD_BITS | fields) per task, in no particular order. */
+    private static final class Postings {
+        final String term; // The one String instance every task's term arrays share
+        int[] entries = new int[2];
+        int size;
+
+        Postings(String term) {
+            this.term = term;
+        }
+
+        /** For a slot that has no entry yet. */
+        void add(int slot, int fields) {
+            if (size == entries.length) {
+                int[] grown = new int[size * 2];
+                System.arraycopy(entries, 0, grown, 0, size);
+                entries = grown;
+            }
+            entries[size++] = slot << FIELD_BITS | fields;
+        }
+
+        void set(int slot, int fields) {
+            for (int i = 0; i < size; i++) {
+                if (entries[i] >>> FIELD_BITS == slot) {
+                    entries[i] = slot << FIELD_BITS | fields;
+                    return;
+                }
+            }
+            add(slot, fields);
+        }
+
+        void remove(int slot) {
+            for (int i = 0; i < size; i++) {
+                if (entries[i] >>> FIELD_BITS == slot) {
+                    entries[i] = entries[--size]; // Order doesn't matter
+                    return;
+                }
+            }
+        }
+    }
+
+    private final TreeMap<String, Postings> mTerms = new TreeMap<>();
+    private final HashMap<UUID, Integer> mSlots = new HashMap<>();
+
+    // Per task, indexed by slot. Term arrays are null until that part has been set. A null id is a
+    // free slot, or a dead one whose postings haven't been swept yet.
+    private UUID[] mIds = new UUID[64];
+    private long[] mDates = new long[64];
+    private String[][] mTitleTerms = new String[64][];
+    private String[][] mNoteTerms = new String[64][];
+    private String[][] mSubtaskTerms = new String[64][];
+    private int mSlotCount; // Slots ever handed out
+    private final List<Integer> mFreeSlots = new ArrayList<>(); // Swept, so no posting refers to them
+    private int mDeadCount;
+
+    // Per-query scratch, indexed by slot; an entry is valid only where mMark equals mQueryStamp,
+    // so nothing is cleared or allocated between queries.
+    private int[] mMark = new int[0];
+    private int[] mHits = new int[0];
+    private int[] mScore = new int[0];
+    private int[] mWordWeight = new int[0];
+    private int mQueryStamp;
+
+    /** Sets the title (and the date used for ranking) of task {@code id}, adding it if needed. */
+    void setTitle(UUID id, String title, long date) {
+        int slot = slotFor(id);
+        mDates[slot] = date;
+        reindex(slot, terms(title), mNoteTerms[slot], mSubtaskTerms[slot]);
+    }
+
+    /** Sets the note and subtask titles of task {@code id}, adding it if needed. */
+    void setBody(UUID id, String note, List<Subtask> subtasks) {
+        int slot = slotFor(id);
+        StringBuilder subtaskText = new StringBuilder();
+        for (Subtask subtask : subtasks) {
+            if (subtask.getTitle() != null) {
+                subtaskText.append(subtask.getTitle()).append(' ');
+            }
+        }
+        reindex(slot, mTitleTerms[slot], terms(note), terms(subtaskText.toString()));
+    }
+
+    /** True if a body has been set for {@code id}. */
+    boolean hasBody(UUID id) {
+        Integer slot = mSlots.get(id);
+        return slot != null && mNoteTerms[slot] != null;
+    }
+
+    void remove(UUID id) {
+        Integer slot = mSlots.remove(id);
+        if (slot == null) {
+            return;
+        }
+        mIds[slot] = null; // Queries skip its postings from now on
+        mTitleTerms[slot] = null;
+        mNoteTerms[slot] = null;
+        mSubtaskTerms[slot] = null;
+        mDeadCount++;
+        if (mDeadCount >= MIN_DEAD_TO_PURGE && mDeadCount * 4 >= mSlotCount) {
+            purgeDead();
+        }
+    }
+
+    /** Removes every task for which {@code keep} is false. */
+    void retainAll(Predicate<UUID> keep) {
+        for (UUID id : new ArrayList<>(mSlots.keySet())) {
+            if (!keep.test(id)) {
+                remove(id);
+            }
+        }
+    }
+
+    int size() {
+        return mSlots.size();
+    }
+
+    int termCount() {
+        return mTerms.size();
+    }
+
+    /**
+     * Ids of the tasks matching every word of {@code query}, best first, at most {@code limit}.
+     * The last word also matches as a prefix unless the query ends with a space.
+     */
+    List<UUID> search(String query, int limit) {
+        List<String> typed = new ArrayList<>();
+        addTerms(query, typed);
+        if (typed.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        // The word being typed is the last one as typed, picked before duplicates are dropped; an
+        // earlier copy of it matches as a prefix too.
+        String prefix = Character.isWhitespace(query.charAt(query.length() - 1)) ? null : typed.get(typed.size() - 1);
+        Set<String> whole = new LinkedHashSet<>(typed);
+        whole.remove(prefix);
+        List<String> words = new ArrayList<>(whole);
+        int maxWhole = prefix != null ? MAX_QUERY_WORDS - 1 : MAX_QUERY_WORDS;
+        if (words.size() > maxWhole) {
+            words = new ArrayList<>(words.subList(0, maxWhole));
+        }
+        if (prefix != null) {
+            words.add(prefix);
+        }
+
+        // Postings per word; the rarest word goes first, as only tasks it matches can qualify.
+        int wordCount = words.size();
+        List<List<Postings>> matches = new ArrayList<>(wordCount);
+        long[] order = new long[wordCount]; // Total postings << 8 | word index
+        for (int w = 0; w < wordCount; w++) {
+            String word = words.get(w);
+            List<Postings> postings = new ArrayList<>();
+            if (w == wordCount - 1 && prefix != null) {
+                postings.addAll(mTerms.subMap(word, true, word + Character.MAX_VALUE, false).values());
+            } else {
+                Postings exact = mTerms.get(word);
+                if (exact != null) {
+                    postings.add(exact);
+                }
+            }
+            if (postings.isEmpty()) {
+                return Collections.emptyList();
+            }
+            long total = 0;
+            for (Postings p : postings) {
+                total += p.size;
+            }
+            matches.add(postings);
+            order[w] = total << 8 | w;
+        }
+        Arrays.sort(order);
+
+        int stamp = nextQueryStamp();
+        int[] candidates = new int[16];
+        int candidateCount = 0;
+        for (int k = 0; k < wordCount; k++) {
+            for (Postings p : matches.get((int) (order[k] & 0xFF))) {
+                for (int i = 0; i < p.size; i++) {
+                    int entry = p.entries[i];
+                    int slot = entry >>> FIELD_BITS;
+                    if (mIds[slot] == null) {
+                        continue; // Removed task, not swept yet
+                    }
+                    int weight = weight(entry & ((1 << FIELD_BITS) - 1));
+                    if (k == 0 && mMark[slot] != stamp) {
+                        mMark[slot] = stamp;
+                        mHits[slot] = 1;
+                        mScore[slot] = weight;
+                        mWordWeight[slot] = weight;
+                        if (candidateCount == candidates.length) {
+                            int[] grown = new int[candidateCount * 2];
+                            System.arraycopy(candidates, 0, grown, 0, candidateCount);
+                            candidates = grown;
+                        }
+                        candidates[candidateCount++] = slot;
+                    } else if (mMark[slot] != stamp) {
+                        continue; // Missed an earlier word
+                    } else if (mHits[slot] == k) {
+                        mHits[slot] = k + 1; // First term of this word seen for the task
+                        mScore[slot] += weight;
+                        mWordWeight[slot] = weight;
+                    } else if (mHits[slot] == k + 1 && weight > mWordWeight[slot]) {
+                        mScore[slot] += weight - mWordWeight[slot]; // Same word, better field
+                        mWordWeight[slot] = weight;
+                    }
+                }
+            }
+        }
+
+        // Best `limit` candidates, via a heap with the worst of them at the root.
+        int[] heap = new int[Math.min(limit, candidateCount)];
+        int heapSize = 0;
+        for (int c = 0; c < candidateCount; c++) {
+            int slot = candidates[c];
+            if (mHits[slot] != wordCount) {
+                continue;
+            }
+            if (heapSize < heap.length) {
+                heap[heapSize] = slot;
+                siftUp(heap, heapSize++);
+            } else if (ranksBefore(slot, heap[0])) {
+                heap[0] = slot;
+                siftDown(heap, heapSize);
+            }
+        }
+        UUID[] ids = new UUID[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            ids[i] = mIds[heap[0]]; // Worst first, so fill from the back
+            heap[0] = heap[i];
+            siftDown(heap, i);
+        }
+        List<UUID> result = new ArrayList<>(heapSize);
+        Collections.addAll(result, ids);
+        return result;
+    }
+
+    // ---- Tokenizing ----
+
+    /** Case-folded runs of letters and digits in {@code text}, without duplicates, in order. */
+    static Set<String> termSet(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        addTerms(text, terms);
+        return terms;
+    }
+
+    /** Adds the case-folded runs of letters and digits in {@code text} to {@code terms}, in order. */
+    private static void addTerms(String text, Collection<String> terms) {
+        if (text == null) {
+            return;
+        }
+        StringBuilder term = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isLetterOrDigit(codePoint)) {
+                term.appendCodePoint(Character.toLowerCase(Character.toUpperCase(codePoint)));
+            } else if (term.length() > 0) {
+                terms.add(term.toString());
+                term.setLength(0);
+            }
+        }
+        if (term.length() > 0) {
+            terms.add(term.toString());
+        }
+    }
+
+    private static String[] terms(String text) {
+        Set<String> terms = termSet(text);
+        return terms.isEmpty() ? NO_TERMS : terms.toArray(new String[0]);
+    }
+
+    // ---- Internals ----
+
+    private int slotFor(UUID id) {
+        Integer slot = mSlots.get(id);
+        if (slot != null) {
+            return slot;
+        }
+        int newSlot;
+        if (!mFreeSlots.isEmpty()) {
+            newSlot = mFreeSlots.remove(mFreeSlots.size() - 1);
+        } else {
+            if (mSlotCount == mIds.length) {
+                grow(mSlotCount * 2);
+            }
+            newSlot = mSlotCount++;
+        }
+        mSlots.put(id, newSlot);
+        mIds[newSlot] = id;
+        mDates[newSlot] = 0;
+        return newSlot;
+    }
+
+    private void grow(int capacity) {
+        mIds = Arrays.copyOf(mIds, capacity);
+        mDates = Arrays.copyOf(mDates, capacity);
+        mTitleTerms = Arrays.copyOf(mTitleTerms, capacity);
+        mNoteTerms = Arrays.copyOf(mNoteTerms, capacity);
+        mSubtaskTerms = Arrays.copyOf(mSubtaskTerms, capacity);
+    }
+
+    // Moves the slot's postings from its current terms to the given ones (null = none).
+    private void reindex(int slot, String[] title, String[] note, String[] subtasks) {
+        Map<String, Integer> before = fieldsByTerm(mTitleTerms[slot], mNoteTerms[slot], mSubtaskTerms[slot]);
+        Map<String, Integer> after = fieldsByTerm(title, note, subtasks);
+        for (String term : before.keySet()) {
+            if (!after.containsKey(term)) {
+                Postings postings = mTerms.get(term);
+                postings.remove(slot);
+                if (postings.size == 0) {
+                    mTerms.remove(term);
+                }
+            }
+        }
+        for (Map.Entry<String, Integer> entry : after.entrySet()) {
+            Integer oldFields = before.get(entry.getKey());
+            if (oldFields == null) {
+                Postings postings = mTerms.get(entry.getKey());
+                if (postings == null) {
+                    postings = new Postings(entry.getKey());
+                    mTerms.put(postings.term, postings);
+                }
+                postings.add(slot, entry.getValue()); // No scan: the slot isn't in there yet
+            } else if (!oldFields.equals(entry.getValue())) {
+                mTerms.get(entry.getKey()).set(slot, entry.getValue());
+            }
+        }
+        mTitleTerms[slot] = shared(title);
+        mNoteTerms[slot] = shared(note);
+        mSubtaskTerms[slot] = shared(subtasks);
+    }
+
+    // Drops the postings of removed tasks and frees their slots, in one pass over all postings.
+    private void purgeDead() {
+        Iterator<Postings> iterator = mTerms.values().iterator();
+        while (iterator.hasNext()) {
+            Postings postings = iterator.next();
+            int kept = 0;
+            for (int i = 0; i < postings.size; i++) {
+                if (mIds[postings.entries[i] >>> FIELD_BITS] != null) {
+                    postings.entries[kept++] = postings.entries[i];
+                }
+            }
+            postings.size = kept;
+            if (kept == 0) {
+                iterator.remove();
+            }
+        }
+        mFreeSlots.clear();
+        for (int slot = 0; slot < mSlotCount; slot++) {
+            if (mIds[slot] == null) {
+                mFreeSlots.add(slot);
+            }
+        }
+        mDeadCount = 0;
+    }
+
+    // Swaps each term for the dictionary's instance, so equal terms of different tasks share one String.
+    private String[] shared(String[] terms) {
+        if (terms == null || terms.length == 0) {
+            return terms;
+        }
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = mTerms.get(terms[i]).term;
+        }
+        return terms;
+    }
+
+    private static Map<String, Integer> fieldsByTerm(String[] title, String[] note, String[] subtasks) {
+        Map<String, Integer> fields = new LinkedHashMap<>();
+        addField(fields, title, FIELD_TITLE);
+        addField(fields, note, FIELD_NOTE);
+        addField(fields, subtasks, FIELD_SUBTASK);
+        return fields;
+    }
+
+    private static void addField(Map<String, Integer> fields, String[] terms, int field) {
+        if (terms != null) {
+            for (String term : terms) {
+                fields.merge(term, field, (a, b) -> a | b);
+            }
+        }
+    }
+
+    private static int weight(int fields) {
+        if ((fields & FIELD_TITLE) != 0) {
+            return 4;
+        }
+        return (fields & FIELD_SUBTASK) != 0 ? 2 : 1;
+    }
+
+    private int nextQueryStamp() {
+        if (mMark.length < mSlotCount) {
+            int capacity = mIds.length;
+            mMark = new int[capacity];
+            mHits = new int[capacity];
+            mScore = new int[capacity];
+            mWordWeight = new int[capacity];
+            mQueryStamp = 0;
+        }
+        if (++mQueryStamp == 0) { // Wrapped around: old marks could look current
+            Arrays.fill(mMark, 0);
+            mQueryStamp = 1;
+        }
+        return mQueryStamp;
+    }
+
+    // Higher score first, then the later date, then the lower slot so ties are stable.
+    private boolean ranksBefore(int a, int b) {
+        if (mScore[a] != mScore[b]) {
+            return mScore[a] > mScore[b];
+        }
+        if (mDates[a] != mDates[b]) {
+            return mDates[a] > mDates[b];
+        }
+        return a < b;
+    }
+
+    private void siftUp(int[] heap, int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!ranksBefore(heap[parent], heap[index])) {
+                return;
+            }
+            swap(heap, parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int size) {
+        int index = 0;
+        while (true) {
+            int worst = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && ranksBefore(heap[worst], heap[left])) {
+                worst = left;
+            }
+            if (right < size && ranksBefore(heap[worst], heap[right])) {
+                worst = right;
+            }
+            if (worst == index) {
+                return;
+            }
+            swap(heap, index, worst);
+            index = worst;
+        }
+    }
+
+    private static void swap(int[] heap, int a, int b) {
+        int tmp = heap[a];
+        heap[a] = heap[b];
+        heap[b] = tmp;
+    }
+}
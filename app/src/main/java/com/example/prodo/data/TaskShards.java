@@ -0,0 +1,342 @@
+package com.example.prodo.data;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Month-sharded task snapshot ({@link SnapshotFormat#SHARDED}).
+ *
+ * Tasks are split by the month of {@link Task#getDate()} into tasks_shards/yyyy-MM.bin files
+ * (undated tasks go to undated.bin), each in {@link BinaryTaskCodec} format, plus a small
+ * manifest.json listing the shards and their task counts. TaskStore reports every persisted
+ * mutation through {@link #track} / {@link #untrack}; a snapshot then rewrites only the shards
+ * touched since the last one instead of the whole history.
+ *
+ * The shard a task is tracked in is the file it is stored in, not recomputed from its date, so a
+ * task whose date changed still dirties the shard it left, even if the time zone changed since.
+ */
+class TaskShards {
+    private static final String TAG = "TaskShards";
+
+    static final String UNDATED = "undated";
+    private static final String MANIFEST = "manifest.json";
+    private static final String SUFFIX = ".bin";
+    private static final int MANIFEST_VERSION = 1;
+    private static final int MAX_LOAD_THREADS = 4;
+
+    /** manifest.json. Shards are listed in load order, most recent first. */
+    private static final class Manifest {
+        int version;
+        List<Entry> shards = new ArrayList<>();
+
+        static final class Entry {
+            String key;
+            int count;
+
+            Entry(String key, int count) {
+                this.key = key;
+                this.count = count;
+            }
+        }
+    }
+
+    private final File mDir;
+    private final Gson mGson;
+
+    // Guarded by this. Which shard file each task lives in (or will, once its shard is written).
+    private final HashMap<UUID, String> mShardOf = new HashMap<>();
+    private final HashSet<String> mDirty = new HashSet<>();
+    private final TreeMap<String, Integer> mCounts = new TreeMap<>(); // Shard -> task count on disk
+
+    TaskShards(File dir, Gson gson) {
+        mDir = dir;
+        mGson = gson;
+    }
+
+    /** The shard for {@code task}: its local month as yyyy-MM, or {@link #UNDATED}. */
+    static String shardKey(Task task) {
+        if (task.getDate() == 0) {
+            return UNDATED;
+        }
+        long month = LocalDays.monthKey(LocalDays.current().epochDay(task.getDate()));
+        return String.format(Locale.ROOT, "%04d-%02d", Math.floorDiv(month, 12), Math.floorMod(month, 12) + 1);
+    }
+
+    // Undated first (open to-dos), then newest month first. yyyy-MM sorts correctly as text.
+    private static int loadOrder(String a, String b) {
+        if (a.equals(b)) {
+            return 0;
+        }
+        if (UNDATED.equals(a)) {
+            return -1;
+        }
+        if (UNDATED.equals(b)) {
+            return 1;
+        }
+        return b.compareTo(a);
+    }
+
+    boolean exists() {
+        return new File(mDir, MANIFEST).exists();
+    }
+
+    // ---- Dirty tracking, called under the TaskStore lock ----
+
+    synchronized void track(Task task) {
+        String key = shardKey(task);
+        String previous = mShardOf.put(task.getId(), key);
+        if (previous != null && !previous.equals(key)) {
+            mDirty.add(previous);
+        }
+        mDirty.add(key);
+    }
+
+    synchronized void untrack(UUID id) {
+        String previous = mShardOf.remove(id);
+        if (previous != null) {
+            mDirty.add(previous);
+        }
+    }
+
+    /** Forgets what is on disk and marks everything dirty, so the next write rewrites every shard. */
+    synchronized void trackAll(Iterable<Task> tasks) {
+        mShardOf.clear();
+        mDirty.addAll(mCounts.keySet()); // Existing files get rewritten or deleted
+        for (Task task : tasks) {
+            track(task);
+        }
+    }
+
+    synchronized int dirtyCount() {
+        return mDirty.size();
+    }
+
+    // ---- Writing, on the writer thread ----
+
+    /**
+     * Rewrites the shards touched since the last write, then the manifest. Each file is replaced
+     * atomically. On failure the shards stay dirty and the journal (not reset by the caller) still
+     * has the changes.
+     */
+    boolean write(Supplier<TaskSnapshot> snapshotSupplier) {
+        MainThreadIo.check("Shard write");
+        if (!mDir.isDirectory() && !mDir.mkdirs()) {
+            Log.e(TAG, "write: Could not create " + mDir);
+            return false;
+        }
+        // Take the dirty set before the snapshot: anything changed after this point is marked again
+        // and written next time, anything before is in the snapshot.
+        Set<String> dirty;
+        synchronized (this) {
+            dirty = new HashSet<>(mDirty);
+            mDirty.clear();
+        }
+        if (dirty.isEmpty() && exists()) {
+            return true;
+        }
+        TaskSnapshot snapshot = snapshotSupplier.get();
+
+        Map<String, List<Task>> groups = new HashMap<>();
+        for (String key : dirty) {
+            groups.put(key, new ArrayList<>());
+        }
+        synchronized (this) {
+            for (Task task : snapshot) {
+                List<Task> group = groups.get(mShardOf.get(task.getId()));
+                if (group != null) {
+                    group.add(task);
+                }
+            }
+        }
+
+        Map<String, Integer> written = new HashMap<>();
+        try {
+            for (Map.Entry<String, List<Task>> group : groups.entrySet()) {
+                String key = group.getKey();
+                File target = new File(mDir, key + SUFFIX);
+                if (group.getValue().isEmpty()) {
+                    if (target.exists() && !target.delete()) {
+                        throw new IOException("Could not delete empty shard " + target.getName());
+                    }
+                } else {
+                    File temp = new File(mDir, key + SUFFIX + ".tmp");
+                    BinaryTaskCodec.write(temp, group.getValue());
+                    if (!temp.renameTo(target)) {
+                        throw new IOException("Could not move shard " + key + " into place");
+                    }
+                }
+                written.put(key, group.getValue().size());
+            }
+            synchronized (this) {
+                mCounts.putAll(written);
+                mCounts.values().removeIf(count -> count == 0);
+            }
+            writeManifest();
+        } catch (IOException e) {
+            Log.e(TAG, "write: Failed after " + written.size() + " of " + groups.size() + " shards.", e);
+            synchronized (this) {
+                mDirty.addAll(dirty);
+            }
+            return false;
+        }
+        Log.d(TAG, "write: Rewrote " + written.size() + " shards of " + mCounts.size() + ".");
+        return true;
+    }
+
+    private void writeManifest() throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.version = MANIFEST_VERSION;
+        synchronized (this) {
+            for (Map.Entry<String, Integer> shard : mCounts.entrySet()) {
+                manifest.shards.add(new Manifest.Entry(shard.getKey(), shard.getValue()));
+            }
+        }
+        Collections.sort(manifest.shards, (a, b) -> loadOrder(a.key, b.key));
+        File temp = new File(mDir, MANIFEST + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp);
+             Writer writer = new OutputStreamWriter(fos, StandardCharsets.UTF_8)) {
+            mGson.toJson(manifest, writer);
+            writer.flush();
+            fos.getFD().sync();
+        }
+        if (!temp.renameTo(new File(mDir, MANIFEST))) {
+            throw new IOException("Could not move manifest into place");
+        }
+    }
+
+    // ---- Loading ----
+
+    /**
+     * Decodes every shard in parallel on a small bounded pool and hands them to {@code onShard} in
+     * load order (undated, then newest month first) on the calling thread, each as soon as it and
+     * every shard before it are decoded. A shard that can't be read is logged and skipped.
+     *
+     * @return the number of tasks loaded.
+     */
+    int load(BiConsumer<String, List<Task>> onShard) {
+        MainThreadIo.check("Shard load");
+        List<String> keys = readShardList();
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        int threads = Math.max(1, Math.min(MAX_LOAD_THREADS, Runtime.getRuntime().availableProcessors()));
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, keys.size()), runnable -> {
+            Thread thread = new Thread(runnable, "TaskShardLoader-" + threadCount.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        int total = 0;
+        try {
+            List<Future<List<Task>>> decoded = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                decoded.add(pool.submit(() -> {
+                    List<Task> tasks = new ArrayList<>();
+                    BinaryTaskCodec.read(new File(mDir, key + SUFFIX), tasks::add);
+                    return tasks;
+                }));
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                String key = keys.get(i);
+                List<Task> tasks;
+                try {
+                    tasks = decoded.get(i).get();
+                } catch (Exception e) {
+                    Log.e(TAG, "load: Could not read shard " + key + ". Skipping it.", e);
+                    continue;
+                }
+                synchronized (this) {
+                    for (int t = 0; t < tasks.size(); t++) {
+                        Task task = tasks.get(t).withAssignedId();
+                        tasks.set(t, task);
+                        mShardOf.put(task.getId(), key);
+                    }
+                    mCounts.put(key, tasks.size());
+                }
+                total += tasks.size();
+                onShard.accept(key, tasks);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return total;
+    }
+
+    // Shards from the manifest in its order, plus any shard file it doesn't list (a write that
+    // stopped between a shard and the manifest). Listed shards that are missing are skipped.
+    private List<String> readShardList() {
+        List<String> keys = new ArrayList<>();
+        File manifestFile = new File(mDir, MANIFEST);
+        try (Reader reader = new InputStreamReader(new FileInputStream(manifestFile), StandardCharsets.UTF_8)) {
+            Manifest manifest = mGson.fromJson(reader, Manifest.class);
+            if (manifest != null && manifest.shards != null) {
+                if (manifest.version > MANIFEST_VERSION) {
+                    Log.w(TAG, "readShardList: Manifest version " + manifest.version + " is newer than " + MANIFEST_VERSION + ". Reading what we can.");
+                }
+                for (Manifest.Entry entry : manifest.shards) {
+                    if (entry != null && entry.key != null && new File(mDir, entry.key + SUFFIX).exists()) {
+                        keys.add(entry.key);
+                    }
+                }
+            }
+        } catch (IOException | JsonParseException e) {
+            Log.e(TAG, "readShardList: Could not read " + MANIFEST + ". Falling back to the shard files.", e);
+        }
+        File[] files = mDir.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String key = file.getName().substring(0, file.getName().length() - SUFFIX.length());
+                if (!keys.contains(key)) {
+                    Log.w(TAG, "readShardList: " + file.getName() + " is not in the manifest. Loading it anyway.");
+                    keys.add(key);
+                }
+            }
+        }
+        Collections.sort(keys, TaskShards::loadOrder);
+        return keys;
+    }
+
+    /** Removes every shard and the manifest, after switching to a single-file format. */
+    synchronized void deleteAll() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    Log.w(TAG, "deleteAll: Could not delete " + file.getName());
+                }
+            }
+        }
+        mDir.delete();
+        mShardOf.clear();
+        mDirty.clear();
+        mCounts.clear();
+    }
+}
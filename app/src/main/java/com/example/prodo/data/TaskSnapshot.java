@@ -0,0 +1,138 @@
+package com.example.prodo.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * One published version of the task list. Cheap to get, safe to read from any thread, and never
+ * changes: later edits go into new chunks and a new snapshot (see {@link TaskTable}). Tasks are
+ * immutable too, so a snapshot can be read for as long as needed without copying anything.
+ */
+public final class TaskSnapshot implements Iterable<Task> {
+    private final TaskTable mTable;
+    private final Task[][] mChunks;
+    private final int mSlotCount;
+    private final int mSize;
+    private final long mIndexVersion;
+    private final long mSequence;
+    private volatile List<Task> mList; // built on first asList(), then shared
+
+    TaskSnapshot(TaskTable table, Task[][] chunks, int slotCount, int size, long indexVersion, long sequence) {
+        mTable = table;
+        mChunks = chunks;
+        mSlotCount = slotCount;
+        mSize = size;
+        mIndexVersion = indexVersion;
+        mSequence = sequence;
+    }
+
+    /**
+     * Sequence of the last change this version includes. Pass it to
+     * {@link TaskStore#getChangesSince(long)} to catch up from here.
+     */
+    public long getSequence() {
+        return mSequence;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * The task with {@code id} in this version, or null. O(1) through the table's id index: a hit is
+     * checked against this version's slots, and a miss is only trusted while no id has been added,
+     * removed or moved since this snapshot was published. Otherwise, e.g. for a snapshot held across
+     * a delete, it falls back to a scan.
+     */
+    public Task get(UUID id) {
+        if (id == null) {
+            return null;
+        }
+        Integer slot = mTable.slotOf(id);
+        Task task = slot != null ? taskAt(slot) : null;
+        if (task != null && id.equals(task.getId())) {
+            return task; // Ids are unique within a version, so whatever mapping we read, this is it
+        }
+        // The table bumps its index version before touching the index, so if it still matches
+        // ours after the lookup, the lookup saw the index exactly as it was when we were published.
+        if (mTable.indexVersion() == mIndexVersion) {
+            return null;
+        }
+        for (Task candidate : this) {
+            if (id.equals(candidate.getId())) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void forEach(Consumer<? super Task> action) {
+        for (int i = 0; i < mSlotCount; i++) {
+            Task task = mChunks[i >>> TaskTable.CHUNK_SHIFT][i & TaskTable.CHUNK_MASK];
+            if (task != null) {
+                action.accept(task);
+            }
+        }
+    }
+
+    @Override
+    public Iterator<Task> iterator() {
+        return new Iterator<Task>() {
+            private int mNext = advance(0);
+
+            private int advance(int from) {
+                while (from < mSlotCount && taskAt(from) == null) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return mNext < mSlotCount;
+            }
+
+            @Override
+            public Task next() {
+                if (mNext >= mSlotCount) {
+                    throw new NoSuchElementException();
+                }
+                Task task = taskAt(mNext);
+                mNext = advance(mNext + 1);
+                return task;
+            }
+        };
+    }
+
+    /**
+     * The tasks in order as an unmodifiable list. Built once per snapshot and shared by every
+     * caller, instead of a fresh copy per call.
+     */
+    public List<Task> asList() {
+        List<Task> list = mList;
+        if (list == null) {
+            ArrayList<Task> tasks = new ArrayList<>(mSize);
+            forEach(tasks::add);
+            list = Collections.unmodifiableList(tasks);
+            mList = list; // Racing builders produce equal lists; either one is fine
+        }
+        return list;
+    }
+
+    private Task taskAt(int slot) {
+        if (slot >= mSlotCount) {
+            return null;
+        }
+        return mChunks[slot >>> TaskTable.CHUNK_SHIFT][slot & TaskTable.CHUNK_MASK];
+    }
+}
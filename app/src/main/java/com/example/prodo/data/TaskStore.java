@@ -1,31 +1,88 @@
 package com.example.prodo.data;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.InputStreamReader;
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class TaskStore {
     private static final String TAG = "TaskStore";
-    private static final String FILENAME = "tasks.json";
+    private static final String JOURNAL_FILENAME = "tasks.journal";
+    private static final String PREFS_NAME = "TaskStorePrefs";
+    private static final String KEY_SNAPSHOT_FORMAT = "snapshot_format";
+    private static final String KEY_ARCHIVE_AFTER_DAYS = "archive_after_days";
+    private static final String KEY_RECENTLY_USED_TASKS = "recently_used_tasks";
+    // Where the Pomodoro screen kept its counters before the session log; migrated once.
+    private static final String LEGACY_STATS_PREFS_NAME = "ProdoStats";
+    private static final int MAX_RECENTLY_USED_TASKS = 10;
+    private static final int DEFAULT_ARCHIVE_AFTER_DAYS = 30;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    // Transactions touching more tasks than this are saved as a full snapshot instead of a journal record.
+    private static final int MAX_JOURNALED_TRANSACTION_SIZE = 2000;
 
     private static TaskStore sTaskStore;
-    private List<Task> mTasks;
-    private final MutableLiveData<List<Task>> mTasksLiveData = new MutableLiveData<>();
+    private final TaskTable mTable = new TaskTable(); // Ordered tasks + id index
+    private final TaskChangeFeed mFeed = new TaskChangeFeed();
+    private final TasksLiveData mTasksLiveData = new TasksLiveData(mTable);
+    private final MutableLiveData<Long> mChangeSequence = new MutableLiveData<>(0L);
+    private final AtomicLong mStatsVersion = new AtomicLong(); // See getStatsVersion()
     private final Context mContext;
+    private final Gson mGson = ProdoGson.get();
+    private final TaskJournal mJournal;
+    private final TaskWriter mWriter;
+    private final TaskShards mShards; // Dirty-shard tracking, used while the format is SHARDED
+    private final TaskArchive mArchive; // Old completed tasks, not loaded at startup
+    private final TaskBodyStore mBodies; // Notes and subtasks; the task list holds hot records only
+    private final PomodoroSessionLog mSessions; // Finished Pomodoro sessions, for the stats screen
+    private final FocusRollups mRollups = new FocusRollups(); // Built from mSessions at load
+    private volatile SnapshotFormat mSnapshotFormat;
+    private boolean mSnapshotNeedsMigration; // Loaded from the other format's file; rewrite once
+    private boolean mSubtasksCounted; // Writer thread, during load(): counts were added; rewrite once
+    private final CompletableFuture<TaskStore> mReady = new CompletableFuture<>();
+    private final MutableLiveData<Boolean> mReadyLiveData = new MutableLiveData<>(); // No value until loaded
+    private volatile long mLoadTimeMillis = -1;
+
+    // Full-text search. The index is built the first time search() is called, then kept up to date:
+    // titles and removals from the change feed, note and subtask text from toHot(). Everything
+    // touching it runs on the search thread.
+    private static final int SEARCH_BODY_CHUNK = 512; // Bodies read per writer-thread turn while indexing
+    private final TaskSearchIndex mSearchIndex = new TaskSearchIndex();
+    private final ExecutorService mSearchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TaskStore-search");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+    private volatile boolean mSearchStarted;
+    private final AtomicBoolean mSearchCatchUpQueued = new AtomicBoolean();
+    private long mSearchSequence = -1; // Search thread only: the last change applied to the index
 
     public static synchronized TaskStore get(Context context) {
         if (sTaskStore == null) {
@@ -36,28 +93,566 @@ public class TaskStore {
 
     private TaskStore(Context context) {
         mContext = context.getApplicationContext();
-        mTasks = new ArrayList<>();
-        loadTasks(); // Load from file
-        updateTasksLiveData();
+        mJournal = new TaskJournal(new File(mContext.getFilesDir(), JOURNAL_FILENAME), mGson);
+        mSnapshotFormat = readSnapshotFormatPref();
+        mShards = new TaskShards(new File(mContext.getFilesDir(), SnapshotFormat.SHARDED.fileName), mGson);
+        mArchive = new TaskArchive(mContext.getFilesDir(), mGson);
+        mBodies = new TaskBodyStore(new File(mContext.getFilesDir(), TaskBodyStore.FILENAME), mGson);
+        mSessions = new PomodoroSessionLog(new File(mContext.getFilesDir(), PomodoroSessionLog.FILENAME));
+        mWriter = new TaskWriter(mJournal, this::saveTasks);
+        // Load on the writer thread so no journal write or snapshot can run before the tasks are in.
+        mWriter.submit(this::load);
+    }
+
+    private void load() {
+        long start = SystemClock.uptimeMillis();
+        mArchive.readSummary(); // Just the totals; the archived tasks stay on disk
+        mBodies.open(); // Just where each body is; they are read when a task is opened
+        mSessions.open();
+        int bodiesMoved;
+        if (mSnapshotFormat == SnapshotFormat.SHARDED && mShards.exists()) {
+            int[] moved = {0};
+            int count = loadShards(start, moved);
+            bodiesMoved = moved[0];
+            mTasksLiveData.setReady();
+            mLoadTimeMillis = SystemClock.uptimeMillis() - start;
+            Log.i(TAG, "Startup: Loaded " + count + " tasks from shards in " + mLoadTimeMillis + " ms.");
+        } else {
+            LinkedHashMap<UUID, Task> loaded = new LinkedHashMap<>();
+            try {
+                loadTasks(loaded); // Load snapshot from file
+                replayJournal(loaded); // Then re-apply everything that changed since that snapshot
+            } catch (RuntimeException e) {
+                Log.e(TAG, "load: Unexpected error. Keeping " + loaded.size() + " tasks loaded so far.", e);
+            }
+            bodiesMoved = detachBodies(loaded);
+            countSubtasks(loaded);
+            long parsed = SystemClock.uptimeMillis();
+            installLoadedTasks(loaded);
+            mLoadTimeMillis = SystemClock.uptimeMillis() - start;
+            Log.i(TAG, "Startup: Loaded " + loaded.size() + " tasks in " + mLoadTimeMillis + " ms (read " +
+                    (parsed - start) + " ms, index " + (mLoadTimeMillis - (parsed - start)) + " ms).");
+            if (mSnapshotFormat == SnapshotFormat.SHARDED) {
+                // Sharded, but not loaded from shards: none of these tasks is in a shard yet.
+                synchronized (this) {
+                    mShards.trackAll(mTable.snapshot());
+                }
+                mSnapshotNeedsMigration = true;
+            }
+        }
+
+        if (bodiesMoved > 0) {
+            moveBodiesOutOfSnapshot(bodiesMoved);
+        } else if (mSnapshotNeedsMigration) {
+            Log.i(TAG, "Migrating task snapshot to " + mSnapshotFormat);
+            saveTasks();
+        } else if (mSubtasksCounted) {
+            Log.i(TAG, "Rewriting the " + mSnapshotFormat + " snapshot with subtask counts.");
+            if (mSnapshotFormat == SnapshotFormat.SHARDED) {
+                synchronized (this) {
+                    mShards.trackAll(mTable.snapshot());
+                }
+            }
+            saveTasks();
+        }
+        migrateLegacyPomodoroCounts();
+        rebuildFocusRollups();
+        mReadyLiveData.postValue(true);
+        mReady.complete(this);
+        archiveOldTasks();
+    }
+
+    // The per-day and per-task-title counters in ProdoStats become sessions in the log; a title
+    // is matched to the first task that has it. Once the log is on disk the counters are removed.
+    // Writer thread, during load(), after the tasks are in.
+    private void migrateLegacyPomodoroCounts() {
+        SharedPreferences prefs = mContext.getSharedPreferences(LEGACY_STATS_PREFS_NAME, Context.MODE_PRIVATE);
+        Map<String, ?> entries = prefs.getAll();
+        if (entries.isEmpty()) {
+            return;
+        }
+        if (!mSessions.exists()) {
+            Map<String, UUID> taskIdsByKey = new HashMap<>();
+            synchronized (this) {
+                mTable.forEach(task -> {
+                    if (task.getTitle() != null && !task.getTitle().trim().isEmpty()) {
+                        taskIdsByKey.putIfAbsent(PomodoroSessionLog.legacyTaskKey(task.getTitle()), task.getId());
+                    }
+                });
+            }
+            List<PomodoroSession> sessions = PomodoroSessionLog.legacySessions(entries, taskIdsByKey::get);
+            for (PomodoroSession session : sessions) {
+                mSessions.add(session);
+            }
+            try {
+                mSessions.writePending();
+            } catch (IOException e) {
+                Log.e(TAG, "migrateLegacyPomodoroCounts: Could not write the session log. Keeping the old counters.", e);
+                return;
+            }
+            Log.i(TAG, "Moved " + sessions.size() + " Pomodoro sessions from " + LEGACY_STATS_PREFS_NAME + " to the session log.");
+        }
+        SharedPreferences.Editor editor = prefs.edit();
+        for (String key : entries.keySet()) {
+            if (key.startsWith(PomodoroSessionLog.LEGACY_KEY_PREFIX)) {
+                editor.remove(key);
+            }
+        }
+        editor.apply();
+    }
+
+    // Loaded tasks that still carry their note and subtasks (files written before the body store
+    // existed) have them moved to the body store, leaving hot records. Writer thread, during load().
+    // Returns the number of bodies moved.
+    private int detachBodies(List<Task> tasks) {
+        int moved = 0;
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            if (task.isBodyLoaded()) {
+                mBodies.put(task.getId(), TaskBodyStore.Body.of(task));
+                tasks.set(i, task.withoutBody());
+                moved++;
+            }
+        }
+        return moved;
+    }
+
+    // Hot records from files written before they kept a subtask count get one from the body store,
+    // which TaskQuery's hasSubtasks needs. One sequential pass over the bodies, once. Writer thread,
+    // during load(). Returns true if any task was counted.
+    private boolean countSubtasks(List<Task> tasks) {
+        Map<UUID, Integer> indexById = new HashMap<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            if (!tasks.get(i).isSubtaskCountKnown()) {
+                indexById.put(tasks.get(i).getId(), i);
+            }
+        }
+        if (indexById.isEmpty()) {
+            return false;
+        }
+        try {
+            mBodies.readEach(new ArrayList<>(indexById.keySet()), (id, body) -> {
+                int index = indexById.get(id);
+                tasks.set(index, tasks.get(index).withSubtaskCount(body.subtasks.size()));
+            });
+            mSubtasksCounted = true;
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "countSubtasks: Could not read task bodies. " + indexById.size() + " tasks count as having no subtasks.", e);
+            return false;
+        }
+    }
+
+    private void countSubtasks(LinkedHashMap<UUID, Task> loaded) {
+        List<Task> tasks = new ArrayList<>(loaded.values());
+        if (countSubtasks(tasks)) {
+            for (Task task : tasks) {
+                loaded.put(task.getId(), task); // Same keys, so the order stays
+            }
+        }
+    }
+
+    private int detachBodies(LinkedHashMap<UUID, Task> loaded) {
+        List<Task> tasks = new ArrayList<>(loaded.values());
+        int moved = detachBodies(tasks);
+        if (moved > 0) {
+            for (Task task : tasks) {
+                loaded.put(task.getId(), task); // Same keys, so the order stays
+            }
+        }
+        return moved;
+    }
+
+    // The snapshot (and journal) on disk still hold the bodies just moved. Once the bodies are safely
+    // in the body store, rewrite the snapshot without them and drop the journal it now covers.
+    private void moveBodiesOutOfSnapshot(int bodiesMoved) {
+        try {
+            mBodies.writePending();
+        } catch (IOException e) {
+            Log.e(TAG, "load: Could not write " + bodiesMoved + " task bodies. Keeping them in the snapshot for now.", e);
+            return;
+        }
+        Log.i(TAG, "Moved " + bodiesMoved + " task bodies to the body store. Rewriting the " + mSnapshotFormat + " snapshot.");
+        if (mSnapshotFormat == SnapshotFormat.SHARDED) {
+            synchronized (this) {
+                mShards.trackAll(mTable.snapshot());
+            }
+        }
+        if (saveTasks()) {
+            try {
+                mJournal.reset();
+            } catch (IOException e) {
+                Log.e(TAG, "load: Snapshot rewritten but journal could not be reset.", e);
+            }
+        }
+    }
+
+    // Puts the loaded tasks in front of anything added while loading and announces them on the
+    // change feed, so observers that started before the load catch up like after any other change.
+    private synchronized void installLoadedTasks(LinkedHashMap<UUID, Task> loaded) {
+        List<Task> addedEarly = new ArrayList<>();
+        mTable.forEach(addedEarly::add);
+        mTable.clear();
+        for (Task task : loaded.values()) {
+            mTable.put(task);
+        }
+        for (Task task : addedEarly) {
+            mTable.put(mTable.stamped(task)); // An id loaded from disk too is replaced by the newer in-memory version
+        }
+        for (Task task : loaded.values()) {
+            Task current = mTable.get(task.getId());
+            mFeed.record(TaskChange.Type.ADDED, task.getId(), null, current);
+        }
+        publishChanges();
+        mTasksLiveData.setReady();
+    }
+
+    /**
+     * True once the tasks on disk have been loaded. Before that the store is usable but empty:
+     * reads return nothing, and tasks added meanwhile are kept after the loaded ones.
+     */
+    public boolean isReady() {
+        return mReady.isDone();
+    }
+
+    /** Completes, on the writer thread, once the tasks on disk have been loaded. Never blocks the caller. */
+    public CompletableFuture<TaskStore> whenReady() {
+        return mReady;
+    }
+
+    /** Emits true once the tasks on disk have been loaded; has no value before that. */
+    public LiveData<Boolean> getReadyLiveData() {
+        return mReadyLiveData;
+    }
+
+    /** How long the startup load took (read, parse, journal replay and indexing), or -1 if still loading. */
+    public long getLoadTimeMillis() {
+        return mLoadTimeMillis;
     }
 
     public LiveData<List<Task>> getTasksLiveData() {
         return mTasksLiveData;
     }
 
-    private void updateTasksLiveData() {
-        // Post a new copy to ensure observers are triggered correctly with a new list instance
-        mTasksLiveData.postValue(new ArrayList<>(mTasks));
+    /**
+     * Sequence number of the newest change, posted after every published mutation. Observers call
+     * {@link #getChangesSince(long)} with the last sequence they applied; LiveData may skip
+     * intermediate values, the feed never does.
+     */
+    public LiveData<Long> getChangeSequence() {
+        return mChangeSequence;
+    }
+
+    /**
+     * Every change after {@code sequence}, oldest first, with at most one entry per task per
+     * mutation batch. Null if the caller fell too far behind; it should then rebuild from
+     * {@link #getSnapshot()} and continue from that snapshot's sequence.
+     */
+    public List<TaskChange> getChangesSince(long sequence) {
+        return mFeed.since(sequence);
     }
 
-    // Central notifier for LiveData + persistence
-    private void notifyLiveDataObservers() {
-        updateTasksLiveData(); // Posts to mTasksLiveData
-        saveTasks();           // Saves to JSON file
+    /**
+     * Changes whenever something the stats screen shows may have: tasks, the archive, Pomodoro
+     * sessions or the focus totals. Stats computed at one version are still right while it stays
+     * the same. Not a sequence number; only compare it for equality.
+     */
+    public long getStatsVersion() {
+        return mStatsVersion.get();
     }
 
+    // Commits the recorded changes, publishes the table as a new snapshot and notifies observers.
+    // Every mutation ends here, so getSnapshot(), the change feed and LiveData agree.
+    private synchronized void publishChanges() {
+        long sequence = mFeed.commit();
+        if (sequence == mTable.snapshot().getSequence()) {
+            return; // Nothing changed
+        }
+        updateFocusCategories(mTable.snapshot().getSequence());
+        TaskSnapshot snapshot = mTable.publish(sequence);
+        mStatsVersion.incrementAndGet();
+        if (mSearchStarted && mSearchCatchUpQueued.compareAndSet(false, true)) {
+            mSearchExecutor.execute(this::catchUpSearchIndex);
+        }
+        mChangeSequence.postValue(sequence);
+        mTasksLiveData.onPublished(snapshot);
+    }
+
+    /**
+     * Full task list for observers that want it; only built while someone is observing. Emits
+     * nothing until the tasks have been loaded, so observers don't see an empty list first.
+     */
+    private static final class TasksLiveData extends LiveData<List<Task>> {
+        private final TaskTable mTable;
+        private volatile boolean mReady;
+
+        TasksLiveData(TaskTable table) {
+            mTable = table;
+        }
+
+        void setReady() {
+            mReady = true;
+            onActive(); // First value for observers that subscribed while loading
+        }
+
+        @Override
+        protected void onActive() {
+            if (mReady) {
+                postValue(mTable.snapshot().asList()); // Catch up on versions published while inactive
+            }
+        }
+
+        void onPublished(TaskSnapshot snapshot) {
+            if (mReady && hasActiveObservers()) {
+                postValue(snapshot.asList());
+            }
+        }
+    }
+
+    // Installs month shards as they are decoded, newest first, publishing after each so the Tasks
+    // screen fills in from the recent months while older ones are still loading. The journal is
+    // read first so every shard goes in with its latest changes already applied.
+    private int loadShards(long start, int[] bodiesMoved) {
+        LinkedHashMap<UUID, Task> journaled = new LinkedHashMap<>(); // A null value means removed
+        mJournal.replay(new TaskJournal.Replayer() {
+            @Override
+            public void put(Task task) {
+                if (task.getId() != null) {
+                    journaled.put(task.getId(), task);
+                }
+            }
+
+            @Override
+            public void remove(UUID id) {
+                journaled.put(id, null);
+            }
+        });
+        List<UUID> journaledIds = new ArrayList<>(journaled.keySet());
+        int[] shardsInstalled = {0};
+
+        int count = mShards.load((key, tasks) -> {
+            List<Task> latest = new ArrayList<>(tasks.size());
+            for (Task task : tasks) {
+                if (!journaled.containsKey(task.getId())) {
+                    latest.add(task);
+                } else if (journaled.get(task.getId()) != null) {
+                    latest.add(journaled.remove(task.getId()));
+                } else {
+                    journaled.remove(task.getId()); // Deleted since this shard was written
+                }
+            }
+            bodiesMoved[0] += detachBodies(latest);
+            countSubtasks(latest);
+            installShard(latest);
+            if (shardsInstalled[0]++ == 0) {
+                Log.i(TAG, "Startup: First shard (" + key + ", " + latest.size() + " tasks) visible after " +
+                        (SystemClock.uptimeMillis() - start) + " ms.");
+            }
+        });
+
+        List<Task> added = new ArrayList<>(); // Journaled tasks that no shard has yet
+        for (Task task : journaled.values()) {
+            if (task != null) {
+                added.add(task);
+            }
+        }
+        bodiesMoved[0] += detachBodies(added);
+        countSubtasks(added);
+        installShard(added);
+
+        // Journaled changes aren't in their shards yet; mark those shards for the next snapshot.
+        synchronized (this) {
+            for (UUID id : journaledIds) {
+                Task task = mTable.get(id);
+                if (task != null) {
+                    mShards.track(task);
+                } else {
+                    mShards.untrack(id);
+                }
+            }
+        }
+        return count + added.size();
+    }
+
+    // Tasks added while loading were tracked when they were added and are newer; they win.
+    private synchronized void installShard(List<Task> tasks) {
+        for (Task task : tasks) {
+            if (mTable.get(task.getId()) == null) {
+                mTable.put(task);
+                mFeed.record(TaskChange.Type.ADDED, task.getId(), null, task);
+            }
+        }
+        publishChanges();
+    }
+
+    // Journal persistence: each mutation is encoded here and written later by the writer thread,
+    // so no file I/O happens on the caller's (usually the main) thread.
+    // Moves the note and subtasks of a task with its body loaded (new, or edited on the detail
+    // screen) to the body store, and returns the hot record to keep in the task list. The body is
+    // appended on the writer thread ahead of the task's journal record. Caller holds the lock.
+    private Task toHot(Task task) {
+        if (!task.isBodyLoaded()) {
+            return task;
+        }
+        UUID id = task.getId();
+        TaskBodyStore.Body body = TaskBodyStore.Body.of(task);
+        mBodies.put(id, body);
+        mWriter.submit(this::writeBodies);
+        if (mSearchStarted) {
+            mSearchExecutor.execute(() -> mSearchIndex.setBody(id, body.note, body.subtasks));
+        }
+        return task.withoutBody();
+    }
+
+    // Writer thread.
+    private void writeBodies() {
+        try {
+            mBodies.writePending();
+            if (mBodies.needsCompaction()) {
+                Set<UUID> live = new HashSet<>();
+                synchronized (this) { // A body written above belongs to a task that is already in the table
+                    for (Task task : mTable.snapshot()) {
+                        live.add(task.getId());
+                    }
+                }
+                mBodies.compact(live);
+            }
+        } catch (IOException e) {
+            // The bodies stay pending in memory; the next change or flush() tries again.
+            Log.e(TAG, "writeBodies: Could not write task bodies.", e);
+        }
+    }
+
+    private void persistPut(Task task) {
+        trackShard(task.getId(), task);
+        mWriter.enqueue(task.getId(), mJournal.putRecord(task));
+    }
+
+    private void persistRemove(UUID id) {
+        trackShard(id, null);
+        mWriter.enqueue(id, mJournal.removeRecord(id));
+    }
+
+    // Marks the shards a change touches so the next snapshot rewrites them. Caller holds the lock.
+    private void trackShard(UUID id, Task taskOrNull) {
+        if (mSnapshotFormat != SnapshotFormat.SHARDED) {
+            return;
+        }
+        if (taskOrNull != null) {
+            mShards.track(taskOrNull);
+        } else {
+            mShards.untrack(id);
+        }
+    }
+
+    /**
+     * Writes pending mutations now instead of waiting for the debounce window. Call from onStop so
+     * nothing is left in memory if the process is killed in the background. Does not block.
+     */
+    public void flush() {
+        mWriter.flush();
+        mWriter.submit(this::writeBodies);
+        mWriter.submit(this::writeSessions);
+    }
+
+    public SnapshotFormat getSnapshotFormat() {
+        return mSnapshotFormat;
+    }
+
+    /**
+     * Switches the snapshot file format (opt-in binary or month shards for large histories). The
+     * current tasks are rewritten in the new format on the writer thread and the old files removed.
+     */
+    public void setSnapshotFormat(SnapshotFormat format) {
+        if (format == null || format == mSnapshotFormat) {
+            return;
+        }
+        getPrefs().edit().putString(KEY_SNAPSHOT_FORMAT, format.name()).apply();
+        // On the writer thread, so the switch happens after the startup load has finished.
+        mWriter.submit(() -> {
+            synchronized (this) {
+                mSnapshotFormat = format;
+                if (format == SnapshotFormat.SHARDED) {
+                    mShards.trackAll(mTable.snapshot()); // Every shard is new; under the lock so no change slips past
+                }
+            }
+            saveTasks();
+        });
+    }
+
+    /**
+     * Writes the current tasks as a tasks.json-compatible array, whatever the snapshot format,
+     * with full notes and subtasks. Waits for the bodies to be read on the writer thread, so don't
+     * call it on the main thread.
+     */
+    public void exportJson(OutputStream out) throws IOException {
+        CompletableFuture<List<Task>> fullTasks = new CompletableFuture<>();
+        mWriter.submit(() -> {
+            try {
+                List<Task> tasks = new ArrayList<>();
+                for (Task task : getTasks()) {
+                    tasks.add(withBody(task));
+                }
+                fullTasks.complete(tasks);
+            } catch (IOException e) {
+                fullTasks.completeExceptionally(e);
+            }
+        });
+        List<Task> tasks;
+        try {
+            tasks = fullTasks.join();
+        } catch (CompletionException e) {
+            throw new IOException("Could not read task bodies", e.getCause());
+        }
+        TaskJsonCodec.write(out, mGson, tasks);
+    }
+
+    private SharedPreferences getPrefs() {
+        return mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private SnapshotFormat readSnapshotFormatPref() {
+        String stored = getPrefs().getString(KEY_SNAPSHOT_FORMAT, SnapshotFormat.JSON.name());
+        try {
+            return SnapshotFormat.valueOf(stored);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Unknown snapshot format '" + stored + "'. Using JSON.");
+            return SnapshotFormat.JSON;
+        }
+    }
+
+    /** Counters from the writer thread, and mainThreadIoCount, which should stay at zero. */
+    public PersistenceStats getPersistenceStats() {
+        return mWriter.getStats();
+    }
+
+    private void replayJournal(LinkedHashMap<UUID, Task> loaded) {
+        mJournal.replay(new TaskJournal.Replayer() {
+            @Override
+            public void put(Task task) {
+                if (task.getId() != null) {
+                    loaded.put(task.getId(), task); // Upsert: replaces in place or appends
+                }
+            }
+
+            @Override
+            public void remove(UUID id) {
+                loaded.remove(id);
+            }
+        });
+    }
+
+    /**
+     * The current tasks as an unmodifiable list. Lock-free and allocation-free: every caller gets
+     * the list of the last published snapshot. Copy it before sorting or editing.
+     */
     public List<Task> getTasks() {
-        return new ArrayList<>(mTasks); // Return a copy to prevent external modification
+        return mTable.snapshot().asList();
+    }
+
+    /** The current published version of the task list, safe to read from any thread. Lock-free. */
+    public TaskSnapshot getSnapshot() {
+        return mTable.snapshot();
     }
 
     public Task getTaskById(String idString) {
@@ -79,16 +674,368 @@ public class TaskStore {
             Log.w(TAG, "getTask: Provided UUID is null.");
             return null;
         }
-        for (Task task : mTasks) {
-            if (task != null && task.getId() != null && task.getId().equals(id)) {
-                return task;
+        Task task = mTable.snapshot().get(id); // Lock-free
+        if (task == null) {
+            Log.d(TAG, "getTask: Task with UUID " + id + " not found.");
+        }
+        return task;
+    }
+
+    /**
+     * The task with its full note and subtasks, for screens that show or edit them; tasks in the
+     * task list only carry a note preview (see {@link Task#isBodyLoaded()}). Returns a copy: edit
+     * it and pass it to {@link #updateTask} to save. Completes right away if the body is cached,
+     * otherwise on the writer thread once it has been read; with null if there is no such task.
+     */
+    public CompletableFuture<Task> getTaskWithBody(UUID id) {
+        Task task = getTask(id);
+        if (task == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        TaskBodyStore.Body cached = mBodies.getCached(id);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(task.withBody(cached.note, cached.subtasks));
+        }
+        CompletableFuture<Task> result = new CompletableFuture<>();
+        mWriter.submit(() -> {
+            Task latest = getTask(id);
+            try {
+                result.complete(latest != null ? withBody(latest) : null);
+            } catch (IOException e) {
+                Log.e(TAG, "getTaskWithBody: Could not read the body of " + id, e);
+                result.completeExceptionally(e);
             }
+        });
+        return result;
+    }
+
+    // Writer thread. The task with its note and subtasks.
+    private Task withBody(Task task) throws IOException {
+        if (task.isBodyLoaded()) {
+            return task;
         }
-        Log.d(TAG, "getTask: Task with UUID " + id + " not found.");
-        return null;
+        TaskBodyStore.Body body = mBodies.read(task.getId());
+        return task.withBody(body.note, body.subtasks);
+    }
+
+    // ---- Full-text search ----
+
+    /**
+     * Tasks whose title, note or subtasks contain every word of {@code query}, best match first
+     * (title, then subtask, then note; then most recent date), at most {@code limit}. The last word
+     * also matches as a prefix, for search-as-you-type. Covers the task list, not the archive.
+     *
+     * Runs on the search thread; the first call builds the index, which takes a moment at startup
+     * size and reads the task bodies in the background, so notes and subtasks may be missing from
+     * the very first results.
+     */
+    public CompletableFuture<List<Task>> search(String query, int limit) {
+        startSearchIndex();
+        return mReady.thenApplyAsync(store -> {
+            catchUpSearchIndex();
+            TaskSnapshot snapshot = mTable.snapshot();
+            List<Task> results = new ArrayList<>();
+            for (UUID id : mSearchIndex.search(query, limit)) {
+                Task task = snapshot.get(id);
+                if (task != null) {
+                    results.add(task);
+                }
+            }
+            return results;
+        }, mSearchExecutor);
+    }
+
+    private void startSearchIndex() {
+        synchronized (this) {
+            if (mSearchStarted) {
+                return;
+            }
+            mSearchStarted = true; // From here on toHot() and publishChanges() feed the index
+        }
+        mReady.thenRun(() -> {
+            mSearchExecutor.execute(this::catchUpSearchIndex); // Titles of everything loaded
+            List<UUID> ids = new ArrayList<>(mTable.snapshot().size());
+            for (Task task : mTable.snapshot()) {
+                ids.add(task.getId());
+            }
+            mWriter.submit(() -> indexStoredBodies(ids, 0));
+        });
+    }
+
+    // Search thread. Applies the changes published since the last call; rebuilds the titles from
+    // the current snapshot if the feed no longer has them all.
+    private void catchUpSearchIndex() {
+        mSearchCatchUpQueued.set(false);
+        List<TaskChange> changes = mFeed.since(mSearchSequence);
+        if (changes == null) {
+            TaskSnapshot snapshot = mTable.snapshot();
+            mSearchIndex.retainAll(id -> snapshot.get(id) != null);
+            for (Task task : snapshot) {
+                mSearchIndex.setTitle(task.getId(), task.getTitle(), task.getDate());
+            }
+            mSearchSequence = snapshot.getSequence();
+            return;
+        }
+        for (TaskChange change : changes) {
+            if (change.getType() == TaskChange.Type.REMOVED) {
+                mSearchIndex.remove(change.getId());
+            } else {
+                Task task = change.getAfter();
+                mSearchIndex.setTitle(task.getId(), task.getTitle(), task.getDate());
+            }
+            mSearchSequence = change.getSequence();
+        }
+    }
+
+    // Writer thread. Reads the stored bodies of ids[from..] a chunk at a time, so saves aren't held
+    // up, and hands them to the search thread. A body toHot() has sent meanwhile is newer; it stays.
+    private void indexStoredBodies(List<UUID> ids, int from) {
+        int to = Math.min(from + SEARCH_BODY_CHUNK, ids.size());
+        List<UUID> chunk = ids.subList(from, to);
+        List<TaskBodyStore.Body> bodies = new ArrayList<>(chunk.size());
+        List<UUID> read = new ArrayList<>(chunk.size());
+        try {
+            mBodies.readEach(chunk, (id, body) -> {
+                read.add(id);
+                bodies.add(body);
+            });
+        } catch (IOException e) {
+            Log.e(TAG, "indexStoredBodies: Could not read task bodies. Searching titles only for " + chunk.size() + " tasks.", e);
+        }
+        mSearchExecutor.execute(() -> {
+            for (int i = 0; i < read.size(); i++) {
+                UUID id = read.get(i);
+                if (mTable.get(id) != null && !mSearchIndex.hasBody(id)) {
+                    mSearchIndex.setBody(id, bodies.get(i).note, bodies.get(i).subtasks);
+                }
+            }
+        });
+        if (to < ids.size()) {
+            mWriter.submit(() -> indexStoredBodies(ids, to));
+        } else {
+            Log.i(TAG, "Search index: Read the bodies of " + ids.size() + " tasks.");
+        }
+    }
+
+    // ---- Task picker ----
+
+    /**
+     * A {@link TaskPicker} over the current tasks, built on the search thread. It works on that
+     * snapshot: tasks added while the picker is open don't show up in it.
+     */
+    public CompletableFuture<TaskPicker> newTaskPicker() {
+        return mReady.thenApplyAsync(store -> new TaskPicker(mTable.snapshot(), getRecentlyUsedTaskIds()), mSearchExecutor);
+    }
+
+    /** Tasks picked with {@link #noteTaskUsed}, most recent first. */
+    public List<UUID> getRecentlyUsedTaskIds() {
+        String stored = getPrefs().getString(KEY_RECENTLY_USED_TASKS, "");
+        List<UUID> ids = new ArrayList<>();
+        for (String part : stored.split(",")) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            try {
+                ids.add(UUID.fromString(part));
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "getRecentlyUsedTaskIds: Skipping invalid id '" + part + "'");
+            }
+        }
+        return ids;
+    }
+
+    /** Puts {@code id} first in the recently used tasks, which the task picker offers first. */
+    public void noteTaskUsed(UUID id) {
+        List<UUID> ids = getRecentlyUsedTaskIds();
+        ids.remove(id);
+        ids.add(0, id);
+        StringBuilder stored = new StringBuilder();
+        for (int i = 0; i < Math.min(ids.size(), MAX_RECENTLY_USED_TASKS); i++) {
+            if (i > 0) {
+                stored.append(',');
+            }
+            stored.append(ids.get(i));
+        }
+        getPrefs().edit().putString(KEY_RECENTLY_USED_TASKS, stored.toString()).apply();
+    }
+
+    // ---- Queries. Answered from the most selective index that applies (see TaskQueryPlanner), so ----
+    // ---- they cost time proportional to what that index returns, not to the number of tasks.    ----
+
+    /** The tasks matching {@code query}, in its order, after its offset and up to its limit. Archived tasks aren't included. */
+    public synchronized List<Task> query(TaskQuery query) {
+        return TaskQueryPlanner.run(mTable, query, checkedIndexes());
+    }
+
+    /** Number of tasks matching {@code query}; its order, offset and limit don't apply. Archived tasks aren't included. */
+    public synchronized int count(TaskQuery query) {
+        return TaskQueryPlanner.count(mTable, query, checkedIndexes());
+    }
+
+    /** Tasks whose category matches {@code category}, ignoring case. */
+    public List<Task> getTasksInCategory(String category) {
+        if (category == null) {
+            return new ArrayList<>();
+        }
+        return query(new TaskQuery.Builder().setCategory(category).build());
+    }
+
+    /** Tasks due on the local calendar day containing {@code millisInDay}. */
+    public List<Task> getTasksForDay(long millisInDay) {
+        return getTasksForDays(millisInDay, millisInDay);
+    }
+
+    /** Tasks due on any local calendar day from the day of {@code fromMillis} to the day of {@code toMillis}, inclusive. */
+    public List<Task> getTasksForDays(long fromMillis, long toMillis) {
+        return query(new TaskQuery.Builder().setDueOnDays(fromMillis, toMillis).build());
+    }
+
+    public List<Task> getFlaggedTasks() {
+        return query(new TaskQuery.Builder().setFlagged(true).build());
+    }
+
+    public List<Task> getCompletedTasks() {
+        return query(new TaskQuery.Builder().setDone(true).build());
+    }
+
+    public synchronized int getTaskCount() {
+        return mTable.size();
+    }
+
+    /** All completed tasks, archived ones included (from the archive's stored totals). */
+    public synchronized int getCompletedTaskCount() {
+        return count(new TaskQuery.Builder().setDone(true).build()) + archivedOnly().taskCount;
+    }
+
+    public int getPendingTaskCount() {
+        return count(new TaskQuery.Builder().setDone(false).build());
+    }
+
+    /** Sum of every task's pomodoro count, archived tasks included. */
+    public synchronized long getTotalPomodoros() {
+        return mTable.indexes().totalPomodoros() + archivedOnly().totalPomodoros;
+    }
+
+    /** Sum of every task's tracked time, archived tasks included. */
+    public synchronized long getTotalTimeSpentMillis() {
+        return mTable.indexes().totalTimeSpentMillis() + archivedOnly().totalTimeSpentMillis;
+    }
+
+    // ---- Pomodoro sessions ----
+
+    /** Adds a finished session to the log. Counted right away; written on the writer thread. */
+    public void logPomodoroSession(PomodoroSession session) {
+        synchronized (this) { // With the focus totals, so a rebuild can't count it twice or miss it
+            mSessions.add(session);
+            mRollups.add(session, session.getTaskId() != null ? focusCategoryOf(session.getTaskId()) : null);
+            mStatsVersion.incrementAndGet();
+        }
+        mWriter.submit(this::writeSessions);
+    }
+
+    /**
+     * Sessions that ended at or after {@code fromMillis} and before {@code toMillis}, oldest first.
+     * Empty until the store is ready.
+     */
+    public List<PomodoroSession> getPomodoroSessions(long fromMillis, long toMillis) {
+        return mSessions.between(fromMillis, toMillis);
     }
 
-    public void addTask(Task task) {
+    /** Focus totals for the {@code period} containing {@code millis}. Empty until the store is ready. */
+    public synchronized FocusTotals getFocusTotals(FocusTotals.Period period, long millis) {
+        checkedRollups();
+        return mRollups.get(period, FocusTotals.keyOf(period, millis));
+    }
+
+    /**
+     * Focus totals for each {@code period} from the one containing {@code fromMillis} to the one
+     * ending at or after {@code toMillis}, oldest first; periods with no focus time are left out.
+     */
+    public synchronized List<FocusTotals> getFocusTotals(FocusTotals.Period period, long fromMillis, long toMillis) {
+        checkedRollups();
+        return mRollups.range(period, FocusTotals.keyOf(period, fromMillis), FocusTotals.keyOf(period, toMillis - 1));
+    }
+
+    /**
+     * Compares the focus totals with a rebuild from the session log, on the writer thread. Completes
+     * with the differences found, empty if none; the totals are rebuilt if there are any.
+     */
+    public CompletableFuture<List<String>> checkFocusRollups() {
+        return mReady.thenApplyAsync(store -> {
+            List<String> differences;
+            synchronized (this) {
+                differences = mRollups.check(mSessions.between(Long.MIN_VALUE, Long.MAX_VALUE), this::focusCategoryOf);
+                if (!differences.isEmpty()) {
+                    Log.w(TAG, "checkFocusRollups: " + differences.size() + " differences from the session log, first: "
+                            + differences.get(0) + ". Rebuilding.");
+                    rebuildFocusRollups();
+                }
+            }
+            return differences;
+        }, mWriter::submit);
+    }
+
+    // Rebuilds the focus totals from the whole session log: at load, after a time zone change, and
+    // if they ever disagree with the log.
+    private synchronized void rebuildFocusRollups() {
+        long start = SystemClock.uptimeMillis();
+        List<PomodoroSession> sessions = mSessions.between(Long.MIN_VALUE, Long.MAX_VALUE);
+        mRollups.rebuild(sessions, this::focusCategoryOf, LocalDays.current());
+        mStatsVersion.incrementAndGet();
+        Log.d(TAG, "Built focus totals from " + sessions.size() + " sessions in " + (SystemClock.uptimeMillis() - start) + " ms.");
+    }
+
+    // Focus totals are per day in the device time zone, like the day index.
+    private void checkedRollups() {
+        if (!LocalDays.current().getZone().equals(mRollups.getDays().getZone())) {
+            Log.i(TAG, "Time zone changed. Rebuilding focus totals.");
+            rebuildFocusRollups();
+        }
+    }
+
+    // The category a task's focus time counts under: its current one, or null once it has left the
+    // task list. Caller holds the lock.
+    private String focusCategoryOf(UUID taskId) {
+        Task task = mTable.get(taskId);
+        return task != null ? task.getCategory() : null;
+    }
+
+    // Moves the focus totals of tasks whose category changed, or that left or rejoined the task
+    // list, since {@code sequence}. Caller holds the lock.
+    private void updateFocusCategories(long sequence) {
+        List<TaskChange> changes = mFeed.since(sequence);
+        if (changes == null) {
+            rebuildFocusRollups(); // Too many changes at once to go through
+            return;
+        }
+        for (TaskChange change : changes) {
+            if (mRollups.hasTask(change.getId())) {
+                mRollups.setCategory(change.getId(), change.getAfter() != null ? change.getAfter().getCategory() : null);
+            }
+        }
+    }
+
+    // Writer thread.
+    private void writeSessions() {
+        try {
+            mSessions.writePending();
+        } catch (IOException e) {
+            // The sessions stay pending in memory; the next session or flush() tries again.
+            Log.e(TAG, "writeSessions: Could not write Pomodoro sessions.", e);
+        }
+    }
+
+    // The day index is built in the device time zone; rebuild it if the user has changed zones since.
+    // Returns the days it is in, for the query to use too.
+    private LocalDays checkedIndexes() {
+        LocalDays days = LocalDays.current();
+        if (mTable.indexes().checkZone(days, mTable)) {
+            Log.i(TAG, "Time zone changed. Rebuilt task day index.");
+        }
+        return days;
+    }
+
+    public synchronized void addTask(Task task) {
         if (task == null) {
             Log.e(TAG, "addTask: Attempted to add a null task.");
             return;
@@ -96,70 +1043,64 @@ public class TaskStore {
         // Ensure task has an ID
         if (task.getId() == null) {
             Log.w(TAG, "addTask: Task '" + task.getTitle() + "' has null ID. Assigning a new one.");
-            task.assignNewId(); // Assuming Task class has this method
+            task = task.withAssignedId();
         }
+        task = mTable.stamped(toHot(task));
 
-        // Optional: Check for duplicates before adding
-        // for (Task existingTask : mTasks) {
-        //     if (existingTask.getId().equals(task.getId())) {
-        //         Log.w(TAG, "addTask: Task with ID " + task.getId() + " already exists. Not adding.");
-        //         return;
-        //     }
-        // }
-
-        mTasks.add(task);
+        Task previous = mTable.put(task);
+        if (previous != null) {
+            // Same id twice would have produced a duplicate row before; now it replaces in place.
+            Log.w(TAG, "addTask: Task with ID " + task.getId() + " already exists. Replaced it.");
+        }
+        mFeed.record(previous == null ? TaskChange.Type.ADDED : TaskChange.Type.UPDATED, task.getId(), previous, task);
         Log.d(TAG, "Task added: '" + task.getTitle() + "' with ID: " + task.getId());
-        notifyLiveDataObservers();
+        publishChanges();
+        persistPut(task);
     }
 
     // In TaskStore.java
 
-    public void updateTask(Task taskToUpdate) {
+    public synchronized void updateTask(Task taskToUpdate) {
         // This part you provided is correct:
         if (taskToUpdate == null || taskToUpdate.getId() == null) {
             Log.e(TAG, "updateTask: Attempted to update a null task or task with null ID.");
             return;
         }
 
-        boolean found = false;
-        for (int i = 0; i < mTasks.size(); i++) {
-            Task existingTask = mTasks.get(i);
-            // Ensure existingTask and its ID are not null before comparing
-            if (existingTask != null && existingTask.getId() != null && existingTask.getId().equals(taskToUpdate.getId())) {
-                mTasks.set(i, taskToUpdate); // Replace the old task instance with the updated one
-                found = true;
-
-                // **ADJUSTED LOGGING LINE for int pomodoroCount from Task.java**
-                int currentPoms = taskToUpdate.getPomodoroCount(); // Get the int value
-                Log.d(TAG, "Task updated in TaskStore: '" + taskToUpdate.getTitle() + "'" +
-                        (currentPoms > 0 ? " Poms: " + currentPoms : "")); // Only show if > 0
-                break;
-            }
+        // Replace the old task instance with the updated one, keeping its position. Only its hot
+        // record goes in the list; a loaded body goes to the body store.
+        Task updated = mTable.get(taskToUpdate.getId()) != null ? mTable.stamped(toHot(taskToUpdate)) : taskToUpdate;
+        Task previous = mTable.replace(updated);
+        boolean found = previous != null;
+        if (found) {
+            mFeed.record(TaskChange.Type.UPDATED, updated.getId(), previous, updated);
+            int currentPoms = taskToUpdate.getPomodoroCount();
+            Log.d(TAG, "Task updated in TaskStore: '" + taskToUpdate.getTitle() + "'" +
+                    (currentPoms > 0 ? " Poms: " + currentPoms : "")); // Only show if > 0
         }
 
         if (!found) {
             Log.w(TAG, "updateTask: Task with ID " + taskToUpdate.getId() + " not found for update. Title: '" + taskToUpdate.getTitle() + "'");
             // Optionally add the task if it's missing, though "update" usually implies it exists
-            // mTasks.add(taskToUpdate);
+            // mTable.put(taskToUpdate);
+        }
+        publishChanges();
+        if (found) {
+            persistPut(updated);
         }
-        notifyLiveDataObservers(); // This will trigger saveTasks() and update LiveData
     }
 
 
-    public void deleteTask(Task taskToDelete) {
+    public synchronized void deleteTask(Task taskToDelete) {
         if (taskToDelete == null || taskToDelete.getId() == null) {
             Log.w(TAG, "deleteTask: Attempted to delete a null task or task with null ID.");
             return;
         }
 
-        boolean removed = false;
-        // Iterate and remove by ID to ensure correct object removal
-        for (int i = 0; i < mTasks.size(); i++) {
-            if (mTasks.get(i) != null && mTasks.get(i).getId() != null && mTasks.get(i).getId().equals(taskToDelete.getId())) {
-                mTasks.remove(i);
-                removed = true;
-                break;
-            }
+        Task previous = mTable.remove(taskToDelete.getId());
+        boolean removed = previous != null;
+        if (removed) {
+            mFeed.record(TaskChange.Type.REMOVED, previous.getId(), previous, null);
         }
 
         if (removed) {
@@ -167,86 +1108,441 @@ public class TaskStore {
         } else {
             Log.w(TAG, "deleteTask: Attempted to delete a task not found. Title: '" + taskToDelete.getTitle() + "' with ID: " + taskToDelete.getId());
         }
-        notifyLiveDataObservers();
+        publishChanges();
+        if (removed) {
+            persistRemove(taskToDelete.getId());
+        }
     }
 
-    private void saveTasks() {
-        if (mContext == null) {
-            Log.e(TAG, "saveTasks: Context is null. Cannot save tasks.");
+    // ---- Archive ----
+    // Completed tasks due more than getArchiveAfterDays() ago move to compressed segment files that
+    // are only read when someone asks for them, and not kept in memory afterwards. The hot task
+    // list, its saves and its queries no longer carry them; all-time totals still include them
+    // through the archive summary.
+
+    /** Completed tasks due more than this many days ago are archived. 0 turns archiving off. */
+    public int getArchiveAfterDays() {
+        return getPrefs().getInt(KEY_ARCHIVE_AFTER_DAYS, DEFAULT_ARCHIVE_AFTER_DAYS);
+    }
+
+    public void setArchiveAfterDays(int days) {
+        getPrefs().edit().putInt(KEY_ARCHIVE_AFTER_DAYS, Math.max(0, days)).apply();
+        mWriter.submit(this::archiveOldTasks);
+    }
+
+    /**
+     * Stored totals of the archived tasks, leaving out any that are in the task list too. Never
+     * null, never touches the archive file.
+     */
+    public synchronized ArchiveSummary getArchiveSummary() {
+        return archivedOnly();
+    }
+
+    // A task in both places (a move was cut short) counts as not archived, as in readArchive().
+    private synchronized ArchiveSummary archivedOnly() {
+        return mArchive.getSummaryExcluding(id -> mTable.get(id) != null);
+    }
+
+    // Writer thread only. True for ids in the published task list.
+    private Predicate<UUID> inTaskList() {
+        TaskSnapshot hot = mTable.snapshot();
+        return id -> hot.get(id) != null;
+    }
+
+    /** True if archived tasks may be due on a day from the day of {@code fromMillis} to that of {@code toMillis}. */
+    public boolean archiveMayCover(long fromMillis, long toMillis) {
+        ArchiveSummary summary = mArchive.getSummary();
+        if (summary.taskCount == 0) {
+            return false;
+        }
+        LocalDays days = LocalDays.current();
+        return days.epochDay(fromMillis) <= days.epochDay(summary.newestDate)
+                && days.epochDay(toMillis) >= days.epochDay(summary.oldestDate);
+    }
+
+    /**
+     * The archived tasks, read from disk on the writer thread each time and not kept there.
+     * Completes on the writer thread.
+     */
+    public CompletableFuture<List<Task>> getArchivedTasks() {
+        return readArchive(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    // Archived tasks of the segments due from fromDate to toDate; see TaskArchive.load.
+    private CompletableFuture<List<Task>> readArchive(long fromDate, long toDate) {
+        CompletableFuture<List<Task>> result = new CompletableFuture<>();
+        mWriter.submit(() -> {
+            try {
+                result.complete(readArchiveNow(fromDate, toDate));
+            } catch (IOException e) {
+                Log.e(TAG, "readArchive: Could not read the archive.", e);
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    // Writer thread only. Call once tasks moved in or out of the task list are saved there.
+    private void updateArchiveSummary() {
+        try {
+            mArchive.writeSummary(inTaskList());
+        } catch (IOException e) {
+            // Those tasks stay listed as maybe in the task list; that errs on the side of counting them once.
+            Log.e(TAG, "updateArchiveSummary: Could not write the archive summary.", e);
+        }
+        mStatsVersion.incrementAndGet();
+    }
+
+    // Writer thread only. A task left in both places by an interrupted move counts as not archived.
+    private List<Task> readArchiveNow(long fromDate, long toDate) throws IOException {
+        List<Task> archived = new ArrayList<>();
+        TaskSnapshot hot = mTable.snapshot();
+        for (Task task : mArchive.load(fromDate, toDate)) {
+            if (hot.get(task.getId()) == null) {
+                archived.add(task);
+            }
+        }
+        return archived;
+    }
+
+    /**
+     * Like {@link #getTasksForDays} but also searches the archive when it may hold tasks for those
+     * days, reading only the segments that can. Completes right away when the archive isn't involved.
+     */
+    public CompletableFuture<List<Task>> getTasksForDaysIncludingArchive(long fromMillis, long toMillis) {
+        TaskQuery days = new TaskQuery.Builder().setDueOnDays(fromMillis, toMillis).build();
+        List<Task> hot = query(days);
+        if (!archiveMayCover(fromMillis, toMillis)) {
+            return CompletableFuture.completedFuture(hot);
+        }
+        LocalDays localDays = LocalDays.current();
+        long fromDate = localDays.startOfDay(localDays.epochDay(fromMillis));
+        long toDate = localDays.endOfDay(toMillis) - 1;
+        return readArchive(fromDate, toDate).thenApply(archived -> {
+            List<Task> tasks = new ArrayList<>(hot);
+            for (Task task : archived) {
+                if (days.matches(task)) {
+                    tasks.add(task);
+                }
+            }
+            return tasks;
+        });
+    }
+
+    /**
+     * Moves archived tasks back into the task list as they were. The archiving pass leaves them
+     * alone until they are marked not done (and done again later).
+     *
+     * @return completes with true once they are saved in the task list.
+     */
+    public CompletableFuture<Boolean> restoreArchivedTasks(Collection<UUID> ids) {
+        Set<UUID> wanted = new HashSet<>(ids);
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        mWriter.submit(() -> {
+            List<Task> restored;
+            try {
+                // Listed as maybe in the task list before they get there, so they are never counted twice.
+                restored = mArchive.prepareRestore(wanted);
+            } catch (IOException e) {
+                Log.e(TAG, "restoreArchivedTasks: Could not read the archive or update its summary.", e);
+                result.complete(false);
+                return;
+            }
+            runInTransaction(tx -> {
+                for (Task task : restored) {
+                    if (tx.get(task.getId()) == null) {
+                        tx.add(task);
+                    }
+                }
+            }).thenAccept(persisted -> {
+                if (!persisted) {
+                    mWriter.submit(() -> {
+                        updateArchiveSummary(); // Still only archived; count them again
+                        result.complete(false);
+                    });
+                    return;
+                }
+                // Safely back in the task list; only now drop them from the archive.
+                mWriter.submit(() -> {
+                    try {
+                        mArchive.remove(wanted);
+                        mStatsVersion.incrementAndGet();
+                    } catch (IOException e) {
+                        // They are in both places; the task list copy wins until the next archiving pass.
+                        Log.e(TAG, "restoreArchivedTasks: Could not rewrite the archive.", e);
+                    }
+                    result.complete(true);
+                });
+            });
+        });
+        return result;
+    }
+
+    // Writer thread. Appends old completed tasks to the archive as a new segment, without reading
+    // what is archived already, then deletes them from the task list in one transaction. A crash in
+    // between leaves them in both places, where the task list copy wins and the next pass tries again.
+    private void archiveOldTasks() {
+        int days = getArchiveAfterDays();
+        if (days <= 0 || !isReady()) {
             return;
         }
-        if (mTasks == null) {
-            Log.e(TAG, "saveTasks: Task list (mTasks) is null. Cannot save tasks.");
-            // Consider initializing mTasks here if this state is possible and undesirable:
-            // mTasks = new ArrayList<>();
+        long cutoff = System.currentTimeMillis() - days * DAY_MILLIS;
+        List<Task> candidates = new ArrayList<>();
+        synchronized (this) {
+            mArchive.pruneRestored(id -> {
+                Task task = mTable.get(id);
+                return task != null && task.isDone();
+            });
+            for (Task task : mTable.tasksAt(mTable.indexes().doneSlots())) {
+                if (task.getDate() != 0 && task.getDate() < cutoff && !mArchive.isRestored(task.getId())) {
+                    candidates.add(task);
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
             return;
         }
 
-        Gson gson = new Gson();
-        String json = gson.toJson(mTasks);
-        Log.d(TAG, "saveTasks: Saving " + mTasks.size() + " tasks to JSON.");
+        try {
+            List<Task> whole = new ArrayList<>(candidates.size());
+            for (Task task : candidates) {
+                whole.add(withBody(task)); // The archive keeps whole tasks
+            }
+            mArchive.append(whole); // Still in the task list, so not counted twice meanwhile
+            mStatsVersion.incrementAndGet();
+        } catch (IOException e) {
+            Log.e(TAG, "archiveOldTasks: Could not write the archive. Keeping " + candidates.size() + " tasks in the task list.", e);
+            return;
+        }
+
+        List<UUID> changedMeanwhile = new ArrayList<>();
+        runInTransaction(tx -> {
+            for (Task candidate : candidates) {
+                Task current = tx.get(candidate.getId());
+                if (candidate == current) { // Tasks are immutable: the same instance is unchanged
+                    tx.delete(candidate.getId());
+                } else if (current != null) {
+                    changedMeanwhile.add(candidate.getId()); // Edited since we copied it; keep the live one
+                }
+            }
+        }).thenAccept(persisted -> mWriter.submit(() -> {
+            if (!changedMeanwhile.isEmpty()) {
+                try {
+                    mArchive.remove(changedMeanwhile);
+                } catch (IOException e) {
+                    // Still listed as maybe in the task list, so they are counted once there.
+                    Log.e(TAG, "archiveOldTasks: Could not drop " + changedMeanwhile.size() + " edited tasks from the archive.", e);
+                }
+            }
+            // Count the moved tasks as archived only now that they are gone from the saved task list.
+            updateArchiveSummary();
+            if (persisted) {
+                Log.i(TAG, "archiveOldTasks: Archived " + (candidates.size() - changedMeanwhile.size()) + " tasks. " + getArchiveSummary());
+            }
+        }));
+    }
+
+    // ---- Transactions ----
+
+    /**
+     * Runs {@code body} as one atomic change: its writes are applied together, published and
+     * announced on the change feed once, and journaled as a single record. If the body throws,
+     * nothing is applied and the exception propagates.
+     *
+     * @return completes with true once the transaction is on disk, or false if it could not be
+     *         written and was rolled back in memory. Completes on the writer thread.
+     */
+    public CompletableFuture<Boolean> runInTransaction(Consumer<TaskTransaction> body) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        synchronized (this) {
+            TaskTransaction transaction = new TaskTransaction(mTable);
+            try {
+                body.accept(transaction);
+            } finally {
+                transaction.close();
+            }
+            if (transaction.size() == 0) {
+                result.complete(true);
+                return result;
+            }
+            transaction.mapWrites(task -> mTable.stamped(toHot(task)));
+            transaction.apply(mFeed);
+            transaction.forEachWrite(this::trackShard);
+            publishChanges();
+            // Very large transactions go straight to a snapshot rather than one huge journal record.
+            TaskJournal.Record record = transaction.size() <= MAX_JOURNALED_TRANSACTION_SIZE
+                    ? mJournal.batchRecord(transaction.records(mJournal)) : null;
+            mWriter.enqueueTransaction(transaction, record, persisted -> {
+                if (!persisted) {
+                    rollBack(transaction);
+                }
+                result.complete(persisted);
+            });
+            Log.d(TAG, "runInTransaction: Applied " + transaction.size() + " task changes.");
+        }
+        return result;
+    }
+
+    // Bodies the transaction wrote stay in the body store; transactions normally only change hot fields.
+    private synchronized void rollBack(TaskTransaction transaction) {
+        int restored = transaction.rollBack(mFeed);
+        transaction.forEachWrite((id, ignored) -> trackShard(id, mTable.get(id)));
+        Log.w(TAG, "rollBack: Transaction could not be saved. Restored " + restored + " of " + transaction.size() + " tasks.");
+        publishChanges();
+    }
+
+    /** Renames {@code oldCategory} (ignoring case) on every task that has it, as one transaction. */
+    public CompletableFuture<Boolean> renameCategory(String oldCategory, String newCategory) {
+        return runInTransaction(tx -> {
+            for (Task task : tx.getTasksInCategory(oldCategory)) {
+                tx.update(task.withCategory(newCategory));
+            }
+        });
+    }
+
+    /** Leaves every task in {@code category} uncategorized, as one transaction. */
+    public CompletableFuture<Boolean> clearCategory(String category) {
+        return renameCategory(category, null);
+    }
+
+    /** Marks the given tasks done (or not done), as one transaction. Unknown ids are skipped. */
+    public CompletableFuture<Boolean> setTasksDone(Collection<UUID> ids, boolean done) {
+        return runInTransaction(tx -> {
+            for (UUID id : ids) {
+                Task task = tx.get(id);
+                if (task != null && task.isDone() != done) {
+                    tx.update(task.withDone(done));
+                }
+            }
+        });
+    }
+
+    /** Deletes the given tasks, as one transaction. Unknown ids are skipped. */
+    public CompletableFuture<Boolean> deleteTasks(Collection<UUID> ids) {
+        return runInTransaction(tx -> {
+            for (UUID id : ids) {
+                tx.delete(id);
+            }
+        });
+    }
 
-        try (FileOutputStream fos = mContext.openFileOutput(FILENAME, Context.MODE_PRIVATE)) {
-            fos.write(json.getBytes());
-            Log.d(TAG, "Tasks saved successfully to " + FILENAME);
+    // Writes a full snapshot on the writer thread, in the current snapshot format. Goes through a
+    // temp file + rename so a crash never leaves a half-written snapshot.
+    private boolean saveTasks() {
+        if (mContext == null) {
+            Log.e(TAG, "saveTasks: Context is null. Cannot save tasks.");
+            return false;
+        }
+        MainThreadIo.check("Snapshot save");
+        SnapshotFormat format = mSnapshotFormat;
+        if (format == SnapshotFormat.SHARDED) {
+            // Only the months changed since the last snapshot are rewritten.
+            if (!mShards.write(mTable::snapshot)) {
+                return false;
+            }
+            deleteOtherSnapshots(format);
+            return true;
+        }
+        TaskSnapshot tasksToSave = mTable.snapshot(); // Immutable, so no lock or copy needed while we write
+        Log.d(TAG, "saveTasks: Saving " + tasksToSave.size() + " tasks as " + format + ".");
+
+        File target = new File(mContext.getFilesDir(), format.fileName);
+        File temp = new File(mContext.getFilesDir(), format.fileName + ".tmp");
+        try {
+            if (format == SnapshotFormat.BINARY) {
+                BinaryTaskCodec.write(temp, tasksToSave);
+            } else {
+                try (FileOutputStream fos = new FileOutputStream(temp)) {
+                    TaskJsonCodec.write(fos, mGson, tasksToSave); // Streams task by task, no intermediate String
+                    fos.getFD().sync();
+                }
+            }
         } catch (Exception e) {
-            Log.e(TAG, "Error saving tasks to " + FILENAME, e);
+            Log.e(TAG, "Error saving tasks to " + format.fileName, e);
+            return false;
+        }
+        if (!temp.renameTo(target)) {
+            Log.e(TAG, "saveTasks: Could not move snapshot into place at " + format.fileName);
+            return false;
+        }
+        deleteOtherSnapshots(format);
+        Log.d(TAG, "Tasks saved successfully to " + format.fileName);
+        return true;
+    }
+
+    // The other formats' files are stale now; remove them so a later format switch can't load them.
+    private void deleteOtherSnapshots(SnapshotFormat format) {
+        for (SnapshotFormat other : SnapshotFormat.values()) {
+            if (other == format) {
+                continue;
+            }
+            if (other == SnapshotFormat.SHARDED) {
+                mShards.deleteAll();
+            } else {
+                new File(mContext.getFilesDir(), other.fileName).delete();
+            }
         }
     }
 
-    private void loadTasks() {
-        mTasks = new ArrayList<>(); // Ensure mTasks is initialized even if loading fails
+    private void loadTasks(LinkedHashMap<UUID, Task> loaded) {
         if (mContext == null) {
             Log.e(TAG, "loadTasks: Context is null. Cannot load tasks.");
             return;
         }
+        MainThreadIo.check("Snapshot load");
 
-        try (FileInputStream fis = mContext.openFileInput(FILENAME);
-             InputStreamReader isr = new InputStreamReader(fis);
-             BufferedReader bufferedReader = new BufferedReader(isr)) {
-
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = bufferedReader.readLine()) != null) {
-                sb.append(line);
+        File preferred = new File(mContext.getFilesDir(), mSnapshotFormat.fileName);
+        SnapshotFormat sourceFormat = mSnapshotFormat;
+        if (!preferred.exists()) {
+            // First load after switching formats (or an install from before tasks.bin existed):
+            // read whichever snapshot is there and rewrite it in the preferred format afterwards.
+            for (SnapshotFormat other : SnapshotFormat.values()) {
+                if (other != mSnapshotFormat && new File(mContext.getFilesDir(), other.fileName).exists()) {
+                    sourceFormat = other;
+                    mSnapshotNeedsMigration = true;
+                    break;
+                }
             }
+        }
+        File source = new File(mContext.getFilesDir(), sourceFormat.fileName);
 
-            String json = sb.toString();
-            if (json.isEmpty()) {
-                Log.i(TAG, "loadTasks: " + FILENAME + " is empty. Starting with an empty task list.");
-                return; // mTasks is already an empty list
+        Consumer<Task> sink = decoded -> {
+            Task task = decoded;
+            if (task.getId() == null) {
+                Log.w(TAG, "loadTasks: Task '" + (task.getTitle() != null ? task.getTitle() : "NO_TITLE") + "' has null ID. Assigning a new one.");
+                task = task.withAssignedId();
             }
-
-            Gson gson = new Gson();
-            Type taskListType = new TypeToken<ArrayList<Task>>() {}.getType();
-            List<Task> loadedTasks = gson.fromJson(json, taskListType);
-
-            if (loadedTasks != null) {
-                mTasks.clear(); // Clear existing tasks before adding loaded ones
-                for (Task task : loadedTasks) {
-                    if (task != null) { // Individual task object from JSON might be null if JSON is malformed
-                        if (task.getId() == null) {
-                            Log.w(TAG, "loadTasks: Task '" + (task.getTitle() != null ? task.getTitle() : "NO_TITLE") + "' has null ID. Assigning a new one.");
-                            task.assignNewId(); // Ensure Task class has assignNewId()
-                        }
-                        mTasks.add(task);
-                    } else {
-                        Log.w(TAG, "loadTasks: Found a null task object in the loaded list. Skipping.");
-                    }
+            loaded.put(task.getId(), task);
+        };
+        try {
+            int count;
+            if (sourceFormat == SnapshotFormat.SHARDED) {
+                // Switched away from shards: read them all, they are rewritten as one file below.
+                if (!source.isDirectory()) {
+                    throw new java.io.FileNotFoundException(source.getName());
                 }
-                Log.d(TAG, "Loaded " + mTasks.size() + " tasks from " + FILENAME);
+                count = mShards.load((key, tasks) -> tasks.forEach(sink));
+            } else if (sourceFormat == SnapshotFormat.BINARY) {
+                count = BinaryTaskCodec.read(source, sink);
             } else {
-                Log.w(TAG, "loadTasks: Gson returned a null list from JSON, even though JSON was not empty. File might be corrupted or not a valid Task list JSON. JSON: " + json);
-                // mTasks remains an empty list
+                // Stream the array one task at a time; the file is never materialised as a String.
+                try (FileInputStream fis = new FileInputStream(source)) {
+                    count = TaskJsonCodec.read(fis, mGson, sink);
+                }
+            }
+            if (count == 0) {
+                Log.i(TAG, "loadTasks: " + source.getName() + " is empty. Starting with an empty task list.");
+            } else {
+                Log.d(TAG, "Loaded " + loaded.size() + " tasks from " + source.getName());
             }
-
         } catch (java.io.FileNotFoundException e) {
-            Log.i(TAG, "loadTasks: " + FILENAME + " not found. Starting with an empty task list.");
-            // mTasks is already an empty list
+            Log.i(TAG, "loadTasks: " + source.getName() + " not found. Starting with an empty task list.");
+            mSnapshotNeedsMigration = false;
         } catch (Exception e) {
-            Log.e(TAG, "loadTasks: Error loading tasks from " + FILENAME, e);
-            // mTasks remains an empty list as a fallback
+            // Tasks decoded before the bad entry are kept rather than throwing the whole file away.
+            Log.e(TAG, "loadTasks: Error loading tasks from " + source.getName() + " after " + loaded.size() + " tasks", e);
+            mSnapshotNeedsMigration = false; // Keep the source file around rather than replace it
         }
-        // updateTasksLiveData() is called in the constructor after loadTasks()
+        // load() installs and publishes the tasks once the journal has been replayed
     }
 }
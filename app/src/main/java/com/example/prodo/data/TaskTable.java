@@ -0,0 +1,263 @@
+package com.example.prodo.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * In-memory task list with an id index, published as immutable {@link TaskSnapshot}s.
+ *
+ * Tasks live in append-ordered slots and {@code mSlotById} maps each id to its slot, so lookup,
+ * replace and remove are O(1) while iteration keeps insertion order. A removed task leaves a null
+ * tombstone behind; the slots are compacted (and the index rebuilt) once tombstones outnumber live
+ * tasks, which keeps removal amortised O(1).
+ *
+ * Slots are stored in chunks of {@link #CHUNK_SIZE}. After {@link #publish(long)} every chunk is
+ * shared with the published snapshot, and the next write copies only the chunk it touches plus the
+ * small array of chunk pointers. A single-task edit therefore costs O(n / 64 + 64), not O(n), and
+ * a snapshot never changes once a reader has it. Chunks created or copied since the last publish
+ * belong to the table and are written in place, so a bulk load copies nothing.
+ *
+ * Every mutation also updates the {@link TaskIndexes}, slot moves included. Their category, done
+ * and flagged sets hold slots, so index queries come back in table order and a filtered list looks
+ * exactly like the full list with rows taken out.
+ *
+ * Writes, index queries and {@link #publish(long)} must be serialised by the caller (TaskStore holds
+ * its lock). {@link #snapshot()} and everything on a TaskSnapshot are safe from any thread.
+ */
+final class TaskTable {
+    static final int CHUNK_SHIFT = 6;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MIN_TOMBSTONES_BEFORE_COMPACT = 64;
+
+    private Task[][] mChunks = new Task[1][];
+    private boolean[] mChunkOwned = new boolean[1]; // chunk is not shared, may be written in place
+    private boolean mChunksArrayOwned = true;       // same for mChunks itself
+    private int mSlotCount; // slots handed out so far, live or tombstoned
+    private int mSize;      // live tasks
+    // Concurrent so snapshot readers can use it without the writer's lock; see TaskSnapshot.get.
+    private final ConcurrentHashMap<UUID, Integer> mSlotById = new ConcurrentHashMap<>();
+    // Bumped before every change to mSlotById (add, remove, clear, compaction), so a snapshot can
+    // tell whether the index still describes it; see TaskSnapshot.get. In-place replaces don't count.
+    private volatile long mIndexVersion;
+    private final TaskIndexes mIndexes = new TaskIndexes();
+    private final AtomicReference<TaskSnapshot> mPublished = new AtomicReference<>();
+
+    TaskTable() {
+        publish(0);
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    Task get(UUID id) {
+        Integer slot = mSlotById.get(id);
+        return slot != null ? taskAt(slot) : null;
+    }
+
+    boolean contains(UUID id) {
+        return mSlotById.containsKey(id);
+    }
+
+    /** Adds {@code task} at the end, or replaces the task with the same id in place. */
+    Task put(Task task) {
+        Integer slot = mSlotById.get(task.getId());
+        if (slot != null) {
+            Task previous = set(slot, task);
+            mIndexes.update(previous, task, slot);
+            return previous;
+        }
+        int newSlot = mSlotCount;
+        set(newSlot, task);
+        mIndexVersion++;
+        mSlotById.put(task.getId(), newSlot);
+        mSlotCount++;
+        mSize++;
+        mIndexes.add(task, newSlot);
+        return null;
+    }
+
+    /**
+     * {@code task} as it should go into the table: past the stored version of its id, unless it is
+     * the stored instance or already newer. Two edits built from the same task both come in one
+     * above it, and can differ in ways equals() does not see (a subtask's done flag, or a note the
+     * hot record leaves out), so the later one always gets a version of its own; list diffs can
+     * then trust that the same id and version mean the same content.
+     */
+    Task stamped(Task task) {
+        Task stored = get(task.getId());
+        if (stored == null || task == stored || task.getVersion() > stored.getVersion()) {
+            return task;
+        }
+        return task.withVersion(stored.getVersion() + 1);
+    }
+
+    /** Replaces the task with the same id, keeping its position. Returns null (no change) if absent. */
+    Task replace(Task task) {
+        Integer slot = mSlotById.get(task.getId());
+        if (slot == null) {
+            return null;
+        }
+        Task previous = set(slot, task);
+        mIndexes.update(previous, task, slot);
+        return previous;
+    }
+
+    Task remove(UUID id) {
+        Integer slot = mSlotById.get(id);
+        if (slot == null) {
+            return null;
+        }
+        mIndexVersion++;
+        mSlotById.remove(id);
+        Task previous = set(slot, null);
+        mSize--;
+        mIndexes.remove(previous, slot);
+        if (slot == mSlotCount - 1) {
+            mSlotCount--; // Removing the last task needs no tombstone
+        } else if (mSlotCount - mSize > Math.max(MIN_TOMBSTONES_BEFORE_COMPACT, mSize)) {
+            compact();
+        }
+        return previous;
+    }
+
+    void clear() {
+        mIndexVersion++;
+        mChunks = new Task[1][];
+        mChunkOwned = new boolean[1];
+        mChunksArrayOwned = true;
+        mSlotCount = 0;
+        mSize = 0;
+        mSlotById.clear();
+        mIndexes.clear();
+    }
+
+    /**
+     * Freezes the current state as the snapshot returned by {@link #snapshot()}. Call once after a
+     * mutation or a batch of them; later writes copy whatever they touch. {@code sequence} is the
+     * change-feed sequence this version includes.
+     */
+    TaskSnapshot publish(long sequence) {
+        TaskSnapshot snapshot = new TaskSnapshot(this, mChunks, mSlotCount, mSize, mIndexVersion, sequence);
+        mChunksArrayOwned = false;
+        Arrays.fill(mChunkOwned, false);
+        mPublished.set(snapshot);
+        return snapshot;
+    }
+
+    /** The last published snapshot. Lock-free. */
+    TaskSnapshot snapshot() {
+        return mPublished.get();
+    }
+
+    TaskIndexes indexes() {
+        return mIndexes;
+    }
+
+    void forEach(Consumer<Task> action) {
+        for (int i = 0; i < mSlotCount; i++) {
+            Task task = taskAt(i);
+            if (task != null) {
+                action.accept(task);
+            }
+        }
+    }
+
+    /** The tasks at {@code slots}, e.g. from an index, in table order. */
+    List<Task> tasksAt(BitSet slots) {
+        List<Task> tasks = new ArrayList<>(slots.cardinality());
+        for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+            tasks.add(taskAt(slot));
+        }
+        return tasks;
+    }
+
+    // ---- Slot access for TaskQueryPlanner, under the caller's lock ----
+
+    /** Slots handed out so far; every live task is at a slot below this, tombstones are null. */
+    int slotCount() {
+        return mSlotCount;
+    }
+
+    Task taskAtSlot(int slot) {
+        return taskAt(slot);
+    }
+
+    // ---- Read by TaskSnapshot.get from any thread ----
+
+    Integer slotOf(UUID id) {
+        return mSlotById.get(id);
+    }
+
+    long indexVersion() {
+        return mIndexVersion;
+    }
+
+    private Task taskAt(int slot) {
+        return mChunks[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK];
+    }
+
+    // Copy-on-write store into one slot. Returns the task that was there.
+    private Task set(int slot, Task task) {
+        int chunkIndex = slot >>> CHUNK_SHIFT;
+        if (chunkIndex >= mChunks.length) {
+            int length = Math.max(chunkIndex + 1, mChunks.length * 2);
+            mChunks = Arrays.copyOf(mChunks, length);
+            mChunkOwned = Arrays.copyOf(mChunkOwned, length);
+            mChunksArrayOwned = true;
+        } else if (!mChunksArrayOwned) {
+            mChunks = mChunks.clone();
+            mChunksArrayOwned = true;
+        }
+        Task[] chunk = mChunks[chunkIndex];
+        if (chunk == null) {
+            chunk = new Task[CHUNK_SIZE];
+            mChunks[chunkIndex] = chunk;
+            mChunkOwned[chunkIndex] = true;
+        } else if (!mChunkOwned[chunkIndex]) {
+            chunk = chunk.clone();
+            mChunks[chunkIndex] = chunk;
+            mChunkOwned[chunkIndex] = true;
+        }
+        Task previous = chunk[slot & CHUNK_MASK];
+        chunk[slot & CHUNK_MASK] = task;
+        return previous;
+    }
+
+    // Rebuilds the slots without tombstones into fresh chunks; published chunks are left alone.
+    private void compact() {
+        mIndexVersion++; // Before any index entry moves, so snapshot readers fall back to a scan
+        int chunkCount = Math.max(1, (mSize + CHUNK_MASK) >>> CHUNK_SHIFT);
+        Task[][] chunks = new Task[chunkCount][];
+        boolean[] owned = new boolean[chunkCount];
+        int target = 0;
+        for (int i = 0; i < mSlotCount; i++) {
+            Task task = taskAt(i);
+            if (task == null) {
+                continue;
+            }
+            int chunkIndex = target >>> CHUNK_SHIFT;
+            if (chunks[chunkIndex] == null) {
+                chunks[chunkIndex] = new Task[CHUNK_SIZE];
+                owned[chunkIndex] = true;
+            }
+            chunks[chunkIndex][target & CHUNK_MASK] = task;
+            if (target != i) {
+                mSlotById.put(task.getId(), target);
+                mIndexes.move(task, i, target);
+            }
+            target++;
+        }
+        mChunks = chunks;
+        mChunkOwned = owned;
+        mChunksArrayOwned = true;
+        mSlotCount = target;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.prodo.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * A group of task mutations handed to {@link TaskStore#runInTransaction}.
+ *
+ * Writes are staged here and only reach the store when the transaction body returns, all at once:
+ * one published snapshot, one change-feed commit, one journal record. Reads see the staged writes.
+ * If the body throws, nothing is applied.
+ *
+ * Tasks are immutable, so a staged write is always a new instance ({@link Task#toBuilder()} or a
+ * {@code with*} copy) and a failed write can be rolled back to the instances the store had.
+ */
+public final class TaskTransaction {
+    private final TaskTable mTable;
+    // Staged final state per touched id, in first-touched order. A null value means deleted.
+    private final LinkedHashMap<UUID, Task> mWrites = new LinkedHashMap<>();
+    // Filled by apply(): the task each id had before, null if it didn't exist.
+    private final LinkedHashMap<UUID, Task> mOriginals = new LinkedHashMap<>();
+    private boolean mClosed;
+
+    TaskTransaction(TaskTable table) {
+        mTable = table;
+    }
+
+    public Task get(UUID id) {
+        checkOpen();
+        if (mWrites.containsKey(id)) {
+            return mWrites.get(id);
+        }
+        return mTable.get(id);
+    }
+
+    /** Tasks in {@code category} (ignoring case), staged writes included, in store order then added order. */
+    public List<Task> getTasksInCategory(String category) {
+        checkOpen();
+        List<Task> tasks = new ArrayList<>();
+        for (Task task : mTable.tasksAt(mTable.indexes().slotsInCategory(category))) {
+            if (!mWrites.containsKey(task.getId())) {
+                tasks.add(task);
+            }
+        }
+        String key = TaskIndexes.categoryKey(category);
+        for (Task staged : mWrites.values()) {
+            if (staged != null && key != null && key.equals(TaskIndexes.categoryKey(staged.getCategory()))) {
+                tasks.add(staged);
+            }
+        }
+        return tasks;
+    }
+
+    /** Adds {@code task}, or replaces the task with the same id. Assigns an id if it has none. */
+    public void add(Task task) {
+        checkOpen();
+        task = task.withAssignedId();
+        mWrites.put(task.getId(), task);
+    }
+
+    /** Replaces the task with the same id. Returns false (and stages nothing) if there is none. */
+    public boolean update(Task task) {
+        checkOpen();
+        if (task.getId() == null || get(task.getId()) == null) {
+            return false;
+        }
+        mWrites.put(task.getId(), task);
+        return true;
+    }
+
+    /** Deletes the task with {@code id}. Returns false if there is none. */
+    public boolean delete(UUID id) {
+        checkOpen();
+        if (id == null || get(id) == null) {
+            return false;
+        }
+        mWrites.put(id, null);
+        return true;
+    }
+
+    /** Number of tasks touched so far. */
+    public int size() {
+        return mWrites.size();
+    }
+
+    // ---- Used by TaskStore, under its lock ----
+
+    void close() {
+        mClosed = true;
+    }
+
+    /** Replaces every staged task with {@code mapper}'s result; called before {@link #apply}. */
+    void mapWrites(UnaryOperator<Task> mapper) {
+        mWrites.replaceAll((id, task) -> task != null ? mapper.apply(task) : null);
+    }
+
+    /** Applies the staged writes to the table and records them in {@code feed}. */
+    void apply(TaskChangeFeed feed) {
+        for (Map.Entry<UUID, Task> write : mWrites.entrySet()) {
+            UUID id = write.getKey();
+            Task after = write.getValue();
+            Task before = after != null ? mTable.put(after) : mTable.remove(id);
+            mOriginals.put(id, before);
+            if (after != null) {
+                feed.record(before == null ? TaskChange.Type.ADDED : TaskChange.Type.UPDATED, id, before, after);
+            } else if (before != null) {
+                feed.record(TaskChange.Type.REMOVED, id, before, null);
+            }
+        }
+    }
+
+    /** Calls {@code action} with each touched id and its staged task, null if deleted. */
+    void forEachWrite(BiConsumer<UUID, Task> action) {
+        mWrites.forEach(action);
+    }
+
+    /** The staged writes as journal records, in order. */
+    Collection<TaskJournal.Record> records(TaskJournal journal) {
+        List<TaskJournal.Record> records = new ArrayList<>(mWrites.size());
+        for (Map.Entry<UUID, Task> write : mWrites.entrySet()) {
+            records.add(write.getValue() != null ? journal.putRecord(write.getValue()) : journal.removeRecord(write.getKey()));
+        }
+        return records;
+    }
+
+    /**
+     * Undoes {@link #apply} after the write failed. A task that has been changed again since is
+     * left alone: that later change is newer than anything this transaction knew about. A deleted
+     * task that comes back is appended at the end of the list.
+     *
+     * @return the number of tasks restored.
+     */
+    int rollBack(TaskChangeFeed feed) {
+        int restored = 0;
+        for (Map.Entry<UUID, Task> write : mWrites.entrySet()) {
+            UUID id = write.getKey();
+            Task current = mTable.get(id);
+            if (current != write.getValue()) {
+                continue; // Changed again after this transaction
+            }
+            Task original = mOriginals.get(id);
+            if (original != null) {
+                if (current != null) {
+                    original = original.withVersion(current.getVersion() + 1); // Versions only go up
+                }
+                mTable.put(original);
+                feed.record(current == null ? TaskChange.Type.ADDED : TaskChange.Type.UPDATED, id, current, original);
+            } else if (current != null) {
+                mTable.remove(id);
+                feed.record(TaskChange.Type.REMOVED, id, current, null);
+            }
+            restored++;
+        }
+        return restored;
+    }
+
+    private void checkOpen() {
+        if (mClosed) {
+            throw new IllegalStateException("Transaction already finished");
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.prodo.data;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Reflection-free binding for {@link Task}.
+ *
+ * The JSON names below are the Task field names the reflective Gson path used to emit. They are
+ * the on-disk format of tasks.json and the journal, so they must not change even if the Java
+ * fields are renamed.
+ *
+ * A hot record from the task list (see {@link Task#isBodyLoaded()}) is written with its note
+ * preview under mNote, no mSubtasks and mBodyStored=true: its body is in the body store. It keeps
+ * the number of subtasks under mSubtaskCount; hot records written before that read as uncounted.
+ *
+ * mVersion is the task's modification count ({@link Task#getVersion()}); records written before it
+ * existed read as version 0.
+ */
+final class TaskTypeAdapter extends TypeAdapter<Task> {
+    static final String FIELD_ID = "mId";
+    static final String FIELD_DATE = "mDate";
+    static final String FIELD_TITLE = "mTitle";
+    static final String FIELD_POMODORO_COUNT = "pomodoroCount";
+    static final String FIELD_CATEGORY = "mCategory";
+    static final String FIELD_NOTE = "mNote";
+    static final String FIELD_IS_DONE = "mIsDone";
+    static final String FIELD_IS_FLAGGED = "mIsFlagged";
+    static final String FIELD_SUBTASKS = "mSubtasks";
+    static final String FIELD_TOTAL_TIME_SPENT = "mTotalTimeSpentMillis";
+    static final String FIELD_BODY_STORED = "mBodyStored";
+    static final String FIELD_SUBTASK_COUNT = "mSubtaskCount";
+    static final String FIELD_VERSION = "mVersion";
+
+    private final TypeAdapter<UUID> mUuidAdapter;
+    private final TypeAdapter<Subtask> mSubtaskAdapter;
+
+    TaskTypeAdapter(TypeAdapter<UUID> uuidAdapter, TypeAdapter<Subtask> subtaskAdapter) {
+        mUuidAdapter = uuidAdapter;
+        mSubtaskAdapter = subtaskAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, Task task) throws IOException {
+        if (task == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name(FIELD_ID);
+        mUuidAdapter.write(out, task.getId());
+        out.name(FIELD_DATE).value(task.getDate());
+        out.name(FIELD_TITLE).value(task.getTitle());
+        out.name(FIELD_POMODORO_COUNT).value(task.getPomodoroCount());
+        out.name(FIELD_CATEGORY).value(task.getCategory());
+        out.name(FIELD_NOTE).value(task.getNote());
+        out.name(FIELD_IS_DONE).value(task.isDone());
+        out.name(FIELD_IS_FLAGGED).value(task.isFlagged());
+        if (task.isBodyLoaded()) {
+            out.name(FIELD_SUBTASKS);
+            writeSubtasks(out, task.getSubtasks());
+        }
+        out.name(FIELD_TOTAL_TIME_SPENT).value(task.getTotalTimeSpentMillis());
+        if (!task.isBodyLoaded()) {
+            out.name(FIELD_BODY_STORED).value(true);
+            if (task.isSubtaskCountKnown()) {
+                out.name(FIELD_SUBTASK_COUNT).value(task.getSubtaskCount());
+            }
+        }
+        out.name(FIELD_VERSION).value(task.getVersion());
+        out.endObject();
+    }
+
+    @Override
+    public Task read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Task.Builder task = Task.Builder.blank();
+        boolean bodyStored = false;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case FIELD_ID:
+                    task.setId(mUuidAdapter.read(in));
+                    break;
+                case FIELD_DATE:
+                    task.setDate(in.nextLong());
+                    break;
+                case FIELD_TITLE:
+                    task.setTitle(in.nextString());
+                    break;
+                case FIELD_POMODORO_COUNT:
+                    task.setPomodoroCount(in.nextInt());
+                    break;
+                case FIELD_CATEGORY:
+                    task.setCategory(in.nextString());
+                    break;
+                case FIELD_NOTE:
+                    task.setNote(in.nextString());
+                    break;
+                case FIELD_IS_DONE:
+                    task.setDone(in.nextBoolean());
+                    break;
+                case FIELD_IS_FLAGGED:
+                    task.setFlagged(in.nextBoolean());
+                    break;
+                case FIELD_SUBTASKS:
+                    task.setSubtasks(readSubtasks(in));
+                    break;
+                case FIELD_TOTAL_TIME_SPENT:
+                    task.setTotalTimeSpentMillis(in.nextLong());
+                    break;
+                case FIELD_BODY_STORED:
+                    bodyStored = in.nextBoolean();
+                    break;
+                case FIELD_SUBTASK_COUNT:
+                    task.setSubtaskCount(in.nextInt());
+                    break;
+                case FIELD_VERSION:
+                    task.setVersion(in.nextLong());
+                    break;
+                default:
+                    in.skipValue(); // Unknown field from a newer version; ignore it
+            }
+        }
+        in.endObject();
+        if (bodyStored) {
+            task.setBodyStored(); // Fields may come in any order, so only now
+        }
+        return task.build();
+    }
+
+    private void writeSubtasks(JsonWriter out, List<Subtask> subtasks) throws IOException {
+        out.beginArray();
+        for (Subtask subtask : subtasks) {
+            mSubtaskAdapter.write(out, subtask);
+        }
+        out.endArray();
+    }
+
+    private List<Subtask> readSubtasks(JsonReader in) throws IOException {
+        List<Subtask> subtasks = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            Subtask subtask = mSubtaskAdapter.read(in);
+            if (subtask != null) {
+                subtasks.add(subtask);
+            }
+        }
+        in.endArray();
+        return subtasks;
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.prodo.data;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single background thread that owns every write to the task files.
+ *
+ * TaskStore hands it encoded journal records and returns immediately. Records for the same task
+ * id that arrive within one debounce window replace each other, so toggling a checkbox five times
+ * costs one journal write. {@link #flush()} skips the debounce for onStop / process-death paths.
+ *
+ * A transaction is queued as one batch record under its own key, in order with everything else.
+ * If it can't be written (journal and snapshot both fail) it is not retried like single records;
+ * its callback is told, so TaskStore can roll it back in memory.
+ */
+class TaskWriter {
+    private static final String TAG = "TaskWriter";
+
+    static final long DEBOUNCE_MILLIS = 300;
+    private static final long RETRY_DELAY_MILLIS = 2000;
+    // Once the journal grows past this it is folded back into a fresh snapshot.
+    static final long JOURNAL_COMPACT_THRESHOLD_BYTES = 256 * 1024;
+
+    /** Writes a full snapshot of the current tasks. Called on the writer thread only. */
+    interface SnapshotWriter {
+        boolean writeSnapshot();
+    }
+
+    /** Told on the writer thread whether a transaction reached disk. */
+    interface TransactionCallback {
+        void onComplete(boolean persisted);
+    }
+
+    private final TaskJournal mJournal;
+    private final SnapshotWriter mSnapshotWriter;
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TaskStore-writer");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    private final Object mLock = new Object();
+    // Guarded by mLock. Keyed by task id so later mutations of the same task replace earlier ones;
+    // transactions use their own key. A null record asks for a full snapshot instead of a journal write.
+    private LinkedHashMap<Object, TaskJournal.Record> mPending = new LinkedHashMap<>();
+    private final Map<Object, TransactionCallback> mTransactionCallbacks = new HashMap<>(); // Guarded by mLock
+    private long mOldestPendingAt; // uptime of the first mutation in mPending
+    private ScheduledFuture<?> mScheduledDrain;
+
+    private final AtomicLong mMutationCount = new AtomicLong();
+    private final AtomicLong mWriteCount = new AtomicLong();
+    private final AtomicLong mLastLatencyMillis = new AtomicLong();
+    private final AtomicLong mMaxLatencyMillis = new AtomicLong();
+    private final AtomicLong mTotalIoMillis = new AtomicLong();
+
+    TaskWriter(TaskJournal journal, SnapshotWriter snapshotWriter) {
+        mJournal = journal;
+        mSnapshotWriter = snapshotWriter;
+    }
+
+    void enqueue(UUID id, TaskJournal.Record record) {
+        mMutationCount.incrementAndGet();
+        synchronized (mLock) {
+            queue(id, record);
+        }
+    }
+
+    /**
+     * Queues one transaction. {@code record} is its batch record, or null if the transaction is
+     * too large for the journal and should be persisted by writing a full snapshot.
+     */
+    void enqueueTransaction(Object key, TaskJournal.Record record, TransactionCallback callback) {
+        mMutationCount.incrementAndGet();
+        synchronized (mLock) {
+            mTransactionCallbacks.put(key, callback);
+            queue(key, record);
+        }
+    }
+
+    // Caller holds mLock.
+    private void queue(Object key, TaskJournal.Record record) {
+        if (mPending.isEmpty()) {
+            mOldestPendingAt = SystemClock.uptimeMillis();
+        }
+        mPending.remove(key); // Re-insert so the map keeps last-write order
+        mPending.put(key, record);
+        if (mScheduledDrain == null) {
+            mScheduledDrain = mExecutor.schedule(this::drain, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Writes everything pending right away instead of waiting for the debounce window. */
+    Future<?> flush() {
+        return mExecutor.submit(this::drain);
+    }
+
+    /** Runs arbitrary file work on the writer thread, ordered after everything queued before it. */
+    Future<?> submit(Runnable work) {
+        return mExecutor.submit(work);
+    }
+
+    private void drain() {
+        LinkedHashMap<Object, TaskJournal.Record> batch;
+        Map<Object, TransactionCallback> callbacks = new HashMap<>();
+        long oldestPendingAt;
+        synchronized (mLock) {
+            mScheduledDrain = null;
+            if (mPending.isEmpty()) {
+                return;
+            }
+            batch = mPending;
+            oldestPendingAt = mOldestPendingAt;
+            mPending = new LinkedHashMap<>();
+            for (Object key : batch.keySet()) {
+                TransactionCallback callback = mTransactionCallbacks.remove(key);
+                if (callback != null) {
+                    callbacks.put(key, callback);
+                }
+            }
+        }
+
+        long ioStart = SystemClock.uptimeMillis();
+        boolean persisted = false;
+        if (batch.containsValue(null)) {
+            Log.d(TAG, "drain: Large transaction pending. Writing a full snapshot instead of journal records.");
+        } else {
+            try {
+                mJournal.append(batch.values());
+                persisted = true;
+            } catch (IOException e) {
+                Log.e(TAG, "drain: Could not append " + batch.size() + " records. Trying a full snapshot.", e);
+            }
+        }
+        if (!persisted) {
+            // The snapshot is taken from memory, so it covers every record in this batch.
+            if (!mSnapshotWriter.writeSnapshot()) {
+                // Transactions are rolled back rather than retried; everything else waits for the next try.
+                for (Object key : callbacks.keySet()) {
+                    batch.remove(key);
+                }
+                if (!batch.isEmpty()) {
+                    requeue(batch, oldestPendingAt);
+                }
+                notifyTransactions(callbacks, false);
+                return;
+            }
+            resetJournal();
+        }
+        notifyTransactions(callbacks, true);
+        compactIfNeeded();
+
+        long now = SystemClock.uptimeMillis();
+        long latency = now - oldestPendingAt;
+        mWriteCount.incrementAndGet();
+        mTotalIoMillis.addAndGet(now - ioStart);
+        mLastLatencyMillis.set(latency);
+        if (latency > mMaxLatencyMillis.get()) {
+            mMaxLatencyMillis.set(latency); // Only the writer thread sets this, so no CAS loop needed
+        }
+        Log.d(TAG, "drain: Persisted " + batch.size() + " records in " + (now - ioStart) + " ms (latency " + latency + " ms)");
+    }
+
+    private static void notifyTransactions(Map<Object, TransactionCallback> callbacks, boolean persisted) {
+        for (TransactionCallback callback : callbacks.values()) {
+            try {
+                callback.onComplete(persisted);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "notifyTransactions: Callback failed.", e);
+            }
+        }
+    }
+
+    // Puts a failed batch back in front of anything newer and tries again later.
+    private void requeue(LinkedHashMap<Object, TaskJournal.Record> failed, long oldestPendingAt) {
+        synchronized (mLock) {
+            for (Map.Entry<Object, TaskJournal.Record> newer : mPending.entrySet()) {
+                failed.remove(newer.getKey());
+                failed.put(newer.getKey(), newer.getValue());
+            }
+            mPending = failed;
+            mOldestPendingAt = oldestPendingAt;
+            if (mScheduledDrain == null) {
+                mScheduledDrain = mExecutor.schedule(this::drain, RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void compactIfNeeded() {
+        long journalSize = mJournal.size();
+        if (journalSize < JOURNAL_COMPACT_THRESHOLD_BYTES) {
+            return;
+        }
+        Log.d(TAG, "compactIfNeeded: Journal is " + journalSize + " bytes. Writing new snapshot.");
+        if (mSnapshotWriter.writeSnapshot()) {
+            resetJournal();
+        }
+        // Otherwise keep the journal; it is still the only record of those changes.
+    }
+
+    private void resetJournal() {
+        try {
+            mJournal.reset();
+        } catch (IOException e) {
+            // Harmless: replaying puts/removes on top of the new snapshot gives the same list.
+            Log.e(TAG, "resetJournal: Snapshot written but journal could not be reset.", e);
+        }
+    }
+
+    PersistenceStats getStats() {
+        int pending;
+        synchronized (mLock) {
+            pending = mPending.size();
+        }
+        return new PersistenceStats(mMutationCount.get(), mWriteCount.get(), pending,
+                mLastLatencyMillis.get(), mMaxLatencyMillis.get(), mTotalIoMillis.get(),
+                MainThreadIo.count());
+    }
+}
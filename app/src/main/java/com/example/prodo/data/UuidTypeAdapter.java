@@ -0,0 +1,31 @@
+package com.example.prodo.data;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/** Reads and writes a UUID as its canonical 36-char string, the same shape Gson has always produced. */
+final class UuidTypeAdapter extends TypeAdapter<UUID> {
+
+    @Override
+    public void write(JsonWriter out, UUID value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.value(value.toString());
+    }
+
+    @Override
+    public UUID read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return UUID.fromString(in.nextString());
+    }
+}
@@ -15,13 +15,14 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.prodo.R;
+import com.example.prodo.data.LocalDays;
 import com.example.prodo.data.Task;
+import com.example.prodo.data.TaskQuery;
 import com.example.prodo.data.TaskStore;
 import com.example.prodo.ui.tasks.TaskAdapter;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
 import java.util.List;
 
 public class CalendarFragment extends Fragment implements TaskAdapter.Listener {
@@ -60,20 +61,17 @@ public class CalendarFragment extends Fragment implements TaskAdapter.Listener {
         super.onViewCreated(view, savedInstanceState);
 
         calendarView.setOnDateChangeListener((view1, year, month, dayOfMonth) -> {
-            Calendar calendar = Calendar.getInstance();
-            calendar.set(year, month, dayOfMonth);
-            long selectedMillis = calendar.getTimeInMillis();
+            long selectedMillis = LocalDays.current().startOfDay(LocalDate.of(year, month + 1, dayOfMonth).toEpochDay());
             Log.d("CalendarFragment", "Date selected in CalendarView: " + year + "-" + (month + 1) + "-" + dayOfMonth + " (Millis: " + selectedMillis + ")");
             updateTasksForDate(selectedMillis);
         });
 
         // Initial load for the current date
         if (currentlySelectedDateMillis == -1) {
-            Calendar today = Calendar.getInstance();
-            today.setTimeInMillis(calendarView.getDate());
-            currentlySelectedDateMillis = today.getTimeInMillis();
+            currentlySelectedDateMillis = calendarView.getDate();
         }
-        updateTasksForDate(currentlySelectedDateMillis);
+        // Emits right away once TaskStore has loaded, or when it finishes loading
+        taskStore.getReadyLiveData().observe(getViewLifecycleOwner(), ready -> updateTasksForDate(currentlySelectedDateMillis));
     }
 
     private void setupRecyclerView() {
@@ -83,7 +81,25 @@ public class CalendarFragment extends Fragment implements TaskAdapter.Listener {
     }
 
     private void updateTasksForDate(long selectedDateMillis) {
-        List<Task> tasks = getTasksForDateInternal(selectedDateMillis);
+        currentlySelectedDateMillis = selectedDateMillis;
+        showTasks(getTasksForDateInternal(selectedDateMillis));
+
+        // Older days may have archived tasks; they are shown once the archive has been read.
+        if (taskStore.archiveMayCover(selectedDateMillis, selectedDateMillis)) {
+            taskStore.getTasksForDaysIncludingArchive(selectedDateMillis, selectedDateMillis).thenAccept(tasks -> {
+                View view = getView();
+                if (view != null) {
+                    view.post(() -> {
+                        if (currentlySelectedDateMillis == selectedDateMillis && getView() != null) {
+                            showTasks(tasks);
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    private void showTasks(List<Task> tasks) {
         Log.d(TAG, "Tasks found for selected date: " + tasks.size());
 
         if (!tasks.isEmpty()) {
@@ -98,37 +114,9 @@ public class CalendarFragment extends Fragment implements TaskAdapter.Listener {
     }
 
     private List<Task> getTasksForDateInternal(long selectedDateMillis) {
-        List<Task> allTasks = taskStore.getTasks();
-        List<Task> tasksForDate = new ArrayList<>();
-
-        Calendar selectedCal = Calendar.getInstance();
-        selectedCal.setTimeInMillis(selectedDateMillis);
-        selectedCal.set(Calendar.HOUR_OF_DAY, 0);
-        selectedCal.set(Calendar.MINUTE, 0);
-        selectedCal.set(Calendar.SECOND, 0);
-        selectedCal.set(Calendar.MILLISECOND, 0);
-        long startOfDayMillis = selectedCal.getTimeInMillis();
-
-        selectedCal.add(Calendar.DAY_OF_YEAR, 1);
-        long endOfDayMillis = selectedCal.getTimeInMillis();
-
-        Log.d(TAG, "Filtering tasks for date range: " +
-                new Date(startOfDayMillis) + " (inclusive) to " +
-                new Date(endOfDayMillis) + " (exclusive)");
-
-        for (Task task : allTasks) {
-            long taskDateMillis = task.getDate();
-            if (taskDateMillis != 0) {
-                if (taskDateMillis >= startOfDayMillis && taskDateMillis < endOfDayMillis) {
-                    tasksForDate.add(task);
-                    Log.d(TAG, "  MATCH: Task '" + task.getTitle() + "' with date " + new Date(taskDateMillis));
-                } else {
-                    Log.d(TAG, "  NO MATCH: Task '" + task.getTitle() + "' with date " + new Date(taskDateMillis));
-                }
-            }
-        }
-
-        Log.d(TAG, "Found " + tasksForDate.size() + " tasks for the selected date range.");
+        // Planned on the day index: only the tasks due on this local day are touched.
+        List<Task> tasksForDate = taskStore.query(new TaskQuery.Builder().setDueOnDay(selectedDateMillis).build());
+        Log.d(TAG, "Found " + tasksForDate.size() + " tasks for " + LocalDate.ofEpochDay(LocalDays.current().epochDay(selectedDateMillis)));
         return tasksForDate;
     }
 
@@ -137,8 +125,7 @@ public class CalendarFragment extends Fragment implements TaskAdapter.Listener {
     public void onToggleFlag(Task task) {
         Log.d(TAG, "onToggleFlag: " + task.getTitle());
         if (taskStore != null && task != null) {
-            task.setFlagged(!task.isFlagged());
-            taskStore.updateTask(task);
+            taskStore.updateTask(task.withFlagged(!task.isFlagged()));
             updateTasksForDate(currentlySelectedDateMillis);
         }
     }
@@ -147,8 +134,7 @@ public class CalendarFragment extends Fragment implements TaskAdapter.Listener {
     public void onTaskCompleted(Task task) {
         Log.d(TAG, "onTaskCompleted: " + task.getTitle());
         if (taskStore != null && task != null) {
-            task.setDone(!task.isDone());
-            taskStore.updateTask(task);
+            taskStore.updateTask(task.withDone(!task.isDone()));
             updateTasksForDate(currentlySelectedDateMillis);
         }
     }
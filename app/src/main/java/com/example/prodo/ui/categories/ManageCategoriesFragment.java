@@ -5,7 +5,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
-import androidx.lifecycle.ViewModelProvider; // If using ViewModel for task updates
+import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -18,8 +18,7 @@ import android.widget.Toast;
 
 import com.example.prodo.R;
 import com.example.prodo.data.CategoryManager;
-import com.example.prodo.data.Task; // For Task.UNCATEGORIZED
-// import com.example.prodo.viewmodels.TaskViewModel; // If you have a TaskViewModel to update tasks
+import com.example.prodo.viewmodels.TaskViewModel;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.textfield.TextInputLayout;
 
@@ -34,7 +33,7 @@ public class ManageCategoriesFragment extends Fragment {
     private CategoryAdapter categoryAdapter;
     private CategoryManager categoryManager;
     private FloatingActionButton fabAddCategory;
-    // private TaskViewModel taskViewModel; // Optional: For updating tasks when categories change
+    private TaskViewModel taskViewModel; // Moves tasks along when a category is renamed or deleted
 
     public ManageCategoriesFragment() {
         // Required empty public constructor
@@ -44,9 +43,7 @@ public class ManageCategoriesFragment extends Fragment {
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         categoryManager = new CategoryManager(requireContext());
-        // if (getActivity() != null) {
-        // taskViewModel = new ViewModelProvider(getActivity()).get(TaskViewModel.class);
-        // }
+        taskViewModel = new ViewModelProvider(requireActivity()).get(TaskViewModel.class);
     }
 
     @Override
@@ -163,14 +160,9 @@ public class ManageCategoriesFragment extends Fragment {
                 // updateCategory handles checks for new name already existing elsewhere
                 if (categoryManager.updateCategory(oldCategoryName, newCategoryName)) {
                     Toast.makeText(getContext(), "Category updated to '" + newCategoryName + "'", Toast.LENGTH_SHORT).show();
-                    // IMPORTANT: Update tasks in TaskStore/ViewModel
-                    // if (taskViewModel != null) {
-                    // taskViewModel.updateTasksCategoryBatch(oldCategoryName, newCategoryName);
-                    // } else {
-                    Log.w(TAG, "TaskViewModel is null. Cannot update tasks for category rename.");
-                    // }
+                    // One transaction for all affected tasks; TasksFragment picks it up from the change feed
+                    taskViewModel.updateTasksCategoryBatch(oldCategoryName, newCategoryName);
                     loadCategories(); // Refresh the list
-                    // TODO: Notify TasksFragment
                     dialog.dismiss();
                 } else {
                     inputLayout.setError("New name may already exist or is invalid");
@@ -187,14 +179,8 @@ public class ManageCategoriesFragment extends Fragment {
                 .setPositiveButton("Delete", (dialog, which) -> {
                     if (categoryManager.deleteCategory(categoryName)) {
                         Toast.makeText(getContext(), "Category '" + categoryName + "' deleted", Toast.LENGTH_SHORT).show();
-                        // IMPORTANT: Update tasks in TaskStore/ViewModel to have null or "Uncategorized"
-                        // if (taskViewModel != null) {
-                        // taskViewModel.updateTasksCategoryBatch(categoryName, Task.UNCATEGORIZED); // Task.UNCATEGORIZED or null
-                        // } else {
-                        Log.w(TAG, "TaskViewModel is null. Cannot update tasks for category deletion.");
-                        // }
+                        taskViewModel.updateTasksCategoryBatch(categoryName, null); // Tasks become uncategorized
                         loadCategories(); // Refresh the list
-                        // TODO: Notify TasksFragment
                     } else {
                         Toast.makeText(getContext(), "Failed to delete category", Toast.LENGTH_SHORT).show();
                     }
@@ -7,7 +7,6 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.ImageButton;
-import android.widget.PopupMenu;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -25,7 +24,6 @@ import com.example.prodo.data.TaskStore;
 import com.example.prodo.viewmodels.PomodoroViewModel;
 import com.google.android.material.tabs.TabLayout;
 
-import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
@@ -73,7 +71,7 @@ public class PomodoroFragment extends Fragment {
         setupViewModel(); // Setup ViewModel before listeners that might use it
 
         if (pomodoroViewModel != null) {
-            pomodoroViewModel.setSelectedTaskTitleForStats(null);
+            pomodoroViewModel.setSelectedTaskForStats(null);
         }
 
         setupTabLayout();
@@ -96,6 +94,8 @@ public class PomodoroFragment extends Fragment {
                 selectedTaskId = taskIdFromBundle;
                 loadAndDisplaySelectedTaskInfo(); // This will load the task and update UI/ViewModel
                 Toast.makeText(getContext(), "Task selected: " + (currentSelectedTaskObject != null ? currentSelectedTaskObject.getTitle() : "ID " + taskIdFromBundle), Toast.LENGTH_SHORT).show();
+            } else if (bundle.containsKey(BUNDLE_KEY_SELECTED_TASK_ID)) {
+                clearSelectedTask(); // "Clear Selection" in the picker
             }
         });
         // ------------------------------------------
@@ -233,58 +233,19 @@ public class PomodoroFragment extends Fragment {
     // This method is now effectively replaced by showing TaskListDialogFragment and listening to its result
     // Keep it if you have other ways to select tasks, or remove if TaskListDialogFragment is the sole method.
     private void showTaskSelectionPopup(View v) {
-        // This is the old PopupMenu logic.
-        // If TaskListDialogFragment is the primary way to select tasks,
-        // this method might be deprecated or removed.
-        // For now, let's keep it but note that btnMoreOptions now calls the dialog.
-        Log.d(TAG, "showTaskSelectionPopup called, but btnMoreOptions now uses TaskListDialogFragment.");
-        // Consider removing this or having a different trigger if you still want a PopupMenu option.
-        if (taskStore == null) {
-            Toast.makeText(getContext(), "Task store not available.", Toast.LENGTH_SHORT).show();
-            return;
-        }
-        List<Task> tasks = taskStore.getTasks();
-        if (tasks == null || tasks.isEmpty()) {
-            Toast.makeText(getContext(), "No tasks available to select.", Toast.LENGTH_SHORT).show();
-            return;
-        }
+        // The filterable picker replaced the PopupMenu, which had one item per task.
+        com.example.prodo.ui.tasks.TaskListDialogFragment.newInstance()
+                .show(getParentFragmentManager(), com.example.prodo.ui.tasks.TaskListDialogFragment.TAG);
+    }
 
-        PopupMenu popup = new PopupMenu(getContext(), v);
-        for (int i = 0; i < tasks.size(); i++) {
-            Task task = tasks.get(i);
-            if (task.getTitle() != null && !task.getTitle().isEmpty()) {
-                popup.getMenu().add(0, i, i, task.getTitle());
-            }
+    private void clearSelectedTask() {
+        selectedTaskId = null;
+        currentSelectedTaskObject = null;
+        if (pomodoroViewModel != null) {
+            pomodoroViewModel.setSelectedTaskForStats(null);
         }
-        popup.getMenu().add(0, tasks.size(), tasks.size(), getString(R.string.clear_selected_task));
-
-        popup.setOnMenuItemClickListener(item -> {
-            if (item.getItemId() == tasks.size()) {
-                selectedTaskId = null;
-                currentSelectedTaskObject = null;
-                if (pomodoroViewModel != null) {
-                    pomodoroViewModel.setSelectedTaskTitleForStats(null);
-                }
-                updateSessionInfoText(pomodoroViewModel != null ? pomodoroViewModel.currentSessionMode.getValue() : PomodoroViewModel.TimerSessionMode.WORK);
-                Toast.makeText(getContext(), "Task selection cleared.", Toast.LENGTH_SHORT).show();
-                return true;
-            }
-
-            Task selected = tasks.get(item.getItemId());
-            if (selected.getId() != null) {
-                selectedTaskId = selected.getId().toString();
-                currentSelectedTaskObject = selected;
-                if (pomodoroViewModel != null && currentSelectedTaskObject.getTitle() != null) {
-                    pomodoroViewModel.setSelectedTaskTitleForStats(currentSelectedTaskObject.getTitle());
-                }
-                loadAndDisplaySelectedTaskInfo();
-            } else {
-                Log.e(TAG, "Selected task has a null ID.");
-                Toast.makeText(getContext(), "Selected task has an invalid ID.", Toast.LENGTH_SHORT).show();
-            }
-            return true;
-        });
-        popup.show();
+        updateSessionInfoText(pomodoroViewModel != null ? pomodoroViewModel.currentSessionMode.getValue() : PomodoroViewModel.TimerSessionMode.WORK);
+        Toast.makeText(getContext(), "Task selection cleared.", Toast.LENGTH_SHORT).show();
     }
 
 
@@ -299,22 +260,20 @@ public class PomodoroFragment extends Fragment {
 
             if (currentSelectedTaskObject != null) {
                 updateSessionInfoText(pomodoroViewModel != null ? pomodoroViewModel.currentSessionMode.getValue() : PomodoroViewModel.TimerSessionMode.WORK);
-                if (pomodoroViewModel != null && currentSelectedTaskObject.getTitle() != null) {
-                    pomodoroViewModel.setSelectedTaskTitleForStats(currentSelectedTaskObject.getTitle());
-                } else if (pomodoroViewModel != null) {
-                    pomodoroViewModel.setSelectedTaskTitleForStats(null);
+                if (pomodoroViewModel != null) {
+                    pomodoroViewModel.setSelectedTaskForStats(currentSelectedTaskObject.getId());
                 }
             } else {
                 selectedTaskId = null;
                 if (pomodoroViewModel != null) {
-                    pomodoroViewModel.setSelectedTaskTitleForStats(null);
+                    pomodoroViewModel.setSelectedTaskForStats(null);
                 }
                 updateSessionInfoText(pomodoroViewModel != null ? pomodoroViewModel.currentSessionMode.getValue() : PomodoroViewModel.TimerSessionMode.WORK);
             }
         } else {
             currentSelectedTaskObject = null;
             if (pomodoroViewModel != null) {
-                pomodoroViewModel.setSelectedTaskTitleForStats(null);
+                pomodoroViewModel.setSelectedTaskForStats(null);
             }
             updateSessionInfoText(pomodoroViewModel != null ? pomodoroViewModel.currentSessionMode.getValue() : PomodoroViewModel.TimerSessionMode.WORK);
         }
@@ -6,6 +6,7 @@ import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 // Import ImageButton if you are using it, or ensure 'View' is sufficient for findViewById
 // import android.widget.ImageButton;
@@ -31,6 +32,7 @@ import com.google.android.material.chip.Chip; // Correct import for Chip
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 public class StatsFragment extends Fragment {
 
@@ -40,6 +42,7 @@ public class StatsFragment extends Fragment {
 
     private TextView tvCompletedCard, tvPendingCard;
     private TextView tvTotalPomodoros, tvTotalTimeSpent;
+    private TextView tvPeriodFocus, tvPeriodCategories;
     private RecyclerView recyclerViewTaskAnalytics;
     private TaskAnalyticsAdapter taskAnalyticsAdapter;
 
@@ -50,6 +53,7 @@ public class StatsFragment extends Fragment {
     // --- UI elements for period selection and navigation ---
     private View btnPrevPeriod, btnNextPeriod; // Using View for flexibility with ImageButton
     private TextView tvPeriodLabel;
+    private ProgressBar progressStatsLoading;
     private Chip chipWeek, chipMonth, chipYear;
 
 
@@ -77,6 +81,8 @@ public class StatsFragment extends Fragment {
         tvPendingCard = root.findViewById(R.id.tvPendingCard);
         tvTotalPomodoros = root.findViewById(R.id.tvTotalPomodoros);
         tvTotalTimeSpent = root.findViewById(R.id.tvTotalTimeSpent);
+        tvPeriodFocus = root.findViewById(R.id.tvPeriodFocus);
+        tvPeriodCategories = root.findViewById(R.id.tvPeriodCategories);
         recyclerViewTaskAnalytics = root.findViewById(R.id.rvTaskAnalytics);
         pieChartTasks = root.findViewById(R.id.pieChartTasks);
         barChartPomodoro = root.findViewById(R.id.barChartPomodoro);
@@ -85,6 +91,7 @@ public class StatsFragment extends Fragment {
         btnPrevPeriod = root.findViewById(R.id.btnPrevPeriod);
         btnNextPeriod = root.findViewById(R.id.btnNextPeriod);
         tvPeriodLabel = root.findViewById(R.id.tvPeriodLabel);
+        progressStatsLoading = root.findViewById(R.id.progressStatsLoading);
         chipWeek = root.findViewById(R.id.chipWeek);
         chipMonth = root.findViewById(R.id.chipMonth);
         chipYear = root.findViewById(R.id.chipYear);
@@ -239,99 +246,84 @@ public class StatsFragment extends Fragment {
         }
         Log.d(TAG, "Setting up ViewModel observers.");
 
-        statsViewModel.completedTasksCount.observe(getViewLifecycleOwner(), count -> {
-            Log.d(TAG, "Completed tasks count updated: " + count);
-            if (tvCompletedCard != null) tvCompletedCard.setText(String.valueOf(count != null ? count : 0));
-            updatePieChartFromViewModel();
-        });
+        statsViewModel.stats.observe(getViewLifecycleOwner(), this::showStats);
 
-        statsViewModel.pendingTasksCount.observe(getViewLifecycleOwner(), count -> {
-            Log.d(TAG, "Pending tasks count updated: " + count);
-            if (tvPendingCard != null) tvPendingCard.setText(String.valueOf(count != null ? count : 0));
-            updatePieChartFromViewModel();
+        statsViewModel.loading.observe(getViewLifecycleOwner(), loading -> {
+            if (progressStatsLoading != null) {
+                progressStatsLoading.setVisibility(Boolean.TRUE.equals(loading) ? View.VISIBLE : View.INVISIBLE);
+            }
         });
+    }
 
-        // Inside StatsFragment.java, within observeViewModel() method
+    // One snapshot updates every part of the screen, so they never show different periods.
+    private void showStats(StatsSnapshot stats) {
+        if (stats == null) {
+            return;
+        }
+        Log.d(TAG, "Stats updated for " + stats.getPeriodLabel() + ". Breakdown items: " + stats.getBreakdown().size());
+        if (tvPeriodLabel != null) {
+            tvPeriodLabel.setText(stats.getPeriodLabel());
+        }
+        if (tvCompletedCard != null) tvCompletedCard.setText(String.valueOf(stats.getCompletedTasks()));
+        if (tvPendingCard != null) tvPendingCard.setText(String.valueOf(stats.getPendingTasks()));
+        updatePieChart(stats.getCompletedTasks(), stats.getPendingTasks());
 
-        statsViewModel.taskAnalyticsList.observe(getViewLifecycleOwner(), analyticsItems -> {
-            // MODIFIED/ADDED LOGGING HERE:
-            if (analyticsItems == null) {
-                Log.d(TAG, "Task analytics list updated: NULL list received.");
-            } else {
-                Log.d(TAG, "Task analytics list updated. Item count: " + analyticsItems.size());
-                if (analyticsItems.isEmpty()) {
-                    Log.d(TAG, "Task analytics list is empty.");
-                } else {
-                    // Optional: Log details of the first item to see if data is as expected
-                    // TaskAnalyticItem firstItem = analyticsItems.get(0);
-                    // Log.d(TAG, "First item title: " + firstItem.getTaskTitle() + ", Pomos: " + firstItem.getPomodoroCount());
-                }
-            }
+        if (taskAnalyticsAdapter != null) {
+            taskAnalyticsAdapter.submitList(new ArrayList<>(stats.getBreakdown()));
+        } else {
+            Log.e(TAG, "taskAnalyticsAdapter is null in showStats.");
+        }
 
-            if (taskAnalyticsAdapter != null) {
-                taskAnalyticsAdapter.submitList(analyticsItems != null ? new ArrayList<>(analyticsItems) : new ArrayList<>());
+        BarChartData barData = stats.getBarData();
+        if (barChartManager != null) {
+            String dataSetLabel = "Focus Hours";
+            if (!barData.getEntries().isEmpty() && barData.getEntries().size() == barData.getLabels().size()) {
+                barChartManager.populateBarChart(barData.getEntries(), barData.getLabels(), dataSetLabel);
             } else {
-                Log.e(TAG, "taskAnalyticsAdapter is null in observeViewModel for taskAnalyticsList.");
+                Log.w(TAG, "Bar chart data is empty or inconsistent. Displaying 'No data available'.");
+                barChartManager.populateBarChart(new ArrayList<>(), new ArrayList<>(), dataSetLabel); // Show empty chart
             }
-        });
+        } else {
+            Log.e(TAG, "barChartManager is null in showStats. Cannot populate chart.");
+        }
 
-        statsViewModel.pomodoroBarData.observe(getViewLifecycleOwner(), barChartDataWrapper -> {
-            Log.d(TAG, "Pomodoro bar data updated from ViewModel.");
-            if (barChartManager != null && barChartDataWrapper != null) {
-                String dataSetLabel = "Focus Hours";
-                if (barChartDataWrapper.getEntries() != null && !barChartDataWrapper.getEntries().isEmpty() &&
-                        barChartDataWrapper.getLabels() != null && !barChartDataWrapper.getLabels().isEmpty() &&
-                        barChartDataWrapper.getEntries().size() == barChartDataWrapper.getLabels().size()) {
-                    Log.d(TAG, "Populating bar chart with actual data. Entries: " + barChartDataWrapper.getEntries().size() + ", Labels: " + barChartDataWrapper.getLabels().size());
-                    barChartManager.populateBarChart(barChartDataWrapper.getEntries(), barChartDataWrapper.getLabels(), dataSetLabel);
-                } else {
-                    Log.w(TAG, "Bar chart data from ViewModel is null, empty, or inconsistent. Displaying 'No data available'.");
-                    barChartManager.populateBarChart(new ArrayList<>(), new ArrayList<>(), dataSetLabel); // Show empty chart
+        if (tvTotalPomodoros != null) {
+            tvTotalPomodoros.setText(String.format(Locale.getDefault(), "Total Pomodoros: %d", stats.getTotalPomodoros()));
+        }
+        if (tvTotalTimeSpent != null) {
+            tvTotalTimeSpent.setText(String.format(Locale.getDefault(), "Total Time Spent: %.2f hours", stats.getTotalHours()));
+        }
+        if (tvPeriodFocus != null) {
+            tvPeriodFocus.setText(String.format(Locale.getDefault(), "%s: %d Pomodoros, %.2f hours",
+                    stats.getPeriodLabel(), stats.getPeriodPomodoros(), stats.getPeriodHours()));
+        }
+        if (tvPeriodCategories != null) {
+            StringBuilder categories = new StringBuilder();
+            for (Map.Entry<String, Double> entry : stats.getPeriodHoursByCategory().entrySet()) {
+                if (categories.length() > 0) {
+                    categories.append(" \u00b7 ");
                 }
-            } else {
-                Log.e(TAG, "barChartManager or barChartDataWrapper is null in observeViewModel for pomodoroBarData. Cannot populate chart.");
-            }
-        });
-
-        statsViewModel.totalPomodorosOverall.observe(getViewLifecycleOwner(), count -> {
-            Log.d(TAG, "Total Pomodoros overall updated: " + count);
-            if (tvTotalPomodoros != null) {
-                tvTotalPomodoros.setText(String.format(Locale.getDefault(), "Total Pomodoros: %d", count != null ? count : 0));
-            }
-        });
-
-        statsViewModel.totalTimeSpentHoursOverall.observe(getViewLifecycleOwner(), hours -> {
-            Log.d(TAG, "Total time spent overall updated: " + hours);
-            if (tvTotalTimeSpent != null) {
-                tvTotalTimeSpent.setText(String.format(Locale.getDefault(), "Total Time Spent: %.2f hours", hours != null ? hours : 0.0));
-            }
-        });
-
-        statsViewModel.periodLabel.observe(getViewLifecycleOwner(), s -> {
-            Log.d(TAG, "Period label updated from ViewModel: " + s);
-            if (tvPeriodLabel != null) {
-                tvPeriodLabel.setText(s);
-            } else {
-                Log.e(TAG, "tvPeriodLabel is null. Cannot set period label text.");
+                String category = entry.getKey() != null ? entry.getKey() : "Other";
+                categories.append(String.format(Locale.getDefault(), "%s %.1f h", category, entry.getValue()));
             }
-        });
+            tvPeriodCategories.setText(categories);
+            tvPeriodCategories.setVisibility(categories.length() > 0 ? View.VISIBLE : View.GONE);
+        }
     }
 
-    private void updatePieChartFromViewModel() {
-        if (statsViewModel == null || pieChartTasks == null) {
-            Log.e(TAG, "Cannot update pie chart, ViewModel or PieChart view is null.");
+    private void updatePieChart(int completed, int pending) {
+        if (pieChartTasks == null) {
+            Log.e(TAG, "Cannot update pie chart, PieChart view is null.");
             return;
         }
-        Integer completed = statsViewModel.completedTasksCount.getValue();
-        Integer pending = statsViewModel.pendingTasksCount.getValue();
         Log.d(TAG, "Updating PieChart. Completed: " + completed + ", Pending: " + pending);
 
         ArrayList<PieEntry> pieEntries = new ArrayList<>();
-        if (completed != null && completed > 0) {
-            pieEntries.add(new PieEntry(completed.floatValue(), "Completed"));
+        if (completed > 0) {
+            pieEntries.add(new PieEntry(completed, "Completed"));
         }
-        if (pending != null && pending > 0) {
-            pieEntries.add(new PieEntry(pending.floatValue(), "Pending"));
+        if (pending > 0) {
+            pieEntries.add(new PieEntry(pending, "Pending"));
         }
         populatePieChart(pieEntries);
     }
@@ -0,0 +1,105 @@
+package com.example.prodo.ui.stats;
+
+import com.example.prodo.data.TaskAnalyticItem;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything the stats screen shows for one period, computed together off the main thread so the
+ * cards, charts and breakdown always agree with each other. Immutable.
+ */
+public final class StatsSnapshot {
+    private final StatsViewModel.Period period;
+    private final long startMillis; // Inclusive
+    private final long endMillis; // Exclusive
+    private final String periodLabel;
+    private final int completedTasks;
+    private final int pendingTasks;
+    private final int totalPomodoros;
+    private final double totalHours;
+    private final int periodPomodoros;
+    private final double periodHours;
+    private final Map<String, Double> periodHoursByCategory;
+    private final BarChartData barData;
+    private final List<TaskAnalyticItem> breakdown;
+
+    StatsSnapshot(StatsViewModel.Period period, long startMillis, long endMillis, String periodLabel,
+                  int completedTasks, int pendingTasks, int totalPomodoros, double totalHours,
+                  int periodPomodoros, double periodHours, Map<String, Double> periodHoursByCategory,
+                  BarChartData barData, List<TaskAnalyticItem> breakdown) {
+        this.period = period;
+        this.startMillis = startMillis;
+        this.endMillis = endMillis;
+        this.periodLabel = periodLabel;
+        this.completedTasks = completedTasks;
+        this.pendingTasks = pendingTasks;
+        this.totalPomodoros = totalPomodoros;
+        this.totalHours = totalHours;
+        this.periodPomodoros = periodPomodoros;
+        this.periodHours = periodHours;
+        this.periodHoursByCategory = Collections.unmodifiableMap(periodHoursByCategory);
+        this.barData = barData;
+        this.breakdown = Collections.unmodifiableList(breakdown);
+    }
+
+    public StatsViewModel.Period getPeriod() {
+        return period;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public long getEndMillis() {
+        return endMillis;
+    }
+
+    public String getPeriodLabel() {
+        return periodLabel;
+    }
+
+    // The task counts and totals cover all time, not just the period.
+
+    public int getCompletedTasks() {
+        return completedTasks;
+    }
+
+    public int getPendingTasks() {
+        return pendingTasks;
+    }
+
+    public int getTotalPomodoros() {
+        return totalPomodoros;
+    }
+
+    public double getTotalHours() {
+        return totalHours;
+    }
+
+    /** Work sessions that ended in the period. */
+    public int getPeriodPomodoros() {
+        return periodPomodoros;
+    }
+
+    /** Focus hours in the period. */
+    public double getPeriodHours() {
+        return periodHours;
+    }
+
+    /** Focus hours in the period per task category, most first; null for time not under any category. */
+    public Map<String, Double> getPeriodHoursByCategory() {
+        return periodHoursByCategory;
+    }
+
+    /** Focus hours per day of the period, or per month in the year view. */
+    public BarChartData getBarData() {
+        return barData;
+    }
+
+    /** Focus time per task and day (month in the year view), in date order. */
+    public List<TaskAnalyticItem> getBreakdown() {
+        return breakdown;
+    }
+}
@@ -1,16 +1,21 @@
 package com.example.prodo.ui.stats;
 
 import android.app.Application;
-import android.content.Context;
-import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
 import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Observer;
 
+import com.example.prodo.data.FocusTotals;
+import com.example.prodo.data.LocalDays;
 import com.example.prodo.data.Task;
 import com.example.prodo.data.TaskStore;
 import com.github.mikephil.charting.data.BarEntry;
@@ -18,37 +23,29 @@ import com.github.mikephil.charting.data.BarEntry;
 import com.example.prodo.data.TaskAnalyticItem; // Ensure this is your modified class
 
 
-import java.text.SimpleDateFormat;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.format.DateTimeFormatter;
+import java.time.format.TextStyle;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
-// Map import was removed as it's no longer directly used for taskPomos/taskMillis in the breakdown
-// import java.util.Map;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class StatsViewModel extends AndroidViewModel {
 
     private static final String TAG = "StatsViewModel";
     private final TaskStore taskStore;
 
-    private final MutableLiveData<Integer> _completedTasksCount = new MutableLiveData<>(0);
-    public final LiveData<Integer> completedTasksCount = _completedTasksCount;
-
-    private final MutableLiveData<Integer> _pendingTasksCount = new MutableLiveData<>(0);
-    public final LiveData<Integer> pendingTasksCount = _pendingTasksCount;
-
-    private final MutableLiveData<List<TaskAnalyticItem>> _taskAnalyticsList = new MutableLiveData<>();
-    public final LiveData<List<TaskAnalyticItem>> taskAnalyticsList = _taskAnalyticsList;
-
-    private final MutableLiveData<BarChartData> _pomodoroBarData = new MutableLiveData<>();
-    public final LiveData<BarChartData> pomodoroBarData = _pomodoroBarData;
-
-    private final MutableLiveData<Integer> _totalPomodorosOverall = new MutableLiveData<>(0);
-    public final LiveData<Integer> totalPomodorosOverall = _totalPomodorosOverall;
-
-    private final MutableLiveData<Double> _totalTimeSpentHoursOverall = new MutableLiveData<>(0.0);
-    public final LiveData<Double> totalTimeSpentHoursOverall = _totalTimeSpentHoursOverall;
-
     public enum Period { WEEK, MONTH, YEAR }
 
     private final MutableLiveData<Period> _period = new MutableLiveData<>(Period.WEEK);
@@ -57,14 +54,75 @@ public class StatsViewModel extends AndroidViewModel {
     private final MutableLiveData<Long> _anchorUtcMillis = new MutableLiveData<>(System.currentTimeMillis());
     public final LiveData<Long> anchorUtcMillis = _anchorUtcMillis;
 
-    private final MutableLiveData<String> _periodLabel = new MutableLiveData<>("");
-    public final LiveData<String> periodLabel = _periodLabel;
+    // The latest finished computation; stays on screen while the next one runs.
+    private final MutableLiveData<StatsSnapshot> _stats = new MutableLiveData<>();
+    public final LiveData<StatsSnapshot> stats = _stats;
+
+    // True from a request until its snapshot, or a newer request's, is published.
+    private final MutableLiveData<Boolean> _loading = new MutableLiveData<>(false);
+    public final LiveData<Boolean> loading = _loading;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // One computation at a time; a newer request cancels the queued or running one.
+    private final ExecutorService statsExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "StatsViewModel-stats");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+    private final AtomicLong latestRequest = new AtomicLong(); // Computations for older requests stop early
+    private Future<?> pendingStats; // Main thread only
+    private int lastDirection = 1; // Main thread only. Of the last previous/next tap; prefetched first
+
+    // Computed stats by period and range start, each with the store's stats version it was computed
+    // at; an entry is only used while that version is current. Holds the periods shown recently and
+    // the neighbours prefetched around them, least recently used first.
+    private static final int MAX_CACHED_PERIODS = 12;
+    private final LinkedHashMap<CacheKey, CachedStats> cache = new LinkedHashMap<CacheKey, CachedStats>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedStats> eldest) {
+            return size() > MAX_CACHED_PERIODS;
+        }
+    }; // Guarded by itself
+    private volatile Map<UUID, String> archivedTitles; // Read the first time a period has sessions for tasks not in the list
+    private final AtomicBoolean archiveRequested = new AtomicBoolean();
 
     public StatsViewModel(@NonNull Application application) {
         super(application);
         taskStore = TaskStore.get(application.getApplicationContext());
-        Log.d(TAG, "ViewModel initialized. Triggering initial stats refresh.");
-        triggerStatsRefresh();
+        if (taskStore.isReady()) {
+            Log.d(TAG, "ViewModel initialized. Triggering initial stats refresh.");
+            triggerStatsRefresh();
+        } else {
+            Log.d(TAG, "ViewModel initialized. Waiting for TaskStore to finish loading.");
+            _loading.setValue(true);
+            taskStore.getReadyLiveData().observeForever(readyObserver);
+        }
+        if ((application.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            // Debug builds: check the totals kept as sessions finish against the session log. The
+            // store logs and rebuilds on any difference; refresh to show the rebuilt totals.
+            taskStore.checkFocusRollups().thenAccept(differences -> {
+                if (!differences.isEmpty()) {
+                    mainHandler.post(this::triggerStatsRefresh);
+                }
+            });
+        }
+    }
+
+    // One-shot: the first stats refresh once TaskStore has loaded.
+    private final Observer<Boolean> readyObserver = new Observer<Boolean>() {
+        @Override
+        public void onChanged(Boolean ready) {
+            taskStore.getReadyLiveData().removeObserver(this);
+            triggerStatsRefresh();
+        }
+    };
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        taskStore.getReadyLiveData().removeObserver(readyObserver);
+        latestRequest.incrementAndGet(); // Stops a running computation
+        statsExecutor.shutdownNow();
     }
 
     // This method might not be directly used if colors are handled by adapter or not at all
@@ -96,211 +154,320 @@ public class StatsViewModel extends AndroidViewModel {
     }
 
     private void shiftAnchor(int direction) {
-        Calendar c = Calendar.getInstance();
-        c.setTimeInMillis(_anchorUtcMillis.getValue() != null ? _anchorUtcMillis.getValue() : System.currentTimeMillis());
+        long anchor = _anchorUtcMillis.getValue() != null ? _anchorUtcMillis.getValue() : System.currentTimeMillis();
         Period p = _period.getValue() != null ? _period.getValue() : Period.WEEK;
         Log.d(TAG, "shiftAnchor: current period=" + p + ", direction=" + direction);
-        switch (p) {
-            case WEEK:  c.add(Calendar.WEEK_OF_YEAR, direction); break;
-            case MONTH: c.add(Calendar.MONTH, direction); break;
-            case YEAR:  c.add(Calendar.YEAR, direction); break;
-        }
-        _anchorUtcMillis.setValue(c.getTimeInMillis());
+        lastDirection = direction;
+        _anchorUtcMillis.setValue(shifted(p, anchor, direction));
         triggerStatsRefresh();
     }
 
-    private static class Range { long startMillis; long endMillis; }
-
-    private Range currentRange() {
-        Calendar start = Calendar.getInstance();
-        Calendar end = Calendar.getInstance();
-        Long anchor = _anchorUtcMillis.getValue();
-        if (anchor == null) anchor = System.currentTimeMillis();
-        start.setTimeInMillis(anchor);
-        end.setTimeInMillis(start.getTimeInMillis());
+    private static long shifted(Period p, long anchor, int direction) {
+        LocalDays days = LocalDays.current();
+        long day = days.epochDay(anchor);
+        switch (p) {
+            case WEEK:  day += 7L * direction; break;
+            case MONTH: day = LocalDate.ofEpochDay(day).plusMonths(direction).toEpochDay(); break;
+            case YEAR:  day = LocalDate.ofEpochDay(day).plusYears(direction).toEpochDay(); break;
+        }
+        return days.startOfDay(day);
+    }
 
-        Period p = _period.getValue() != null ? _period.getValue() : Period.WEEK;
-        Log.d(TAG, "Calculating currentRange for period: " + p + " with anchor: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(anchor));
+    // Epoch days from firstDay to endDay (exclusive), and the instants they start and end at.
+    private static class Range { long firstDay; long endDay; long startMillis; long endMillis; }
 
+    private static Range rangeOf(Period p, long anchor) {
+        LocalDays days = LocalDays.current();
+        long day = days.epochDay(anchor);
+        Range r = new Range();
         switch (p) {
             case WEEK:
-                start.set(Calendar.DAY_OF_WEEK, start.getFirstDayOfWeek());
-                start.set(Calendar.HOUR_OF_DAY, 0); start.set(Calendar.MINUTE, 0); start.set(Calendar.SECOND, 0); start.set(Calendar.MILLISECOND, 0);
-                end.setTimeInMillis(start.getTimeInMillis());
-                end.add(Calendar.DAY_OF_YEAR, 7);
+                r.firstDay = LocalDays.startOfWeek(day, LocalDays.firstDayOfWeek(Locale.getDefault()));
+                r.endDay = r.firstDay + 7;
                 break;
             case MONTH:
-                start.set(Calendar.DAY_OF_MONTH, 1);
-                start.set(Calendar.HOUR_OF_DAY, 0); start.set(Calendar.MINUTE, 0); start.set(Calendar.SECOND, 0); start.set(Calendar.MILLISECOND, 0);
-                end.setTimeInMillis(start.getTimeInMillis());
-                end.add(Calendar.MONTH, 1);
+                long month = LocalDays.monthKey(day);
+                r.firstDay = LocalDays.firstDayOfMonth(month);
+                r.endDay = LocalDays.firstDayOfMonth(month + 1);
                 break;
             case YEAR:
-                start.set(Calendar.DAY_OF_YEAR, 1);
-                start.set(Calendar.HOUR_OF_DAY, 0); start.set(Calendar.MINUTE, 0); start.set(Calendar.SECOND, 0); start.set(Calendar.MILLISECOND, 0);
-                end.setTimeInMillis(start.getTimeInMillis());
-                end.add(Calendar.YEAR, 1);
+                long year = LocalDays.year(day);
+                r.firstDay = LocalDays.firstDayOfYear(year);
+                r.endDay = LocalDays.firstDayOfYear(year + 1);
                 break;
         }
-        Range r = new Range();
-        r.startMillis = start.getTimeInMillis();
-        r.endMillis = end.getTimeInMillis();
-        Log.d(TAG, "currentRange calculated: Start=" + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(r.startMillis) +
-                ", End=" + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(r.endMillis));
+        r.startMillis = days.startOfDay(r.firstDay);
+        r.endMillis = days.startOfDay(r.endDay);
         return r;
     }
 
-    private void updatePeriodLabel(Range r) {
-        if (r == null) {
-            Log.e(TAG, "Cannot update period label, range is null.");
-            _periodLabel.setValue("Error: Date range not set");
-            return;
-        }
-        SimpleDateFormat dfW = new SimpleDateFormat("dd-MMM-yyyy", Locale.getDefault());
-        Period p = _period.getValue() != null ? _period.getValue() : Period.WEEK;
-        String label;
+    private static String labelOf(Period p, Range r) {
+        LocalDate first = LocalDate.ofEpochDay(r.firstDay);
         if (p == Period.WEEK) {
-            Calendar c1 = Calendar.getInstance(); c1.setTimeInMillis(r.startMillis);
-            Calendar c2 = Calendar.getInstance(); c2.setTimeInMillis(r.endMillis - 1);
-            label = dfW.format(c1.getTime()) + " ~ " + dfW.format(c2.getTime());
+            DateTimeFormatter dfW = DateTimeFormatter.ofPattern("dd-MMM-yyyy", Locale.getDefault());
+            return dfW.format(first) + " ~ " + dfW.format(LocalDate.ofEpochDay(r.endDay - 1));
         } else if (p == Period.MONTH) {
-            SimpleDateFormat m = new SimpleDateFormat("MMM yyyy", Locale.getDefault());
-            label = m.format(new java.util.Date(r.startMillis));
+            return DateTimeFormatter.ofPattern("MMM yyyy", Locale.getDefault()).format(first);
         } else { // YEAR
-            SimpleDateFormat y = new SimpleDateFormat("yyyy", Locale.getDefault());
-            label = y.format(new java.util.Date(r.startMillis));
+            return DateTimeFormatter.ofPattern("yyyy", Locale.getDefault()).format(first);
         }
-        Log.d(TAG, "Updating period label to: " + label);
-        _periodLabel.setValue(label);
     }
 
-
+    /**
+     * Publishes the stats for the current period and anchor to {@link #stats}: right away if they
+     * are cached and still current, otherwise once computed in the background. Then prefetches the
+     * periods either side. Cancels any earlier request that hasn't finished: only the latest one is
+     * ever published. Main thread only.
+     */
     public void triggerStatsRefresh() {
-        Log.d(TAG, "triggerStatsRefresh called");
+        if (statsExecutor.isShutdown()) {
+            return; // Cleared; e.g. the archive finished loading after the screen went away
+        }
+        Period p = _period.getValue() != null ? _period.getValue() : Period.WEEK;
+        long anchor = _anchorUtcMillis.getValue() != null ? _anchorUtcMillis.getValue() : System.currentTimeMillis();
+        long request = latestRequest.incrementAndGet();
+        Log.d(TAG, "triggerStatsRefresh: request " + request + " for " + p);
+        if (pendingStats != null) {
+            pendingStats.cancel(false); // Drops it if still queued; a running one sees latestRequest move on
+        }
+        int direction = lastDirection;
+        StatsSnapshot cached = cached(p, rangeOf(p, anchor).startMillis);
+        if (cached != null) {
+            Log.d(TAG, "Stats request " + request + " served from the cache.");
+            _stats.setValue(cached);
+            _loading.setValue(false);
+            pendingStats = statsExecutor.submit(() -> prefetchAround(request, p, anchor, direction));
+            return;
+        }
+        _loading.setValue(true);
+        pendingStats = statsExecutor.submit(() -> {
+            long started = System.nanoTime();
+            StatsSnapshot snapshot = computeAndCache(request, p, anchor);
+            if (snapshot == null) {
+                Log.d(TAG, "Stats request " + request + " superseded.");
+                return;
+            }
+            Log.d(TAG, "Stats request " + request + " computed in " + (System.nanoTime() - started) / 1000000 + " ms.");
+            mainHandler.post(() -> {
+                if (request != latestRequest.get()) {
+                    return; // A newer request is on its way
+                }
+                _stats.setValue(snapshot);
+                _loading.setValue(false);
+            });
+            prefetchAround(request, p, anchor, direction);
+        });
+    }
 
-        List<Task> allTasks = taskStore.getTasks();
-        if (allTasks == null) {
-            Log.w(TAG, "TaskStore.getTasks() returned null. Initializing to empty list.");
-            allTasks = new ArrayList<>();
+    private boolean isSuperseded(long request) {
+        return request != latestRequest.get();
+    }
+
+    // ---- Cache ----
+
+    private static final class CacheKey {
+        final Period period;
+        final long startMillis;
+
+        CacheKey(Period period, long startMillis) {
+            this.period = period;
+            this.startMillis = startMillis;
         }
-        Log.d(TAG, "Number of allTasks from TaskStore: " + allTasks.size());
 
-        int completed = 0, pending = 0, totalPomosOverall = 0;
-        long totalMillisOverall = 0;
-        for (Task t : allTasks) {
-            if (t == null) {
-                Log.w(TAG, "Encountered a null task in allTasks list.");
-                continue;
-            }
-            if (t.isDone()) completed++; else pending++;
-            totalPomosOverall += t.getPomodoroCount();
-            totalMillisOverall += t.getTotalTimeSpentMillis();
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CacheKey)) return false;
+            CacheKey other = (CacheKey) o;
+            return period == other.period && startMillis == other.startMillis;
         }
-        _completedTasksCount.setValue(completed);
-        _pendingTasksCount.setValue(pending);
-        _totalPomodorosOverall.setValue(totalPomosOverall);
-        _totalTimeSpentHoursOverall.setValue(totalMillisOverall / 3600000.0);
-        Log.d(TAG, "Overall stats: Completed=" + completed + ", Pending=" + pending + ", TotalPomos=" + totalPomosOverall);
 
-        Range r = currentRange();
-        updatePeriodLabel(r);
+        @Override
+        public int hashCode() {
+            return 31 * period.hashCode() + Long.hashCode(startMillis);
+        }
+    }
 
-        SharedPreferences prefs = getApplication().getSharedPreferences("ProdoStats", Context.MODE_PRIVATE);
-        ArrayList<BarEntry> barEntries = new ArrayList<>();
-        ArrayList<String> barLabels = new ArrayList<>();
-        SimpleDateFormat keyDf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()); // For SharedPreferences keys
-        SimpleDateFormat labelDf = new SimpleDateFormat("EEE", Locale.getDefault()); // For BarChart X-axis labels
+    private static final class CachedStats {
+        final long version;
+        final StatsSnapshot stats;
 
-        Calendar iter = Calendar.getInstance();
-        if (r != null && r.startMillis != 0) {
-            iter.setTimeInMillis(r.startMillis);
-        } else {
-            Log.e(TAG, "Date range 'r' is null or startMillis is 0 for BarChart. Defaulting to current time.");
-            iter.setTimeInMillis(System.currentTimeMillis());
+        CachedStats(long version, StatsSnapshot stats) {
+            this.version = version;
+            this.stats = stats;
         }
+    }
 
-        int index = 0;
-        while (r!= null && iter.getTimeInMillis() < r.endMillis) {
-            String dateKeyForTotalPomos = keyDf.format(iter.getTime()); // e.g., "2023-01-15"
-            int pomos = prefs.getInt("pomos_" + dateKeyForTotalPomos, 0); // Key for daily *total* pomos
-            float hours = pomos * (25f / 60f); // Assuming 25 min pomodoros
-            barEntries.add(new com.github.mikephil.charting.data.BarEntry(index, hours));
-            barLabels.add(labelDf.format(iter.getTime())); // e.g., "Mon"
-            iter.add(Calendar.DAY_OF_YEAR, 1);
-            index++;
+    // The cached stats for the period starting at startMillis, or null if there are none computed
+    // at the store's current stats version.
+    private StatsSnapshot cached(Period p, long startMillis) {
+        long version = taskStore.getStatsVersion();
+        synchronized (cache) {
+            CachedStats entry = cache.get(new CacheKey(p, startMillis));
+            return entry != null && entry.version == version ? entry.stats : null;
         }
-        _pomodoroBarData.setValue(new BarChartData(barEntries, barLabels));
-        Log.d(TAG, "Bar chart data prepared. Entries: " + barEntries.size());
+    }
 
-        // Build Task Breakdown: Items per task, per day
-        List<TaskAnalyticItem> breakdown = new ArrayList<>();
-        SimpleDateFormat displayDateFormatter = new SimpleDateFormat("dd MMM yyyy", Locale.getDefault()); // For display in list
+    // Stats thread. Null once a newer request has been made.
+    @WorkerThread
+    private StatsSnapshot computeAndCache(long request, Period p, long anchor) {
+        long version = taskStore.getStatsVersion(); // Read first: a change while computing makes the entry stale
+        StatsSnapshot snapshot = computeStats(request, p, anchor);
+        if (snapshot != null) {
+            synchronized (cache) {
+                cache.put(new CacheKey(p, snapshot.getStartMillis()), new CachedStats(version, snapshot));
+            }
+        }
+        return snapshot;
+    }
 
-        Calendar walk = Calendar.getInstance(); // Calendar to iterate through days in the period
-        if (r != null && r.startMillis != 0) {
-            walk.setTimeInMillis(r.startMillis);
-            Log.d(TAG, "Starting task breakdown scan from: " + keyDf.format(walk.getTime()) + " to " + keyDf.format(r.endMillis-1));
-        } else {
-            Log.e(TAG, "Date range 'r' is null or startMillis is 0. Cannot scan for task breakdown.");
-            _taskAnalyticsList.setValue(new ArrayList<>()); // Set empty list and avoid further processing
-            Log.d(TAG, "Final stats refreshed log after setting empty task breakdown.");
-            return; // Exit if range is bad
+    // Stats thread. Computes the periods before and after the one on screen, the one the user was
+    // paging towards first, so the next arrow tap is served from the cache. Stops at the next request.
+    @WorkerThread
+    private void prefetchAround(long request, Period p, long anchor, int direction) {
+        for (int step : new int[]{direction, -direction}) {
+            if (isSuperseded(request)) {
+                return;
+            }
+            long neighbour = shifted(p, anchor, step);
+            if (cached(p, rangeOf(p, neighbour).startMillis) == null) {
+                computeAndCache(request, p, neighbour);
+            }
         }
+    }
 
-        while (walk.getTimeInMillis() < r.endMillis) {
-            String currentDateKeyPart = keyDf.format(walk.getTime()); // "yyyy-MM-dd" for SharedPreferences key
-            String displayDate = displayDateFormatter.format(walk.getTime()); // "dd MMM yyyy" for display in TaskAnalyticItem
+    // Stats thread. Returns null once a newer request has been made.
+    @WorkerThread
+    private StatsSnapshot computeStats(long request, Period p, long anchor) {
+        // Maintained by the store's indexes on every mutation, so no pass over allTasks here.
+        int completed = taskStore.getCompletedTaskCount();
+        int pending = taskStore.getPendingTaskCount();
+        int totalPomosOverall = (int) taskStore.getTotalPomodoros();
+        long totalMillisOverall = taskStore.getTotalTimeSpentMillis();
+
+        Range r = rangeOf(p, anchor);
+        String label = labelOf(p, r);
+
+        // Totals are kept up to date by the store as sessions finish, per day, ISO week, month and
+        // year, so the period costs one read per bar with focus time: days for a week or month,
+        // months for a year. They come in order, so the walk below takes each in turn.
+        boolean byMonth = p == Period.YEAR;
+        List<FocusTotals> focusBars = taskStore.getFocusTotals(byMonth ? FocusTotals.Period.MONTH : FocusTotals.Period.DAY,
+                r.startMillis, r.endMillis);
+        // The period's own bucket, for its totals and categories. Weeks are kept Monday to Sunday,
+        // so a week starting on another day in this locale adds up its days instead.
+        FocusTotals periodTotals = periodTotalsOf(p, r);
+        int periodSessions = 0;
+        long periodMillis = 0;
+        Map<String, Long> periodMillisByCategory = new HashMap<>();
 
-            Log.v(TAG, "Scanning for tasks on day: " + currentDateKeyPart);
+        ArrayList<BarEntry> barEntries = new ArrayList<>();
+        ArrayList<String> barLabels = new ArrayList<>();
+        List<TaskAnalyticItem> breakdown = new ArrayList<>();
+        String[] unitLabels = new String[byMonth ? 12 : 7]; // For BarChart X-axis labels: by month, or by ISO day of the week
+        if (byMonth) {
+            for (Month month : Month.values()) {
+                unitLabels[month.getValue() - 1] = month.getDisplayName(TextStyle.SHORT, Locale.getDefault());
+            }
+        } else {
+            for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+                unitLabels[dayOfWeek.getValue() - 1] = dayOfWeek.getDisplayName(TextStyle.SHORT, Locale.getDefault());
+            }
+        }
+        DateTimeFormatter displayDateFormatter = DateTimeFormatter.ofPattern(byMonth ? "MMM yyyy" : "dd MMM yyyy", Locale.getDefault()); // For display in list
+        Map<UUID, String> archived = archivedTitles;
+        boolean unknownTasks = false;
+
+        // Epoch days, or month keys (year * 12 + month) in the year view
+        long firstKey = byMonth ? LocalDays.monthKey(r.firstDay) : r.firstDay;
+        long endKey = byMonth ? LocalDays.monthKey(r.endDay) : r.endDay;
+        int next = 0; // Into focusBars
+        int index = 0;
+        for (long key = firstKey; key < endKey; key++, index++) {
+            if (isSuperseded(request)) {
+                return null;
+            }
+            FocusTotals totals = null;
+            if (next < focusBars.size() && focusBars.get(next).getKey() == key) {
+                totals = focusBars.get(next++);
+            }
 
-            if (allTasks.isEmpty()) {
-                Log.v(TAG, "allTasks list is empty, skipping prefs scan for day " + currentDateKeyPart);
-            } else {
-                for (Task t : allTasks) {
-                    if (t == null || t.getTitle()  == null || t.getTitle().trim().isEmpty()) {
-                        Log.w(TAG, "Skipping a null task or task with null/empty title for day " + currentDateKeyPart);
-                        continue;
-                    }
-                    String taskTitle = t.getTitle();
-                    String taskSafeKey = safeKey(taskTitle);
-                    String fullPrefsKey = ("pomos_" + currentDateKeyPart + "_" + taskSafeKey); // Key for task-specific pomos on a given day
-                    Log.v(TAG, "Checking SharedPreferences for key: " + fullPrefsKey);
-
-                    int pomosForTaskOnDate = prefs.getInt(fullPrefsKey, 0);
-                    if (pomosForTaskOnDate > 0) {
-                        Log.i(TAG, "Found " + pomosForTaskOnDate + " pomos for task '" + taskTitle + "' (key: " + fullPrefsKey + ") on date " + currentDateKeyPart);
-                        long millisForTaskOnDate = (long) (pomosForTaskOnDate * 25L * 60L * 1000L); // Assuming 25 min pomos
-
-                        // ---- THIS IS THE CORRECTED CONSTRUCTOR CALL ----
-                        TaskAnalyticItem item = new TaskAnalyticItem(
-                                taskTitle,
-                                pomosForTaskOnDate,
-                                millisForTaskOnDate,
-                                displayDate // Pass the formatted date string
-                        );
-                        // ----------------------------------------------
-                        // If your TaskAnalyticItem needs a color, and you have a color field/setter:
-                        // item.setTaskColor(colorForTask(taskTitle)); // Example
-                        breakdown.add(item);
-                        Log.d(TAG, "Added to breakdown: Title=" + taskTitle + ", Pomos=" + pomosForTaskOnDate + ", Millis=" + millisForTaskOnDate + ", Date=" + displayDate);
-                    } else {
-                        Log.v(TAG, "No pomos (or 0) found for key: " + fullPrefsKey);
-                    }
+            barEntries.add(new BarEntry(index, totals != null ? totals.getFocusMillis() / 3600000f : 0f));
+            barLabels.add(byMonth ? unitLabels[(int) Math.floorMod(key, 12L)] : unitLabels[LocalDays.dayOfWeek(key) - 1]); // e.g., "Mon"
+            if (totals == null) {
+                continue;
+            }
+            if (periodTotals == null) {
+                periodSessions += totals.getSessions();
+                periodMillis += totals.getFocusMillis();
+                for (Map.Entry<String, FocusTotals.Sum> entry : totals.getByCategory().entrySet()) {
+                    periodMillisByCategory.merge(entry.getKey(), entry.getValue().focusMillis, Long::sum);
+                }
+            }
+
+            String displayDate = displayDateFormatter.format(LocalDate.ofEpochDay(byMonth ? LocalDays.firstDayOfMonth(key) : key));
+            for (Map.Entry<UUID, FocusTotals.Sum> entry : totals.getByTask().entrySet()) {
+                Task task = taskStore.getTask(entry.getKey());
+                String title;
+                if (task != null) {
+                    title = task.getTitle();
+                } else if (archived != null && archived.containsKey(entry.getKey())) {
+                    title = archived.get(entry.getKey());
+                } else {
+                    unknownTasks = true; // Deleted, or archived and the archive isn't loaded yet
+                    continue;
                 }
+                title = title != null && !title.trim().isEmpty() ? title : "(untitled)";
+                breakdown.add(new TaskAnalyticItem(title, entry.getValue().sessions, entry.getValue().focusMillis, displayDate));
             }
-            walk.add(Calendar.DAY_OF_YEAR, 1);
         }
-        Log.d(TAG, "Finished scanning days for task breakdown. Total items created: " + breakdown.size());
+        if (periodTotals != null) {
+            periodSessions = periodTotals.getSessions();
+            periodMillis = periodTotals.getFocusMillis();
+            for (Map.Entry<String, FocusTotals.Sum> entry : periodTotals.getByCategory().entrySet()) {
+                periodMillisByCategory.put(entry.getKey(), entry.getValue().focusMillis);
+            }
+        }
+        List<Map.Entry<String, Long>> categories = new ArrayList<>(periodMillisByCategory.entrySet());
+        categories.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        Map<String, Double> periodHoursByCategory = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> category : categories) {
+            periodHoursByCategory.put(category.getKey(), category.getValue() / 3600000.0);
+        }
+
+        // Sessions for tasks not in the task list may be for archived ones. Load the archive once, on the store's thread, then refresh again.
+        if (unknownTasks && archived == null && archiveRequested.compareAndSet(false, true)) {
+            taskStore.getArchivedTasks().thenAccept(tasks -> {
+                Map<UUID, String> titles = new HashMap<>(); // Just the titles; the tasks are dropped
+                for (Task task : tasks) {
+                    titles.put(task.getId(), task.getTitle());
+                }
+                mainHandler.post(() -> {
+                    archivedTitles = titles;
+                    synchronized (cache) {
+                        cache.clear(); // Computed without the archived tasks' names
+                    }
+                    triggerStatsRefresh();
+                });
+            });
+        }
 
-        _taskAnalyticsList.setValue(breakdown);
-        Log.d(TAG, "Stats refreshed for period. Task breakdown items: " + breakdown.size());
+        Log.d(TAG, "Stats for " + label + ": " + focusBars.size() + (byMonth ? " months" : " days") + " with focus time, "
+                + breakdown.size() + " breakdown items.");
+        return new StatsSnapshot(p, r.startMillis, r.endMillis, label, completed, pending, totalPomosOverall,
+                totalMillisOverall / 3600000.0, periodSessions, periodMillis / 3600000.0, periodHoursByCategory,
+                new BarChartData(barEntries, barLabels), breakdown);
     }
 
-    private String safeKey(String title) {
-        if (title == null || title.trim().isEmpty()) {
-            Log.w(TAG, "safeKey received null or empty title, returning 'untitled'");
-            return "untitled";
+    // The totals kept for the whole period, or null for a week that doesn't start on a Monday.
+    private FocusTotals periodTotalsOf(Period p, Range r) {
+        switch (p) {
+            case WEEK:
+                return LocalDays.dayOfWeek(r.firstDay) == DayOfWeek.MONDAY.getValue()
+                        ? taskStore.getFocusTotals(FocusTotals.Period.WEEK, r.startMillis) : null;
+            case MONTH:
+                return taskStore.getFocusTotals(FocusTotals.Period.MONTH, r.startMillis);
+            default:
+                return taskStore.getFocusTotals(FocusTotals.Period.YEAR, r.startMillis);
         }
-        return title.trim().toLowerCase(Locale.getDefault()).replaceAll("[^a-z0-9_.-]+", "_");
     }
 }
@@ -0,0 +1,148 @@
+package com.example.prodo.ui.tasks;
+
+import android.app.Dialog;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.ArrayAdapter;
+import android.widget.ListView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
+import androidx.fragment.app.DialogFragment;
+import com.example.prodo.R;
+import com.example.prodo.data.Task;
+import com.example.prodo.data.TaskStore;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Lists archived (old, completed) tasks. Tapping one offers to restore it to the task list; the
+ * neutral button sets how old completed tasks get before they are archived.
+ */
+public class ArchivedTasksDialogFragment extends DialogFragment {
+    public static final String TAG = "ArchivedTasksDialog";
+
+    private static final int[] ARCHIVE_AFTER_DAYS = {0, 30, 90, 365};
+    private static final String[] ARCHIVE_AFTER_LABELS = {"Never", "After 30 days", "After 90 days", "After a year"};
+
+    private final List<Task> archivedTasks = new ArrayList<>();
+    private ArrayAdapter<String> adapter;
+
+    public static ArchivedTasksDialogFragment newInstance() {
+        return new ArchivedTasksDialogFragment();
+    }
+
+    @NonNull
+    @Override
+    public Dialog onCreateDialog(@Nullable Bundle savedInstanceState) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(requireActivity());
+        LayoutInflater inflater = requireActivity().getLayoutInflater();
+        View view = inflater.inflate(R.layout.dialog_task_list, null);
+
+        ListView listViewTasks = view.findViewById(R.id.listViewTasks);
+        adapter = new ArrayAdapter<>(requireContext(), android.R.layout.simple_list_item_1, new ArrayList<>());
+        listViewTasks.setAdapter(adapter);
+        listViewTasks.setOnItemClickListener((parent, itemView, position, id) -> {
+            if (position >= 0 && position < archivedTasks.size()) {
+                confirmRestore(archivedTasks.get(position));
+            }
+        });
+
+        int count = TaskStore.get(requireContext()).getArchiveSummary().taskCount;
+        builder.setView(view)
+                .setTitle("Archived Tasks (" + count + ")")
+                .setNeutralButton("Auto-archive", (dialog, which) -> chooseArchiveAfterDays())
+                .setNegativeButton("Close", (dialog, which) -> dismiss());
+
+        loadArchivedTasks();
+        return builder.create();
+    }
+
+    // The archive is read on TaskStore's writer thread; the list is filled in once it's there.
+    private void loadArchivedTasks() {
+        TaskStore.get(requireContext()).getArchivedTasks().whenComplete((tasks, error) -> {
+            if (getActivity() == null) {
+                return;
+            }
+            getActivity().runOnUiThread(() -> {
+                if (!isAdded()) {
+                    return;
+                }
+                if (error != null) {
+                    Log.e(TAG, "Could not load archived tasks", error);
+                    Toast.makeText(getContext(), "Could not load archived tasks", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                showTasks(tasks);
+            });
+        });
+    }
+
+    private void showTasks(List<Task> tasks) {
+        archivedTasks.clear();
+        archivedTasks.addAll(tasks);
+        // Most recent first
+        Collections.sort(archivedTasks, (t1, t2) -> Long.compare(t2.getDate(), t1.getDate()));
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat("dd MMM yyyy", Locale.getDefault());
+        List<String> rows = new ArrayList<>();
+        for (Task task : archivedTasks) {
+            String title = task.getTitle() != null ? task.getTitle() : "(untitled)";
+            rows.add(title + "  ·  " + dateFormat.format(new Date(task.getDate())));
+        }
+        adapter.clear();
+        adapter.addAll(rows);
+        adapter.notifyDataSetChanged();
+    }
+
+    // Completed tasks due longer ago than the chosen age move to the archive.
+    private void chooseArchiveAfterDays() {
+        TaskStore taskStore = TaskStore.get(requireContext());
+        int current = taskStore.getArchiveAfterDays();
+        int checked = -1;
+        for (int i = 0; i < ARCHIVE_AFTER_DAYS.length; i++) {
+            if (ARCHIVE_AFTER_DAYS[i] == current) {
+                checked = i;
+            }
+        }
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Archive Completed Tasks")
+                .setSingleChoiceItems(ARCHIVE_AFTER_LABELS, checked, (dialog, which) -> {
+                    taskStore.setArchiveAfterDays(ARCHIVE_AFTER_DAYS[which]);
+                    dialog.dismiss();
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    private void confirmRestore(Task task) {
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Restore Task")
+                .setMessage("Move '" + task.getTitle() + "' back to your task list?")
+                .setPositiveButton("Restore", (dialog, which) ->
+                        TaskStore.get(requireContext()).restoreArchivedTasks(Collections.singletonList(task.getId()))
+                                .thenAccept(restored -> {
+                                    if (getActivity() == null) {
+                                        return;
+                                    }
+                                    getActivity().runOnUiThread(() -> {
+                                        if (!isAdded()) {
+                                            return;
+                                        }
+                                        Toast.makeText(getContext(), restored ? "Task restored" : "Could not restore task", Toast.LENGTH_SHORT).show();
+                                        loadArchivedTasks();
+                                    });
+                                }))
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+}
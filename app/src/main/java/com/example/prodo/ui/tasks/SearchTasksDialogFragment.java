@@ -0,0 +1,127 @@
+package com.example.prodo.ui.tasks;
+
+import android.app.Dialog;
+import android.content.Intent;
+import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.ArrayAdapter;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
+import androidx.fragment.app.DialogFragment;
+import com.example.prodo.R;
+import com.example.prodo.data.Task;
+import com.example.prodo.data.TaskStore;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/** Searches task titles, notes and subtasks as you type. Tapping a result opens the task. */
+public class SearchTasksDialogFragment extends DialogFragment {
+    public static final String TAG = "SearchTasksDialog";
+    private static final int MAX_RESULTS = 50;
+
+    private final List<Task> results = new ArrayList<>();
+    private ArrayAdapter<String> adapter;
+    private TextView emptyView;
+    private int searchGeneration; // UI thread only; results of an older query are dropped
+
+    public static SearchTasksDialogFragment newInstance() {
+        return new SearchTasksDialogFragment();
+    }
+
+    @NonNull
+    @Override
+    public Dialog onCreateDialog(@Nullable Bundle savedInstanceState) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(requireActivity());
+        LayoutInflater inflater = requireActivity().getLayoutInflater();
+        View view = inflater.inflate(R.layout.dialog_search_tasks, null);
+
+        EditText editTextSearch = view.findViewById(R.id.editTextSearch);
+        emptyView = view.findViewById(R.id.textViewSearchEmpty);
+        ListView listViewTasks = view.findViewById(R.id.listViewTasks);
+        adapter = new ArrayAdapter<>(requireContext(), android.R.layout.simple_list_item_1, new ArrayList<>());
+        listViewTasks.setAdapter(adapter);
+        listViewTasks.setOnItemClickListener((parent, itemView, position, id) -> {
+            if (position >= 0 && position < results.size()) {
+                openTask(results.get(position));
+            }
+        });
+
+        editTextSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                search(s.toString());
+            }
+        });
+
+        builder.setView(view)
+                .setTitle("Search Tasks")
+                .setNegativeButton("Close", (dialog, which) -> dismiss());
+        return builder.create();
+    }
+
+    // The query runs on TaskStore's search thread; only the latest query's results are shown.
+    private void search(String query) {
+        int generation = ++searchGeneration;
+        if (query.trim().isEmpty()) {
+            showResults(new ArrayList<>(), false);
+            return;
+        }
+        TaskStore.get(requireContext()).search(query, MAX_RESULTS).whenComplete((tasks, error) -> {
+            if (getActivity() == null) {
+                return;
+            }
+            getActivity().runOnUiThread(() -> {
+                if (!isAdded() || generation != searchGeneration) {
+                    return;
+                }
+                if (error != null) {
+                    Log.e(TAG, "Search failed for '" + query + "'", error);
+                    return;
+                }
+                showResults(tasks, true);
+            });
+        });
+    }
+
+    private void showResults(List<Task> tasks, boolean searched) {
+        results.clear();
+        results.addAll(tasks);
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat("dd MMM yyyy", Locale.getDefault());
+        List<String> rows = new ArrayList<>();
+        for (Task task : results) {
+            String title = task.getTitle() != null ? task.getTitle() : "(untitled)";
+            rows.add(title + "  ·  " + dateFormat.format(new Date(task.getDate())));
+        }
+        adapter.clear();
+        adapter.addAll(rows);
+        adapter.notifyDataSetChanged();
+        emptyView.setVisibility(searched && results.isEmpty() ? View.VISIBLE : View.GONE);
+    }
+
+    private void openTask(Task task) {
+        Intent intent = new Intent(requireActivity(), TaskDetailActivity.class);
+        intent.putExtra(TaskDetailActivity.EXTRA_TASK_ID, task.getId().toString());
+        startActivity(intent);
+        dismiss();
+    }
+}
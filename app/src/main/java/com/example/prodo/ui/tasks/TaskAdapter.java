@@ -46,8 +46,11 @@ public class TaskAdapter extends ListAdapter<Task, TaskAdapter.TaskViewHolder> {
 
                 @Override
                 public boolean areContentsTheSame(@NonNull Task oldItem, @NonNull Task newItem) {
-                    // Make sure Task has a proper equals() method implemented
-                    return oldItem.equals(newItem);
+                    // Tasks are immutable: the same instance is unchanged. A different instance
+                    // (e.g. reloaded from disk) has changed only if its version has.
+                    return oldItem == newItem
+                            || (oldItem.getVersion() == newItem.getVersion()
+                                && oldItem.isBodyLoaded() == newItem.isBodyLoaded());
                 }
             };
 
@@ -69,8 +72,9 @@ public class TaskAdapter extends ListAdapter<Task, TaskAdapter.TaskViewHolder> {
 
         holder.title.setText(currentTask.getTitle());
 
-        if (currentTask.getNote() != null && !currentTask.getNote().isEmpty()) {
-            holder.sub.setText(currentTask.getNote());
+        String notePreview = currentTask.getNotePreview(); // The list only holds the preview
+        if (notePreview != null && !notePreview.isEmpty()) {
+            holder.sub.setText(notePreview);
             holder.sub.setVisibility(View.VISIBLE);
         } else {
             holder.sub.setVisibility(View.GONE);
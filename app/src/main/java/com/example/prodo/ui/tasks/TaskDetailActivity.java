@@ -27,9 +27,7 @@ import com.google.android.material.chip.Chip;
 import com.google.android.material.textfield.TextInputEditText;
 
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
 
@@ -106,13 +104,43 @@ public class TaskDetailActivity extends AppCompatActivity implements SubtaskAdap
                 return;
             }
 
-            populateTaskDetails();
+            populateTaskDetails(); // Note preview only, until the body has been read
+            loadTaskBody(currentTask.getId());
         } else {
             Toast.makeText(this, "No task ID provided.", Toast.LENGTH_LONG).show();
             finish();
         }
     }
 
+    // The task list keeps only a note preview per task; the full note and subtasks come from the
+    // body store. Note and subtask editing stay off until they are here.
+    private void loadTaskBody(UUID taskId) {
+        setBodyEditable(false);
+        taskStore.getTaskWithBody(taskId).whenComplete((task, error) -> runOnUiThread(() -> {
+            if (isFinishing() || isDestroyed()) {
+                return;
+            }
+            if (error != null) {
+                Toast.makeText(this, "Could not load notes and subtasks.", Toast.LENGTH_LONG).show();
+                return;
+            }
+            if (task == null) {
+                Toast.makeText(this, "Task not found.", Toast.LENGTH_LONG).show();
+                finish();
+                return;
+            }
+            currentTask = task.withDate(currentTask.getDate()); // Keep a date picked while loading
+            editNote.setText(currentTask.getNote() != null ? currentTask.getNote() : "");
+            subtaskAdapter.submitList(currentTask.getSubtasks());
+            setBodyEditable(true);
+        }));
+    }
+
+    private void setBodyEditable(boolean editable) {
+        editNote.setEnabled(editable);
+        buttonAddSubtask.setEnabled(editable);
+    }
+
     private void populateTaskDetails() {
         editTitle.setText(currentTask.getTitle());
         editNote.setText(currentTask.getNote() != null ? currentTask.getNote() : "");
@@ -125,12 +153,7 @@ public class TaskDetailActivity extends AppCompatActivity implements SubtaskAdap
         }
         chipCategoryValue.setText(currentTask.getCategory() != null ? currentTask.getCategory() : "None");
 
-        List<Subtask> subtasks = currentTask.getSubtasks();
-        if (subtasks == null) {
-            subtasks = new ArrayList<>();
-            currentTask.setSubtasks(subtasks);
-        }
-        subtaskAdapter.submitList(new ArrayList<>(subtasks));
+        subtaskAdapter.submitList(currentTask.getSubtasks());
     }
 
     private void setupClickListeners() {
@@ -199,7 +222,7 @@ public class TaskDetailActivity extends AppCompatActivity implements SubtaskAdap
 
 
     private void showAddSubtaskDialog() {
-        if (currentTask == null) {
+        if (currentTask == null || !currentTask.isBodyLoaded()) {
             Toast.makeText(this, "Cannot add subtask: task not loaded.", Toast.LENGTH_SHORT).show();
             return;
         }
@@ -216,8 +239,8 @@ public class TaskDetailActivity extends AppCompatActivity implements SubtaskAdap
             String subtaskTitle = input.getText().toString().trim();
             if (!subtaskTitle.isEmpty()) {
                 Subtask newSubtask = new Subtask(subtaskTitle);
-                currentTask.getSubtasks().add(newSubtask);
-                subtaskAdapter.submitList(new ArrayList<>(currentTask.getSubtasks()));
+                currentTask = currentTask.toBuilder().addSubtask(newSubtask).build();
+                subtaskAdapter.submitList(currentTask.getSubtasks());
                 taskStore.updateTask(currentTask);
                 Toast.makeText(this, "Subtask added", Toast.LENGTH_SHORT).show();
             } else {
@@ -231,16 +254,15 @@ public class TaskDetailActivity extends AppCompatActivity implements SubtaskAdap
 
     @Override
     public void onSubtaskCheckedChanged(Subtask subtask, boolean isChecked) {
-        if (currentTask == null || currentTask.getSubtasks() == null || subtask == null) return;
+        if (currentTask == null || !currentTask.isBodyLoaded() || subtask == null) return;
 
-        for (Subtask s : currentTask.getSubtasks()) {
-            if (s.getId().equals(subtask.getId())) {
-                s.setDone(isChecked);
-                break;
-            }
+        Task updated = currentTask.withSubtask(subtask.withDone(isChecked)); // Replaces the one with the same id
+        if (updated == currentTask) {
+            return; // Already in that state
         }
+        currentTask = updated;
         taskStore.updateTask(currentTask);
-        subtaskAdapter.submitList(new ArrayList<>(currentTask.getSubtasks()));
+        subtaskAdapter.submitList(currentTask.getSubtasks());
     }
 
     @Override
@@ -250,11 +272,11 @@ public class TaskDetailActivity extends AppCompatActivity implements SubtaskAdap
                 .setTitle("Delete Subtask")
                 .setMessage("Are you sure you want to delete subtask \"" + subtaskToDelete.getTitle() + "\"?")
                 .setPositiveButton(android.R.string.yes, (dialog, which) -> {
-                    boolean removed = currentTask.getSubtasks().removeIf(subtask ->
-                            subtask.getId().equals(subtaskToDelete.getId()));
+                    Task updated = currentTask.toBuilder().removeSubtask(subtaskToDelete).build(); // Same id
 
-                    if (removed) {
-                        subtaskAdapter.submitList(new ArrayList<>(currentTask.getSubtasks()));
+                    if (updated != currentTask) {
+                        currentTask = updated;
+                        subtaskAdapter.submitList(currentTask.getSubtasks());
                         taskStore.updateTask(currentTask);
                         Toast.makeText(this, "Subtask deleted", Toast.LENGTH_SHORT).show();
                     } else {
@@ -290,7 +312,7 @@ public class TaskDetailActivity extends AppCompatActivity implements SubtaskAdap
         String dateString = sdf.format(selectedDateCalendar.getTime());
         textDateValue.setText(dateString);
         if (currentTask != null) {
-            currentTask.setDate(selectedDateCalendar.getTimeInMillis());
+            currentTask = currentTask.withDate(selectedDateCalendar.getTimeInMillis());
         }
     }
 
@@ -300,13 +322,24 @@ public class TaskDetailActivity extends AppCompatActivity implements SubtaskAdap
             return;
         }
 
-        currentTask.setTitle(editTitle.getText().toString().trim());
-        currentTask.setNote(editNote.getText().toString().trim());
+        Task.Builder edited = currentTask.toBuilder().setTitle(editTitle.getText().toString().trim());
+        if (currentTask.isBodyLoaded()) { // Otherwise the field holds only the preview
+            edited.setNote(editNote.getText().toString().trim());
+        }
+        currentTask = edited.build();
 
         taskStore.updateTask(currentTask);
         Toast.makeText(this, "Task saved", Toast.LENGTH_SHORT).show();
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (taskStore != null) {
+            taskStore.flush(); // Don't leave subtask/title edits sitting in the debounce window
+        }
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         if (item.getItemId() == android.R.id.home) {
@@ -2,27 +2,37 @@ package com.example.prodo.ui.tasks; // Or a dialogs package
 
 import android.app.Dialog;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
-import android.widget.ArrayAdapter;
-import android.widget.ListView;
+import android.widget.EditText;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.DialogFragment;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 import com.example.prodo.R;
 import com.example.prodo.data.Task;
+import com.example.prodo.data.TaskPicker;
 import com.example.prodo.data.TaskStore;
 import com.example.prodo.ui.pomodoro.PomodoroFragment;
 
-import java.util.ArrayList;
-import java.util.List;
-
+/**
+ * Picks a task for the Pomodoro timer. Typing filters the tasks by fuzzy match on the title (see
+ * {@link TaskPicker}); with nothing typed it lists recently used and undone tasks.
+ */
 public class TaskListDialogFragment extends DialogFragment {
     public static final String TAG = "TaskListDialogFragment";
+    private static final int MAX_RESULTS = 200;
+
+    private TaskPickerAdapter adapter;
+    private EditText editTextFilter;
+    private TaskPicker picker; // Null until loaded
 
     // --- ADD THIS newInstance() METHOD ---
     public static TaskListDialogFragment newInstance() {
@@ -41,54 +51,71 @@ public class TaskListDialogFragment extends DialogFragment {
     public Dialog onCreateDialog(@Nullable Bundle savedInstanceState) {
         AlertDialog.Builder builder = new AlertDialog.Builder(requireActivity());
         LayoutInflater inflater = requireActivity().getLayoutInflater();
-        View view = inflater.inflate(R.layout.dialog_task_list, null);
+        View view = inflater.inflate(R.layout.dialog_task_picker, null);
 
-        ListView listViewTasks = view.findViewById(R.id.listViewTasks);
-        List<Task> tasks = TaskStore.get(getContext()).getTasks();
-        List<String> taskTitles = new ArrayList<>();
+        editTextFilter = view.findViewById(R.id.editTextFilter);
+        RecyclerView recyclerViewTasks = view.findViewById(R.id.recyclerViewTasks);
+        recyclerViewTasks.setLayoutManager(new LinearLayoutManager(requireContext()));
+        adapter = new TaskPickerAdapter(this::sendResult);
+        recyclerViewTasks.setAdapter(adapter);
 
-        if (tasks != null) { // Safety check
-            for (Task task : tasks) {
-                if (task != null && task.getTitle() != null) { // More safety checks
-                    taskTitles.add(task.getTitle());
-                }
-            }
-        } else {
-            // Handle case where tasks list is null, maybe show a message in the dialog
-            // or ensure TaskStore.getTasks() never returns null (returns empty list instead)
-            Log.w(TAG, "Task list from TaskStore is null.");
-        }
+        editTextFilter.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
 
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
 
-        ArrayAdapter<String> adapter = new ArrayAdapter<>(requireContext(),
-                android.R.layout.simple_list_item_1, taskTitles);
-        listViewTasks.setAdapter(adapter);
-
-        listViewTasks.setOnItemClickListener((parent, itemView, position, id) -> {
-            if (tasks != null && position >= 0 && position < tasks.size()) { // Boundary check
-                Task selectedTask = tasks.get(position);
-                if (selectedTask != null && selectedTask.getId() != null) { // Null check for task and ID
-                    Bundle result = new Bundle();
-                    // Ensure PomodoroFragment.BUNDLE_KEY_SELECTED_TASK_ID and
-                    // PomodoroFragment.REQUEST_KEY_SELECT_TASK are defined in PomodoroFragment
-                    result.putString(PomodoroFragment.BUNDLE_KEY_SELECTED_TASK_ID, selectedTask.getId().toString());
-                    getParentFragmentManager().setFragmentResult(PomodoroFragment.REQUEST_KEY_SELECT_TASK, result);
-                    dismiss();
-                } else {
-                    Toast.makeText(getContext(), "Error: Selected task or its ID is null.", Toast.LENGTH_SHORT).show();
-                    Log.e(TAG, "Selected task or its ID is null at position: " + position);
-                }
-            } else {
-                Toast.makeText(getContext(), "Error selecting task from list.", Toast.LENGTH_SHORT).show();
-                Log.e(TAG, "Error in setOnItemClickListener - tasks list null or position out of bounds. Position: " + position);
+            @Override
+            public void afterTextChanged(Editable s) {
+                showMatches();
             }
         });
 
         builder.setView(view)
                 .setTitle("Select a Task")
+                .setNeutralButton("Clear Selection", (dialog, which) -> sendResult(null))
                 .setNegativeButton("Cancel", (dialog, which) -> dismiss());
 
+        loadPicker();
         return builder.create();
     }
-}
 
+    // The picker is built off the main thread; until it's there, typing just fills the field.
+    private void loadPicker() {
+        TaskStore.get(requireContext()).newTaskPicker().whenComplete((taskPicker, error) -> {
+            if (getActivity() == null) {
+                return;
+            }
+            getActivity().runOnUiThread(() -> {
+                if (!isAdded()) {
+                    return;
+                }
+                if (error != null) {
+                    Log.e(TAG, "Could not load tasks for the picker", error);
+                    Toast.makeText(getContext(), "Could not load tasks", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                picker = taskPicker;
+                showMatches();
+            });
+        });
+    }
+
+    private void showMatches() {
+        if (picker != null) {
+            adapter.submitList(picker.match(editTextFilter.getText().toString(), MAX_RESULTS));
+        }
+    }
+
+    // A null task clears the Pomodoro's selection.
+    private void sendResult(@Nullable Task task) {
+        Bundle result = new Bundle();
+        result.putString(PomodoroFragment.BUNDLE_KEY_SELECTED_TASK_ID, task != null ? task.getId().toString() : null);
+        if (task != null) {
+            TaskStore.get(requireContext()).noteTaskUsed(task.getId());
+        }
+        getParentFragmentManager().setFragmentResult(PomodoroFragment.REQUEST_KEY_SELECT_TASK, result);
+        dismiss();
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.prodo.ui.tasks;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+import com.example.prodo.data.Task;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/** Rows of the task picker: title, and the category, date and whether it's done underneath. */
+public class TaskPickerAdapter extends RecyclerView.Adapter<TaskPickerAdapter.TaskViewHolder> {
+
+    private final List<Task> tasks = new ArrayList<>();
+    private final OnTaskPickedListener listener;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd MMM yyyy", Locale.getDefault());
+
+    public interface OnTaskPickedListener {
+        void onTaskPicked(Task task);
+    }
+
+    public TaskPickerAdapter(OnTaskPickedListener listener) {
+        this.listener = listener;
+    }
+
+    // The picker hands over at most a screenful or two of matches, so rebinding them all is cheap.
+    public void submitList(List<Task> newTasks) {
+        tasks.clear();
+        tasks.addAll(newTasks);
+        notifyDataSetChanged();
+    }
+
+    @NonNull
+    @Override
+    public TaskViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(android.R.layout.simple_list_item_2, parent, false);
+        return new TaskViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull TaskViewHolder holder, int position) {
+        Task task = tasks.get(position);
+        holder.title.setText(task.getTitle() != null ? task.getTitle() : "(untitled)");
+        String details = task.getCategory() + "  ·  " + dateFormat.format(new Date(task.getDate()));
+        holder.details.setText(task.isDone() ? details + "  ·  Done" : details);
+        holder.itemView.setOnClickListener(v -> listener.onTaskPicked(task));
+    }
+
+    @Override
+    public int getItemCount() {
+        return tasks.size();
+    }
+
+    static class TaskViewHolder extends RecyclerView.ViewHolder {
+        final TextView title;
+        final TextView details;
+
+        TaskViewHolder(@NonNull View itemView) {
+            super(itemView);
+            title = itemView.findViewById(android.R.id.text1);
+            details = itemView.findViewById(android.R.id.text2);
+        }
+    }
+}
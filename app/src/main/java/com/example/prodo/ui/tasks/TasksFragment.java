@@ -151,7 +151,7 @@ public class TasksFragment extends Fragment implements TaskAdapter.Listener {
     public void onResume() {
         super.onResume();
         populateCategoryChips();
-        taskViewModel.refreshTasks();
+        // No task refresh needed: TaskViewModel follows the store's change feed.
     }
 
     private void populateCategoryChips() {
@@ -237,14 +237,12 @@ public class TasksFragment extends Fragment implements TaskAdapter.Listener {
 
     @Override
     public void onToggleFlag(Task task) {
-        task.setFlagged(!task.isFlagged());
-        taskViewModel.updateTask(task);
+        taskViewModel.updateTask(task.withFlagged(!task.isFlagged()));
     }
 
     @Override
     public void onTaskCompleted(Task task) {
-        task.setDone(!task.isDone());
-        taskViewModel.updateTask(task);
+        taskViewModel.updateTask(task.withDone(!task.isDone()));
     }
 
     @Override
@@ -263,11 +261,6 @@ public class TasksFragment extends Fragment implements TaskAdapter.Listener {
                 .show();
     }
 
-    public void refreshTaskList() {
-        Log.d(TAG, "Manual refreshTaskList() called.");
-        taskViewModel.refreshTasks();
-    }
-
     // ✅ You can call this from your adapter or UI to open task details
     private void launchTaskDetail(Task taskToOpen) {
         if (taskToOpen == null || taskToOpen.getId() == null) {
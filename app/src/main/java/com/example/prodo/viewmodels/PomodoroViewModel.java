@@ -1,9 +1,8 @@
 package com.example.prodo.viewmodels;
 
 import android.app.Application;
-import android.content.Context;
-import android.content.SharedPreferences;
 import android.os.CountDownTimer;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -11,9 +10,12 @@ import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import com.example.prodo.data.FocusTotals;
+import com.example.prodo.data.PomodoroSession;
+import com.example.prodo.data.TaskStore;
+
 import java.util.Locale;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 public class PomodoroViewModel extends AndroidViewModel {
@@ -41,6 +43,14 @@ public class PomodoroViewModel extends AndroidViewModel {
     private long timeLeftInMillis;
     private long currentModeTotalDurationMillis;
 
+    // The session being timed, for the session log: when it was first started, and how long it
+    // has run, pauses left out.
+    private long sessionStartMillis;
+    private long sessionRanMillis;
+    private long runningSinceElapsed;
+
+    private final TaskStore taskStore;
+
     private final MutableLiveData<TimerState> _timerState = new MutableLiveData<>(TimerState.STOPPED);
     public final LiveData<TimerState> timerState = _timerState;
 
@@ -53,22 +63,20 @@ public class PomodoroViewModel extends AndroidViewModel {
     private final MutableLiveData<Integer> _completedPomodorosTodayDisplay = new MutableLiveData<>(0);
     public final LiveData<Integer> completedPomodorosTodayDisplay = _completedPomodorosTodayDisplay;
 
-    // --- NEW: For tracking selected task for stats ---
-    private String currentTaskTitleForStats = null;
-    // --------------------------------------------------
+    // The task finished sessions are logged for; null if none is selected.
+    private UUID currentTaskIdForStats = null;
 
     public PomodoroViewModel(@NonNull Application application) {
         super(application);
+        taskStore = TaskStore.get(application.getApplicationContext());
         setMode(TimerSessionMode.WORK, false);
         loadCompletedPomodorosForTodayDisplay();
     }
 
-    // --- NEW: Method to set the currently selected task title from Fragment ---
-    public void setSelectedTaskTitleForStats(String taskTitle) {
-        this.currentTaskTitleForStats = taskTitle;
-        Log.d(TAG, "Selected task title for stats set to: " + (taskTitle != null ? taskTitle : "null"));
+    public void setSelectedTaskForStats(UUID taskId) {
+        this.currentTaskIdForStats = taskId;
+        Log.d(TAG, "Selected task for stats set to: " + taskId);
     }
-    // --------------------------------------------------------------------
 
     private void setMode(TimerSessionMode mode, boolean autoStart) {
         Log.d(TAG, "Setting mode to: " + mode + ", AutoStart: " + autoStart);
@@ -118,12 +126,12 @@ public class PomodoroViewModel extends AndroidViewModel {
             return;
         }
 
-        if (currentState == TimerState.STOPPED) {
-            timeLeftInMillis = currentModeTotalDurationMillis;
-        }
-        if (timeLeftInMillis == 0) {
+        if (currentState == TimerState.STOPPED || timeLeftInMillis == 0) {
             timeLeftInMillis = currentModeTotalDurationMillis;
+            sessionStartMillis = System.currentTimeMillis();
+            sessionRanMillis = 0;
         }
+        runningSinceElapsed = SystemClock.elapsedRealtime();
 
         Log.d(TAG, "startTimer called. Current state: " + currentState + ", Time left: " + timeLeftInMillis + "ms for mode " + _currentSessionMode.getValue());
         _timerState.setValue(TimerState.RUNNING);
@@ -138,6 +146,7 @@ public class PomodoroViewModel extends AndroidViewModel {
         if (countDownTimer != null) {
             countDownTimer.cancel();
         }
+        sessionRanMillis += SystemClock.elapsedRealtime() - runningSinceElapsed;
         _timerState.setValue(TimerState.PAUSED);
         Log.d(TAG, "Timer paused. Time left: " + timeLeftInMillis + " ms. New state: " + _timerState.getValue());
     }
@@ -175,8 +184,10 @@ public class PomodoroViewModel extends AndroidViewModel {
         TimerSessionMode finishedMode = _currentSessionMode.getValue();
         Log.d(TAG, "handleSessionFinish. Finished mode: " + finishedMode);
 
+        if (finishedMode != null) {
+            logFinishedSession(finishedMode);
+        }
         if (finishedMode == TimerSessionMode.WORK) {
-            saveDailyPomodoroCount(); // This will now also save task-specific count
             setMode(TimerSessionMode.SHORT_BREAK, true);
         } else if (finishedMode == TimerSessionMode.SHORT_BREAK || finishedMode == TimerSessionMode.LONG_BREAK) {
             setMode(TimerSessionMode.WORK, false);
@@ -193,71 +204,24 @@ public class PomodoroViewModel extends AndroidViewModel {
         _timeDisplay.setValue(formattedTime);
     }
 
-    // --- NEW: safeKey method, same as in StatsViewModel ---
-    // Consider moving to a shared utility class if used elsewhere too
-    private String safeKey(String title) {
-        if (title == null || title.trim().isEmpty()) {
-            Log.w(TAG, "safeKey received null or empty title, returning 'untitled'");
-            return "untitled";
-        }
-        // Consistent with StatsViewModel: allow underscore, dot, hyphen
-        return title.trim().toLowerCase(Locale.getDefault()).replaceAll("[^a-z0-9_.-]+", "_");
-    }
-    // ----------------------------------------------------
-
-    private void saveDailyPomodoroCount() {
-        Context context = getApplication().getApplicationContext();
-        SharedPreferences prefs = context.getSharedPreferences("ProdoStats", Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-
-        Calendar today = Calendar.getInstance();
-        SimpleDateFormat dateKeyFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        String todayDateString = dateKeyFormat.format(today.getTime());
-
-        // Save/Update total pomodoros for the day
-        String totalDailyPomosKey = "pomos_" + todayDateString;
-        int currentPomosForDay = prefs.getInt(totalDailyPomosKey, 0);
-        int newPomosForDay = currentPomosForDay + 1;
-        editor.putInt(totalDailyPomosKey, newPomosForDay);
-        _completedPomodorosTodayDisplay.setValue(newPomosForDay);
-
-        Log.i(TAG, "Saved total daily pomodoro. Key: '" + totalDailyPomosKey +
-                "', New count: " + newPomosForDay);
-
-        // ---- MODIFIED: Save pomodoro for the specific task if one is selected ----
-        if (currentTaskTitleForStats != null && !currentTaskTitleForStats.trim().isEmpty()) {
-            String taskSafeKeyValue = safeKey(currentTaskTitleForStats);
-            String taskSpecificDayKey = "pomos_" + todayDateString + "_" + taskSafeKeyValue;
-
-            int currentPomosForTaskDay = prefs.getInt(taskSpecificDayKey, 0);
-            int newPomosForTaskDay = currentPomosForTaskDay + 1;
-            editor.putInt(taskSpecificDayKey, newPomosForTaskDay);
-
-            Log.i(TAG, "Saved pomodoro for specific task. Key: '" + taskSpecificDayKey +
-                    "', Title: '" + currentTaskTitleForStats +
-                    "', New count: " + newPomosForTaskDay);
-        } else {
-            Log.d(TAG, "No specific task selected for stats, only daily total pomodoro saved for key: " + totalDailyPomosKey);
-        }
-        // ----------------------------------------------------------------------
-
-        boolean success = editor.commit(); // Commit all changes at once
-        if (!success) {
-            Log.e(TAG, "Failed to commit SharedPreferences changes for pomodoro counts!");
-        } else {
-            Log.d(TAG, "Successfully committed pomodoro counts to SharedPreferences.");
+    private void logFinishedSession(TimerSessionMode mode) {
+        sessionRanMillis += SystemClock.elapsedRealtime() - runningSinceElapsed;
+        PomodoroSession session = new PomodoroSession(currentTaskIdForStats, sessionStartMillis,
+                System.currentTimeMillis(), PomodoroSession.Mode.valueOf(mode.name()), sessionRanMillis);
+        taskStore.logPomodoroSession(session);
+        Log.i(TAG, "Logged " + session);
+        if (mode == TimerSessionMode.WORK) {
+            loadCompletedPomodorosForTodayDisplay();
         }
     }
 
+    // Work sessions that ended today. The totals are read once the store has loaded.
     private void loadCompletedPomodorosForTodayDisplay() {
-        Context context = getApplication().getApplicationContext();
-        SharedPreferences prefs = context.getSharedPreferences("ProdoStats", Context.MODE_PRIVATE);
-        Calendar today = Calendar.getInstance();
-        SimpleDateFormat dateKeyFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        String currentDayKey = "pomos_" + dateKeyFormat.format(today.getTime());
-        int pomosToday = prefs.getInt(currentDayKey, 0);
-        _completedPomodorosTodayDisplay.setValue(pomosToday);
-        Log.d(TAG, "Loaded completed pomodoros for today display (" + currentDayKey + "): " + pomosToday);
+        taskStore.whenReady().thenAccept(store -> {
+            int pomosToday = store.getFocusTotals(FocusTotals.Period.DAY, System.currentTimeMillis()).getSessions();
+            _completedPomodorosTodayDisplay.postValue(pomosToday);
+            Log.d(TAG, "Loaded completed pomodoros for today display: " + pomosToday);
+        });
     }
 
     public long getWorkSessionDurationMillis() {
@@ -5,12 +5,21 @@ import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Observer;
 import com.example.prodo.data.Task;
+import com.example.prodo.data.TaskChange;
+import com.example.prodo.data.TaskQuery;
+import com.example.prodo.data.TaskSnapshot;
 import com.example.prodo.data.TaskStore; // Assuming TaskStore is your data source
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 public class TaskViewModel extends AndroidViewModel {
 
@@ -18,18 +27,46 @@ public class TaskViewModel extends AndroidViewModel {
     private MutableLiveData<List<Task>> tasksLiveData;
     private MutableLiveData<String> currentCategoryFilter = new MutableLiveData<>(null); // null means all tasks
 
-    // To hold the original full list from TaskStore for filtering
-    private List<Task> allTasksFromStore = new ArrayList<>();
+    // The filtered, sorted list on screen. Kept up to date from the store's change feed, so an edit
+    // costs time proportional to this list rather than a re-copy, re-filter and re-sort of everything.
+    private final ArrayList<Task> visibleTasks = new ArrayList<>();
+    // Position of every task in the store's order, used as the tie-breaker after 'done'.
+    private final HashMap<UUID, Long> storeOrder = new HashMap<>();
+    private long nextStoreOrder;
+    private long appliedSequence; // last change-feed sequence reflected in visibleTasks
+    private final Observer<Long> changeObserver = sequence -> applyChanges();
+
+    private final Comparator<Task> displayOrder = (t1, t2) -> {
+        // Undone tasks first, then in the order they were added
+        int doneCompare = Boolean.compare(t1.isDone(), t2.isDone());
+        if (doneCompare != 0) {
+            return doneCompare;
+        }
+        return Long.compare(orderOf(t1), orderOf(t2));
+    };
 
     public TaskViewModel(@NonNull Application application) {
         super(application);
         taskStore = TaskStore.get(application.getApplicationContext());
         tasksLiveData = new MutableLiveData<>();
         loadInitialTasks();
+        taskStore.getChangeSequence().observeForever(changeObserver);
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        taskStore.getChangeSequence().removeObserver(changeObserver);
     }
 
     private void loadInitialTasks() {
-        allTasksFromStore = new ArrayList<>(taskStore.getTasks()); // Get a mutable copy
+        TaskSnapshot snapshot = taskStore.getSnapshot();
+        storeOrder.clear();
+        nextStoreOrder = 0;
+        for (Task task : snapshot) {
+            storeOrder.put(task.getId(), nextStoreOrder++);
+        }
+        appliedSequence = snapshot.getSequence();
         filterAndPostTasks();
     }
 
@@ -37,24 +74,22 @@ public class TaskViewModel extends AndroidViewModel {
         return tasksLiveData;
     }
 
+    /** Rebuilds the list from scratch. Normally not needed: store changes are applied as they happen. */
     public void refreshTasks() {
-        // Re-fetch from store and re-apply filter
         loadInitialTasks();
     }
 
+    // The store reports each of these through its change feed, which updates the list.
     public void addTask(Task task) {
         taskStore.addTask(task);
-        refreshTasks(); // Re-fetch and re-filter
     }
 
     public void updateTask(Task task) {
         taskStore.updateTask(task);
-        refreshTasks(); // Re-fetch and re-filter
     }
 
     public void deleteTask(Task task) {
         taskStore.deleteTask(task);
-        refreshTasks(); // Re-fetch and re-filter
     }
 
     public void filterTasksByCategory(String category) {
@@ -63,51 +98,71 @@ public class TaskViewModel extends AndroidViewModel {
     }
 
     private void filterAndPostTasks() {
-        List<Task> filteredTasks = new ArrayList<>();
-        String filter = currentCategoryFilter.getValue();
-
-        if (filter == null || "All Tasks".equalsIgnoreCase(filter)) { // "All Tasks" is often a UI string
-            filteredTasks.addAll(allTasksFromStore);
-        } else {
-            for (Task task : allTasksFromStore) {
-                if (task.getCategory() != null && task.getCategory().equalsIgnoreCase(filter)) {
-                    filteredTasks.add(task);
-                }
-            }
+        // Undone first, then store order: the same order as displayOrder, so no sort is needed.
+        visibleTasks.clear();
+        visibleTasks.addAll(taskStore.query(currentQuery().toBuilder().setOrder(TaskQuery.Order.UNDONE_FIRST).build()));
+        for (Task task : visibleTasks) {
+            // Tasks added after appliedSequence; the feed will report them again, which is harmless.
+            storeOrder.computeIfAbsent(task.getId(), id -> nextStoreOrder++);
         }
-        sortTasks(filteredTasks); // Sort before posting
-        tasksLiveData.postValue(filteredTasks);
+        tasksLiveData.postValue(new ArrayList<>(visibleTasks));
     }
 
-    private void sortTasks(List<Task> tasksToSort) {
-        // Sort by 'done' status first (undone tasks first), then perhaps by date or title
-        Collections.sort(tasksToSort, (t1, t2) -> {
-            int doneCompare = Boolean.compare(t1.isDone(), t2.isDone());
-            if (doneCompare != 0) {
-                return doneCompare;
-            }
-            // Add secondary sort criteria if needed, e.g., by date or title
-            // For now, just by done status
-            return 0; // Or compare by another field if done status is the same
-        });
+    // The tasks the current filter shows. Category matching ignores case.
+    private TaskQuery currentQuery() {
+        String filter = currentCategoryFilter.getValue();
+        return isShowingAll(filter) ? TaskQuery.ALL : new TaskQuery.Builder().setCategory(filter).build();
     }
 
-    // Optional: If you need to batch update categories for tasks (e.g., when a category is renamed/deleted)
-    public void updateTasksCategoryBatch(String oldCategoryName, String newCategoryName) {
-        List<Task> tasksToUpdate = new ArrayList<>();
-        boolean changed = false;
-        for (Task task : taskStore.getTasks()) { // Operate on the source list
-            if (task.getCategory() != null && task.getCategory().equalsIgnoreCase(oldCategoryName)) {
-                task.setCategory(newCategoryName); // newCategoryName could be null or Task.UNCATEGORIZED
-                tasksToUpdate.add(task);
-                changed = true;
+    // Catches up with the store's change feed, or rebuilds if we fell too far behind.
+    private void applyChanges() {
+        List<TaskChange> changes = taskStore.getChangesSince(appliedSequence);
+        if (changes == null) {
+            loadInitialTasks();
+            return;
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        // Take every touched task out first, then put the survivors back where the sort puts them.
+        // One task may have changed several times since the last pass; only its latest version counts.
+        Map<UUID, Task> touched = new LinkedHashMap<>();
+        for (TaskChange change : changes) {
+            if (change.getType() == TaskChange.Type.REMOVED) {
+                storeOrder.remove(change.getId());
+            } else {
+                storeOrder.computeIfAbsent(change.getId(), id -> nextStoreOrder++);
+            }
+            touched.put(change.getId(), change.getAfter()); // null once removed
+            appliedSequence = change.getSequence();
+        }
+        for (int i = visibleTasks.size() - 1; i >= 0; i--) {
+            if (touched.containsKey(visibleTasks.get(i).getId())) {
+                visibleTasks.remove(i);
             }
         }
-        if (changed) {
-            for (Task task : tasksToUpdate) {
-                taskStore.updateTask(task); // Update each modified task in the store
+        TaskQuery query = currentQuery();
+        for (Task task : touched.values()) {
+            if (task != null && query.matches(task)) {
+                int index = Collections.binarySearch(visibleTasks, task, displayOrder);
+                visibleTasks.add(index < 0 ? -index - 1 : index, task);
             }
-            refreshTasks(); // Refresh the LiveData
         }
+        tasksLiveData.postValue(new ArrayList<>(visibleTasks));
+    }
+
+    private static boolean isShowingAll(String filter) {
+        return filter == null || "All Tasks".equalsIgnoreCase(filter); // "All Tasks" is often a UI string
+    }
+
+    private long orderOf(Task task) {
+        Long order = storeOrder.get(task.getId());
+        return order != null ? order : Long.MAX_VALUE;
+    }
+
+    // Moves every task of a renamed/deleted category in one transaction: one save, one list update.
+    public void updateTasksCategoryBatch(String oldCategoryName, String newCategoryName) {
+        taskStore.renameCategory(oldCategoryName, newCategoryName); // newCategoryName may be null (uncategorized)
     }
 }
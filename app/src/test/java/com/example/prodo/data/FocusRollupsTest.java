@@ -0,0 +1,148 @@
+package com.example.prodo.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * FocusRollups: week, month and year keys agree with Calendar, incremental updates end up where a
+ * rebuild from the session log does, and a year of day buckets adds up to the sessions in it.
+ */
+public class FocusRollupsTest {
+    static final long MINUTE = 60 * 1000L;
+    static final long DAY = 24 * 60 * MINUTE;
+    static final long START = 1_700_000_000_000L;
+
+    private static PomodoroSession work(UUID taskId, long end, long millis) {
+        return new PomodoroSession(taskId, end - millis, end, PomodoroSession.Mode.WORK, millis);
+    }
+
+    /** Two years of work sessions over {@code tasks}, each task in one of eight categories. */
+    static List<PomodoroSession> sampleSessions(int count, List<UUID> tasks, Map<UUID, String> categories, Random random) {
+        for (int i = 0; i < tasks.size(); i++) {
+            categories.put(tasks.get(i), "Category " + (i % 8));
+        }
+        List<PomodoroSession> sessions = new ArrayList<>(count);
+        long end = START;
+        for (int i = 0; i < count; i++) {
+            end += random.nextInt((int) (2 * 730 * DAY / count));
+            sessions.add(work(tasks.get(random.nextInt(tasks.size())), end, (20 + random.nextInt(6)) * MINUTE));
+        }
+        return sessions;
+    }
+
+    @Test
+    public void keysMatchCalendar() {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        Calendar calendar = Calendar.getInstance(utc);
+        calendar.setFirstDayOfWeek(Calendar.MONDAY);
+        calendar.setMinimalDaysInFirstWeek(4); // ISO weeks
+        Map<String, Long> weekKeys = new HashMap<>();
+        for (long day = -800; day < 30_000; day++) {
+            calendar.setTimeInMillis(day * DAY);
+            long month = calendar.get(Calendar.YEAR) * 12L + calendar.get(Calendar.MONTH);
+            assertEquals(month, FocusRollups.key(FocusTotals.Period.MONTH, day));
+            assertEquals(calendar.get(Calendar.YEAR), FocusRollups.key(FocusTotals.Period.YEAR, day));
+            // One key per ISO week, the same for all seven of its days
+            String week = calendar.getWeekYear() + "-W" + calendar.get(Calendar.WEEK_OF_YEAR);
+            long key = FocusRollups.key(FocusTotals.Period.WEEK, day);
+            Long seen = weekKeys.putIfAbsent(week, key);
+            assertEquals(seen != null ? seen : key, key);
+        }
+        assertEquals(30_800 / 7, weekKeys.size(), 1);
+    }
+
+    @Test
+    public void incrementalMatchesRebuild() {
+        UUID report = UUID.randomUUID();
+        UUID gym = UUID.randomUUID();
+        Map<UUID, String> categories = new HashMap<>();
+        categories.put(report, "Work");
+        categories.put(gym, "Health");
+        LocalDays days = LocalDays.current();
+
+        List<PomodoroSession> sessions = new ArrayList<>();
+        sessions.add(work(report, START, 25 * MINUTE));
+        sessions.add(work(gym, START + MINUTE, 20 * MINUTE));
+        sessions.add(work(null, START + 2 * MINUTE, 25 * MINUTE));
+        sessions.add(new PomodoroSession(report, START + 3 * MINUTE, START + 8 * MINUTE, PomodoroSession.Mode.SHORT_BREAK, 5 * MINUTE));
+        sessions.add(work(report, START + 10 * DAY, 25 * MINUTE));
+
+        FocusRollups rollups = new FocusRollups();
+        rollups.rebuild(Collections.emptyList(), categories::get, days);
+        for (PomodoroSession session : sessions) {
+            rollups.add(session, session.getTaskId() != null ? categories.get(session.getTaskId()) : null);
+        }
+        assertEquals(Collections.emptyList(), rollups.check(sessions, categories::get));
+
+        long day = days.epochDay(START);
+        FocusTotals totals = rollups.get(FocusTotals.Period.DAY, day);
+        assertEquals(3, totals.getSessions()); // The break doesn't count
+        assertEquals(70 * MINUTE, totals.getFocusMillis());
+        assertEquals(25 * MINUTE, totals.getByCategory().get("Work").focusMillis);
+        assertEquals(1, totals.getByTask().get(gym).sessions);
+        assertEquals(4, rollups.get(FocusTotals.Period.YEAR, FocusRollups.key(FocusTotals.Period.YEAR, day)).getSessions());
+
+        // The report task moves to another category, then leaves the task list
+        categories.put(report, "Study");
+        assertEquals(false, rollups.check(sessions, categories::get).isEmpty());
+        rollups.setCategory(report, "Study");
+        assertEquals(Collections.emptyList(), rollups.check(sessions, categories::get));
+        assertEquals(50 * MINUTE, rollups.get(FocusTotals.Period.YEAR, FocusRollups.key(FocusTotals.Period.YEAR, day))
+                .getByCategory().get("Study").focusMillis);
+        categories.remove(report);
+        rollups.setCategory(report, null);
+        assertEquals(Collections.emptyList(), rollups.check(sessions, categories::get));
+        assertEquals(null, rollups.get(FocusTotals.Period.DAY, day).getByCategory().get("Study"));
+
+        // A session the rollups never saw
+        sessions.add(work(gym, START + 20 * DAY, 25 * MINUTE));
+        assertEquals(false, rollups.check(sessions, categories::get).isEmpty());
+    }
+
+    @Test
+    public void bucketsAddUpToTheSessions() {
+        List<UUID> tasks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            tasks.add(UUID.randomUUID());
+        }
+        Map<UUID, String> categories = new HashMap<>();
+        List<PomodoroSession> sessions = sampleSessions(2_000, tasks, categories, new Random(7));
+        LocalDays days = LocalDays.current();
+        FocusRollups rollups = new FocusRollups();
+        rollups.rebuild(sessions, categories::get, days);
+
+        // The second year, summed from day buckets and from the sessions themselves
+        long firstDay = days.epochDay(START) + 365;
+        long lastDay = firstDay + 364;
+        long fromBuckets = 0;
+        for (FocusTotals day : rollups.range(FocusTotals.Period.DAY, firstDay, lastDay)) {
+            fromBuckets += day.getFocusMillis();
+        }
+        long fromSessions = 0;
+        int inYear = 0;
+        long year = FocusRollups.key(FocusTotals.Period.YEAR, firstDay);
+        for (PomodoroSession session : sessions) {
+            long day = days.epochDay(session.getEndMillis());
+            if (day >= firstDay && day <= lastDay) {
+                fromSessions += session.getDurationMillis();
+            }
+            if (FocusRollups.key(FocusTotals.Period.YEAR, day) == year) {
+                inYear++;
+            }
+        }
+        assertEquals(fromSessions, fromBuckets);
+        assertEquals(inYear, rollups.get(FocusTotals.Period.YEAR, year).getSessions());
+        assertEquals(Collections.emptyList(), rollups.check(sessions, categories::get));
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.prodo.data;
+
+import org.junit.Test;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * LocalDays conversions and calendar arithmetic checked against java.time in zones with DST,
+ * midnight DST gaps and a skipped day, and its day buckets against the Calendar code it replaces.
+ */
+public class LocalDaysTest {
+    private static final String[] ZONES = {
+            "UTC", "America/New_York", "Europe/London", "Asia/Kolkata", "Australia/Lord_Howe",
+            "America/Sao_Paulo", // DST used to start at midnight, so some days began at 01:00
+            "Pacific/Apia", // Skipped 2011-12-30 entirely
+            "Asia/Tehran",
+    };
+    private static final long FROM = LocalDate.of(1950, 1, 1).toEpochDay();
+    private static final long TO = LocalDate.of(2080, 1, 1).toEpochDay();
+
+    /** {@code count} timestamps spread over two years from 2024 on. */
+    static long[] sampleStamps(int count, Random random) {
+        long[] stamps = new long[count];
+        long base = LocalDate.of(2024, 1, 1).toEpochDay() * LocalDays.MILLIS_PER_DAY;
+        for (int i = 0; i < count; i++) {
+            stamps[i] = base + (long) (random.nextDouble() * 2 * 365 * LocalDays.MILLIS_PER_DAY);
+        }
+        return stamps;
+    }
+
+    /** The old bucketing: a Calendar per stamp, truncated to midnight. */
+    static long calendarMidnight(TimeZone zone, long stamp) {
+        Calendar calendar = Calendar.getInstance(zone);
+        calendar.setTimeInMillis(stamp);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void matchesJavaTime() {
+        Random random = new Random(7);
+        for (String id : ZONES) {
+            ZoneId zone = ZoneId.of(id);
+            LocalDays days = LocalDays.of(zone);
+            for (long day = FROM; day < TO; day++) {
+                long start = LocalDate.ofEpochDay(day).atStartOfDay(zone).toInstant().toEpochMilli();
+                assertEquals(id + " " + LocalDate.ofEpochDay(day), start, days.startOfDay(day));
+            }
+            for (int i = 0; i < 200_000; i++) {
+                long millis = (FROM + (long) (random.nextDouble() * (TO - FROM))) * LocalDays.MILLIS_PER_DAY
+                        + random.nextInt((int) LocalDays.MILLIS_PER_DAY);
+                long expected = Instant.ofEpochMilli(millis).atZone(zone).toLocalDate().toEpochDay();
+                assertEquals(id + " " + millis, expected, days.epochDay(millis));
+            }
+            // Either side of every transition
+            long[] probes = {-1, 0, 1};
+            for (long day = FROM; day < TO; day += 30) {
+                long start = days.startOfDay(day);
+                for (long probe : probes) {
+                    long expected = Instant.ofEpochMilli(start + probe).atZone(zone).toLocalDate().toEpochDay();
+                    assertEquals(expected, days.epochDay(start + probe));
+                }
+            }
+        }
+        assertEquals(LocalDays.of(ZoneId.of("UTC")), LocalDays.of(TimeZone.getTimeZone("UTC")));
+    }
+
+    @Test
+    public void calendarArithmetic() {
+        for (long day = FROM; day < TO; day++) {
+            LocalDate date = LocalDate.ofEpochDay(day);
+            long month = LocalDays.monthKey(day);
+            assertEquals(date.getYear() * 12L + date.getMonthValue() - 1, month);
+            assertEquals(date.getYear(), LocalDays.year(day));
+            assertEquals(date.withDayOfMonth(1).toEpochDay(), LocalDays.firstDayOfMonth(month));
+            assertEquals(date.withDayOfYear(1).toEpochDay(), LocalDays.firstDayOfYear(date.getYear()));
+            assertEquals(date.getDayOfWeek().getValue(), LocalDays.dayOfWeek(day));
+            for (DayOfWeek first : new DayOfWeek[]{DayOfWeek.MONDAY, DayOfWeek.SUNDAY, DayOfWeek.SATURDAY}) {
+                assertEquals(date.with(TemporalAdjusters.previousOrSame(first)).toEpochDay(), LocalDays.startOfWeek(day, first));
+            }
+        }
+    }
+
+    @Test
+    public void bucketsMatchCalendar() {
+        TimeZone zone = TimeZone.getTimeZone("America/New_York");
+        LocalDays days = LocalDays.of(zone);
+        for (long stamp : sampleStamps(100_000, new Random(7))) {
+            long midnight = calendarMidnight(zone, stamp);
+            assertEquals(days.epochDay(midnight), days.epochDay(stamp));
+            assertEquals(midnight, days.startOfDay(days.epochDay(stamp)));
+        }
+    }
+
+    @Test
+    public void currentIsCachedUntilTheZoneChanges() {
+        TimeZone original = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kolkata"));
+            LocalDays.timeZoneChanged();
+            LocalDays kolkata = LocalDays.current();
+            assertEquals(ZoneId.of("Asia/Kolkata"), kolkata.getZone());
+            assertSame(kolkata, LocalDays.current());
+
+            TimeZone.setDefault(TimeZone.getTimeZone("Europe/London"));
+            LocalDays.timeZoneChanged();
+            assertEquals(ZoneId.of("Europe/London"), LocalDays.current().getZone());
+        } finally {
+            TimeZone.setDefault(original);
+            LocalDays.timeZoneChanged();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.prodo.data;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The Pomodoro session log: appends land on disk in fixed-size records, range reads come back in
+ * end-time order even for backdated sessions, and the old SharedPreferences counters migrate to
+ * sessions.
+ */
+public class PomodoroSessionLogTest {
+    static final long MINUTE = 60 * 1000L;
+    static final long DAY = 24 * 60 * MINUTE;
+    static final long START = 1_700_000_000_000L;
+
+    static PomodoroSession work(UUID taskId, long end) {
+        return new PomodoroSession(taskId, end - 25 * MINUTE, end, PomodoroSession.Mode.WORK, 25 * MINUTE);
+    }
+
+    @Test
+    public void rangesAndAppends() throws IOException {
+        File file = File.createTempFile("sessions", ".dat");
+        file.delete();
+        try {
+            PomodoroSessionLog log = new PomodoroSessionLog(file);
+            UUID task = UUID.randomUUID();
+            PomodoroSession first = work(task, START + DAY);
+            PomodoroSession second = new PomodoroSession(null, START + 2 * DAY, START + 2 * DAY + 5 * MINUTE,
+                    PomodoroSession.Mode.SHORT_BREAK, 5 * MINUTE);
+            PomodoroSession third = work(null, START + 3 * DAY);
+            PomodoroSession backdated = work(task, START + 2 * DAY); // Clock set back
+            log.add(first);
+            log.add(second);
+            log.add(third);
+            log.add(backdated);
+            assertEquals(false, log.exists());
+            log.writePending();
+            assertEquals(true, log.exists());
+            assertEquals(8 + 4 * PomodoroSessionLog.RECORD_BYTES, file.length());
+
+            assertEquals(Arrays.asList(first, backdated, second, third), log.between(0, Long.MAX_VALUE));
+            assertEquals(Arrays.asList(backdated, second), log.between(START + 2 * DAY, START + 3 * DAY));
+            assertEquals(0, log.between(START + 3 * DAY + 1, Long.MAX_VALUE).size());
+
+            log.add(work(task, START + 4 * DAY));
+            log.writePending();
+            assertEquals(8 + 5 * PomodoroSessionLog.RECORD_BYTES, file.length());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void migratesLegacyCounters() {
+        UUID report = UUID.randomUUID();
+        Map<String, UUID> tasks = new HashMap<>();
+        tasks.put(PomodoroSessionLog.legacyTaskKey("  Weekly Report "), report);
+
+        String day = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(START);
+        Map<String, Object> prefs = new HashMap<>();
+        prefs.put("pomos_" + day, 5);
+        prefs.put("pomos_" + day + "_weekly_report", 3);
+        prefs.put("pomos_" + day + "_deleted_task", 1); // No such task: counted without one
+        prefs.put("unrelated", 7);
+
+        List<PomodoroSession> sessions = PomodoroSessionLog.legacySessions(prefs, tasks::get);
+        assertEquals(5, sessions.size());
+        int forReport = 0;
+        for (PomodoroSession session : sessions) {
+            assertEquals(PomodoroSession.Mode.WORK, session.getMode());
+            assertEquals(day, new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(session.getEndMillis()));
+            if (report.equals(session.getTaskId())) {
+                forReport++;
+            }
+        }
+        assertEquals(3, forReport);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.prodo.data;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * tasks.json (streaming JSON codec) and tasks.bin (BinaryTaskCodec) both decode to the tasks that
+ * were written, including missing categories and notes and legacy subtask ids.
+ */
+public class SnapshotFormatTest {
+    private static final String[] CATEGORIES = {"Personal", "Work", "Shopping", "Wishlist"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    static List<Task> sampleTasks(int count) {
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Task.Builder task = new Task.Builder()
+                    .setTitle("Task number " + i)
+                    .setCategory(CATEGORIES[i % CATEGORIES.length])
+                    .setDate(1_700_000_000_000L + i * 3_600_000L)
+                    .setNote(i % 3 == 0 ? "Remember to check item " + i : "")
+                    .setDone(i % 2 == 0)
+                    .setFlagged(i % 9 == 0)
+                    .setPomodoroCount(i % 6)
+                    .setTotalTimeSpentMillis(i % 6 * 25 * 60_000L);
+            for (int s = 0; s < i % 3; s++) {
+                task.addSubtask(new Subtask("Sub step " + s));
+            }
+            tasks.add(task.build());
+        }
+        return tasks;
+    }
+
+    private static List<Task> oddTasks() {
+        List<Task> tasks = sampleTasks(500);
+        tasks.set(3, tasks.get(3).withCategory(null));
+        tasks.set(4, tasks.get(4).withNote(null));
+        tasks.set(5, tasks.get(5).toBuilder().addSubtask(new Subtask("not-a-uuid", "Legacy id", true)).build());
+        return tasks;
+    }
+
+    @Test
+    public void binaryRoundTrip() throws IOException {
+        List<Task> tasks = oddTasks();
+        File bin = folder.newFile("tasks.bin");
+        BinaryTaskCodec.write(bin, tasks);
+        List<Task> decoded = new ArrayList<>();
+        BinaryTaskCodec.read(bin, decoded::add);
+        assertEquals(tasks, decoded);
+    }
+
+    @Test
+    public void jsonRoundTrip() throws IOException {
+        List<Task> tasks = oddTasks();
+        File json = folder.newFile("tasks.json");
+        try (FileOutputStream out = new FileOutputStream(json)) {
+            TaskJsonCodec.write(out, ProdoGson.get(), tasks);
+        }
+        List<Task> decoded = new ArrayList<>();
+        try (FileInputStream in = new FileInputStream(json)) {
+            TaskJsonCodec.read(in, ProdoGson.get(), decoded::add);
+        }
+        assertEquals(tasks, decoded);
+    }
+}
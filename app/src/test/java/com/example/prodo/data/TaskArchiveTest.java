@@ -0,0 +1,261 @@
+package com.example.prodo.data;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * TaskArchive across the steps of moving tasks in and out of it, each followed by a restart: a
+ * task that is in both the archive and the task list is counted once at every step, and a pass
+ * only writes its own segment.
+ */
+public class TaskArchiveTest {
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final long START = 1_700_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File mDir;
+    private TaskArchive mArchive;
+    private final Set<UUID> mTaskList = new HashSet<>(); // Ids in the (pretend) task list
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = folder.newFolder();
+        mArchive = new TaskArchive(mDir, ProdoGson.get());
+        mArchive.readSummary();
+    }
+
+    private static Task done(String title, int day, int pomodoros) {
+        return new Task.Builder().setTitle(title).setCategory("Work").setDate(START + day * DAY).setDone(true)
+                .setPomodoroCount(pomodoros).setTotalTimeSpentMillis(pomodoros * 25 * 60_000L).build();
+    }
+
+    private TaskArchive restart() {
+        TaskArchive archive = new TaskArchive(mDir, ProdoGson.get());
+        archive.readSummary();
+        return archive;
+    }
+
+    private int countedPomodoros(TaskArchive archive) {
+        return (int) archive.getSummaryExcluding(mTaskList::contains).totalPomodoros;
+    }
+
+    // An archiving pass as TaskStore runs it: append while in the task list, delete, then trim.
+    private void archive(Task... tasks) throws IOException {
+        for (Task task : tasks) {
+            mTaskList.add(task.getId());
+        }
+        mArchive.append(Arrays.asList(tasks));
+        for (Task task : tasks) {
+            mTaskList.remove(task.getId());
+        }
+        mArchive.writeSummary(mTaskList::contains);
+    }
+
+    @Test
+    public void appendThenDeleteCountsEachTaskOnce() throws IOException {
+        Task old = done("Old", 0, 1);
+        Task a = done("A", 10, 2);
+        Task b = done("B", 20, 4);
+        archive(old);
+        mTaskList.addAll(Arrays.asList(a.getId(), b.getId()));
+
+        // Archive written, delete not saved yet (or rolled back, or the app died here)
+        mArchive.append(Arrays.asList(a, b));
+        assertEquals(3, mArchive.getSummary().taskCount);
+        assertEquals(1, countedPomodoros(mArchive));
+        assertEquals(1, countedPomodoros(restart()));
+
+        // Delete saved
+        mTaskList.remove(a.getId());
+        mTaskList.remove(b.getId());
+        mArchive.writeSummary(mTaskList::contains);
+        assertEquals(7, countedPomodoros(mArchive));
+        TaskArchive restarted = restart();
+        assertEquals(7, countedPomodoros(restarted));
+        ArchiveSummary summary = restarted.getSummaryExcluding(mTaskList::contains);
+        assertEquals(3, summary.taskCount);
+        assertEquals(7 * 25 * 60_000L, summary.totalTimeSpentMillis);
+        assertEquals(START, summary.oldestDate);
+        assertEquals(START + 20 * DAY, summary.newestDate);
+        assertEquals(Arrays.asList("Old", "A", "B"), titles(restarted.load()));
+    }
+
+    @Test
+    public void secondPassDoesNotReadEarlierSegments() throws IOException {
+        archive(done("A", 10, 2));
+        File first = onlySegment();
+        byte[] firstBytes = Files.readAllBytes(first.toPath());
+        try (FileOutputStream out = new FileOutputStream(first)) {
+            out.write("not gzip".getBytes(StandardCharsets.UTF_8)); // Any read of it would fail
+        }
+
+        archive(done("B", 20, 4));
+        assertEquals(6, countedPomodoros(mArchive));
+        assertEquals(6, countedPomodoros(restart()));
+        assertEquals(Collections.singletonList("B"), titles(mArchive.load(START + 15 * DAY, START + 25 * DAY)));
+        try {
+            mArchive.load(); // Not held in memory either: read from disk, so this finds the damage
+            fail("Read a damaged segment");
+        } catch (IOException expected) {
+            // Not in gzip format
+        }
+
+        Files.write(first.toPath(), firstBytes);
+        assertArrayEquals(firstBytes, Files.readAllBytes(first.toPath()));
+        assertEquals(Arrays.asList("A", "B"), titles(restart().load()));
+    }
+
+    @Test
+    public void passCutShortIsNotArchivedTwice() throws IOException {
+        Task a = done("A", 10, 2);
+        mTaskList.add(a.getId());
+        mArchive.append(Collections.singletonList(a)); // Then the app died before the delete
+
+        TaskArchive restarted = restart();
+        restarted.append(Collections.singletonList(a)); // The next pass archives it again
+        mTaskList.remove(a.getId());
+        restarted.writeSummary(mTaskList::contains);
+        assertEquals(1, restart().getSummary().taskCount);
+        assertEquals(2, countedPomodoros(restart()));
+        assertEquals(Collections.singletonList("A"), titles(restart().load()));
+        assertEquals(1, segments().size());
+    }
+
+    @Test
+    public void smallSegmentsAreMerged() throws IOException {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < TaskArchive.MAX_SEGMENTS + 4; i++) {
+            archive(done("T" + i, i, 1));
+            expected.add("T" + i);
+            assertTrue(segments().size() <= TaskArchive.MAX_SEGMENTS);
+        }
+        TaskArchive restarted = restart();
+        assertEquals(expected.size(), restarted.getSummary().taskCount);
+        assertEquals(expected.size(), countedPomodoros(restarted));
+        List<String> loaded = titles(restarted.load());
+        Collections.sort(loaded);
+        Collections.sort(expected);
+        assertEquals(expected, loaded);
+    }
+
+    @Test
+    public void restoreCountsEachTaskOnce() throws IOException {
+        Task a = done("A", 10, 2);
+        Task b = done("B", 20, 4);
+        archive(a, b);
+        assertEquals(6, countedPomodoros(mArchive));
+
+        // Listed as maybe in the task list before being added there
+        List<Task> restored = mArchive.prepareRestore(Collections.singleton(a.getId()));
+        assertEquals(Collections.singletonList("A"), titles(restored));
+        assertEquals(6, countedPomodoros(restart())); // Died before the add was saved
+
+        // Added to the task list; the archive rewrite then failed (or never ran)
+        mTaskList.add(a.getId());
+        assertEquals(4, countedPomodoros(mArchive));
+        TaskArchive restarted = restart();
+        assertEquals(4, countedPomodoros(restarted));
+        assertTrue(restarted.isRestored(a.getId()));
+        assertFalse(restarted.isRestored(b.getId()));
+
+        // Taken out of the archive
+        mArchive.remove(Collections.singleton(a.getId()));
+        assertEquals(4, countedPomodoros(mArchive));
+        assertEquals(1, restart().getSummary().taskCount);
+        assertEquals(Collections.singletonList("B"), titles(restart().load()));
+    }
+
+    @Test
+    public void failedRestoreCountsTheTasksAgain() throws IOException {
+        Task a = done("A", 10, 2);
+        archive(a);
+        mArchive.prepareRestore(Collections.singleton(a.getId()));
+
+        // The add was rolled back, so it is still only archived
+        mArchive.writeSummary(mTaskList::contains);
+        assertEquals(2, countedPomodoros(restart()));
+    }
+
+    @Test
+    public void corruptSummaryIsRebuiltFromTheSegments() throws IOException {
+        Task a = done("A", 10, 2);
+        Task b = done("B", 20, 4);
+        archive(a);
+        mTaskList.add(b.getId());
+        mArchive.append(Collections.singletonList(b));
+        try (FileOutputStream out = new FileOutputStream(new File(mDir, TaskArchive.SUMMARY_FILENAME))) {
+            out.write("{\"segments\": [".getBytes(StandardCharsets.UTF_8)); // Torn
+        }
+
+        TaskArchive restarted = restart();
+        assertEquals(2, restarted.getSummary().taskCount);
+        assertEquals(2, countedPomodoros(restarted)); // Still not counting B twice
+        assertEquals(Arrays.asList("A", "B"), titles(restarted.load()));
+        assertEquals(1, segments().size());
+        assertEquals(2, countedPomodoros(restart()));
+    }
+
+    @Test
+    public void unlistedSegmentsAreDeleted() throws IOException {
+        archive(done("A", 10, 2));
+        File stray = new File(mDir, TaskArchive.SEGMENT_PREFIX + 99 + TaskArchive.SEGMENT_SUFFIX);
+        Files.copy(onlySegment().toPath(), stray.toPath()); // Written, but its json never was
+
+        TaskArchive restarted = restart();
+        assertFalse(stray.exists());
+        assertEquals(Collections.singletonList("A"), titles(restarted.load()));
+    }
+
+    @Test
+    public void emptyArchive() throws IOException {
+        assertEquals(ArchiveSummary.EMPTY, mArchive.getSummary());
+        assertEquals(Collections.emptyList(), mArchive.load());
+    }
+
+    private List<File> segments() {
+        List<File> segments = new ArrayList<>();
+        for (File file : mDir.listFiles()) {
+            if (file.getName().startsWith(TaskArchive.SEGMENT_PREFIX)) {
+                segments.add(file);
+            }
+        }
+        return segments;
+    }
+
+    private File onlySegment() {
+        List<File> segments = segments();
+        assertEquals(1, segments.size());
+        return segments.get(0);
+    }
+
+    private static List<String> titles(List<Task> tasks) {
+        List<String> titles = new ArrayList<>();
+        for (Task task : tasks) {
+            titles.add(task.getTitle());
+        }
+        return titles;
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.prodo.data;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * TaskBodyStore: bodies survive a reopen, the cache serves what was put or read, a torn tail is
+ * cut off, and a compaction keeps exactly the live bodies.
+ */
+public class TaskBodyStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File mFile;
+    private TaskBodyStore mStore;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = new File(folder.getRoot(), TaskBodyStore.FILENAME);
+        mStore = reopen();
+    }
+
+    private TaskBodyStore reopen() {
+        TaskBodyStore store = new TaskBodyStore(mFile, ProdoGson.get());
+        store.open();
+        return store;
+    }
+
+    private static TaskBodyStore.Body body(String note, String... subtasks) {
+        Task.Builder task = new Task.Builder().setTitle("Task").setNote(note);
+        for (String subtask : subtasks) {
+            task.addSubtask(new Subtask(subtask));
+        }
+        return TaskBodyStore.Body.of(task.build());
+    }
+
+    private static void assertBody(String note, List<String> subtasks, TaskBodyStore.Body body) {
+        assertEquals(note, body.note);
+        List<String> titles = new ArrayList<>();
+        for (Subtask subtask : body.subtasks) {
+            titles.add(subtask.getTitle());
+        }
+        assertEquals(subtasks, titles);
+    }
+
+    @Test
+    public void bodiesSurviveReopenAndTheLastWriteWins() throws IOException {
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        mStore.put(a, body("First"));
+        mStore.put(b, body("Bee", "One", "Two"));
+        mStore.writePending();
+        mStore.put(a, body("Second", "Step"));
+        mStore.writePending();
+
+        TaskBodyStore reopened = reopen();
+        assertNull(reopened.getCached(a)); // Only the headers are read when opening
+        assertBody("Second", Arrays.asList("Step"), reopened.read(a));
+        assertBody("Bee", Arrays.asList("One", "Two"), reopened.read(b));
+        assertSame(TaskBodyStore.Body.EMPTY, reopened.read(UUID.randomUUID()));
+
+        reopened.put(b, TaskBodyStore.Body.EMPTY); // Deletes it
+        reopened.writePending();
+        assertSame(TaskBodyStore.Body.EMPTY, reopen().read(b));
+    }
+
+    @Test
+    public void cacheServesPutAndReadBodies() throws IOException {
+        UUID id = UUID.randomUUID();
+        TaskBodyStore.Body pending = body("Pending");
+        mStore.put(id, pending);
+        assertSame(pending, mStore.getCached(id)); // Readable before it is written
+        assertSame(pending, mStore.read(id));
+        mStore.writePending();
+        assertSame(pending, mStore.getCached(id));
+
+        TaskBodyStore reopened = reopen();
+        TaskBodyStore.Body read = reopened.read(id);
+        assertSame(read, reopened.getCached(id));
+        assertSame(read, reopened.read(id));
+
+        for (int i = 0; i < 100; i++) { // More than the cache holds
+            reopened.put(UUID.randomUUID(), body("Other " + i));
+        }
+        reopened.writePending();
+        assertNull(reopened.getCached(id));
+        assertBody("Pending", Arrays.asList(), reopened.read(id));
+    }
+
+    @Test
+    public void readEachReturnsEveryBody() throws IOException {
+        Map<UUID, String> notes = new HashMap<>();
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+            notes.put(id, "Note " + i);
+            mStore.put(id, body("Note " + i));
+        }
+        mStore.writePending();
+        TaskBodyStore reopened = reopen();
+        reopened.read(ids.get(3)); // One cached, the rest on disk
+        UUID none = UUID.randomUUID();
+        ids.add(none);
+        notes.put(none, null);
+
+        Map<UUID, String> read = new HashMap<>();
+        reopened.readEach(ids, (id, body) -> read.put(id, body.note));
+        assertEquals(notes, read);
+    }
+
+    @Test
+    public void tornTailIsCutOffOnOpen() throws IOException {
+        UUID a = UUID.randomUUID();
+        mStore.put(a, body("Kept"));
+        mStore.writePending();
+        long intact = mFile.length();
+        UUID b = UUID.randomUUID();
+        mStore.put(b, body("Torn"));
+        mStore.writePending();
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            raf.setLength(mFile.length() - 5); // Killed mid-append
+        }
+
+        TaskBodyStore reopened = reopen();
+        assertEquals(intact, mFile.length());
+        assertSame(TaskBodyStore.Body.EMPTY, reopened.read(b));
+        reopened.put(b, body("Again"));
+        reopened.writePending();
+        assertBody("Kept", Arrays.asList(), reopen().read(a));
+        assertBody("Again", Arrays.asList(), reopen().read(b));
+    }
+
+    @Test
+    public void corruptFrameIsReportedNotReturned() throws IOException {
+        UUID id = UUID.randomUUID();
+        mStore.put(id, body("Note"));
+        mStore.writePending();
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            raf.seek(mFile.length() - 3);
+            raf.write('#');
+        }
+        try {
+            reopen().read(id);
+            fail("Read a corrupt body");
+        } catch (IOException expected) {
+            // Checksum mismatch
+        }
+    }
+
+    @Test
+    public void compactionKeepsOnlyLiveBodies() throws IOException {
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            ids.add(UUID.randomUUID());
+        }
+        StringBuilder longNote = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            longNote.append("Some words of a long note. ");
+        }
+        for (int round = 0; round < 10; round++) { // Each id rewritten: 9 of every 10 frames superseded
+            for (UUID id : ids) {
+                mStore.put(id, body(longNote + " " + round, "Step " + round));
+            }
+            mStore.writePending();
+        }
+        assertTrue(mStore.needsCompaction());
+        long before = mFile.length();
+
+        Set<UUID> live = new HashSet<>(ids.subList(0, 40)); // The other 10 tasks were deleted
+        mStore.compact(live);
+        assertFalse(mStore.needsCompaction());
+        assertTrue(mFile.length() < before / 10);
+
+        TaskBodyStore reopened = reopen();
+        for (UUID id : ids) {
+            if (live.contains(id)) {
+                assertBody(longNote + " 9", Arrays.asList("Step 9"), reopened.read(id));
+            } else {
+                assertSame(TaskBodyStore.Body.EMPTY, reopened.read(id));
+            }
+        }
+
+        // Appends after a compaction land after the rewritten frames
+        mStore.put(ids.get(0), body("After"));
+        mStore.writePending();
+        assertBody("After", Arrays.asList(), reopen().read(ids.get(0)));
+        assertBody(longNote + " 9", Arrays.asList("Step 9"), reopen().read(ids.get(1)));
+    }
+}
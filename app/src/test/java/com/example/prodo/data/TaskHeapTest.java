@@ -0,0 +1,63 @@
+package com.example.prodo.data;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * The compact Task layout: decoded tasks share one String per category and one empty subtask
+ * list, subtask ids keep their text form, and adding a subtask never touches the shared list.
+ */
+public class TaskHeapTest {
+    private static final String[] CATEGORIES = {"Personal", "Work", "Shopping", "Wishlist"};
+
+    static byte[] sampleJson(int count) throws IOException {
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Task.Builder task = new Task.Builder()
+                    .setTitle("Task number " + i)
+                    .setCategory(CATEGORIES[i % CATEGORIES.length])
+                    .setDate(1_700_000_000_000L + i * 3_600_000L)
+                    .setNote(i % 3 == 0 ? "Remember to check item " + i : "")
+                    .setDone(i % 2 == 0)
+                    .setPomodoroCount(i % 6);
+            for (int s = 0; s < i % 3; s++) {
+                task.addSubtask(new Subtask("Sub step " + s));
+            }
+            tasks.add(task.build());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TaskJsonCodec.write(out, ProdoGson.get(), tasks);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void compactLayoutRoundTrips() throws IOException {
+        byte[] json = sampleJson(12);
+        List<Task> tasks = new ArrayList<>();
+        TaskJsonCodec.read(new ByteArrayInputStream(json), ProdoGson.get(), tasks::add);
+
+        assertEquals("Work", tasks.get(1).getCategory());
+        assertSame(tasks.get(1).getCategory(), tasks.get(5).getCategory()); // One String per category
+        assertSame(tasks.get(0).getSubtasks(), tasks.get(3).getSubtasks()); // Shared empty list
+
+        Subtask subtask = tasks.get(2).getSubtasks().get(0);
+        assertEquals(subtask.getId(), subtask.getUuidId().toString());
+        assertEquals(subtask, new Subtask(subtask.getId(), "Other title", false)); // Equal by id
+        Subtask legacy = new Subtask("ABC-not-a-uuid", "Legacy id", false);
+        assertEquals("ABC-not-a-uuid", legacy.getId());
+
+        Task empty = tasks.get(0).toBuilder().addSubtask(new Subtask("First")).build();
+        assertEquals(1, empty.getSubtaskCount());
+        assertEquals(0, tasks.get(3).getSubtaskCount()); // Adding didn't touch the shared list
+        assertNotSame(empty.getSubtasks(), tasks.get(3).getSubtasks());
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.prodo.data;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * TaskJournal replay after a crash: torn and corrupt tails are cut off so later appends survive, a
+ * damaged record in the middle is skipped without losing the ones after it, and a batch with an
+ * entry that can't be decoded is skipped whole.
+ */
+public class TaskJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File mFile;
+    private TaskJournal mJournal;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = folder.newFile("tasks.journal");
+        mJournal = new TaskJournal(mFile, ProdoGson.get());
+    }
+
+    /** Replays the journal into a list of "put Title" / "remove id" lines. */
+    private List<String> replay() {
+        List<String> log = new ArrayList<>();
+        mJournal.replay(new TaskJournal.Replayer() {
+            @Override
+            public void put(Task task) {
+                log.add("put " + task.getTitle());
+            }
+
+            @Override
+            public void remove(UUID id) {
+                log.add("remove " + id);
+            }
+        });
+        return log;
+    }
+
+    private static Task task(String title) {
+        return new Task.Builder().setTitle(title).setCategory("Work").build();
+    }
+
+    @Test
+    public void replaysRecordsInAppendOrder() throws IOException {
+        Task a = task("A");
+        Task b = task("B");
+        mJournal.append(Arrays.asList(mJournal.putRecord(a), mJournal.putRecord(b)));
+        mJournal.append(Collections.singletonList(mJournal.batchRecord(Arrays.asList(
+                mJournal.removeRecord(a.getId()), mJournal.putRecord(task("C"))))));
+
+        assertEquals(Arrays.asList("put A", "put B", "remove " + a.getId(), "put C"), replay());
+
+        mJournal.reset();
+        assertEquals(0, mJournal.size());
+        assertEquals(Collections.emptyList(), replay());
+    }
+
+    @Test
+    public void tornTailIsCutOffAndLaterAppendsReplay() throws IOException {
+        mJournal.append(Arrays.asList(mJournal.putRecord(task("A")), mJournal.putRecord(task("B"))));
+        long intact = mJournal.size();
+        mJournal.append(Collections.singletonList(mJournal.putRecord(task("Torn"))));
+        truncate(mJournal.size() - 3); // Killed mid-append
+
+        assertEquals(Arrays.asList("put A", "put B"), replay());
+        assertEquals(intact, mJournal.size());
+
+        mJournal.append(Collections.singletonList(mJournal.putRecord(task("C"))));
+        assertEquals(Arrays.asList("put A", "put B", "put C"), replay());
+    }
+
+    @Test
+    public void tornLengthPrefixIsCutOff() throws IOException {
+        mJournal.append(Collections.singletonList(mJournal.putRecord(task("A"))));
+        long intact = mJournal.size();
+        try (FileOutputStream out = new FileOutputStream(mFile, true)) {
+            out.write(new byte[] {0, 0}); // Half a length
+        }
+
+        assertEquals(Collections.singletonList("put A"), replay());
+        assertEquals(intact, mJournal.size());
+    }
+
+    @Test
+    public void corruptLastRecordIsCutOff() throws IOException {
+        mJournal.append(Collections.singletonList(mJournal.putRecord(task("A"))));
+        long intact = mJournal.size();
+        mJournal.append(Collections.singletonList(mJournal.putRecord(task("B"))));
+        flipByte(intact + 8 + 10); // Inside B's payload
+
+        assertEquals(Collections.singletonList("put A"), replay());
+        assertEquals(intact, mJournal.size());
+    }
+
+    @Test
+    public void corruptMiddleRecordIsSkippedAndLaterRecordsSurvive() throws IOException {
+        mJournal.append(Collections.singletonList(mJournal.putRecord(task("A"))));
+        long bStart = mJournal.size();
+        mJournal.append(Collections.singletonList(mJournal.putRecord(task("B"))));
+        mJournal.append(Collections.singletonList(mJournal.putRecord(task("C"))));
+        long length = mJournal.size();
+        flipByte(bStart + 8 + 10); // Inside B's payload
+
+        assertEquals(Arrays.asList("put A", "put C"), replay());
+        assertEquals(length, mJournal.size()); // Nothing was truncated
+
+        mJournal.append(Collections.singletonList(mJournal.putRecord(task("D"))));
+        assertEquals(Arrays.asList("put A", "put C", "put D"), replay());
+    }
+
+    @Test
+    public void corruptLengthInTheMiddleIsSkipped() throws IOException {
+        mJournal.append(Collections.singletonList(mJournal.putRecord(task("A"))));
+        long bStart = mJournal.size();
+        mJournal.append(Arrays.asList(mJournal.putRecord(task("B")), mJournal.putRecord(task("C"))));
+        long length = mJournal.size();
+        flipByte(bStart + 2); // B's length now points past the end of the file
+
+        assertEquals(Arrays.asList("put A", "put C"), replay());
+        assertEquals(length, mJournal.size());
+    }
+
+    @Test
+    public void batchWithUndecodableEntryIsSkippedWhole() throws IOException {
+        Task a = task("A");
+        mJournal.append(Collections.singletonList(mJournal.putRecord(a)));
+
+        // A complete, correctly checksummed batch whose second entry is not a valid id.
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(batch);
+        out.writeByte(TaskJournal.OP_BATCH);
+        writeEntry(out, TaskJournal.OP_PUT, ProdoGson.get().toJson(task("Half")));
+        writeEntry(out, TaskJournal.OP_REMOVE, "not-an-id");
+        out.flush();
+        appendFrame(batch.toByteArray());
+
+        mJournal.append(Collections.singletonList(mJournal.removeRecord(a.getId())));
+        long length = mJournal.size();
+
+        List<String> log = new ArrayList<>();
+        int applied = mJournal.replay(new TaskJournal.Replayer() {
+            @Override
+            public void put(Task task) {
+                log.add("put " + task.getTitle());
+            }
+
+            @Override
+            public void remove(UUID id) {
+                log.add("remove " + id);
+            }
+        });
+        assertEquals(Arrays.asList("put A", "remove " + a.getId()), log);
+        assertEquals(3, applied); // The skipped batch still counts; it was read and is not torn
+        assertEquals(length, mJournal.size()); // Nothing was truncated
+    }
+
+    private static void writeEntry(DataOutputStream out, byte op, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(op);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void appendFrame(byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(mFile, true))) {
+            out.writeInt(payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+        }
+    }
+
+    private void flipByte(long offset) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            raf.seek(offset);
+            int value = raf.read();
+            raf.seek(offset);
+            raf.write(value ^ 0xFF);
+        }
+    }
+
+    private void truncate(long length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            raf.setLength(length);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.prodo.data;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The Pomodoro task picker's fuzzy type-ahead: word starts beat scattered letters, ties go to undone
+ * and then later tasks, and an empty query lists recently used tasks first.
+ */
+public class TaskPickerTest {
+    static Task task(String title, long date, boolean done) {
+        return new Task.Builder().setTitle(title).setCategory("Work").setDate(date).setDone(done).build();
+    }
+
+    @Test
+    public void ranksMatches() {
+        Task weekly = task("Weekly report", 100, false);
+        Task scattered = task("Walk the dog, keep receipts", 300, false);
+        Task doneWeekly = task("Weekly report draft", 200, true);
+        Task unrelated = task("Groceries", 400, false);
+        Task recent = task("Call the bank", 50, false);
+        TaskPicker picker = new TaskPicker(Arrays.asList(weekly, scattered, doneWeekly, unrelated, recent),
+                Collections.singletonList(recent.getId()));
+
+        // Word starts beat scattered letters; the undone task wins the tie
+        assertEquals(Arrays.asList(weekly, doneWeekly, scattered), picker.match("wkrp", 10));
+        assertEquals(Arrays.asList(weekly, doneWeekly), picker.match("weekly r", 10)); // Spaces ignored
+        assertEquals(Collections.singletonList(weekly), picker.match("weekly r", 1));
+        assertEquals(Collections.emptyList(), picker.match("weekly rz", 10));
+        // Narrowed to nothing, then widened again; equal scores go to undone, then the later date
+        assertEquals(Arrays.asList(scattered, weekly, doneWeekly), picker.match("WK", 10));
+        // Nothing typed: recently used first, then undone by date; done tasks left out
+        assertEquals(Arrays.asList(recent, unrelated, scattered, weekly), picker.match("", 10));
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.prodo.data;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * TaskQuery through the planner returns exactly what a full scan of the same table returns, also
+ * after removals, compactions and edits, and the planner picks an index whenever one narrows the
+ * query down. Hot records keep their subtask count through both snapshot formats.
+ */
+public class TaskQueryTest {
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final long START = 1_700_000_000_000L;
+    private static final String[] CATEGORIES = {"Personal", "Work", "Shopping", "Wishlist", "Health", "Study", "Home", "Travel"};
+
+    static TaskTable sampleTable(int count, Random random) {
+        TaskTable table = new TaskTable();
+        for (int i = 0; i < count; i++) {
+            Task.Builder task = new Task.Builder()
+                    .setTitle((i % 50 == 0 ? "Call " : "Task ") + i)
+                    .setCategory(CATEGORIES[random.nextInt(CATEGORIES.length)])
+                    .setDate(i % 20 == 0 ? 0 : START + random.nextInt(365) * DAY + random.nextInt(86_400_000))
+                    .setDone(random.nextInt(3) > 0)
+                    .setFlagged(random.nextInt(20) == 0);
+            if (i % 7 == 0) {
+                task.addSubtask(new Subtask("Step"));
+            }
+            table.put(task.build().withoutBody()); // Hot records, as TaskStore keeps them
+        }
+        return table;
+    }
+
+    static List<TaskQuery> sampleQueries() {
+        return Arrays.asList(
+                TaskQuery.ALL.toBuilder().setLimit(50).build(),
+                new TaskQuery.Builder().setCategory("work").build(),
+                new TaskQuery.Builder().setCategory("Work").setDone(false).setOrder(TaskQuery.Order.DATE).setLimit(20).build(),
+                new TaskQuery.Builder().setFlagged(true).setOrder(TaskQuery.Order.DATE_DESCENDING).build(),
+                new TaskQuery.Builder().setDueOnDay(START + 100 * DAY).build(),
+                new TaskQuery.Builder().setDueOnDays(START, START + 30 * DAY).setFlagged(true).setOrder(TaskQuery.Order.TITLE).build(),
+                new TaskQuery.Builder().setDone(false).setOrder(TaskQuery.Order.UNDONE_FIRST).setOffset(100).setLimit(25).build(),
+                new TaskQuery.Builder().setTitleContains("call").setHasSubtasks(true).build(),
+                new TaskQuery.Builder().setCategory("Home").setOrder(TaskQuery.Order.UNDONE_FIRST).build());
+    }
+
+    @Test
+    public void plannedMatchesScan() {
+        TaskTable table = sampleTable(5_000, new Random(1));
+        LocalDays days = LocalDays.current();
+        for (TaskQuery query : sampleQueries()) {
+            List<Task> scanned = TaskQueryPlanner.run(table, query, TaskQueryPlanner.scanPlan(table), days);
+            assertEquals(TaskQueryPlanner.plan(table, query).toString(), scanned, TaskQueryPlanner.run(table, query, days));
+            TaskQuery everything = query.toBuilder().setOffset(0).setLimit(Integer.MAX_VALUE).build();
+            assertEquals(TaskQueryPlanner.run(table, everything, TaskQueryPlanner.scanPlan(table), days).size(),
+                    TaskQueryPlanner.count(table, query, days));
+        }
+
+        // Index slots follow the tasks through removals, compactions and edits
+        TaskTable shrunk = sampleTable(5_000, new Random(1));
+        List<Task> tasks = new ArrayList<>();
+        shrunk.forEach(tasks::add);
+        for (int i = 0; i < tasks.size(); i++) {
+            if (i % 3 != 0) {
+                shrunk.remove(tasks.get(i).getId());
+            } else if (i % 2 == 0) {
+                shrunk.replace(tasks.get(i).withDone(!tasks.get(i).isDone()).withCategory("Work"));
+            }
+        }
+        for (TaskQuery query : sampleQueries()) {
+            assertEquals(TaskQueryPlanner.run(shrunk, query, TaskQueryPlanner.scanPlan(shrunk), days),
+                    TaskQueryPlanner.run(shrunk, query, days));
+        }
+
+        // Slot indexes win whenever they narrow things down; even an eighth of the table
+        assertEquals(TaskQueryPlanner.Source.CATEGORY, TaskQueryPlanner.plan(table, sampleQueries().get(1)).source);
+        assertEquals(TaskQueryPlanner.Source.FLAGGED, TaskQueryPlanner.plan(table, sampleQueries().get(3)).source);
+        assertEquals(TaskQueryPlanner.Source.DAYS, TaskQueryPlanner.plan(table, sampleQueries().get(4)).source);
+        assertEquals(TaskQueryPlanner.Source.SCAN, TaskQueryPlanner.plan(table, sampleQueries().get(7)).source);
+    }
+
+    @Test
+    public void hotRecordsKeepSubtaskCount() throws IOException {
+        Task full = new Task.Builder().setTitle("With steps").addSubtask(new Subtask("One")).addSubtask(new Subtask("Two")).build();
+        Task hot = full.withoutBody();
+        assertEquals(0, hot.getSubtasks().size());
+        assertEquals(2, hot.getSubtaskCount());
+        assertEquals(2, hot.withDone(true).getSubtaskCount());
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        TaskJsonCodec.write(json, ProdoGson.get(), Arrays.asList(hot));
+        List<Task> fromJson = new ArrayList<>();
+        TaskJsonCodec.read(new ByteArrayInputStream(json.toByteArray()), ProdoGson.get(), fromJson::add);
+        assertEquals(2, fromJson.get(0).getSubtaskCount());
+
+        File bin = File.createTempFile("tasks", ".bin");
+        try {
+            BinaryTaskCodec.write(bin, Arrays.asList(hot));
+            List<Task> fromBinary = new ArrayList<>();
+            BinaryTaskCodec.read(bin, fromBinary::add);
+            assertEquals(2, fromBinary.get(0).getSubtaskCount());
+        } finally {
+            bin.delete();
+        }
+    }
+}
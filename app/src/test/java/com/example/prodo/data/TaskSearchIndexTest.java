@@ -0,0 +1,80 @@
+package com.example.prodo.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * TaskSearchIndex ranks title matches over subtask and note matches, newest first, needs every
+ * word to match (the last one as a prefix), and forgets removed and purged tasks.
+ */
+public class TaskSearchIndexTest {
+    @Test
+    public void ranksAndMatches() {
+        TaskSearchIndex index = new TaskSearchIndex();
+        UUID inTitle = UUID.randomUUID();
+        UUID inSubtask = UUID.randomUUID();
+        UUID inNote = UUID.randomUUID();
+        UUID olderInTitle = UUID.randomUUID();
+        index.setTitle(inNote, "Weekend", 300);
+        index.setBody(inNote, "Buy groceries for the BBQ", Collections.emptyList());
+        index.setTitle(inSubtask, "Errands", 200);
+        index.setBody(inSubtask, "", Arrays.asList(new Subtask("Groceries"), new Subtask("Post office")));
+        index.setTitle(inTitle, "Groceries run", 100);
+        index.setTitle(olderInTitle, "GROCERIES, again", 50);
+
+        assertEquals(Arrays.asList(inTitle, olderInTitle, inSubtask, inNote), index.search("groceries", 10));
+        assertEquals(Arrays.asList(inTitle, olderInTitle, inSubtask, inNote), index.search("groc", 10));
+        assertEquals(Collections.emptyList(), index.search("groc ", 10)); // A finished word is not a prefix
+        assertEquals(Collections.singletonList(inNote), index.search("bbq groceries", 10)); // Every word
+        assertEquals(Collections.singletonList(inSubtask), index.search("post gro", 10));
+        assertEquals(Arrays.asList(inTitle, olderInTitle), index.search("groceries", 2));
+
+        index.setTitle(inTitle, "Pharmacy run", 100);
+        index.setBody(inSubtask, "", Collections.emptyList());
+        index.remove(olderInTitle);
+        assertEquals(Collections.singletonList(inNote), index.search("groceries", 10));
+        assertEquals(Collections.singletonList(inTitle), index.search("pharm", 10));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void wordBeingTypedIsTheLastOneTyped() {
+        TaskSearchIndex index = new TaskSearchIndex();
+        UUID football = UUID.randomUUID();
+        UUID foodBar = UUID.randomUUID();
+        index.setTitle(football, "Football bar night", 200);
+        index.setTitle(foodBar, "Food bar", 100);
+
+        // "foo" is repeated, so "bar" is second after de-duplication, but "foo" is being typed
+        assertEquals(Arrays.asList(football, foodBar), index.search("foo bar foo", 10));
+        assertEquals(Collections.emptyList(), index.search("foo bar foo ", 10)); // Finished: no word "foo"
+        assertEquals(Collections.singletonList(foodBar), index.search("food bar foo", 10)); // "food" whole, "foo" typed
+    }
+
+    @Test
+    public void purgesRemovedTasks() {
+        TaskSearchIndex index = new TaskSearchIndex();
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+            index.setTitle(id, "Task " + i + (i % 2 == 0 ? " even" : " odd"), i);
+        }
+        for (int i = 0; i < 4_000; i++) {
+            index.remove(ids.get(i));
+        }
+        assertEquals(1_000, index.size());
+        assertEquals(500, index.search("even", 10_000).size());
+        assertEquals(ids.get(4_998), index.search("even", 1).get(0)); // Most recent first
+
+        index.retainAll(id -> ids.indexOf(id) % 10 == 0);
+        assertEquals(100, index.search("task", 10_000).size());
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.prodo.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * TaskTable keeps insertion order through removes and compactions, published snapshots see
+ * exactly the tasks they were published with while the table moves on, and each edit stamped into
+ * it gets a version of its own.
+ */
+public class TaskTableTest {
+    static List<Task> sampleTasks(int count) {
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add(new Task("Task number " + i, "Work", 1_700_000_000_000L + i * 3_600_000L, ""));
+        }
+        return tasks;
+    }
+
+    @Test
+    public void keepsInsertionOrderAcrossRemovesAndCompaction() {
+        List<Task> tasks = sampleTasks(1_000);
+        TaskTable table = new TaskTable();
+        for (Task task : tasks) {
+            assertNull(table.put(task));
+        }
+
+        List<Task> expected = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            if (i % 4 == 0) {
+                expected.add(tasks.get(i));
+            } else {
+                assertSame(tasks.get(i), table.remove(tasks.get(i).getId())); // Forces several compactions
+            }
+        }
+        assertEquals(expected, table.publish(0).asList());
+        assertEquals(expected.size(), table.size());
+
+        Task replacement = new Task.Builder().setId(expected.get(10).getId()).setTitle("Replaced").setCategory("Home").setNote("").build();
+        assertSame(expected.get(10), table.replace(replacement));
+        expected.set(10, replacement);
+        assertEquals(expected, table.publish(0).asList());
+        for (Task task : expected) {
+            assertSame(task, table.get(task.getId()));
+        }
+
+        assertNull(table.replace(new Task("Unknown", "Home", 0L, "")));
+        assertNull(table.remove(UUID.randomUUID()));
+        assertEquals(expected.size(), table.size());
+    }
+
+    @Test
+    public void publishedSnapshotsNeverChange() {
+        List<Task> tasks = sampleTasks(1_000);
+        TaskTable table = new TaskTable();
+        for (Task task : tasks) {
+            table.put(task);
+        }
+        TaskSnapshot before = table.publish(0);
+
+        Task replacement = new Task.Builder().setId(tasks.get(500).getId()).setTitle("Replaced").setCategory("Home").setNote("").build();
+        table.replace(replacement);
+        for (int i = 0; i < 900; i++) {
+            table.remove(tasks.get(i).getId()); // Compacts, moving every remaining task's slot
+        }
+        Task added = new Task("Added", "Home", 0L, "");
+        table.put(added);
+        TaskSnapshot after = table.publish(0);
+
+        assertEquals(tasks, before.asList());
+        for (Task task : tasks) {
+            assertSame(task, before.get(task.getId()));
+        }
+        assertNull(before.get(added.getId()));
+
+        assertEquals(101, after.size());
+        assertSame(added, after.get(added.getId()));
+        assertNull(after.get(tasks.get(500).getId()));
+        assertSame(tasks.get(950), after.get(tasks.get(950).getId()));
+        assertSame(after, table.snapshot());
+    }
+
+    @Test
+    public void publishedSnapshotSeesItsTasksWhileTheTableMovesOn() {
+        List<Task> tasks = sampleTasks(10);
+        TaskTable table = new TaskTable();
+        for (Task task : tasks) {
+            table.put(task);
+        }
+        TaskSnapshot snapshot = table.publish(0);
+
+        // Written to the table but not published yet, as inside a TaskStore write
+        table.remove(tasks.get(3).getId());
+        assertSame(tasks.get(3), snapshot.get(tasks.get(3).getId()));
+        table.put(tasks.get(3)); // Back, at a slot past this snapshot's end
+        assertSame(tasks.get(3), snapshot.get(tasks.get(3).getId()));
+        Task added = new Task("Added", "Home", 0L, "");
+        table.put(added);
+        assertNull(snapshot.get(added.getId()));
+        assertNull(snapshot.get(UUID.randomUUID()));
+
+        TaskSnapshot next = table.publish(1);
+        assertSame(tasks.get(3), next.get(tasks.get(3).getId()));
+        assertSame(added, next.get(added.getId()));
+        assertNull(next.get(UUID.randomUUID()));
+    }
+
+    @Test
+    public void concurrentEditsGetVersionsOfTheirOwn() {
+        Subtask step = new Subtask("Step");
+        Task base = new Task.Builder().setTitle("Task").addSubtask(step).build();
+        TaskTable table = new TaskTable();
+        table.put(table.stamped(base));
+        assertSame(base, table.stamped(base));
+
+        // Both built from base, so both one above it; they differ only in the subtask's done flag,
+        // which equals() does not compare
+        Task checked = base.toBuilder().setTitle("Renamed").setSubtask(step.withDone(true)).build();
+        Task unchecked = base.toBuilder().setTitle("Renamed").build();
+        assertEquals(checked, unchecked);
+        table.put(table.stamped(checked));
+        assertSame(checked, table.get(base.getId()));
+
+        Task later = table.stamped(unchecked);
+        assertEquals(checked.getVersion() + 1, later.getVersion());
+        assertFalse(later.getSubtasks().get(0).isDone());
+        table.put(later);
+        assertEquals(later.getVersion() + 1, table.stamped(base).getVersion()); // A stale copy too
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.prodo.data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TaskTransaction.rollBack, which TaskStore runs when a transaction's journal write fails: the
+ * table goes back to the tasks it had, except where a later write already replaced them.
+ */
+public class TaskTransactionTest {
+    private final TaskChangeFeed mFeed = new TaskChangeFeed();
+    private TaskTable mTable;
+    private Task mA;
+    private Task mB;
+    private Task mC;
+
+    @Before
+    public void setUp() {
+        mTable = new TaskTable();
+        mA = new Task.Builder().setTitle("A").setCategory("Work").build();
+        mB = new Task.Builder().setTitle("B").setCategory("Work").build();
+        mC = new Task.Builder().setTitle("C").setCategory("Home").build();
+        mTable.put(mA);
+        mTable.put(mB);
+        mTable.put(mC);
+    }
+
+    @Test
+    public void rollBackRestoresTheTableAsItWas() {
+        TaskTransaction tx = new TaskTransaction(mTable);
+        Task added = new Task.Builder().setTitle("D").setCategory("Work").build();
+        tx.update(mA.withDone(true));
+        assertTrue(tx.delete(mB.getId()));
+        tx.add(added);
+        assertEquals(Arrays.asList("A", "D"), titles(tx.getTasksInCategory("work"))); // B deleted, A staged
+        tx.close();
+        tx.apply(mFeed);
+        assertTrue(mTable.get(mA.getId()).isDone());
+        assertNull(mTable.get(mB.getId()));
+
+        assertEquals(3, tx.rollBack(mFeed));
+
+        Task a = mTable.get(mA.getId());
+        assertFalse(a.isDone());
+        assertEquals(mA.getTitle(), a.getTitle());
+        assertTrue(a.getVersion() > mA.withDone(true).getVersion()); // Screens must see it changed back
+        assertSame(mB, mTable.get(mB.getId()));
+        assertNull(mTable.get(added.getId()));
+        assertEquals(Arrays.asList("A", "C", "B"), titles(mTable.publish(0).asList())); // B comes back at the end
+        assertEquals(3, mTable.size());
+    }
+
+    @Test
+    public void rollBackKeepsTasksChangedAgainSince() {
+        TaskTransaction tx = new TaskTransaction(mTable);
+        tx.update(mA.withDone(true));
+        tx.update(mC.withFlagged(true));
+        tx.close();
+        tx.apply(mFeed);
+
+        Task newer = mTable.get(mA.getId()).withCategory("Home"); // A later write, already in the table
+        mTable.put(newer);
+
+        assertEquals(1, tx.rollBack(mFeed));
+        assertSame(newer, mTable.get(mA.getId()));
+        assertFalse(mTable.get(mC.getId()).isFlagged());
+    }
+
+    @Test
+    public void rollBackLeavesADeletedTaskThatWasAddedAgainAlone() {
+        TaskTransaction tx = new TaskTransaction(mTable);
+        tx.delete(mB.getId());
+        tx.close();
+        tx.apply(mFeed);
+
+        Task again = mB.withTitle("B again");
+        mTable.put(again);
+
+        assertEquals(0, tx.rollBack(mFeed));
+        assertSame(again, mTable.get(mB.getId()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedTransactionRejectsWrites() {
+        TaskTransaction tx = new TaskTransaction(mTable);
+        tx.close();
+        tx.add(new Task.Builder().setTitle("Late").build());
+    }
+
+    private static List<String> titles(Iterable<Task> tasks) {
+        List<String> titles = new ArrayList<>();
+        for (Task task : tasks) {
+            titles.add(task.getTitle());
+        }
+        return titles;
+    }
+}
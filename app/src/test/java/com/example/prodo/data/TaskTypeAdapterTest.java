@@ -0,0 +1,66 @@
+package com.example.prodo.data;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.InstanceCreator;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The hand-written Task/Subtask adapters and the reflective Gson binding TaskStore used before
+ * read each other's output identically, so existing tasks.json files keep loading.
+ */
+public class TaskTypeAdapterTest {
+    static final Type TASK_LIST_TYPE = new TypeToken<ArrayList<Task>>() {}.getType();
+
+    static List<Task> sampleTasks(int count) {
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Task.Builder task = new Task.Builder()
+                    .setTitle("Task " + i)
+                    .setCategory(i % 3 == 0 ? "Work" : "Personal")
+                    .setDate(1_700_000_000_000L + i * 60_000L)
+                    .setNote(i % 2 == 0 ? "Some note for task " + i : "")
+                    .setDone(i % 4 == 0)
+                    .setFlagged(i % 7 == 0)
+                    .setPomodoroCount(i % 5)
+                    .setTotalTimeSpentMillis(i * 1000L);
+            for (int s = 0; s < i % 4; s++) {
+                task.addSubtask(new Subtask("Step " + s));
+            }
+            tasks.add(task.build());
+        }
+        return tasks;
+    }
+
+    // A fresh reflective Gson, like the old per-call `new Gson()`. Subtask keeps its id as two longs
+    // now, so reflection would no longer produce the old JSON for it; SubtaskTypeAdapter writes what
+    // reflection over the old fields (id, title, isDone) did. Task has no no-arg constructor, so
+    // reflection starts from a blank task and then sets every field.
+    static Gson reflectiveGson() {
+        return new GsonBuilder()
+                .registerTypeAdapter(Task.class, (InstanceCreator<Task>) type -> Task.Builder.blank().build())
+                .registerTypeAdapter(Subtask.class, new SubtaskTypeAdapter())
+                .create();
+    }
+
+    @Test
+    public void handWrittenAdaptersReadLegacyJsonAndRoundTrip() {
+        List<Task> tasks = sampleTasks(200);
+        String legacyJson = reflectiveGson().toJson(tasks);
+
+        List<Task> decoded = ProdoGson.get().fromJson(legacyJson, TASK_LIST_TYPE);
+        assertEquals(tasks, decoded);
+
+        String json = ProdoGson.get().toJson(decoded);
+        List<Task> reflectiveDecoded = reflectiveGson().fromJson(json, TASK_LIST_TYPE);
+        assertEquals(tasks, reflectiveDecoded);
+    }
+}